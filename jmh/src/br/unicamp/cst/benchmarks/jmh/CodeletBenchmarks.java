@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.benchmarks.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.Memory;
+import br.unicamp.cst.core.entities.MemoryObject;
+
+/**
+ * Looking up inputs by name, as accessMemoryObjects() does at every cycle.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodeletBenchmarks
+{
+	@Param({"10", "100", "1000"})
+	public int inputs;
+
+	private Codelet codelet;
+
+	private String lastName;
+
+	@Setup
+	public void setUp()
+	{
+		codelet = new Codelet()
+		{
+			@Override
+			public void accessMemoryObjects()
+			{
+			}
+
+			@Override
+			public void calculateActivation()
+			{
+			}
+
+			@Override
+			public void proc()
+			{
+			}
+		};
+
+		for(int i = 0; i < inputs; i++)
+		{
+			MemoryObject mo = new MemoryObject();
+			mo.setType("INPUT_" + i);
+			codelet.addInput(mo);
+		}
+
+		lastName = "input_" + (inputs - 1);
+	}
+
+	@Benchmark
+	public Memory getInputByNameAndIndex()
+	{
+		return codelet.getInput(lastName, 0);
+	}
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.benchmarks.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.unicamp.cst.core.entities.Codelet;
+
+/**
+ * Cross-codelet access through Codelet.impendingAccess(), as behaviors do for every other
+ * behavior in their coalition: alone, and with threads locking the same pair in opposite orders.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LockBenchmarks
+{
+	private Codelet a;
+
+	private Codelet b;
+
+	@Setup
+	public void setUp()
+	{
+		a = new EmptyCodelet();
+		b = new EmptyCodelet();
+	}
+
+	@Benchmark
+	public boolean impendingAccess()
+	{
+		return access(a, b);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean impendingAccessContended()
+	{
+		// half of the threads lock the pair in the opposite order
+		return (Thread.currentThread().getId() & 1) == 0 ? access(a, b) : access(b, a);
+	}
+
+	private static boolean access(Codelet from, Codelet to)
+	{
+		if(!from.impendingAccess(to))
+			return false;
+
+		from.lock.unlock();
+		to.lock.unlock();
+		return true;
+	}
+
+	private static class EmptyCodelet extends Codelet
+	{
+		@Override
+		public void accessMemoryObjects()
+		{
+		}
+
+		@Override
+		public void calculateActivation()
+		{
+		}
+
+		@Override
+		public void proc()
+		{
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.benchmarks.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.unicamp.cst.core.entities.MemoryObject;
+
+/**
+ * MemoryObject reads and writes, alone and with several readers and a writer sharing one memory object.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class MemoryObjectBenchmarks
+{
+	private MemoryObject memoryObject;
+
+	private long value = 0;
+
+	@Setup
+	public void setUp()
+	{
+		memoryObject = new MemoryObject();
+		memoryObject.setType("SHARED");
+		memoryObject.setI(0L);
+	}
+
+	@Benchmark
+	@Group("uncontended")
+	@GroupThreads(1)
+	public Object getAndSet()
+	{
+		memoryObject.setI(++value);
+		return memoryObject.getI();
+	}
+
+	@Benchmark
+	@Group("contended")
+	@GroupThreads(3)
+	public Object read()
+	{
+		return memoryObject.getI();
+	}
+
+	@Benchmark
+	@Group("contended")
+	@GroupThreads(1)
+	public int write()
+	{
+		return memoryObject.setI(++value);
+	}
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.benchmarks.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.unicamp.cst.core.entities.MemoryBuffer;
+import br.unicamp.cst.core.entities.MemoryContainer;
+import br.unicamp.cst.core.entities.MemoryObject;
+
+/**
+ * Short term memory structures: putting into a full MemoryBuffer, and reading a MemoryContainer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryStructureBenchmarks
+{
+	@State(Scope.Benchmark)
+	public static class FullBuffer
+	{
+		@Param({"16", "1024", "65536"})
+		public int capacity;
+
+		MemoryBuffer buffer;
+
+		MemoryObject[] contents = new MemoryObject[1024];
+
+		int next = 0;
+
+		@Setup
+		public void setUp()
+		{
+			buffer = new MemoryBuffer(capacity, null);
+			for(int i = 0; i < contents.length; i++)
+			{
+				contents[i] = new MemoryObject();
+				contents[i].setI(i);
+			}
+			for(int i = 0; i < capacity; i++)
+			{
+				buffer.put(contents[i % contents.length]);
+			}
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Container
+	{
+		@Param({"4", "64"})
+		public int memories;
+
+		MemoryContainer container;
+
+		@Setup
+		public void setUp()
+		{
+			container = new MemoryContainer("CONTAINER");
+			for(int i = 0; i < memories; i++)
+			{
+				container.setI(i, (double) i / memories);
+			}
+		}
+	}
+
+	@Benchmark
+	public void memoryBufferPut(FullBuffer state)
+	{
+		state.buffer.put(state.contents[state.next++ & (state.contents.length - 1)]);
+	}
+
+	@Benchmark
+	public Object memoryContainerGetI(Container state)
+	{
+		return state.container.getI();
+	}
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.benchmarks.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.unicamp.cst.core.entities.Memory;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.RawMemory;
+
+/**
+ * RawMemory operations on a raw memory already holding many memory objects of 100 types.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RawMemoryBenchmarks
+{
+	private static final int TYPES = 100;
+
+	@Param({"1000", "100000"})
+	public int size;
+
+	private RawMemory rawMemory;
+
+	private int next = 0;
+
+	@Setup
+	public void setUp()
+	{
+		rawMemory = new RawMemory();
+		for(int i = 0; i < size; i++)
+		{
+			rawMemory.createMemoryObject("TYPE_" + (i % TYPES), i);
+		}
+	}
+
+	/**
+	 * Creates a memory object and destroys it, as buffers do, keeping the size of the raw memory.
+	 */
+	@Benchmark
+	public MemoryObject createAndDestroyMemoryObject()
+	{
+		MemoryObject mo = rawMemory.createMemoryObject("TYPE_" + (next++ % TYPES), next);
+		rawMemory.destroyMemoryObject(mo);
+		return mo;
+	}
+
+	@Benchmark
+	public List<Memory> getAllOfType()
+	{
+		return rawMemory.getAllOfType("TYPE_" + (next++ % TYPES));
+	}
+}
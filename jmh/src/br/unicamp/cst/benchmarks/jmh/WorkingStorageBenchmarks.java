@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.benchmarks.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.RawMemory;
+import br.unicamp.cst.memory.WorkingStorage;
+
+/**
+ * Putting memory objects into a WorkingStorage which already holds many of them, 
+ * with one codelet registered to receive a type as input.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WorkingStorageBenchmarks
+{
+	@Param({"100", "1000"})
+	public int size;
+
+	private WorkingStorage workingStorage;
+
+	private MemoryObject existing;
+
+	private MemoryObject[] newMemories = new MemoryObject[1024];
+
+	private int next = 0;
+
+	@Setup
+	public void setUp()
+	{
+		RawMemory rawMemory = new RawMemory();
+		workingStorage = new WorkingStorage(size, rawMemory);
+
+		Codelet codelet = new Codelet()
+		{
+			@Override
+			public void accessMemoryObjects()
+			{
+			}
+
+			@Override
+			public void calculateActivation()
+			{
+			}
+
+			@Override
+			public void proc()
+			{
+			}
+		};
+		workingStorage.registerCodelet(codelet, "TYPE_0", 0);
+
+		for(int i = 0; i < size; i++)
+		{
+			existing = rawMemory.createMemoryObject("TYPE_" + (i % 10), i);
+			workingStorage.putMemoryObject(existing);
+		}
+
+		for(int i = 0; i < newMemories.length; i++)
+		{
+			newMemories[i] = rawMemory.createMemoryObject("TYPE_NEW", i);
+		}
+	}
+
+	/**
+	 * Putting a memory object which is already there
+	 */
+	@Benchmark
+	public void putExistingMemoryObject()
+	{
+		workingStorage.putMemoryObject(existing);
+	}
+
+	/**
+	 * Putting a new memory object, then taking it out to keep the size of the working storage
+	 */
+	@Benchmark
+	public void putNewMemoryObject()
+	{
+		MemoryObject mo = newMemories[next++ & (newMemories.length - 1)];
+		workingStorage.putMemoryObject(mo);
+		workingStorage.removeFromWorkingStorageWithoutDelete(mo);
+	}
+}
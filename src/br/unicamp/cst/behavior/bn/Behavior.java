@@ -11,14 +11,16 @@
 package br.unicamp.cst.behavior.bn;
 
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Collections;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map.Entry;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import br.unicamp.cst.behavior.bn.support.BehaviorsWTA;
 import br.unicamp.cst.core.entities.Codelet;
 import br.unicamp.cst.core.entities.Memory;
 import br.unicamp.cst.core.exceptions.CodeletActivationBoundsException;
@@ -27,6 +29,11 @@ import br.unicamp.cst.memory.WorkingStorage;
 /**
  * This competence class extends Codelet. "A competence resemble the operators of a classical planning system. A competence module i can be described by a list of preconditions and expected effects."[Maes 1989]
  * 
+ * The links between behaviors are compiled from their lists of propositions, each proposition being identified by its info.
+ * So the precondition, soft precondition, add and delete lists must only be changed through the add*, del* and set*List 
+ * methods, which recompile the links: the getters return read only views, and a list given to a set*List method must not be
+ * changed afterwards. The info of a proposition must not change once it is in one of these lists.
+ * 
  * @author klaus
  * 
  */
@@ -53,9 +60,9 @@ public abstract class Behavior extends Codelet
 	protected ArrayList<Behavior> allBehaviors = new ArrayList<Behavior>();//Pointers to all behaviors in the network. Basal ganglia should support this hypothesis. 
 	protected ArrayList<Behavior> coalition = new ArrayList<Behavior>(); //A subset of all behaviors, given by consciousness.
 
-	protected Hashtable<Behavior, ArrayList<Memory>> predecessors = new Hashtable<Behavior, ArrayList<Memory>>();
-	protected Hashtable<Behavior, ArrayList<Memory>> successors = new Hashtable<Behavior, ArrayList<Memory>>();
-	protected Hashtable<Behavior, ArrayList<Memory>> conflicters = new Hashtable<Behavior, ArrayList<Memory>>();
+	// Links to the other behaviors, compiled with the lists of propositions of this behavior as sorted proposition ids
+	volatile LinkGraph linkGraph; // graph shared by the behaviors of a network, created when needed for a lone behavior
+	volatile LinkGraph.Node links; // this behavior's lists and links in linkGraph
 
 	private ArrayList<Memory> permanentGoals = new ArrayList<Memory>();
 	private ArrayList<Memory> onceOnlyGoals = new ArrayList<Memory>();
@@ -64,10 +71,12 @@ public abstract class Behavior extends Codelet
 	private ArrayList<Memory> worldState = new ArrayList<Memory>();
 	private ArrayList<Object> listOfWorldBeliefStates=new ArrayList<Object>();
 	private ArrayList<Object> listOfPreviousWorldBeliefStates=new ArrayList<Object>();
+	private List<Memory> retrievedInputs=null; // inputs the goals and world state were last retrieved from by retrieveInputs()
 
 	private GlobalVariables globalVariables; //Behavior network global variables
 
-	private boolean executable; //Defines if this behavior is executable or not
+	private volatile boolean executable; //Defines if this behavior is executable or not
+	private volatile BehaviorsWTA behaviorsWTA; // told when the activation or executability changes
 	private boolean active; //Defines if this behavior is active at the moment
 	private boolean firstTime; // Checks if this behaviour is trying to perform actions for the first time since it got active
 	private double maxA=1; // maximum activation for normalization
@@ -184,84 +193,21 @@ public abstract class Behavior extends Codelet
 	}
 
 	/**
-	 * Updates the links lists based on conscious codelets from the network
-	 * 
-	 * "There is a successor link from competence module x to competence module y (x has y as successor) for every proposition p that is a member of the add list of x and also member of the precondition list of y (there can be more than one successor link between 2 competence modules)"
-	 * 
-	 * "A predecessor link from module x to module y (x has y as predecessor) exists for every successor link from y to x."
-	 * 
-	 * "There is a conflicter link from module x to module y (y conflicts with x) for every proposition p that is a member of the delete list of y and a member of the precondition linst of x" [Maes 1989]
+	 * @return a read only view of one of this behavior's lists of propositions, or null if the list was set to null
 	 */
-	private void updateLinks()//TODO it would be best if we avoided accessing other codelet's inner states directly.  How about doing all this using broadcast?
+	private static List<Memory> readOnly(List<Memory> list)
 	{
-		successors.clear();
-		predecessors.clear();
-		conflicters.clear();
-
-//		if(this.getName().contains("TV")){
-//			int a=4;
-//			System.out.println(this.getName());
-//			
-//		}
-		
-
-		ArrayList<Memory> intersection = new ArrayList<Memory>();
-		for (Behavior competence : coalition)
-		{
-//			if(competence.getName().contains("ROOM13")){
-//				int a=4;
-//				System.out.println(competence.getName());
-//				
-//			}
-			if (impendingAccess(competence))
-			{
-				try
-				{
-					if (competence != this)
-					{
-						//------
-						intersection = getIntersectionSet(this.getAddList(), competence.getListOfPreconditions()); 
-						if (!intersection.isEmpty())
-						{
-							this.successors.put(competence, intersection);
-						}
-
-						intersection = getIntersectionSet(this.getAddList(), competence.getSoftPreconList()); 
-						if (!intersection.isEmpty())
-						{
-							this.successors.put(competence, intersection);
-						}
-						//------
-						intersection = getIntersectionSet(this.getListOfPreconditions(), competence.getAddList());
-						if (!intersection.isEmpty())
-						{
-							this.predecessors.put(competence, intersection);
-						}
+		return list != null ? Collections.unmodifiableList(list) : null;
+	}
 
-						intersection = getIntersectionSet(this.getSoftPreconList(), competence.getAddList());
-						if (!intersection.isEmpty())
-						{
-							this.predecessors.put(competence, intersection);
-						}
-						//------
-						intersection = getIntersectionSet(competence.getListOfPreconditions(), this.getDeleteList()); // because we are looking for how this module messes up others preconditions, and thats why it must be inhibited by them
-						if (!intersection.isEmpty())
-						{
-							this.conflicters.put(competence, intersection);
-						}
-						intersection = getIntersectionSet(competence.getSoftPreconList(), this.getDeleteList()); // because we are looking for how this module messes up others preconditions, and thats why it must be inhibited by them
-						if (!intersection.isEmpty())
-						{
-							this.conflicters.put(competence, intersection);
-						}
-					}
-				} finally
-				{
-					lock.unlock();
-					competence.lock.unlock();
-				}
-			}
-		}
+	/**
+	 * Recompiles this behavior's lists in its link graph, which relinks the behaviors sharing propositions with it
+	 */
+	private void listsChanged()
+	{
+		LinkGraph graph = linkGraph;
+		if(graph != null)
+			graph.listsChanged(this);
 	}
 
 	/**
@@ -404,42 +350,20 @@ public abstract class Behavior extends Codelet
 	{
 		if(!this.isActive()){ //If active, it should remain at zero
 			double activation = 0;
-			// TODO this can be optimized, I could get all this information with only one method (this would iterate only once through the coalition list
-			double inputfromstate = inputFromState();
-			double inputfromgoals = inputFromGoals();
-			double takenawaybyprotectedgoals = takenAwayByProtectedGoals();
-			double spreadbw = spreadBw();
-			double spreadfw = spreadFw();
-			double takenaway = takenAway();
-
-			activation = inputfromstate + inputfromgoals - takenawaybyprotectedgoals + (spreadbw + spreadfw - takenaway);
-
-			if(maxA<activation){//calculates maximum activation added for normalization
-				maxA=activation;
-			}
+			LinkGraph graph = LinkGraph.of(this);
+			LinkGraph.Node node = LinkGraph.nodeOf(this);
+			int[] state = graph.idsOf(worldState);
 
-			if (!this.isActive())
-			{
-				//						activation = activation + this.getValue(); //TODO Without normalization
-				activation=activation*(1-this.getActivation())/maxA+this.getActivation(); //With Normalization
-			}
-
-
-
-			//TODO I'm trying to migrate this decay property to BehaviorsWTA.java
-			// decay();//TODO Decay process that scales the mean level of energy to pi  
-
-
-			//		//		activation=activation-globalVariables.getDecay(); //TODO Test with subtractive decay
-			//
-			if(globalVariables!=null)
-				activation=activation*globalVariables.getDecay(); //TODO test with multiplicative decay
+			double inputfromstate = inputFromState(graph, node, state);
+			double inputfromgoals = inputFromGoals(graph, node, graph.idsOf(goals));
+			double takenawaybyprotectedgoals = takenAwayByProtectedGoals(graph, node, graph.idsOf(protectedGoals));
+			double spreadbw = spreadBw(graph, node, state);
+			double spreadfw = spreadFw(graph, node, state);
+			double takenaway = takenAway(graph, node, state);
 
+			activation = inputfromstate + inputfromgoals - takenawaybyprotectedgoals + (spreadbw + spreadfw - takenaway);
 
-			if (activation < 0)
-			{
-				activation = 0;
-			} 
+			activation = nextActivation(activation);
 			try 
 			{
 				this.setActivation(activation);
@@ -459,6 +383,77 @@ public abstract class Behavior extends Codelet
 		}
 	}
 
+	/**
+	 * Normalizes and decays the activation spread to this behavior in a cycle, giving its next activation level. Also used by SpreadingActivationEngine.
+	 * 
+	 * @param activation
+	 *           the activation spread to this behavior from the state, the goals and the other behaviors
+	 * @return the next activation, not below zero
+	 */
+	double nextActivation(double activation)
+	{
+		if(maxA<activation){//calculates maximum activation added for normalization
+			maxA=activation;
+		}
+
+		if (!this.isActive())
+		{
+			//						activation = activation + this.getValue(); //TODO Without normalization
+			activation=activation*(1-this.getActivation())/maxA+this.getActivation(); //With Normalization
+		}
+
+		//TODO I'm trying to migrate this decay property to BehaviorsWTA.java
+		// decay();//TODO Decay process that scales the mean level of energy to pi  
+
+		//		//		activation=activation-globalVariables.getDecay(); //TODO Test with subtractive decay
+		//
+		if(globalVariables!=null)
+			activation=activation*globalVariables.getDecay(); //TODO test with multiplicative decay
+
+		if (activation < 0)
+		{
+			activation = 0;
+		}
+		return activation;
+	}
+
+	/**
+	 * Retrieves goals and world state from working storage, as proc() does, for SpreadingActivationEngine
+	 */
+	void retrieveInputs()
+	{
+		List<Memory> inputs = getInputs(); // an immutable list, replaced when the inputs change
+		if(inputs != retrievedInputs)
+		{
+			retrieveGoals();
+			retrieveState();
+			retrievedInputs = inputs;
+		}
+	}
+
+	/**
+	 * Sets the result of a step of SpreadingActivationEngine, which does the work of spreadActivation() and checkIfExecutable()
+	 * 
+	 * @param activation
+	 *           the next activation, between zero and one
+	 * @param executable
+	 *           true if all preconditions are in the world state
+	 * @param worldBeliefStates
+	 *           the infos of the world state, not to be changed
+	 */
+	void stepped(double activation, boolean executable, ArrayList<Object> worldBeliefStates)
+	{
+		listOfWorldBeliefStates = worldBeliefStates;
+		try 
+		{
+			this.setActivation(activation);
+		} catch (CodeletActivationBoundsException e) 
+		{
+			e.printStackTrace();
+		}
+		setExecutable(executable);
+	}
+
 	/**
 	 * Decay function. Hypothesis: each time activation is spread from/towards a module this same module inhibits/excites the activation of all other modules making the mean activation level constant.
 	 */
@@ -493,7 +488,52 @@ public abstract class Behavior extends Codelet
 	 */
 	public void setExecutable(boolean executable)
 	{
+		if (this.executable == executable)
+			return;
+
 		this.executable = executable;
+		candidateChanged();
+	}
+
+	@Override
+	public void setActivation(double activation) throws CodeletActivationBoundsException
+	{
+		double previous = getActivation();
+		try
+		{
+			super.setActivation(activation);
+		} finally
+		{
+			if (getActivation() != previous)
+				candidateChanged();
+		}
+	}
+
+	/**
+	 * Tells the winner take all, if any, that this behavior may have become or stopped being a candidate
+	 */
+	private void candidateChanged()
+	{
+		BehaviorsWTA wta = behaviorsWTA;
+		if (wta != null)
+			wta.behaviorChanged(this);
+	}
+
+	/**
+	 * @param behaviorsWTA
+	 *           the winner take all choosing among this behavior, set by BehaviorsWTA.addBehavior()
+	 */
+	public void setBehaviorsWTA(BehaviorsWTA behaviorsWTA)
+	{
+		this.behaviorsWTA = behaviorsWTA;
+	}
+
+	/**
+	 * @return the winner take all choosing among this behavior, or null
+	 */
+	public BehaviorsWTA getBehaviorsWTA()
+	{
+		return behaviorsWTA;
 	}
 
 	/**
@@ -512,6 +552,7 @@ public abstract class Behavior extends Codelet
 	{
 		this.preconList.add(condition);
 		this.addInput(condition);
+		listsChanged();
 	}
 
 
@@ -521,7 +562,9 @@ public abstract class Behavior extends Codelet
 	public boolean delPreconList(Memory condition)
 	{
 		this.removesInput(condition);
-		return preconList.remove(condition);
+		boolean removed = preconList.remove(condition);
+		listsChanged();
+		return removed;
 	}
 
 	/**
@@ -532,6 +575,7 @@ public abstract class Behavior extends Codelet
 	{
 		this.softPreconList.add(condition);
 		this.addInput(condition);
+		listsChanged();
 	}
 
 
@@ -541,7 +585,9 @@ public abstract class Behavior extends Codelet
 	public boolean delSoftPreconList(Memory condition)
 	{
 		this.removesInput(condition);
-		return softPreconList.remove(condition);
+		boolean removed = softPreconList.remove(condition);
+		listsChanged();
+		return removed;
 	}
 
 	/**
@@ -552,6 +598,7 @@ public abstract class Behavior extends Codelet
 	{
 		this.addList.add(condition);
 		this.addOutput(condition);
+		listsChanged();
 	}
 
 	/**
@@ -560,7 +607,9 @@ public abstract class Behavior extends Codelet
 	public boolean delAddList(Memory condition)
 	{	
 		this.removesOutput(condition);
-		return addList.remove(condition);
+		boolean removed = addList.remove(condition);
+		listsChanged();
+		return removed;
 	}
 
 	/**
@@ -571,6 +620,7 @@ public abstract class Behavior extends Codelet
 	{
 		this.addOutput(condition);
 		this.deleteList.add(condition);
+		listsChanged();
 	}
 
 	/**
@@ -578,7 +628,9 @@ public abstract class Behavior extends Codelet
 	 */
 	public boolean delDelList(Memory condition)
 	{	this.removesOutput(condition);
-	return deleteList.remove(condition);
+	boolean removed = deleteList.remove(condition);
+	listsChanged();
+	return removed;
 	}
 
 	/**
@@ -601,59 +653,62 @@ public abstract class Behavior extends Codelet
 
 	/**
 	 * 
-	 * @return list of preconditions
+	 * @return read only view of the list of preconditions, to be changed through addPreconList(), delPreconList() and setListOfPreconditions()
 	 */
-	public ArrayList<Memory> getListOfPreconditions()
+	public List<Memory> getListOfPreconditions()
 	{
-		return preconList;
+		return readOnly(preconList);
 	}
 
 	/**
 	 * 
 	 * @param listOfPreconditions
-	 *           List of MemoryObjects with preconditions
+	 *           List of MemoryObjects with preconditions, which must not be changed afterwards
 	 */
 	public void setListOfPreconditions(ArrayList<Memory> listOfPreconditions)
 	{
 		this.preconList = listOfPreconditions;
+		listsChanged();
 	}
 
 	/**
 	 * 
-	 * @return add list
+	 * @return read only view of the add list, to be changed through addAddList(), delAddList() and setAddList()
 	 */
-	public ArrayList<Memory> getAddList()
+	public List<Memory> getAddList()
 	{
-		return addList;
+		return readOnly(addList);
 	}
 
 	/**
 	 * 
 	 * @param addList
-	 *           sets the add list
+	 *           sets the add list, which must not be changed afterwards
 	 */
 	public void setAddList(ArrayList<Memory> addList)
 	{
 		this.addList = addList;
+		listsChanged();
 	}
 
 	/**
 	 * 
-	 * @return the delete list
+	 * @return read only view of the delete list, to be changed through addDelList(), delDelList() and setDeleteList()
 	 */
-	public ArrayList<Memory> getDeleteList()
+	public List<Memory> getDeleteList()
 	{
-		return deleteList;
+		return readOnly(deleteList);
 	}
 
 	/**
 	 * 
 	 * @param deleteList
-	 *           sets the delete list
+	 *           sets the delete list, which must not be changed afterwards
 	 */
 	public void setDeleteList(ArrayList<Memory> deleteList)
 	{
 		this.deleteList = deleteList;
+		listsChanged();
 	}
 
 	/**
@@ -665,65 +720,47 @@ public abstract class Behavior extends Codelet
 	}
 
 	/**
+	 * Updates the links of this behavior based on the given coalition. The coalition is the one of this 
+	 * behavior's link graph, so it is shared with the other behaviors of its network.
+	 * 
+	 * "There is a successor link from competence module x to competence module y (x has y as successor) for every proposition p that is a member of the add list of x and also member of the precondition list of y (there can be more than one successor link between 2 competence modules)"
+	 * 
+	 * "A predecessor link from module x to module y (x has y as predecessor) exists for every successor link from y to x."
+	 * 
+	 * "There is a conflicter link from module x to module y (y conflicts with x) for every proposition p that is a member of the delete list of y and a member of the precondition linst of x" [Maes 1989]
+	 * 
 	 * @param coalition
 	 *           the coalition to set
 	 */
 	public void setCoalition(ArrayList<Behavior> coalition)
+	{
+		LinkGraph.of(this).setCoalition(coalition);
+		joinCoalition(coalition);
+	}
+
+	/**
+	 * Links this behavior to the coalition already set in its link graph
+	 */
+	void joinCoalition(ArrayList<Behavior> coalition)
 	{
 		this.coalition = coalition;
-		updateLinks(); // Isto soh deve ser feito quando a coalizao muda
+		LinkGraph.of(this).setLinked(this, true);
 		if(showCoalitionLinks){
 			System.out.println("************* " + getName() + "'s Links ************");
 			System.out.println("* successors ------");
-			Enumeration e = this.successors.keys();
-			while (e.hasMoreElements())
+			for (Entry<Behavior, ArrayList<Memory>> link : getSuccessors().entrySet())
 			{
-				Behavior module = (Behavior) e.nextElement();
-				if (impendingAccess(module))
-				{
-					try
-					{
-						System.out.println("Name: " + module.getName() + " |Props: " + this.successors.get(module));
-					} finally
-					{
-						lock.unlock();
-						module.lock.unlock();
-					}
-				}
+				System.out.println("Name: " + link.getKey().getName() + " |Props: " + link.getValue());
 			}
 			System.out.println("* predecessors ----");
-			e = this.predecessors.keys();
-			while (e.hasMoreElements())
+			for (Entry<Behavior, ArrayList<Memory>> link : getPredecessors().entrySet())
 			{
-				Behavior module = (Behavior) e.nextElement();
-				if (impendingAccess(module))
-				{
-					try
-					{
-						System.out.println(module.getName() + " |Props: " + this.predecessors.get(module));
-					} finally
-					{
-						lock.unlock();
-						module.lock.unlock();
-					}
-				}
+				System.out.println(link.getKey().getName() + " |Props: " + link.getValue());
 			}
 			System.out.println("* conflicters -----");
-			e = this.conflicters.keys();
-			while (e.hasMoreElements())
+			for (Entry<Behavior, ArrayList<Memory>> link : getConflicters().entrySet())
 			{
-				Behavior module = (Behavior) e.nextElement();
-				if (impendingAccess(module))
-				{
-					try
-					{
-						System.out.println(module.getName() + " |Props: " + this.conflicters.get(module));
-					} finally
-					{
-						lock.unlock();
-						module.lock.unlock();
-					}
-				}
+				System.out.println(link.getKey().getName() + " |Props: " + link.getValue());
 			}
 			System.out.println("************************************************");
 		}   
@@ -731,54 +768,75 @@ public abstract class Behavior extends Codelet
 	}
 
 	/**
-	 * @return the successors
+	 * @return the successors, with the propositions linking this behavior to each of them. The table is a copy
 	 */
 	public Hashtable<Behavior, ArrayList<Memory>> getSuccessors()
 	{
+		LinkGraph.Node node = LinkGraph.nodeOf(this);
+		Hashtable<Behavior, ArrayList<Memory>> successors = new Hashtable<Behavior, ArrayList<Memory>>();
+		for (Behavior module : node.successors)
+		{
+			successors.put(module, linkGraph.propositions(LinkGraph.intersection(node.add, LinkGraph.nodeOf(module).pre)));
+		}
 		return successors;
 	}
 
 	/**
 	 * @param successors
-	 *           the successors to set
+	 *           the successors to set, until the links are next updated. Only the keys are used: the propositions
+	 *           linking the behaviors are dropped, and computed from the lists of propositions when read
 	 */
 	public void setSuccessors(Hashtable<Behavior, ArrayList<Memory>> successors)
 	{
-		this.successors = successors;
+		LinkGraph.of(this).setLinks(this, LinkGraph.SUCCESSORS, successors != null ? successors.keySet() : null);
 	}
 
 	/**
-	 * @return the predecessors
+	 * @return the predecessors, with the propositions linking this behavior to each of them. The table is a copy
 	 */
 	public Hashtable<Behavior, ArrayList<Memory>> getPredecessors()
 	{
+		LinkGraph.Node node = LinkGraph.nodeOf(this);
+		Hashtable<Behavior, ArrayList<Memory>> predecessors = new Hashtable<Behavior, ArrayList<Memory>>();
+		for (Behavior module : node.predecessors)
+		{
+			predecessors.put(module, linkGraph.propositions(LinkGraph.intersection(node.pre, LinkGraph.nodeOf(module).add)));
+		}
 		return predecessors;
 	}
 
 	/**
 	 * @param predecessors
-	 *           the predecessors to set
+	 *           the predecessors to set, until the links are next updated. Only the keys are used: the propositions
+	 *           linking the behaviors are dropped, and computed from the lists of propositions when read
 	 */
 	public void setPredecessors(Hashtable<Behavior, ArrayList<Memory>> predecessors)
 	{
-		this.predecessors = predecessors;
+		LinkGraph.of(this).setLinks(this, LinkGraph.PREDECESSORS, predecessors != null ? predecessors.keySet() : null);
 	}
 
 	/**
-	 * @return the conflicters
+	 * @return the conflicters, with the propositions linking this behavior to each of them. The table is a copy
 	 */
 	public Hashtable<Behavior, ArrayList<Memory>> getConflicters()
 	{
+		LinkGraph.Node node = LinkGraph.nodeOf(this);
+		Hashtable<Behavior, ArrayList<Memory>> conflicters = new Hashtable<Behavior, ArrayList<Memory>>();
+		for (Behavior module : node.conflicters)
+		{
+			conflicters.put(module, linkGraph.propositions(LinkGraph.intersection(LinkGraph.nodeOf(module).pre, node.del)));
+		}
 		return conflicters;
 	}
 
 	/**
 	 * @param conflicters
-	 *           the conflicters to set
+	 *           the conflicters to set, until the links are next updated. Only the keys are used: the propositions
+	 *           linking the behaviors are dropped, and computed from the lists of propositions when read
 	 */
 	public void setConflicters(Hashtable<Behavior, ArrayList<Memory>> conflicters)
 	{
-		this.conflicters = conflicters;
+		LinkGraph.of(this).setLinks(this, LinkGraph.CONFLICTERS, conflicters != null ? conflicters.keySet() : null);
 	}
 
 	/**
@@ -804,49 +862,31 @@ public abstract class Behavior extends Codelet
 	 * @return the amount of activation from the state
 	 */
 	public double inputFromState()
+	{
+		LinkGraph graph = LinkGraph.of(this);
+		LinkGraph.Node node = LinkGraph.nodeOf(this);
+		return inputFromState(graph, node, graph.idsOf(getWorldState()));
+	}
+
+	private double inputFromState(LinkGraph graph, LinkGraph.Node node, int[] state)
 	{ 		
 		double activation = 0;
-		ArrayList<Behavior> tempCodelets = new ArrayList<Behavior>();
-		ArrayList<Memory> THIS_softPrecon_and_ClassicPrecon=new ArrayList<Memory>();
-		THIS_softPrecon_and_ClassicPrecon.addAll(this.getListOfPreconditions());
-		THIS_softPrecon_and_ClassicPrecon.addAll(this.getSoftPreconList());
-
-		tempCodelets.addAll(this.getAllBehaviors());
 
-		if (!tempCodelets.isEmpty())
+		if (!this.getAllBehaviors().isEmpty())
 		{
-			ArrayList<Memory> intersection = getIntersectionSet(this.getWorldState(), THIS_softPrecon_and_ClassicPrecon);
-			
-			for (Memory j : intersection)
+			int[] behaviorsWithProp = graph.preInAll();
+
+			for (int j : node.pre)
 			{
-				double sharpM = 0;
-				for (Behavior module : tempCodelets)
-				{
-					if (impendingAccess(module))
-					{
-						try
-						{
-							ArrayList<Memory> MODULE_softPrecon_and_ClassicPrecon=new ArrayList<Memory>();
-							MODULE_softPrecon_and_ClassicPrecon.addAll(module.getListOfPreconditions());
-							MODULE_softPrecon_and_ClassicPrecon.addAll(module.getSoftPreconList());
-							
-							if (MODULE_softPrecon_and_ClassicPrecon.contains(j))
-							{
-								sharpM = sharpM + 1;
-							}
-						} finally
-						{
-							lock.unlock();
-							module.lock.unlock();
-						}
-					}
-				}
+				if (!LinkGraph.contains(state, j))
+					continue;
+
+				double sharpM = LinkGraph.countOf(behaviorsWithProp, j);
 				// What if sharpM or listOfPreconditions.size == zero?
 				// sharpM could zero because j comes from the intersection of S and c, so if no preconditions from the module is found in world state, the intersection shall be zero
-				// synchronized(listOfPreconditions){
-				if ((sharpM > 0) && (THIS_softPrecon_and_ClassicPrecon.size() > 0))
+				if ((sharpM > 0) && (node.preSize > 0))
 				{
-					double activationfromstate = globalVariables.getPhi() * (1 / sharpM) * (1 / (double) THIS_softPrecon_and_ClassicPrecon.size());
+					double activationfromstate = globalVariables.getPhi() * (1 / sharpM) * (1 / (double) node.preSize);
 					if (showActivationSpread)
 					{
 						System.out.println(this.getName() + " got " + activationfromstate + " energy from the world state");
@@ -856,10 +896,8 @@ public abstract class Behavior extends Codelet
 				{
 					if(printNoActivationCases){System.out.println("No activation in the case [" + this.getName() + " getting energy from the world state]: either the number of satisfying modules is zero or there are no preconditions in this module.");}
 				}
-				// }//end synch
 			}
 		}
-		// }//coalitionIsBusy=false;
 		return activation;
 	}
 
@@ -870,49 +908,42 @@ public abstract class Behavior extends Codelet
 		return allBehaviors;
 	}
 	/**
-	 * @param allBehaviors the allBehaviors to set
+	 * @param allBehaviors the allBehaviors to set. They are the ones of this behavior's link graph, so they are shared with the other behaviors of its network
 	 */
 	public void setAllBehaviors(ArrayList<Behavior> allBehaviors) {
 		this.allBehaviors = allBehaviors;
+		LinkGraph.of(this).setAllBehaviors(allBehaviors);
 	}
 	/**
-	 * @return the amount of activation from goalsthis.coalition.lock();
+	 * @return the amount of activation from goals
 	 */
 	public double inputFromGoals()
+	{
+		LinkGraph graph = LinkGraph.of(this);
+		LinkGraph.Node node = LinkGraph.nodeOf(this);
+		return inputFromGoals(graph, node, graph.idsOf(getGoals()));
+	}
+
+	private double inputFromGoals(LinkGraph graph, LinkGraph.Node node, int[] goalIds)
 	{
 		double activation = 0;
-		ArrayList<Behavior> tempCodelets = new ArrayList<Behavior>(); //TODO Should we get this input from the coalition or from the full set of codelets?
-		tempCodelets.addAll(this.getAllBehaviors());
-		if (!tempCodelets.isEmpty())
+		//TODO Should we get this input from the coalition or from the full set of codelets?
+		if (!this.getAllBehaviors().isEmpty())
 		{
-			ArrayList<Memory> intersection = getIntersectionSet(this.getGoals(), this.getAddList());
-			for (Memory j : intersection)
+			int[] behaviorsWithProp = graph.addInAll();
+
+			for (int j : node.add)
 			{
-				double sharpA = 0;
-				for (Behavior module : tempCodelets)
-				{
-					if (impendingAccess(module))
-					{
-						try
-						{
-							if (module.getAddList().contains(j))
-							{
-								sharpA = sharpA + 1;
-							}
-						} finally
-						{
-							lock.unlock();
-							module.lock.unlock();
-						}
-					}
-				}
-				// synchronized(this.addList){
-				if ((sharpA > 0) && (this.getAddList().size() > 0))
+				if (!LinkGraph.contains(goalIds, j))
+					continue;
+
+				double sharpA = LinkGraph.countOf(behaviorsWithProp, j);
+				if ((sharpA > 0) && (node.addSize > 0))
 				{
-					double othermoduleActivation = globalVariables.getGamma() * ((1 / sharpA) * (1 / (double) this.getAddList().size()));
+					double othermoduleActivation = globalVariables.getGamma() * ((1 / sharpA) * (1 / (double) node.addSize));
 					if (showActivationSpread)
 					{
-						System.out.println(this.getName() + " receives " + othermoduleActivation + " energy from goal " + j);
+						System.out.println(this.getName() + " receives " + othermoduleActivation + " energy from goal " + graph.propositions(new int[] {j}).get(0));
 					}
 					activation = activation + othermoduleActivation;
 				} else
@@ -922,10 +953,8 @@ public abstract class Behavior extends Codelet
 						System.out.println("No activation from situation [" + this.getName() + " getting activation from goals]: either the number of satisfying modules is zero or there are no preconditions in this module.");
 					}
 				}
-				// }//end synch
 			}
 		}
-		// activation=activation*globalVariables.getGamma();
 		return activation;
 	}
 
@@ -933,36 +962,28 @@ public abstract class Behavior extends Codelet
 	 * @return the amount of activation to be removed by the goals that are protected
 	 */
 	public double takenAwayByProtectedGoals()
+	{
+		LinkGraph graph = LinkGraph.of(this);
+		LinkGraph.Node node = LinkGraph.nodeOf(this);
+		return takenAwayByProtectedGoals(graph, node, graph.idsOf(getProtectedGoals()));
+	}
+
+	private double takenAwayByProtectedGoals(LinkGraph graph, LinkGraph.Node node, int[] protectedIds)
 	{
 		double activation = 0;
-		// synchronized(this.coalition){
 		if (!this.getCoalition().isEmpty())
 		{
-			ArrayList<Memory> intersection = getIntersectionSet(this.getProtectedGoals(), this.getDeleteList());
-			for (Memory j : intersection)
+			int[] behaviorsWithProp = graph.delInCoalition();
+
+			for (int j : node.del)
 			{
-				double sharpU = 0;
-				for (Behavior module : this.getCoalition())
-				{
-					if (impendingAccess(module))
-					{
-						try
-						{
-							if (module.getDeleteList().contains(j))
-							{
-								sharpU = sharpU + 1;
-							}
-						} finally
-						{
-							lock.unlock();
-							module.lock.unlock();
-						}
-					}
-				}
-				// synchronized(this.deleteList){
-				if ((sharpU > 0) && (this.getDeleteList().size() > 0))
+				if (!LinkGraph.contains(protectedIds, j))
+					continue;
+
+				double sharpU = LinkGraph.countOf(behaviorsWithProp, j);
+				if ((sharpU > 0) && (node.delSize > 0))
 				{
-					double takenEnergy = (1 / sharpU) * (1 / (double) this.getDeleteList().size()) * globalVariables.getDelta();
+					double takenEnergy = (1 / sharpU) * (1 / (double) node.delSize) * globalVariables.getDelta();
 					if (showActivationSpread)
 					{
 						System.out.println(this.getName() + " has " + takenEnergy + " taken away from it by protected goals.");
@@ -975,10 +996,8 @@ public abstract class Behavior extends Codelet
 						System.out.println("No activation from situation [" + this.getName() + " having energy taken away by protected goals]: either the number of satisfying modules is zero or there are no preconditions in this module.");
 					}
 				}
-				// }//end synch
 			}
 		}
-		// }//end synch
 		return activation;
 	}
 
@@ -989,52 +1008,31 @@ public abstract class Behavior extends Codelet
 	 */
 	public double spreadBw()
 	{
-		
+		LinkGraph graph = LinkGraph.of(this);
+		LinkGraph.Node node = LinkGraph.nodeOf(this);
+		return spreadBw(graph, node, graph.idsOf(getWorldState()));
+	}
+
+	private double spreadBw(LinkGraph graph, LinkGraph.Node node, int[] state)
+	{
 		// In this case x= other modules, y= this module
 		double activation = 0;
-		// synchronized(this.successors){
-		if (!this.getSuccessors().isEmpty())
+		int[] behaviorsWithProp = graph.addInCoalition();
+
+		for (Behavior module : node.successors)
 		{
-			Enumeration e = this.getSuccessors().keys();
-			// iterate through Hashtable keys Enumeration
-			while (e.hasMoreElements())
-			{
-				Behavior module = (Behavior) e.nextElement();
-				if (impendingAccess(module))
+			double amount = 0;
+			if (!module.isExecutable())
+			{// A competence module x that is not executable spreads activation backward.
+				// its unfulfilled preconditions which are in this module's add list
+				amount = LinkGraph.spread(LinkGraph.nodeOf(module).precon, node.add, state, false, behaviorsWithProp, node.addSize);
+				amount = amount * module.getActivation() * (globalVariables.getPhi() / globalVariables.getGamma());
+				if (showActivationSpread)
 				{
-					try
-					{
-						double amount = 0;
-						if (!module.isExecutable())
-						{// A competence module x that is not executable spreads activation backward.
-
-							ArrayList<Memory> intersection = new ArrayList<Memory>();
-							ArrayList<Memory> preconPlusSoftPrecon=new ArrayList<Memory>();
-
-							preconPlusSoftPrecon.addAll(module.getListOfPreconditions());
-
-							intersection.addAll(getIntersectionSet(preconPlusSoftPrecon, this.getAddList()));
-							intersection.removeAll(worldState);
-							for (Memory item : intersection)
-							{
-								amount = amount + ((1.0 / this.competencesWithPropInAdd(item)) * (1.0 / (double) this.getAddList().size()));
-							}
-							amount = amount * module.getActivation() * (globalVariables.getPhi() / globalVariables.getGamma());
-							if (showActivationSpread)
-							{
-								System.out.println(this.getName() + " receives " + amount + " backwarded energy from " + module.getName() + " [which has A= " + module.getActivation() + " ]");
-							}
-
-						}
-						// --------------------------
-						activation = activation + amount;
-					} finally
-					{
-						lock.unlock();
-						module.lock.unlock();
-					}
+					System.out.println(this.getName() + " receives " + amount + " backwarded energy from " + module.getName() + " [which has A= " + module.getActivation() + " ]");
 				}
 			}
+			activation = activation + amount;
 		}
 
 		return activation;
@@ -1046,56 +1044,33 @@ public abstract class Behavior extends Codelet
 	 *         Note: this approach is slightly different from the one proposed at the article by [Maes 1989] since here we try to avoid meddling with another codelet's states.
 	 */
 	public double spreadFw()
+	{
+		LinkGraph graph = LinkGraph.of(this);
+		LinkGraph.Node node = LinkGraph.nodeOf(this);
+		return spreadFw(graph, node, graph.idsOf(getWorldState()));
+	}
+
+	private double spreadFw(LinkGraph graph, LinkGraph.Node node, int[] state)
 	{
 		// In this case x= other modules, y= this module
 		double activation = 0;
-		// synchronized(this.predecessors){
-		if (!this.getPredecessors().isEmpty())
+		int[] behaviorsWithProp = graph.preInCoalition();
+
+		for (Behavior module : node.predecessors)
 		{
-			Enumeration e = this.getPredecessors().keys();
-			// iterate through Hashtable keys Enumeration
-			while (e.hasMoreElements())
-			{
-				Behavior module = (Behavior) e.nextElement();
-				if (impendingAccess(module))
+			double amount = 0;
+			if (module.isExecutable())
+			{// An executable competence module x spreads activation forward.
+				// propositions in its delete list which are unfulfilled (soft) preconditions of this module
+				amount = LinkGraph.spread(LinkGraph.nodeOf(module).del, node.pre, state, false, behaviorsWithProp, node.preSize);
+				amount = amount * module.getActivation() * (globalVariables.getPhi() / globalVariables.getGamma());
+				if (showActivationSpread)
 				{
-					try
-					{
-						double amount = 0;
-						if (module.isExecutable())
-						{// An executable competence module x spreads activation forward.
-							ArrayList<Memory> intersection = new ArrayList<Memory>();
-
-							ArrayList<Memory> preconPlusSoftPrecon=new ArrayList<Memory>();
-
-							preconPlusSoftPrecon.addAll(this.getListOfPreconditions());
-							preconPlusSoftPrecon.addAll(this.getSoftPreconList());
-
-
-							intersection.addAll(getIntersectionSet(module.getDeleteList(), preconPlusSoftPrecon));
-							intersection.removeAll(worldState);
-							for (Memory item : intersection)
-							{
-								amount = amount + ((1.0 / this.competencesWithPropInPrecon(item)) * (1.0 / (double) preconPlusSoftPrecon.size()));
-							}
-							amount = amount * module.getActivation() * (globalVariables.getPhi() / globalVariables.getGamma());
-							if (showActivationSpread)
-							{
-								System.out.println(this.getName() + " receives " + amount + " forwarded energy from " + module.getName() + " [which has A= " + module.getActivation() + " ]");
-							}
-
-						}
-						// ------------------------------------------------
-						activation = activation + amount;
-					} finally
-					{
-						lock.unlock();
-						module.lock.unlock();
-					}
+					System.out.println(this.getName() + " receives " + amount + " forwarded energy from " + module.getName() + " [which has A= " + module.getActivation() + " ]");
 				}
 			}
+			activation = activation + amount;
 		}
-		// }//end synch
 		return activation;
 	}
 
@@ -1105,70 +1080,38 @@ public abstract class Behavior extends Codelet
 	 *         Note: this approach is slightly different from the one proposed at the article by [Maes 1989] since here we try to avoid meddling with another codelet's states. Note: I am not using the "max" strategy described by maes
 	 */
 	public double takenAway()
+	{
+		LinkGraph graph = LinkGraph.of(this);
+		LinkGraph.Node node = LinkGraph.nodeOf(this);
+		return takenAway(graph, node, graph.idsOf(getWorldState()));
+	}
+
+	private double takenAway(LinkGraph graph, LinkGraph.Node node, int[] state)
 	{
 		// In this case x= other modules, y= this module
 		double activation = 0;
-		// synchronized(this.conflicters){
-		if (!this.getConflicters().isEmpty())
+		int[] behaviorsWithProp = graph.delInCoalition();
+
+		for (Behavior module : node.conflicters)
 		{
-			Enumeration e = this.getConflicters().keys();
-			// iterate through Hashtable keys Enumeration
-			while (e.hasMoreElements())
-			{
-				Behavior module = (Behavior) e.nextElement();
-				if (impendingAccess(module))
+			double amount = 0;
+			LinkGraph.Node other = LinkGraph.nodeOf(module);
+
+			// does the other module undo a fulfilled (soft) precondition of this one?
+			boolean inhibits = LinkGraph.meetsInState(node.pre, other.del, state);
+			if (!((module.getActivation() < this.getActivation()) && inhibits))
+			{ // this is the else case due to !
+				amount = LinkGraph.spread(node.del, other.pre, state, true, behaviorsWithProp, node.delSize);
+				// amount = (b1.activation[0] *
+				// (self.conf_energy / self.goal_energy) *
+				// amount)
+				amount = module.getActivation() * (globalVariables.getDelta() / globalVariables.getGamma()) * amount;
+				if (showActivationSpread)
 				{
-					try
-					{
-						// ---------------------------------
-						double amount = 0;
-						ArrayList<Memory> intersection = new ArrayList<Memory>();
-
-						ArrayList<Memory> preconPlusSoftPrecon=new ArrayList<Memory>();						
-						preconPlusSoftPrecon.addAll(this.getListOfPreconditions());
-						preconPlusSoftPrecon.addAll(this.getSoftPreconList());
-
-						intersection=getIntersectionSet(preconPlusSoftPrecon, module.getDeleteList());
-						intersection=getIntersectionSet(intersection, worldState);
-
-						if (!((module.getActivation() < this.getActivation()) && (!intersection.isEmpty())))
-						{ // this is the else case due to !
-							preconPlusSoftPrecon=new ArrayList<Memory>();						
-							preconPlusSoftPrecon.addAll(module.getListOfPreconditions());
-							preconPlusSoftPrecon.addAll(module.getSoftPreconList());
-
-							intersection = getIntersectionSet(this.getDeleteList(), preconPlusSoftPrecon);
-							intersection = getIntersectionSet(intersection, worldState);
-							for (Memory item : intersection)
-							{
-								amount = amount + ((1.0 / this.competencesWithPropInDel(item)) * (1.0 / (double) this.getDeleteList().size()));
-							}
-							// amount = (b1.activation[0] *
-							// (self.conf_energy / self.goal_energy) *
-							// amount)
-							amount = module.getActivation() * (globalVariables.getDelta() / globalVariables.getGamma()) * amount;
-							ArrayList<Memory> modulos = this.getConflicters().get(module);
-							double numberOfConflicters = 0;
-							if (modulos != null)
-							{
-								numberOfConflicters = (double) modulos.size();
-							}// TODO  Eu nao deveria precisar fazer este teste!
-							double moduleActivation = module.getActivation();
-							double activationFromModule = (globalVariables.getDelta() / globalVariables.getGamma()) * numberOfConflicters * moduleActivation;
-							if (showActivationSpread)
-							{
-								System.out.println(this.getName() + " has " + amount + " of its energy decreased by " + module.getName() + " [which has A= " + module.getActivation() + " ]");
-							}
-						}
-						// ------------------------------------
-						activation = activation + amount;
-					} finally
-					{
-						lock.unlock();
-						module.lock.unlock();
-					}
+					System.out.println(this.getName() + " has " + amount + " of its energy decreased by " + module.getName() + " [which has A= " + module.getActivation() + " ]");
 				}
 			}
+			activation = activation + amount;
 		}
 
 		return activation;
@@ -1273,6 +1216,7 @@ public abstract class Behavior extends Codelet
 	public void setWorldState(ArrayList<Memory> worldState)
 	{
 		this.worldState = worldState;
+		retrievedInputs = null;
 	}
 
 	/**
@@ -1290,6 +1234,7 @@ public abstract class Behavior extends Codelet
 	public void setProtectedGoals(ArrayList<Memory> protectedGoals)
 	{
 		this.protectedGoals = protectedGoals;
+		retrievedInputs = null;
 	}
 
 	/**
@@ -1307,6 +1252,7 @@ public abstract class Behavior extends Codelet
 	public void setPermanentGoals(ArrayList<Memory> permanentGoals)
 	{
 		this.permanentGoals = permanentGoals;
+		retrievedInputs = null;
 	}
 
 	/**
@@ -1324,6 +1270,7 @@ public abstract class Behavior extends Codelet
 	public void setOnceOnlyGoals(ArrayList<Memory> onceOnlyGoals)
 	{
 		this.onceOnlyGoals = onceOnlyGoals;
+		retrievedInputs = null;
 	}
 
 	/**
@@ -1341,6 +1288,7 @@ public abstract class Behavior extends Codelet
 	public void setGoals(ArrayList<Memory> goals)
 	{
 		this.goals = goals;
+		retrievedInputs = null;
 	}
 
 	/**
@@ -1423,86 +1371,6 @@ public abstract class Behavior extends Codelet
 		this.actionList.clear();
 	}
 
-	/**
-	 * Returns the number of competences in coalition with the given proposition in their precondition lists
-	 */
-	private double competencesWithPropInPrecon(Memory proposition)
-	{
-		double compWithProp = 0;
-		for (Behavior comp : this.getCoalition())
-		{
-			if (impendingAccess(comp))
-			{
-				try
-				{
-					if (comp.getListOfPreconditions().contains(proposition)||comp.getSoftPreconList().contains(proposition))
-					{
-						compWithProp = compWithProp + 1;
-					}
-				} finally
-				{
-					lock.unlock();
-					comp.lock.unlock();
-				}
-			}
-		}
-		return compWithProp;
-	}
-
-
-	/**
-	 * Returns the list of competences from coalition with the given proposition in their add lists
-	 */
-	private double competencesWithPropInAdd(Memory proposition)
-	{
-		double compWithProp = 0;
-		for (Behavior comp : this.getCoalition())
-		{
-			if (impendingAccess(comp))
-			{
-				try
-				{
-					if (comp.getAddList().contains(proposition))
-					{
-						compWithProp = compWithProp + 1;
-					}
-				} finally
-				{
-					lock.unlock();
-					comp.lock.unlock();
-				}
-			}
-		}
-		return compWithProp;
-	}
-
-
-	/**
-	 * Returns the list of competences from coalition with the given proposition in its del lists
-	 */
-	private double competencesWithPropInDel(Memory proposition)
-	{
-		double compWithProp = 0;
-		for (Behavior comp : this.getCoalition())
-		{
-			if (impendingAccess(comp))
-			{
-				try
-				{
-					if (comp.getDeleteList().contains(proposition))
-					{
-						compWithProp = compWithProp + 1;
-					}
-				} finally
-				{
-					lock.unlock();
-					comp.lock.unlock();
-				}
-			}
-		}
-		return compWithProp;
-	}
-
 	/**
 	 * Sets the list of actions constituting this behavior
 	 * 
@@ -1525,7 +1393,7 @@ public abstract class Behavior extends Codelet
 	}
 
 	public void setBehaviors(ArrayList<Behavior> competences) {
-		this.allBehaviors=competences;
+		setAllBehaviors(competences);
 
 	}
 	/**
@@ -1550,15 +1418,16 @@ public abstract class Behavior extends Codelet
 	}
 
 	/**
-	 * @return the softPreconList
+	 * @return read only view of the softPreconList, to be changed through addSoftPreconList(), delSoftPreconList() and setSoftPreconList()
 	 */
-	public ArrayList<Memory> getSoftPreconList() {
-		return softPreconList;
+	public List<Memory> getSoftPreconList() {
+		return readOnly(softPreconList);
 	}
 	/**
-	 * @param softPreconList the softPreconList to set
+	 * @param softPreconList the softPreconList to set, which must not be changed afterwards
 	 */
 	public void setSoftPreconList(ArrayList<Memory> softPreconList) {
 		this.softPreconList = softPreconList;
+		listsChanged();
 	}
 }
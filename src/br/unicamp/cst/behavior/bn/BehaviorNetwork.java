@@ -11,11 +11,13 @@
 package br.unicamp.cst.behavior.bn;
 
 import br.unicamp.cst.behavior.bn.support.SingleThreadBHCodelet;
+import br.unicamp.cst.behavior.bn.support.SynchronousBHCodelet;
 import br.unicamp.cst.behavior.bn.support.BNplot;
 import br.unicamp.cst.behavior.bn.support.BehaviorsWTA;
 import br.unicamp.cst.behavior.bn.support.BHMonitor;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
 
 
 
@@ -38,6 +40,12 @@ public class BehaviorNetwork
 	private ArrayList<Behavior> coalition = new ArrayList<Behavior>(); //List of conscious Competence codelets
 	//TODO the list of conscious codelets is a subset of all competences, and is formed by the coalition manager. This is the list passed to all consciouss codelets
 	private boolean singleCodeletBN=false; //if set true, this behavior network starts a single thread to take care of executing all behaviors, instead of one thread for each one.
+	private boolean synchronousBN=false; //if set true, this behavior network starts a single codelet spreading activation to all behaviors at once, with a SpreadingActivationEngine. Takes precedence over singleCodeletBN.
+	private boolean parallelBN=false; //if set true, as synchronousBN, but each step is partitioned across a ForkJoinPool
+	
+	private SpreadingActivationEngine engine=null;
+	
+	private Codelet synchronousCodelet=null;
 
 	private BehaviorsWTA kwta=null;
 	
@@ -48,6 +56,8 @@ public class BehaviorNetwork
 	private WorkingStorage ws;
 	
 	private GlobalVariables globalVariables;
+	
+	private final LinkGraph linkGraph = new LinkGraph(); //Compiled links between the behaviors, shared by all of them
 
 	public BehaviorNetwork(CodeRack codeRack,WorkingStorage ws)
 	{
@@ -99,7 +109,11 @@ public class BehaviorNetwork
 	{
 		if(codeRack!=null)
 		{
-			if(!singleCodeletBN)
+			if(synchronousBN||parallelBN)
+			{
+				synchronousCodelet = new SynchronousBHCodelet(getSpreadingActivationEngine()); // a step updates each behavior once, as each behavior's own codelet would in a timeStep
+				synchronousCodelet.start();
+			}else if(!singleCodeletBN)
 			{
 				for(Codelet oneCompetence:this.behaviors)
 				{
@@ -130,6 +144,10 @@ public class BehaviorNetwork
 		for(Codelet oneCompetence:this.behaviors){
 			oneCompetence.stop();
 		}
+		if(synchronousCodelet!=null){
+			synchronousCodelet.stop();
+			synchronousCodelet=null;
+		}
 	}	
 
 	/**
@@ -138,12 +156,14 @@ public class BehaviorNetwork
 	public void setCoalition(ArrayList<Behavior> arrayList) {
 		this.coalition = arrayList;
 		//TODO implement lock here?
+		// The links are updated once for the whole coalition, then each codelet is told about it
+		linkGraph.setCoalition(this.coalition);
 		// Forwards the information of current coalition to all codelets
 		Iterator itr = this.coalition.iterator(); 
 		while(itr.hasNext()) {
 			Behavior competence = (Behavior) itr.next(); //TODO este cast pode ser desnecessário
 			synchronized(competence){
-				competence.setCoalition(this.coalition);
+				competence.joinCoalition(this.coalition);
 			}
 
 
@@ -156,13 +176,14 @@ public class BehaviorNetwork
 	public void setBehaviorsInsideCodelets() {
 		//TODO implement lock here
 		// Forwards the information of current coalition to all codelets
+		linkGraph.setAllBehaviors(this.behaviors);
 
 		Iterator itr = this.behaviors.iterator(); 
 		while(itr.hasNext()) {
 			Behavior competence = (Behavior) itr.next(); //TODO este cast pode ser desnecessario
 
 			synchronized(competence){
-				competence.setBehaviors(this.behaviors);
+				competence.allBehaviors = this.behaviors;
 			}
 
 
@@ -199,7 +220,11 @@ public class BehaviorNetwork
 		this.behaviors.add(be);
 		kwta.addBehavior(be);
 		
-		setBehaviorsInsideCodelets();
+		// the others already share the list of behaviors, so only the new one is told about it
+		linkGraph.addToAll(be);
+		synchronized(be){
+			be.allBehaviors = this.behaviors;
+		}
 	}
 	
 
@@ -214,7 +239,7 @@ public class BehaviorNetwork
 		this.behaviors.remove(be);
 		kwta.removeBehavior(be);
 		
-		setBehaviorsInsideCodelets();
+		linkGraph.removeFromAll(be);
 	}
 
 	/**
@@ -230,6 +255,52 @@ public class BehaviorNetwork
 	public void setSingleCodeletBN(boolean singleCodeletBN) {
 		this.singleCodeletBN = singleCodeletBN;
 	}
+	/**
+	 * @return the synchronousBN
+	 */
+	public boolean isSynchronousBN() {
+		return synchronousBN;
+	}
+
+	/**
+	 * @param synchronousBN if true, startCodelets() runs this network with its spreading activation engine, instead of the behaviors' codelets
+	 */
+	public void setSynchronousBN(boolean synchronousBN) {
+		this.synchronousBN = synchronousBN;
+	}
+
+	/**
+	 * @return the parallelBN
+	 */
+	public boolean isParallelBN() {
+		return parallelBN;
+	}
+
+	/**
+	 * @param parallelBN if true, startCodelets() runs this network with its spreading activation engine, each step partitioned across the common ForkJoinPool
+	 */
+	public void setParallelBN(boolean parallelBN) {
+		setParallelBN(parallelBN, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param parallelBN if true, startCodelets() runs this network with its spreading activation engine, each step partitioned across the given pool
+	 * @param pool the pool the steps are partitioned across
+	 */
+	public void setParallelBN(boolean parallelBN, ForkJoinPool pool) {
+		this.parallelBN = parallelBN;
+		getSpreadingActivationEngine().setForkJoinPool(parallelBN ? pool : null);
+	}
+
+	/**
+	 * @return the engine spreading activation to all behaviors of this network at once, created when first needed
+	 */
+	public synchronized SpreadingActivationEngine getSpreadingActivationEngine() {
+		if(engine==null){
+			engine=new SpreadingActivationEngine(this.behaviors, linkGraph);
+		}
+		return engine;
+	}
 	/**
 	 * Defines whether or not if the behaviors in this BN must have their activations reset to zero after being activated.
 	 * @param val
@@ -0,0 +1,802 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.behavior.bn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import br.unicamp.cst.core.entities.Memory;
+
+/**
+ * Compiled links of a behavior network: propositions are interned to integer ids by their info (getI()
+ * equality, as in Behavior.getIntersectionSet()), the precondition, soft precondition, add and delete lists of
+ * each behavior are kept as sorted arrays of ids, and the successor, predecessor and conflicter links
+ * [Maes 1989] as arrays of behaviors.
+ *
+ * The graph is compiled as behaviors join it, and updated incrementally when the lists of a behavior, the
+ * coalition or the set of all behaviors change: only the behaviors sharing a proposition with the one which
+ * changed are relinked, through an index from each proposition to the behaviors having it in their lists.
+ * The graph also keeps, for each proposition, the number of behaviors having it in their lists, so spreading
+ * activation does not scan the coalition.
+ *
+ * The lists of a behavior must be changed through its methods (addPreconList(), setAddList(), ...) to be
+ * noticed, and the info of a proposition must not change once it is in a list.
+ *
+ * Changes are synchronized on the graph. Spreading activation reads the compiled nodes without locking: each
+ * node is immutable and replaced as a whole, so a cycle running while the graph changes sees each behavior
+ * either before or after the change.
+ */
+final class LinkGraph
+{
+	static final int SUCCESSORS = 0;
+
+	static final int PREDECESSORS = 1;
+
+	static final int CONFLICTERS = 2;
+
+	private static final int[] NO_IDS = new int[0];
+
+	private static final Behavior[] NO_BEHAVIORS = new Behavior[0];
+
+	/**
+	 * Compiled lists and links of a behavior. Immutable.
+	 */
+	static final class Node
+	{
+		/** Preconditions */
+		final int[] precon;
+
+		/** Preconditions and soft preconditions */
+		final int[] pre;
+
+		final int[] add;
+
+		final int[] del;
+
+		/** Sizes of the lists, as used to normalize the activation spread (duplicates included) */
+		final int preSize;
+
+		final int addSize;
+
+		final int delSize;
+
+		final Behavior[] successors;
+
+		final Behavior[] predecessors;
+
+		final Behavior[] conflicters;
+
+		Node(int[] precon, int[] pre, int[] add, int[] del, int preSize, int addSize, int delSize, Behavior[] successors, Behavior[] predecessors, Behavior[] conflicters)
+		{
+			this.precon = precon;
+			this.pre = pre;
+			this.add = add;
+			this.del = del;
+			this.preSize = preSize;
+			this.addSize = addSize;
+			this.delSize = delSize;
+			this.successors = successors;
+			this.predecessors = predecessors;
+			this.conflicters = conflicters;
+		}
+
+		Node withLinks(Behavior[] successors, Behavior[] predecessors, Behavior[] conflicters)
+		{
+			return new Node(precon, pre, add, del, preSize, addSize, delSize, successors, predecessors, conflicters);
+		}
+	}
+
+	/** State of a behavior in the graph. Guarded by the graph */
+	private static final class Member
+	{
+		final Behavior behavior;
+
+		Node node;
+
+		boolean inAll;
+
+		boolean inCoalition;
+
+		/** True if the links of this behavior are computed */
+		boolean linked;
+
+		/** Used to collect each member once */
+		int mark;
+
+		Member(Behavior behavior)
+		{
+			this.behavior = behavior;
+		}
+	}
+
+	/** Id of each proposition info */
+	private final ConcurrentHashMap<Object, Integer> ids = new ConcurrentHashMap<Object, Integer>();
+
+	/** First memory seen with each id */
+	private final List<Memory> propositions = new ArrayList<Memory>();
+
+	/** Members having each proposition in their precondition or soft precondition, add and delete lists */
+	private final List<List<Member>> preHolders = new ArrayList<List<Member>>();
+
+	private final List<List<Member>> addHolders = new ArrayList<List<Member>>();
+
+	private final List<List<Member>> delHolders = new ArrayList<List<Member>>();
+
+	/** Number of behaviors with each proposition in their lists, among all behaviors and in the coalition */
+	private volatile int[] preInAll = NO_IDS;
+
+	private volatile int[] addInAll = NO_IDS;
+
+	private volatile int[] preInCoalition = NO_IDS;
+
+	private volatile int[] addInCoalition = NO_IDS;
+
+	private volatile int[] delInCoalition = NO_IDS;
+
+	private final Map<Behavior, Member> members = new IdentityHashMap<Behavior, Member>();
+
+	private int markCounter = 0;
+
+	/** Incremented at each change of the nodes or the counts */
+	private volatile long version = 0;
+
+	/**
+	 * @return the graph of the behavior, creating one with only this behavior if it has none
+	 */
+	static LinkGraph of(Behavior be)
+	{
+		LinkGraph graph = be.linkGraph;
+		if(graph == null)
+		{
+			synchronized(be)
+			{
+				graph = be.linkGraph;
+				if(graph == null)
+				{
+					graph = new LinkGraph();
+					graph.add(be);
+				}
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * @return the compiled node of a behavior in this graph
+	 */
+	static Node nodeOf(Behavior be)
+	{
+		Node node = be.links;
+		if(node == null)
+		{
+			of(be);
+			node = be.links;
+		}
+		return node;
+	}
+
+	/**
+	 * Adds a behavior to this graph, taking it from its previous graph
+	 */
+	synchronized void add(Behavior be)
+	{
+		member(be);
+	}
+
+	/**
+	 * Makes the given behaviors the set of all behaviors, used to normalize the input from the state and the goals
+	 */
+	synchronized void setAllBehaviors(Collection<Behavior> all)
+	{
+		Set<Behavior> next = identitySet(all);
+
+		for(Member m : new ArrayList<Member>(members.values()))
+		{
+			if(m.inAll && !next.contains(m.behavior))
+				setInAll(m, false);
+		}
+		for(Behavior be : next)
+		{
+			setInAll(member(be), true);
+		}
+	}
+
+	synchronized void addToAll(Behavior be)
+	{
+		setInAll(member(be), true);
+	}
+
+	synchronized void removeFromAll(Behavior be)
+	{
+		Member m = members.get(be);
+		if(m != null)
+			setInAll(m, false);
+	}
+
+	/**
+	 * Makes the given behaviors the coalition, relinking the behaviors which share propositions with the ones
+	 * which entered or left it
+	 */
+	synchronized void setCoalition(Collection<Behavior> coalition)
+	{
+		Set<Behavior> next = identitySet(coalition);
+		List<Member> changed = new ArrayList<Member>();
+
+		for(Member m : members.values())
+		{
+			if(m.inCoalition && !next.contains(m.behavior))
+				changed.add(m);
+		}
+		for(Behavior be : next)
+		{
+			Member m = member(be);
+			if(!m.inCoalition)
+				changed.add(m);
+		}
+
+		if(changed.isEmpty())
+			return;
+
+		int mark = ++markCounter;
+		List<Member> affected = new ArrayList<Member>();
+		for(Member m : changed)
+		{
+			count(m, false);
+			m.inCoalition = !m.inCoalition;
+			count(m, true);
+			collectRelated(m, m.node, mark, affected);
+		}
+		relink(affected);
+	}
+
+	/**
+	 * Computes the links of a behavior, or stops computing them
+	 */
+	synchronized void setLinked(Behavior be, boolean linked)
+	{
+		Member m = member(be);
+		if(m.linked == linked)
+			return;
+
+		m.linked = linked;
+		relink(Collections.singletonList(m));
+	}
+
+	/**
+	 * Recompiles the lists of a behavior, after they changed
+	 */
+	synchronized void listsChanged(Behavior be)
+	{
+		Member m = members.get(be);
+		if(m == null)
+			return;
+
+		Node old = m.node;
+		count(m, false);
+		hold(m, false);
+
+		m.node = compile(be).withLinks(old.successors, old.predecessors, old.conflicters);
+		be.links = m.node;
+		version++;
+
+		hold(m, true);
+		count(m, true);
+
+		int mark = ++markCounter;
+		List<Member> affected = new ArrayList<Member>();
+		collectRelated(m, old, mark, affected);
+		collectRelated(m, m.node, mark, affected);
+		relink(affected);
+	}
+
+	/**
+	 * Replaces links of a behavior, until they are next computed
+	 */
+	synchronized void setLinks(Behavior be, int kind, Collection<Behavior> linked)
+	{
+		Member m = member(be);
+		Behavior[] array = linked != null ? linked.toArray(NO_BEHAVIORS) : NO_BEHAVIORS;
+		Node node = m.node;
+
+		if(kind == SUCCESSORS)
+			node = node.withLinks(array, node.predecessors, node.conflicters);
+		else if(kind == PREDECESSORS)
+			node = node.withLinks(node.successors, array, node.conflicters);
+		else
+			node = node.withLinks(node.successors, node.predecessors, array);
+
+		m.node = node;
+		be.links = node;
+		version++;
+	}
+
+	/**
+	 * @return the id of the proposition with this info, or -1 if no behavior has it in its lists
+	 */
+	int idOf(Object info)
+	{
+		if(info == null)
+			return -1;
+
+		Integer id = ids.get(info);
+		return id != null ? id.intValue() : -1;
+	}
+
+	/**
+	 * @return the sorted ids of the infos of the memories which are propositions in this graph
+	 */
+	int[] idsOf(List<Memory> memories)
+	{
+		if(memories == null || memories.isEmpty())
+			return NO_IDS;
+
+		int[] found = new int[memories.size()];
+		int n = 0;
+		for(Memory mo : memories)
+		{
+			int id = mo != null ? idOf(mo.getI()) : -1;
+			if(id >= 0)
+				found[n++] = id;
+		}
+		return sortedSet(found, n);
+	}
+
+	/**
+	 * @return a memory for each id, the first one seen with its info
+	 */
+	synchronized ArrayList<Memory> propositions(int[] idSet)
+	{
+		ArrayList<Memory> list = new ArrayList<Memory>(idSet.length);
+		for(int id : idSet)
+		{
+			list.add(propositions.get(id));
+		}
+		return list;
+	}
+
+	int[] preInAll()
+	{
+		return preInAll;
+	}
+
+	int[] addInAll()
+	{
+		return addInAll;
+	}
+
+	int[] preInCoalition()
+	{
+		return preInCoalition;
+	}
+
+	int[] addInCoalition()
+	{
+		return addInCoalition;
+	}
+
+	int[] delInCoalition()
+	{
+		return delInCoalition;
+	}
+
+	/**
+	 * @return a number which changes whenever a node or a count changes
+	 */
+	long getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * @return the number of propositions interned
+	 */
+	synchronized int getPropositionCount()
+	{
+		return propositions.size();
+	}
+
+	/**
+	 * @return the member of this graph for the behavior, adding it if needed
+	 */
+	private Member member(Behavior be)
+	{
+		Member m = members.get(be);
+		if(m != null)
+			return m;
+
+		LinkGraph previous = be.linkGraph;
+		if(previous != null && previous != this)
+			previous.remove(be);
+
+		m = new Member(be);
+		m.node = compile(be);
+		members.put(be, m);
+		hold(m, true);
+		be.links = m.node;
+		be.linkGraph = this;
+		version++;
+		return m;
+	}
+
+	/**
+	 * Removes a behavior which moved to another graph
+	 */
+	private synchronized void remove(Behavior be)
+	{
+		Member m = members.remove(be);
+		if(m == null)
+			return;
+
+		count(m, false);
+		hold(m, false);
+		m.inAll = false;
+		m.inCoalition = false;
+
+		int mark = ++markCounter;
+		m.mark = mark;
+		List<Member> affected = new ArrayList<Member>();
+		collectRelated(m, m.node, mark, affected);
+		relink(affected);
+	}
+
+	private void setInAll(Member m, boolean inAll)
+	{
+		if(m.inAll == inAll)
+			return;
+
+		count(m, false);
+		m.inAll = inAll;
+		count(m, true);
+		version++;
+	}
+
+	private Node compile(Behavior be)
+	{
+		List<Memory> precon = be.getListOfPreconditions();
+		List<Memory> soft = be.getSoftPreconList();
+		List<Memory> add = be.getAddList();
+		List<Memory> del = be.getDeleteList();
+
+		int[] preconIds = intern(precon, null);
+		int[] preIds = intern(precon, soft);
+
+		return new Node(preconIds, preIds, intern(add, null), intern(del, null), size(precon) + size(soft), size(add), size(del), NO_BEHAVIORS, NO_BEHAVIORS, NO_BEHAVIORS);
+	}
+
+	private int[] intern(List<Memory> a, List<Memory> b)
+	{
+		int[] found = new int[size(a) + size(b)];
+		int n = 0;
+		for(List<Memory> list : Arrays.asList(a, b))
+		{
+			if(list == null)
+				continue;
+
+			for(Memory mo : list)
+			{
+				Object info = mo != null ? mo.getI() : null;
+				if(info != null)
+					found[n++] = intern(mo, info);
+			}
+		}
+		return sortedSet(found, n);
+	}
+
+	private int intern(Memory mo, Object info)
+	{
+		Integer id = ids.get(info);
+		if(id != null)
+			return id.intValue();
+
+		int next = propositions.size();
+		propositions.add(mo);
+		preHolders.add(new ArrayList<Member>(2));
+		addHolders.add(new ArrayList<Member>(2));
+		delHolders.add(new ArrayList<Member>(2));
+
+		if(next >= preInAll.length)
+		{
+			int capacity = Math.max(16, preInAll.length * 2);
+			// grown before the id is published, so readers never see an id beyond the counts
+			preInAll = Arrays.copyOf(preInAll, capacity);
+			addInAll = Arrays.copyOf(addInAll, capacity);
+			preInCoalition = Arrays.copyOf(preInCoalition, capacity);
+			addInCoalition = Arrays.copyOf(addInCoalition, capacity);
+			delInCoalition = Arrays.copyOf(delInCoalition, capacity);
+		}
+
+		ids.put(info, next);
+		return next;
+	}
+
+	private static int size(List<Memory> list)
+	{
+		return list != null ? list.size() : 0;
+	}
+
+	/**
+	 * Adds the member's propositions to the counts, or removes them
+	 */
+	private void count(Member m, boolean add)
+	{
+		int delta = add ? 1 : -1;
+		Node node = m.node;
+
+		if(m.inAll)
+		{
+			increment(preInAll, node.pre, delta);
+			increment(addInAll, node.add, delta);
+		}
+		if(m.inCoalition)
+		{
+			increment(preInCoalition, node.pre, delta);
+			increment(addInCoalition, node.add, delta);
+			increment(delInCoalition, node.del, delta);
+		}
+	}
+
+	private static void increment(int[] counts, int[] idSet, int delta)
+	{
+		for(int id : idSet)
+		{
+			counts[id] += delta;
+		}
+	}
+
+	/**
+	 * Adds the member to the index of its propositions, or removes it
+	 */
+	private void hold(Member m, boolean add)
+	{
+		hold(preHolders, m.node.pre, m, add);
+		hold(addHolders, m.node.add, m, add);
+		hold(delHolders, m.node.del, m, add);
+	}
+
+	private static void hold(List<List<Member>> holders, int[] idSet, Member m, boolean add)
+	{
+		for(int id : idSet)
+		{
+			if(add)
+				holders.get(id).add(m);
+			else
+				holders.get(id).remove(m);
+		}
+	}
+
+	/**
+	 * Collects the member and the linked members whose links to it depend on the given node's lists
+	 */
+	private void collectRelated(Member m, Node node, int mark, List<Member> affected)
+	{
+		collect(m, mark, affected);
+
+		// x has m as successor if add(x) meets pre(m), as conflicter if del(x) meets pre(m)
+		for(int id : node.pre)
+		{
+			collect(addHolders.get(id), mark, affected);
+			collect(delHolders.get(id), mark, affected);
+		}
+		// x has m as predecessor if pre(x) meets add(m)
+		for(int id : node.add)
+		{
+			collect(preHolders.get(id), mark, affected);
+		}
+	}
+
+	private static void collect(List<Member> list, int mark, List<Member> affected)
+	{
+		for(Member m : list)
+		{
+			collect(m, mark, affected);
+		}
+	}
+
+	private static void collect(Member m, int mark, List<Member> affected)
+	{
+		if(m.mark != mark)
+		{
+			m.mark = mark;
+			affected.add(m);
+		}
+	}
+
+	/**
+	 * Recomputes the links of the given members
+	 */
+	private void relink(List<Member> affected)
+	{
+		for(Member x : affected)
+		{
+			if(members.get(x.behavior) != x)
+				continue;
+
+			Node node = x.node;
+			if(x.linked)
+			{
+				// there is a successor link from x to y for every proposition in the add list of x and in the (soft) preconditions of y,
+				// a predecessor link from x to y for every successor link from y to x, and a conflicter link from x to y for every
+				// proposition in the delete list of x and in the (soft) preconditions of y [Maes 1989]
+				node = node.withLinks(linked(x, node.add, preHolders), linked(x, node.pre, addHolders), linked(x, node.del, preHolders));
+			}else
+			{
+				node = node.withLinks(NO_BEHAVIORS, NO_BEHAVIORS, NO_BEHAVIORS);
+			}
+
+			x.node = node;
+			x.behavior.links = node;
+		}
+		version++;
+	}
+
+	/**
+	 * @return the behaviors in the coalition, other than x, holding any of the propositions
+	 */
+	private Behavior[] linked(Member x, int[] idSet, List<List<Member>> holders)
+	{
+		int mark = ++markCounter;
+		List<Behavior> found = null;
+
+		for(int id : idSet)
+		{
+			for(Member y : holders.get(id))
+			{
+				if(y != x && y.inCoalition && y.mark != mark)
+				{
+					y.mark = mark;
+					if(found == null)
+						found = new ArrayList<Behavior>();
+					found.add(y.behavior);
+				}
+			}
+		}
+
+		return found != null ? found.toArray(NO_BEHAVIORS) : NO_BEHAVIORS;
+	}
+
+	private static Set<Behavior> identitySet(Collection<Behavior> behaviors)
+	{
+		Set<Behavior> set = Collections.newSetFromMap(new IdentityHashMap<Behavior, Boolean>());
+		if(behaviors != null)
+		{
+			for(Behavior be : behaviors)
+			{
+				if(be != null)
+					set.add(be);
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * @return the first n values, sorted and without duplicates
+	 */
+	private static int[] sortedSet(int[] values, int n)
+	{
+		if(n == 0)
+			return NO_IDS;
+
+		Arrays.sort(values, 0, n);
+		int unique = 1;
+		for(int i = 1; i < n; i++)
+		{
+			if(values[i] != values[unique - 1])
+				values[unique++] = values[i];
+		}
+		return unique == values.length ? values : Arrays.copyOf(values, unique);
+	}
+
+	/**
+	 * @return true if the sorted id set contains the id
+	 */
+	static boolean contains(int[] idSet, int id)
+	{
+		return Arrays.binarySearch(idSet, id) >= 0;
+	}
+
+	/**
+	 * @return the ids in both sorted sets
+	 */
+	static int[] intersection(int[] a, int[] b)
+	{
+		int[] both = null;
+		int n = 0;
+		int i = 0;
+		int j = 0;
+		while(i < a.length && j < b.length)
+		{
+			if(a[i] < b[j])
+			{
+				i++;
+			}else if(a[i] > b[j])
+			{
+				j++;
+			}else
+			{
+				if(both == null)
+					both = new int[Math.min(a.length - i, b.length - j)];
+				both[n++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return n == 0 ? NO_IDS : Arrays.copyOf(both, n);
+	}
+
+	/**
+	 * @return the count of an id, which is zero for an id interned after the counts were read
+	 */
+	static double countOf(int[] counts, int id)
+	{
+		return id < counts.length ? counts[id] : 0;
+	}
+
+	/**
+	 * Activation spread through the propositions in both sorted sets which are in the state (or not in the state),
+	 * each one contributing (1 / count) * (1 / size)
+	 */
+	static double spread(int[] a, int[] b, int[] state, boolean inState, int[] counts, int size)
+	{
+		double amount = 0;
+		int i = 0;
+		int j = 0;
+		while(i < a.length && j < b.length)
+		{
+			if(a[i] < b[j])
+			{
+				i++;
+			}else if(a[i] > b[j])
+			{
+				j++;
+			}else
+			{
+				int id = a[i];
+				double count = countOf(counts, id);
+				if(contains(state, id) == inState && count > 0 && size > 0)
+					amount = amount + (1.0 / count) * (1.0 / (double) size);
+				i++;
+				j++;
+			}
+		}
+		return amount;
+	}
+
+	/**
+	 * @return true if the sorted sets have an id in common which is in the state
+	 */
+	static boolean meetsInState(int[] a, int[] b, int[] state)
+	{
+		int i = 0;
+		int j = 0;
+		while(i < a.length && j < b.length)
+		{
+			if(a[i] < b[j])
+				i++;
+			else if(a[i] > b[j])
+				j++;
+			else if(contains(state, a[i]))
+				return true;
+			else
+			{
+				i++;
+				j++;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,765 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.behavior.bn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import br.unicamp.cst.core.entities.Memory;
+
+/**
+ * Spreads activation [Maes 1989] to all the behaviors of a network at once, instead of each behavior doing it
+ * in its own proc().
+ *
+ * At each step(), the activations and executability of all behaviors are read into arrays, and the next
+ * activation of each behavior is computed from these arrays only, with the same terms as Behavior (input from
+ * the state and the goals, activation taken away by protected goals, spread backwards, forwards and taken away
+ * by conflicters), the same GlobalVariables parameters, normalization and decay. So a step does not depend on
+ * the order in which behaviors are updated, and takes no locks.
+ *
+ * The lists and links of the behaviors are compiled from their LinkGraph into compressed sparse rows, with the
+ * coefficient of each proposition of each link, and recompiled only when the graph changes. Each behavior
+ * still retrieves its world state and goals from its inputs, and runs its operation() after the step if it is
+ * active.
+ *
+ * Given a ForkJoinPool, a step partitions the behaviors across it. As every task reads the other behaviors from
+ * the arrays of the previous step and only writes the next step of its own behaviors, the tasks need no locks.
+ *
+ * Not thread safe: step() must be called by one thread at a time, with the behaviors' own codelets stopped.
+ */
+public final class SpreadingActivationEngine
+{
+	private static final int[] NO_IDS = new int[0];
+
+	/** Fewest behaviors a task of a parallel step updates, so small networks are stepped by the calling thread */
+	private static final int MIN_ROWS_PER_TASK = 512;
+
+	/** Tasks per thread of the pool, so threads which finish early steal the remaining partitions */
+	private static final int TASKS_PER_THREAD = 4;
+
+	/**
+	 * Links of each row, in compressed sparse rows, with the propositions through which activation is spread
+	 */
+	static final class Links
+	{
+		/** Links of row i are start[i] to start[i + 1] - 1 */
+		final int[] start;
+
+		/** Column of the linked behavior */
+		int[] column = new int[16];
+
+		/** Propositions of link k are termStart[k] to termStart[k + 1] - 1 */
+		int[] termStart = new int[17];
+
+		int[] termProposition = new int[16];
+
+		/** (1 / number of behaviors with the proposition) * (1 / size of the list), as in LinkGraph.spread() */
+		double[] term = new double[16];
+
+		/** Propositions of link k through which the linked behavior is inhibited, for conflicters */
+		int[] inhibitStart;
+
+		int[] inhibitProposition;
+
+		int count = 0;
+
+		int terms = 0;
+
+		int inhibits = 0;
+
+		Links(int rows, boolean inhibitions)
+		{
+			start = new int[rows + 1];
+			if(inhibitions)
+			{
+				inhibitStart = new int[17];
+				inhibitProposition = new int[16];
+			}
+		}
+
+		void addLink(int linked)
+		{
+			column = ensure(column, count + 1);
+			termStart = ensure(termStart, count + 2);
+			termStart[count] = terms;
+			if(inhibitStart != null)
+			{
+				inhibitStart = ensure(inhibitStart, count + 2);
+				inhibitStart[count] = inhibits;
+			}
+
+			column[count++] = linked;
+			termStart[count] = terms;
+			if(inhibitStart != null)
+				inhibitStart[count] = inhibits;
+		}
+
+		/**
+		 * Adds the propositions in both sorted sets to the last link
+		 */
+		void addTerms(int[] a, int[] b, int[] counts, int size)
+		{
+			int i = 0;
+			int j = 0;
+			while(i < a.length && j < b.length)
+			{
+				if(a[i] < b[j])
+				{
+					i++;
+				}else if(a[i] > b[j])
+				{
+					j++;
+				}else
+				{
+					double holders = LinkGraph.countOf(counts, a[i]);
+					if(holders > 0 && size > 0)
+					{
+						termProposition = ensure(termProposition, terms + 1);
+						term = ensure(term, terms + 1);
+						termProposition[terms] = a[i];
+						term[terms++] = (1.0 / holders) * (1.0 / (double) size);
+						termStart[count] = terms;
+					}
+					i++;
+					j++;
+				}
+			}
+		}
+
+		/**
+		 * Adds the propositions in both sorted sets to the inhibitions of the last link
+		 */
+		void addInhibits(int[] a, int[] b)
+		{
+			for(int id : LinkGraph.intersection(a, b))
+			{
+				inhibitProposition = ensure(inhibitProposition, inhibits + 1);
+				inhibitProposition[inhibits++] = id;
+				inhibitStart[count] = inhibits;
+			}
+		}
+
+		void endRow(int row)
+		{
+			start[row + 1] = count;
+		}
+	}
+
+	/**
+	 * Propositions of a list of memories, as a mask over the proposition ids, kept while the infos of the
+	 * memories do not change
+	 */
+	static final class PropositionMask
+	{
+		private boolean[] mask = new boolean[0];
+
+		private int[] ids = NO_IDS;
+
+		/** Infos the mask was computed from, or null to compute it again */
+		private Object[] infos = null;
+
+		/** The infos, as a list shared by the behaviors with the same list */
+		private ArrayList<Object> beliefs = new ArrayList<Object>();
+
+		/**
+		 * @return the infos of the memories, not to be changed
+		 */
+		ArrayList<Object> update(LinkGraph graph, List<Memory> memories)
+		{
+			if(sameInfos(memories))
+				return beliefs;
+
+			for(int id : ids)
+			{
+				mask[id] = false;
+			}
+
+			ids = graph.idsOf(memories);
+			if(ids.length > 0 && ids[ids.length - 1] >= mask.length)
+				mask = Arrays.copyOf(mask, Math.max(ids[ids.length - 1] + 1, mask.length * 2));
+			for(int id : ids)
+			{
+				mask[id] = true;
+			}
+
+			infos = new Object[memories.size()];
+			for(int i = 0; i < infos.length; i++)
+			{
+				Memory mo = memories.get(i);
+				infos[i] = mo != null ? mo.getI() : null;
+			}
+			beliefs = new ArrayList<Object>(Arrays.asList(infos));
+			return beliefs;
+		}
+
+		private boolean sameInfos(List<Memory> memories)
+		{
+			if(infos == null || memories.size() != infos.length)
+				return false;
+
+			for(int i = 0; i < infos.length; i++)
+			{
+				Memory mo = memories.get(i);
+				if((mo != null ? mo.getI() : null) != infos[i])
+					return false;
+			}
+			return true;
+		}
+
+		boolean contains(int id)
+		{
+			return id < mask.length && mask[id];
+		}
+
+		/**
+		 * Makes the mask computed again, as infos unknown to the graph may have become propositions
+		 */
+		void invalidate()
+		{
+			infos = null;
+		}
+	}
+
+	/**
+	 * State of the step of a range of rows
+	 */
+	static final class Scratch
+	{
+		final PropositionMask state = new PropositionMask();
+
+		final PropositionMask goals = new PropositionMask();
+
+		final PropositionMask protectedGoals = new PropositionMask();
+
+		private GlobalVariables globalVariables;
+
+		double phi;
+
+		double gamma;
+
+		double delta;
+
+		/**
+		 * Reads the parameters once per step for each GlobalVariables
+		 */
+		boolean parameters(GlobalVariables globalVariables)
+		{
+			if(globalVariables == null)
+				return false;
+
+			if(globalVariables != this.globalVariables)
+			{
+				this.globalVariables = globalVariables;
+				phi = globalVariables.getPhi();
+				gamma = globalVariables.getGamma();
+				delta = globalVariables.getDelta();
+			}
+			return true;
+		}
+
+		void newStep()
+		{
+			globalVariables = null;
+			state.invalidate();
+			goals.invalidate();
+			protectedGoals.invalidate();
+		}
+	}
+
+	private final List<Behavior> behaviors;
+
+	private final LinkGraph graph;
+
+	private long compiledVersion = -1;
+
+	/** Behaviors updated by the step, then the behaviors they are linked to which are not in the network */
+	Behavior[] columns = new Behavior[0];
+
+	/** Number of behaviors updated by the step */
+	int rows = 0;
+
+	private int[] preconStart;
+
+	private int[] preconProposition;
+
+	private int[] preStart;
+
+	private int[] preProposition;
+
+	/** 1 / number of behaviors with the proposition in their (soft) preconditions, among all behaviors */
+	private double[] preInAll;
+
+	private int[] addStart;
+
+	private int[] addProposition;
+
+	private double[] addInAll;
+
+	private int[] delStart;
+
+	private int[] delProposition;
+
+	private double[] delInCoalition;
+
+	/** 1 / size of the lists of each row */
+	private double[] preSize;
+
+	private double[] addSize;
+
+	private double[] delSize;
+
+	private Links successors;
+
+	private Links predecessors;
+
+	private Links conflicters;
+
+	/** Activations and executability of all columns at the beginning of the step */
+	double[] activations = new double[0];
+
+	boolean[] executable = new boolean[0];
+
+	private final Scratch scratch = new Scratch();
+
+	/** Scratch of each partition of a parallel step, kept between steps */
+	private Scratch[] scratches = new Scratch[0];
+
+	private volatile ForkJoinPool pool = null;
+
+	private long steps = 0;
+
+	/**
+	 * @param behaviors
+	 *           the behaviors of the network, read at each step
+	 * @param graph
+	 *           the link graph of the behaviors
+	 */
+	SpreadingActivationEngine(List<Behavior> behaviors, LinkGraph graph)
+	{
+		this.behaviors = behaviors;
+		this.graph = graph;
+	}
+
+	/**
+	 * Spreads activation to all behaviors once, sets their activations and executability, and runs the operation
+	 * of the active one
+	 */
+	public void step()
+	{
+		prepare();
+
+		ForkJoinPool pool = this.pool;
+		int partitions = pool != null ? Math.min(rows / MIN_ROWS_PER_TASK, pool.getParallelism() * TASKS_PER_THREAD) : 1;
+		if(partitions > 1)
+		{
+			if(scratches.length < partitions)
+			{
+				Scratch[] grown = Arrays.copyOf(scratches, partitions);
+				for(int i = scratches.length; i < partitions; i++)
+				{
+					grown[i] = new Scratch();
+				}
+				scratches = grown;
+			}
+			pool.invoke(new StepTask(0, partitions, partitions));
+		}else
+		{
+			stepRows(0, rows, scratch);
+		}
+
+		operate();
+	}
+
+	/**
+	 * Steps a range of partitions of the behaviors, splitting it until there is one partition per task
+	 */
+	private final class StepTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+
+		private final int to;
+
+		private final int partitions;
+
+		StepTask(int from, int to, int partitions)
+		{
+			this.from = from;
+			this.to = to;
+			this.partitions = partitions;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(to - from > 1)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new StepTask(from, middle, partitions), new StepTask(middle, to, partitions));
+			}else
+			{
+				stepRows(firstRow(from, partitions), firstRow(from + 1, partitions), scratches[from]);
+			}
+		}
+	}
+
+	private int firstRow(int partition, int partitions)
+	{
+		return (int) ((long) rows * partition / partitions);
+	}
+
+	/**
+	 * @param pool
+	 *           the pool to partition the steps of large networks across, or null to step them in the calling thread
+	 */
+	public void setForkJoinPool(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * @return the pool the steps are partitioned across, or null if they are not
+	 */
+	public ForkJoinPool getForkJoinPool()
+	{
+		return pool;
+	}
+
+	/**
+	 * @return the number of steps done
+	 */
+	public long getStepCount()
+	{
+		return steps;
+	}
+
+	/**
+	 * Compiles the graph if it changed, and reads the activations and executability of all columns
+	 */
+	void prepare()
+	{
+		if(graph.getVersion() != compiledVersion || behaviors.size() != rows)
+		{
+			synchronized(graph)
+			{
+				compiledVersion = graph.getVersion();
+				compile();
+			}
+		}
+
+		for(int i = 0; i < columns.length; i++)
+		{
+			activations[i] = columns[i].getActivation();
+			executable[i] = columns[i].isExecutable();
+		}
+	}
+
+	/**
+	 * Runs the operation of the active behaviors, once all of them are updated
+	 */
+	void operate()
+	{
+		for(int i = 0; i < rows; i++)
+		{
+			Behavior be = columns[i];
+			if(be.isActive())
+				be.operation();
+		}
+		steps++;
+	}
+
+	/**
+	 * Computes and sets the next activation and executability of a range of rows, reading the other behaviors
+	 * only from the arrays filled by prepare()
+	 */
+	void stepRows(int from, int to, Scratch s)
+	{
+		s.newStep();
+		for(int x = from; x < to; x++)
+		{
+			Behavior be = columns[x];
+			be.retrieveInputs();
+			ArrayList<Object> beliefs = s.state.update(graph, be.getWorldState());
+			s.goals.update(graph, be.getGoals());
+			s.protectedGoals.update(graph, be.getProtectedGoals());
+
+			double next = 0; // if active, it should remain at zero [Maes 1989]
+			if(!be.isActive())
+			{
+				double activation = s.parameters(be.getGlobalVariables()) ? spread(x, be, s) : 0;
+				next = Math.min(be.nextActivation(activation), 1.0d);
+			}
+
+			boolean isExecutable = true;
+			for(int k = preconStart[x]; k < preconStart[x + 1]; k++)
+			{
+				if(!s.state.contains(preconProposition[k]))
+				{
+					isExecutable = false;
+					break;
+				}
+			}
+
+			be.stepped(next, isExecutable, beliefs);
+		}
+	}
+
+	/**
+	 * @return the activation spread to row x, as the sum of the terms of Behavior.spreadActivation()
+	 */
+	private double spread(int x, Behavior be, Scratch s)
+	{
+		PropositionMask state = s.state;
+
+		double inputFromState = 0;
+		double inputFromGoals = 0;
+		if(!be.getAllBehaviors().isEmpty())
+		{
+			for(int k = preStart[x]; k < preStart[x + 1]; k++)
+			{
+				if(state.contains(preProposition[k]))
+					inputFromState = inputFromState + s.phi * preInAll[k] * preSize[x];
+			}
+			for(int k = addStart[x]; k < addStart[x + 1]; k++)
+			{
+				if(s.goals.contains(addProposition[k]))
+					inputFromGoals = inputFromGoals + s.gamma * (addInAll[k] * addSize[x]);
+			}
+		}
+
+		double takenAwayByProtectedGoals = 0;
+		if(!be.getCoalition().isEmpty())
+		{
+			for(int k = delStart[x]; k < delStart[x + 1]; k++)
+			{
+				if(s.protectedGoals.contains(delProposition[k]))
+					takenAwayByProtectedGoals = takenAwayByProtectedGoals + delInCoalition[k] * delSize[x] * s.delta;
+			}
+		}
+
+		// a behavior y that is not executable spreads activation backward to x, through its unfulfilled preconditions in the add list of x
+		double spreadBw = 0;
+		Links links = successors;
+		for(int k = links.start[x]; k < links.start[x + 1]; k++)
+		{
+			int y = links.column[k];
+			double amount = 0;
+			if(!executable[y])
+			{
+				amount = sum(links, k, state, false);
+				amount = amount * activations[y] * (s.phi / s.gamma);
+			}
+			spreadBw = spreadBw + amount;
+		}
+
+		// an executable behavior y spreads activation forward to x, through propositions in its delete list which are unfulfilled (soft) preconditions of x
+		double spreadFw = 0;
+		links = predecessors;
+		for(int k = links.start[x]; k < links.start[x + 1]; k++)
+		{
+			int y = links.column[k];
+			double amount = 0;
+			if(executable[y])
+			{
+				amount = sum(links, k, state, false);
+				amount = amount * activations[y] * (s.phi / s.gamma);
+			}
+			spreadFw = spreadFw + amount;
+		}
+
+		// a behavior y takes away activation from x through fulfilled (soft) preconditions of y in the delete list of x, unless y is weaker and x undoes a fulfilled (soft) precondition of y
+		double takenAway = 0;
+		links = conflicters;
+		for(int k = links.start[x]; k < links.start[x + 1]; k++)
+		{
+			int y = links.column[k];
+			double amount = 0;
+			if(!((activations[y] < activations[x]) && inhibits(links, k, state)))
+			{
+				amount = sum(links, k, state, true);
+				amount = activations[y] * (s.delta / s.gamma) * amount;
+			}
+			takenAway = takenAway + amount;
+		}
+
+		return inputFromState + inputFromGoals - takenAwayByProtectedGoals + (spreadBw + spreadFw - takenAway);
+	}
+
+	private static double sum(Links links, int k, PropositionMask state, boolean inState)
+	{
+		double amount = 0;
+		for(int t = links.termStart[k]; t < links.termStart[k + 1]; t++)
+		{
+			if(state.contains(links.termProposition[t]) == inState)
+				amount = amount + links.term[t];
+		}
+		return amount;
+	}
+
+	private static boolean inhibits(Links links, int k, PropositionMask state)
+	{
+		for(int t = links.inhibitStart[k]; t < links.inhibitStart[k + 1]; t++)
+		{
+			if(state.contains(links.inhibitProposition[t]))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Compiles the lists and links of the behaviors. Called holding the graph's lock, so the nodes and the counts
+	 * are consistent.
+	 */
+	private void compile()
+	{
+		int n = behaviors.size();
+		List<Behavior> columnList = new ArrayList<Behavior>(behaviors);
+		Map<Behavior, Integer> index = new IdentityHashMap<Behavior, Integer>();
+		for(int i = 0; i < n; i++)
+		{
+			index.put(columnList.get(i), i);
+		}
+
+		int[] countPreInAll = graph.preInAll();
+		int[] countAddInAll = graph.addInAll();
+		int[] countPreInCoalition = graph.preInCoalition();
+		int[] countAddInCoalition = graph.addInCoalition();
+		int[] countDelInCoalition = graph.delInCoalition();
+
+		LinkGraph.Node[] nodes = new LinkGraph.Node[n];
+		int preconCount = 0;
+		int preCount = 0;
+		int addCount = 0;
+		int delCount = 0;
+		for(int i = 0; i < n; i++)
+		{
+			nodes[i] = LinkGraph.nodeOf(columnList.get(i));
+			preconCount += nodes[i].precon.length;
+			preCount += nodes[i].pre.length;
+			addCount += nodes[i].add.length;
+			delCount += nodes[i].del.length;
+		}
+
+		preconStart = new int[n + 1];
+		preconProposition = new int[preconCount];
+		preStart = new int[n + 1];
+		preProposition = new int[preCount];
+		preInAll = new double[preCount];
+		addStart = new int[n + 1];
+		addProposition = new int[addCount];
+		addInAll = new double[addCount];
+		delStart = new int[n + 1];
+		delProposition = new int[delCount];
+		delInCoalition = new double[delCount];
+		preSize = new double[n];
+		addSize = new double[n];
+		delSize = new double[n];
+		successors = new Links(n, false);
+		predecessors = new Links(n, false);
+		conflicters = new Links(n, true);
+
+		for(int x = 0; x < n; x++)
+		{
+			LinkGraph.Node node = nodes[x];
+			preconStart[x + 1] = fill(node.precon, preconProposition, preconStart[x], null, null);
+			preStart[x + 1] = fill(node.pre, preProposition, preStart[x], countPreInAll, preInAll);
+			addStart[x + 1] = fill(node.add, addProposition, addStart[x], countAddInAll, addInAll);
+			delStart[x + 1] = fill(node.del, delProposition, delStart[x], countDelInCoalition, delInCoalition);
+			preSize[x] = inverse(node.preSize);
+			addSize[x] = inverse(node.addSize);
+			delSize[x] = inverse(node.delSize);
+
+			for(Behavior y : node.successors)
+			{
+				successors.addLink(column(y, index, columnList));
+				successors.addTerms(LinkGraph.nodeOf(y).precon, node.add, countAddInCoalition, node.addSize);
+			}
+			successors.endRow(x);
+
+			for(Behavior y : node.predecessors)
+			{
+				predecessors.addLink(column(y, index, columnList));
+				predecessors.addTerms(LinkGraph.nodeOf(y).del, node.pre, countPreInCoalition, node.preSize);
+			}
+			predecessors.endRow(x);
+
+			for(Behavior y : node.conflicters)
+			{
+				LinkGraph.Node other = LinkGraph.nodeOf(y);
+				conflicters.addLink(column(y, index, columnList));
+				conflicters.addTerms(node.del, other.pre, countDelInCoalition, node.delSize);
+				conflicters.addInhibits(node.pre, other.del);
+			}
+			conflicters.endRow(x);
+		}
+
+		columns = columnList.toArray(new Behavior[columnList.size()]);
+		rows = n;
+		activations = new double[columns.length];
+		executable = new boolean[columns.length];
+	}
+
+	/**
+	 * @return the column of a linked behavior, adding it if it is not in the network
+	 */
+	private static int column(Behavior be, Map<Behavior, Integer> index, List<Behavior> columnList)
+	{
+		Integer column = index.get(be);
+		if(column == null)
+		{
+			column = columnList.size();
+			columnList.add(be);
+			index.put(be, column);
+		}
+		return column;
+	}
+
+	/**
+	 * Copies the ids of a row, with the inverse of their counts
+	 *
+	 * @return the end of the row
+	 */
+	private static int fill(int[] ids, int[] propositions, int start, int[] counts, double[] inverses)
+	{
+		for(int id : ids)
+		{
+			propositions[start] = id;
+			if(inverses != null)
+				inverses[start] = inverse(LinkGraph.countOf(counts, id));
+			start++;
+		}
+		return start;
+	}
+
+	/**
+	 * @return 1 / value, or zero if value is zero, so propositions no behavior has add nothing
+	 */
+	private static double inverse(double value)
+	{
+		return value > 0 ? 1 / value : 0;
+	}
+
+	private static int[] ensure(int[] array, int length)
+	{
+		return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+	}
+
+	private static double[] ensure(double[] array, int length)
+	{
+		return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+	}
+}
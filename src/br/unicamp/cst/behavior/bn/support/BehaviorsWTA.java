@@ -14,23 +14,54 @@ package br.unicamp.cst.behavior.bn.support;
 import br.unicamp.cst.behavior.bn.Behavior;
 import br.unicamp.cst.behavior.bn.GlobalVariables;
 import java.util.ArrayList;
-import java.util.Map.Entry;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.CstEvents;
+import br.unicamp.cst.core.entities.LatencyHistogram;
+import br.unicamp.cst.util.IndexedMaxHeap;
 
 /**
  * This codelet implements a "winners take all" mechanism for the behavior network.
  * It takes a number of behaviors and make the one with the highest activation level ACTIVE. 
+ * 
+ * The executable behaviors with some activation are kept in a heap ordered by activation, so the winner is found
+ * in O(log n) without locking any behavior: a behavior tells behaviorChanged() when its activation or executability
+ * changes, which only marks it as changed, and the changed behaviors are moved in the heap at the next selection.
+ * Only the winner is locked, through impendingAccess(), to be made active. If its lock is busy for longer than the 
+ * lock manager's timeout, no behavior is chosen in this cycle: the winner stays in the heap and is tried again in the
+ * next cycle, with the same threshold, so a less active behavior never wins just because the winner was busy.
  * @author Klaus
  *
  */
 public class BehaviorsWTA extends Codelet 
 {
 	private ArrayList<Behavior> behaviorList = new ArrayList<Behavior>();
-	private ConcurrentHashMap<Codelet,Double> codeletsActivation = new ConcurrentHashMap<Codelet, Double>();
-	private ConcurrentHashMap<Codelet,Boolean> codeletsActive = new ConcurrentHashMap<Codelet, Boolean>();
 
-	private ArrayList<Behavior> behaviorsStillActive=new ArrayList<Behavior>();
+	/** Behaviors by slot, the slot being their id in the heap */
+	private Behavior[] members = new Behavior[16];
+
+	private IdentityHashMap<Behavior,Integer> slots = new IdentityHashMap<Behavior, Integer>();
+
+	/** Slots freed by removed behaviors */
+	private int[] freeSlots = new int[16];
+
+	private int freeCount = 0;
+
+	private int nextSlot = 0;
+
+	/** Executable behaviors with activation above zero, by activation */
+	private IndexedMaxHeap candidates = new IndexedMaxHeap(16);
+
+	/** Behaviors whose activation or executability changed since the heap was last updated */
+	private Set<Behavior> changedBehaviors = ConcurrentHashMap.newKeySet();
+
+	/** Time taken to choose a behavior, in nanoseconds */
+	private LatencyHistogram selectionTime = new LatencyHistogram();
+
 	private Behavior chosenBehavior=null;
 	
 	private GlobalVariables globalVariables;
@@ -57,93 +88,43 @@ public class BehaviorsWTA extends Codelet
 	@Override
 	public void proc() {
 		synchronized(this){
-			//Just in case:
-			codeletsActivation.clear();
-			codeletsActive.clear();
-			ArrayList<String> tempListOfExecutableCodelets = new ArrayList<String>();
-
-			
-			
-			
 			if(chosenBehavior==null){//If there are no active behavior codelet
-				//GET A LIST OF CODELETS THAT ARE CANDIDATES FOR ACTIVATION
-				boolean there_is_already_one_active=false;
-				for (Behavior competence : behaviorList)
-				{
-					if (impendingAccess(competence)){
-						try
-						{
-//							//Using the loop to also perform activation decay
-//							competence.setValue(competence.getValue()*globalVariables.getPi());
-							
-							if(competence.isActive()){
-								there_is_already_one_active=true;
-							}else{
-								if(behaviorsStillActive.contains(competence)){
-									behaviorsStillActive.remove(competence);
-								}
-							}
-
-							if(competence.isExecutable()&&competence.getActivation()>=globalVariables.getThetaTemp()){
-								
-								codeletsActivation.put(competence, competence.getActivation());
-
-								tempListOfExecutableCodelets.add(competence.getName());//Assumes each behavior has a particular name
-							}
-
-						} finally
-						{
-							lock.unlock();
-							competence.lock.unlock();
-						}
-					}
-				}
-
-				//FINDS OUT WHICH ONE IS THE CODELET WITH THE HIGHEST ACTIVATION LEVEL
-				if(there_is_already_one_active){
-					System.out.println("Error at KWTANetwork.java: More than one behavior active at the same time.");
-				}
-
-
-				double highestAct=Double.MIN_VALUE;
-				for (Entry<Codelet, Double> o : codeletsActivation.entrySet()) {
-					Behavior competence =(Behavior) o.getKey();
+				long start=System.nanoTime();
+
+				//UPDATES THE CANDIDATES FOR ACTIVATION WITH THE BEHAVIORS THAT CHANGED
+				updateCandidates();
+
+				//ACTIVATES THE EXECUTABLE CODELET WITH THE HIGHEST ACTIVATION LEVEL
+				//If its lock cannot be acquired within the lock manager's timeout, it is tried again in the next cycle
+				double thetaTemp=globalVariables.getThetaTemp();
+				double highestAct=candidates.peekKey();
+				boolean busy=false;
+				if(highestAct>=thetaTemp){
+					Behavior competence=members[candidates.peek()];
 					if (impendingAccess(competence)){
 						try
 						{
-							double activation=(Double) o.getValue();
-							if(activation>=highestAct){
-								chosenBehavior=competence;
-								highestAct=activation;
-							}
+							competence.setActive(true);
 						} finally
 						{
 							lock.unlock();
 							competence.lock.unlock();
 						}
+						chosenBehavior=competence;
+					}else{
+						busy=true;
 					}
-
 				}
 
+				selectionTime.record(System.nanoTime()-start);
 
-				//ACTIVATES EXECUTABLE CODELET WITH HIGHEST ACTIVATION LEVEL
-
-				//				System.out.println("I believe this guy should become active (A="+chosen_codelet.getValue()+"): "+chosen_codelet.getName());
-				if(chosenBehavior!=null){//otherwise, it means it could not find a suitable behavior for activation
-					if (impendingAccess(chosenBehavior)){
-						try
-						{
-							chosenBehavior.setActive(true);
-						} finally
-						{
-							lock.unlock();
-							chosenBehavior.lock.unlock();
-						}
-					}
+				if(chosenBehavior!=null){
+					if(CstEvents.isEnabled())
+						CstEvents.behaviorSelected(this, chosenBehavior, highestAct, countCandidates(thetaTemp), thetaTemp);
 
 					// All thetatemps must be reset back to their original values
 					globalVariables.setThetaTemp(globalVariables.getTheta());
-				}else{ // no active behavior yet
+				}else if(!busy){ // no active behavior yet
 					globalVariables.decreaseThetaTemps(); //  only in case no behavior is used						
 				}
 
@@ -157,7 +138,6 @@ public class BehaviorsWTA extends Codelet
 							chosenBehavior.setActive(false);		
 							mustSetNull=true;
 						}
-
 					} finally
 					{
 						lock.unlock();
@@ -168,19 +148,113 @@ public class BehaviorsWTA extends Codelet
 				if(mustSetNull){
 					chosenBehavior=null;
 				}
-
 			}
 			
 		}//end synchronized
 	}//end proc
 
+	/**
+	 * Moves the behaviors that changed in the heap of candidates
+	 */
+	private void updateCandidates()
+	{
+		Iterator<Behavior> it=changedBehaviors.iterator();
+		while(it.hasNext())
+		{
+			Behavior be=it.next();
+			// removed before reading the behavior, so a later change is marked again
+			it.remove();
+
+			Integer slot=slots.get(be);
+			if(slot==null)
+				continue;
+
+			double activation=be.getActivation();
+			if(be.isExecutable()&&activation>0)
+				candidates.set(slot, activation);
+			else
+				candidates.remove(slot);
+		}
+	}
+
+	/**
+	 * @return the number of candidates with activation at or above the threshold
+	 */
+	private int countCandidates(double threshold)
+	{
+		int count=0;
+		for(int slot=0;slot<nextSlot;slot++)
+		{
+			if(candidates.contains(slot)&&candidates.getKey(slot)>=threshold)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Called by a behavior of this codelet, from any thread, when its activation or executability changes
+	 * 
+	 * @param be the behavior
+	 */
+	public void behaviorChanged(Behavior be)
+	{
+		changedBehaviors.add(be);
+	}
 
-	public void addBehavior(Behavior be){
+	public synchronized void addBehavior(Behavior be){
 		this.behaviorList.add(be);
+		if(slots.containsKey(be))
+			return;
+
+		int slot;
+		if(freeCount>0)
+		{
+			slot=freeSlots[--freeCount];
+		}else
+		{
+			slot=nextSlot++;
+			if(slot>=members.length)
+				members=Arrays.copyOf(members, members.length*2);
+		}
+		members[slot]=be;
+		slots.put(be, slot);
+		be.setBehaviorsWTA(this);
+		behaviorChanged(be);
 	}
 
-	public void removeBehavior(Behavior be){
+	public synchronized void removeBehavior(Behavior be){
 		this.behaviorList.remove(be);
+		if(behaviorList.contains(be))
+			return;
+
+		Integer slot=slots.remove(be);
+		if(slot==null)
+			return;
+
+		candidates.remove(slot);
+		members[slot]=null;
+		if(freeCount==freeSlots.length)
+			freeSlots=Arrays.copyOf(freeSlots, freeSlots.length*2);
+		freeSlots[freeCount++]=slot;
+		if(be.getBehaviorsWTA()==this)
+			be.setBehaviorsWTA(null);
+		changedBehaviors.remove(be);
+	}
+
+	/**
+	 * @return the behavior made active, or null if there is none
+	 */
+	public synchronized Behavior getChosenBehavior()
+	{
+		return chosenBehavior;
+	}
+
+	/**
+	 * @return the time taken by each selection in proc(), from updating the candidates to activating the winner, in nanoseconds
+	 */
+	public LatencyHistogram getSelectionTime()
+	{
+		return selectionTime;
 	}
 
 	@Override
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.behavior.bn.support;
+
+import br.unicamp.cst.behavior.bn.SpreadingActivationEngine;
+import br.unicamp.cst.core.entities.Codelet;
+
+/**
+ * 
+ * Codelet that runs a behavior network synchronously, one step of its spreading activation engine per cycle
+ *
+ */
+public class SynchronousBHCodelet extends Codelet{
+	private SpreadingActivationEngine engine;
+	public SynchronousBHCodelet(SpreadingActivationEngine engine){
+		this.engine=engine;
+	}
+
+	@Override
+	public void proc() {
+		
+		engine.step();
+		
+	}
+
+	@Override
+	public void accessMemoryObjects() {
+		
+	}
+
+	@Override
+	public void calculateActivation() {
+		
+	}
+
+}
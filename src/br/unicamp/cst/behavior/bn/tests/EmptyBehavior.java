@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.behavior.bn.tests;
+
+import br.unicamp.cst.behavior.bn.Behavior;
+import br.unicamp.cst.behavior.bn.GlobalVariables;
+import br.unicamp.cst.core.exceptions.CodeletActivationBoundsException;
+import br.unicamp.cst.memory.WorkingStorage;
+
+/**
+ * Behavior doing nothing, for the tests which only need its lists, links and activation
+ */
+public class EmptyBehavior extends Behavior {
+
+	public EmptyBehavior(WorkingStorage ws, GlobalVariables globalVariables) {
+		super(ws, globalVariables);
+	}
+
+	public EmptyBehavior(WorkingStorage ws, GlobalVariables globalVariables, String name) {
+		super(ws, globalVariables);
+		setName(name);
+	}
+
+	public EmptyBehavior(WorkingStorage ws, GlobalVariables globalVariables, String name, double activation, boolean executable) throws CodeletActivationBoundsException {
+		this(ws, globalVariables, name);
+		setActivation(activation);
+		setExecutable(executable);
+	}
+
+	@Override
+	public void operation() {
+	}
+
+	@Override
+	public void accessMemoryObjects() {
+	}
+
+	@Override
+	public void calculateActivation() {
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.behavior.bn.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import br.unicamp.cst.behavior.bn.Behavior;
+import br.unicamp.cst.behavior.bn.BehaviorNetwork;
+import br.unicamp.cst.behavior.bn.GlobalVariables;
+import br.unicamp.cst.core.entities.Memory;
+import br.unicamp.cst.core.entities.Mind;
+import br.unicamp.cst.memory.WorkingStorage;
+
+public class TestBehaviorLinks {
+
+	@Test
+	public void testLinksFollowLists() {
+
+		Mind mind = new Mind();
+		WorkingStorage ws = new WorkingStorage(16, mind.getRawMemory());
+		GlobalVariables globalVariables = new GlobalVariables();
+		BehaviorNetwork bn = new BehaviorNetwork(mind.getCodeRack(), ws);
+
+		Memory p0 = mind.createMemoryObject("PROPOSITION", "P_0");
+		Memory p1 = mind.createMemoryObject("PROPOSITION", "P_1");
+		Memory p2 = mind.createMemoryObject("PROPOSITION", "P_2");
+
+		// a: P_0 -> P_1, b: P_1 -> P_2, c needs P_1 and deletes it
+		Behavior a = new EmptyBehavior(ws, globalVariables, "a");
+		a.addPreconList(p0);
+		a.addAddList(p1);
+		Behavior b = new EmptyBehavior(ws, globalVariables, "b");
+		b.addPreconList(p1);
+		b.addAddList(p2);
+		Behavior c = new EmptyBehavior(ws, globalVariables, "c");
+		c.addPreconList(p1);
+		c.addDelList(p1);
+		for (Behavior be : new Behavior[] { a, b, c }) {
+			bn.addCodelet(be);
+		}
+		bn.setCoalition(new ArrayList<Behavior>(bn.getBehaviors()));
+
+		assertEquals(2, a.getSuccessors().size());
+		assertTrue(b.getPredecessors().containsKey(a));
+		assertTrue(c.getConflicters().containsKey(b));
+		assertTrue(b.getConflicters().isEmpty());
+
+		// leaving the coalition removes the links to the behavior
+		ArrayList<Behavior> coalition = new ArrayList<Behavior>();
+		coalition.add(a);
+		coalition.add(b);
+		bn.setCoalition(coalition);
+		assertEquals(1, a.getSuccessors().size());
+		assertTrue(a.getSuccessors().containsKey(b));
+
+		// lists changed after the links were computed
+		a.delAddList(p1);
+		assertTrue(a.getSuccessors().isEmpty());
+		assertFalse(b.getPredecessors().containsKey(a));
+		b.addAddList(p0);
+		assertTrue(a.getPredecessors().containsKey(b));
+
+		// the lists cannot be changed behind the behavior's back
+		try {
+			b.getAddList().add(p1);
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+		assertEquals(2, b.getAddList().size());
+
+		// propositions are compared by info, not by memory object
+		ArrayList<Memory> state = new ArrayList<Memory>();
+		state.add(mind.createMemoryObject("WORLD_STATE", "P_0"));
+		a.setWorldState(state);
+		assertEquals(globalVariables.getPhi(), a.inputFromState(), 1e-12);
+	}
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.behavior.bn.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import br.unicamp.cst.behavior.bn.Behavior;
+import br.unicamp.cst.behavior.bn.GlobalVariables;
+import br.unicamp.cst.behavior.bn.support.BehaviorsWTA;
+import br.unicamp.cst.core.entities.LockManager;
+import br.unicamp.cst.core.entities.Mind;
+import br.unicamp.cst.memory.WorkingStorage;
+
+public class TestBehaviorsWTA {
+
+	@Test
+	public void testChoosesMostActiveExecutable() throws Exception {
+
+		Mind mind = new Mind();
+		WorkingStorage ws = new WorkingStorage(16, mind.getRawMemory());
+		GlobalVariables globalVariables = new GlobalVariables();
+		globalVariables.setTheta(0.5);
+		globalVariables.setThetaTemp(0.5);
+		BehaviorsWTA wta = new BehaviorsWTA(globalVariables);
+
+		Behavior a = new EmptyBehavior(ws, globalVariables, "a", 0.6, true);
+		Behavior b = new EmptyBehavior(ws, globalVariables, "b", 0.9, false);
+		Behavior c = new EmptyBehavior(ws, globalVariables, "c", 0.3, true);
+		for (Behavior be : new Behavior[] { a, b, c }) {
+			wta.addBehavior(be);
+		}
+		assertSame(wta, a.getBehaviorsWTA());
+
+		// changes after being added are seen by the next selection
+		c.setActivation(0.7);
+		wta.proc();
+		assertSame(c, wta.getChosenBehavior());
+		assertTrue(c.isActive());
+		assertEquals(1, wta.getSelectionTime().getCount());
+
+		// the world belief state changed: c is released
+		ws.putMemoryObject(mind.createMemoryObject("WORLD_STATE", "P"));
+		c.proc();
+		wta.proc();
+		assertNull(wta.getChosenBehavior());
+		assertFalse(c.isActive());
+
+		// b becomes the most active executable
+		b.setExecutable(true);
+		wta.proc();
+		assertSame(b, wta.getChosenBehavior());
+
+		// moved to another winner take all, with nothing above theta: the threshold decreases
+		wta.removeBehavior(a);
+		assertNull(a.getBehaviorsWTA());
+		BehaviorsWTA other = new BehaviorsWTA(globalVariables);
+		other.addBehavior(a);
+		assertSame(other, a.getBehaviorsWTA());
+		globalVariables.setThetaTemp(0.8);
+		other.proc();
+		assertNull(other.getChosenBehavior());
+		assertTrue(globalVariables.getThetaTemp() < 0.8);
+	}
+
+	@Test(timeout = 10000)
+	public void testLockedCandidateIsNotMissed() throws Exception {
+
+		Mind mind = new Mind();
+		WorkingStorage ws = new WorkingStorage(16, mind.getRawMemory());
+		GlobalVariables globalVariables = new GlobalVariables();
+		globalVariables.setTheta(0.5);
+		globalVariables.setThetaTemp(0.5);
+		BehaviorsWTA wta = new BehaviorsWTA(globalVariables);
+
+		final Behavior a = new EmptyBehavior(ws, globalVariables, "a", 0.6, true);
+		final Behavior b = new EmptyBehavior(ws, globalVariables, "b", 0.8, true);
+		wta.addBehavior(a);
+		wta.addBehavior(b);
+
+		// b is busy for a moment, shorter than the lock manager's timeout, as when its codelet is running
+		Thread busy = lockFor(b, LockManager.DEFAULT_TIMEOUT / 4);
+		wta.proc();
+		busy.join();
+		assertSame(b, wta.getChosenBehavior());
+		assertTrue(b.isActive());
+	}
+
+	@Test(timeout = 10000)
+	public void testBusyWinnerIsRetried() throws Exception {
+
+		Mind mind = new Mind();
+		WorkingStorage ws = new WorkingStorage(16, mind.getRawMemory());
+		GlobalVariables globalVariables = new GlobalVariables();
+		globalVariables.setTheta(0.5);
+		globalVariables.setThetaTemp(0.5);
+		BehaviorsWTA wta = new BehaviorsWTA(globalVariables);
+
+		Behavior a = new EmptyBehavior(ws, globalVariables, "a", 0.6, true);
+		Behavior b = new EmptyBehavior(ws, globalVariables, "b", 0.8, true);
+		wta.addBehavior(a);
+		wta.addBehavior(b);
+
+		// b is busy for longer than the timeout: nothing is chosen, and the threshold is kept
+		Thread busy = lockFor(b, LockManager.DEFAULT_TIMEOUT * 3);
+		wta.proc();
+		assertNull(wta.getChosenBehavior());
+		assertFalse(a.isActive());
+		assertFalse(b.isActive());
+		assertEquals(0.5, globalVariables.getThetaTemp(), 0);
+		busy.join();
+
+		// the most active behavior wins once its lock is released
+		wta.proc();
+		assertSame(b, wta.getChosenBehavior());
+		assertTrue(b.isActive());
+		assertFalse(a.isActive());
+	}
+
+	/**
+	 * @return a thread holding the lock of a behavior for some time, started once the lock is held
+	 */
+	private static Thread lockFor(final Behavior be, final long millis) throws InterruptedException {
+
+		final CountDownLatch locked = new CountDownLatch(1);
+		Thread busy = new Thread() {
+			@Override
+			public void run() {
+				be.lock.lock();
+				try {
+					locked.countDown();
+					Thread.sleep(millis);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				} finally {
+					be.lock.unlock();
+				}
+			}
+		};
+		busy.start();
+		locked.await();
+		return busy;
+	}
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.behavior.bn.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import br.unicamp.cst.behavior.bn.Behavior;
+import br.unicamp.cst.behavior.bn.BehaviorNetwork;
+import br.unicamp.cst.behavior.bn.GlobalVariables;
+import br.unicamp.cst.behavior.bn.SpreadingActivationEngine;
+import br.unicamp.cst.core.entities.Memory;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.Mind;
+import br.unicamp.cst.memory.WorkingStorage;
+
+public class TestSpreadingActivationEngine {
+
+	private static final int PROPOSITIONS = 30;
+
+	/**
+	 * A random network, with a protected goal and a world state changing at random
+	 */
+	private static class RandomNetwork {
+
+		final Random random;
+		final GlobalVariables globalVariables = new GlobalVariables();
+		final BehaviorNetwork bn;
+		final List<MemoryObject> worldState = new ArrayList<MemoryObject>();
+
+		RandomNetwork(long seed, int size) throws Exception {
+			random = new Random(seed);
+			Mind mind = new Mind();
+			WorkingStorage ws = new WorkingStorage(64, mind.getRawMemory());
+			bn = new BehaviorNetwork(mind.getCodeRack(), ws);
+
+			List<Memory> propositions = new ArrayList<Memory>();
+			for (int i = 0; i < PROPOSITIONS; i++) {
+				propositions.add(mind.createMemoryObject("PROPOSITION", "P_" + i));
+			}
+			Memory protectedGoal = mind.createMemoryObject("PROTECTED_GOAL", "P_" + random.nextInt(PROPOSITIONS));
+
+			for (int i = 0; i < size; i++) {
+				Behavior be = new EmptyBehavior(ws, globalVariables);
+				be.setName("B_" + i);
+				for (int k = 0; k < 2; k++) {
+					be.addPreconList(propositions.get(random.nextInt(PROPOSITIONS)));
+					be.addAddList(propositions.get(random.nextInt(PROPOSITIONS)));
+					be.addDelList(propositions.get(random.nextInt(PROPOSITIONS)));
+				}
+				if (random.nextBoolean()) {
+					be.addSoftPreconList(propositions.get(random.nextInt(PROPOSITIONS)));
+				}
+				be.addInput(protectedGoal);
+				be.setActivation(random.nextDouble() * 0.5);
+				be.setExecutable(random.nextBoolean());
+				bn.addCodelet(be);
+			}
+			bn.setCoalition(new ArrayList<Behavior>(bn.getBehaviors().subList(0, size * 4 / 5)));
+
+			for (int i = 0; i < 6; i++) {
+				MemoryObject mo = mind.createMemoryObject("WORLD_STATE", "P_0");
+				ws.putMemoryObject(mo);
+				worldState.add(mo);
+			}
+			ws.putMemoryObject(mind.createMemoryObject("ONCE_ONLY_GOAL", "P_" + random.nextInt(PROPOSITIONS)));
+			ws.putMemoryObject(mind.createMemoryObject("ONCE_ONLY_GOAL", "P_" + random.nextInt(PROPOSITIONS)));
+		}
+
+		void changeWorldState() {
+			for (MemoryObject mo : worldState) {
+				mo.setI("P_" + random.nextInt(PROPOSITIONS));
+			}
+		}
+	}
+
+	@Test
+	public void testSameAsBehaviors() throws Exception {
+
+		RandomNetwork network = new RandomNetwork(11, 50);
+		assertSameAsBehaviors(network, 20);
+	}
+
+	@Test
+	public void testParallelStep() throws Exception {
+
+		RandomNetwork network = new RandomNetwork(13, 2000);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			network.bn.setParallelBN(true, pool);
+			assertSame(pool, network.bn.getSpreadingActivationEngine().getForkJoinPool());
+			assertSameAsBehaviors(network, 5);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static void assertSameAsBehaviors(RandomNetwork network, int steps) throws Exception {
+
+		SpreadingActivationEngine engine = network.bn.getSpreadingActivationEngine();
+		List<Behavior> behaviors = network.bn.getBehaviors();
+		double[] maxA = new double[behaviors.size()];
+		Arrays.fill(maxA, 1);
+
+		for (int step = 0; step < steps; step++) {
+			network.changeWorldState();
+
+			// every behavior spreads activation from the activations before the step, as in Behavior.spreadActivation()
+			double[] expected = new double[behaviors.size()];
+			boolean[] executable = new boolean[behaviors.size()];
+			for (int i = 0; i < expected.length; i++) {
+				Behavior be = behaviors.get(i);
+				be.setWorldState(inputs(be, "WORLD_STATE"));
+				ArrayList<Memory> goals = inputs(be, "ONCE_ONLY_GOAL");
+				goals.addAll(inputs(be, "PROTECTED_GOAL"));
+				be.setGoals(goals);
+				be.setProtectedGoals(inputs(be, "PROTECTED_GOAL"));
+
+				double spread = be.inputFromState() + be.inputFromGoals() - be.takenAwayByProtectedGoals() + (be.spreadBw() + be.spreadFw() - be.takenAway());
+				maxA[i] = Math.max(maxA[i], spread);
+				double activation = (spread * (1 - be.getActivation()) / maxA[i] + be.getActivation()) * network.globalVariables.getDecay();
+				expected[i] = Math.min(Math.max(activation, 0), 1);
+
+				executable[i] = true;
+				for (Memory precon : be.getListOfPreconditions()) {
+					boolean found = false;
+					for (Memory mo : be.getWorldState()) {
+						found |= precon.getI().equals(mo.getI());
+					}
+					executable[i] &= found;
+				}
+			}
+
+			engine.step();
+
+			for (int i = 0; i < expected.length; i++) {
+				Behavior be = behaviors.get(i);
+				assertEquals("step " + step + " " + be.getName(), expected[i], be.getActivation(), 1e-12);
+				assertEquals("step " + step + " " + be.getName(), executable[i], be.isExecutable());
+			}
+		}
+		assertEquals(steps, engine.getStepCount());
+	}
+
+	private static ArrayList<Memory> inputs(Behavior be, String name) {
+		ArrayList<Memory> inputs = new ArrayList<Memory>();
+		for (Memory mo : be.getInputs()) {
+			if (mo.getName().equals(name)) {
+				inputs.add(mo);
+			}
+		}
+		return inputs;
+	}
+}
@@ -60,7 +60,6 @@ public class ActionSelectionCodelet extends Codelet{
 		{
 			ws.registerCodelet(this,"SOLUTION_TREE", 0);
 			ws.registerCodelet(this,"STIMULUS", 0);
-			ws.putMemoryObject(ACTION_MO);
 			ws.registerCodelet(this,"NEW_STIM", 0);
 			ws.registerCodelet(this,"NEW_ACTION", 0);
 			ws.registerCodelet(this,"NEW_REWARD", 0);
@@ -71,6 +70,9 @@ public class ActionSelectionCodelet extends Codelet{
 		
 		if(rawMemory!=null)
 			ACTION_MO = rawMemory.createMemoryObject("ACTION", "");
+		this.addOutput(ACTION_MO);
+		if(ws!=null)
+			ws.putMemoryObject(ACTION_MO); // after it is created, so the SequenceBuilderCodelet gets it as input
 		
 		
 
@@ -115,7 +117,7 @@ public class ActionSelectionCodelet extends Codelet{
 				//			System.out.println("Action Selection Found a new Solution Tree: "+new_solution_tree_string);
 				JSONArray new_solution_tree_jsonarray;
 				try {
-					new_solution_tree_jsonarray = new JSONArray(new_solution_tree_string);
+					new_solution_tree_jsonarray = new JSONArray((String) new_solution_tree_string);
 					int[] new_solution_tree_phenotype = new int[new_solution_tree_jsonarray.length()];
 
 					for(int i=0; i<new_solution_tree_phenotype.length;i++){
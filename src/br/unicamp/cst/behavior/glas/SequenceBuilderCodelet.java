@@ -199,7 +199,7 @@ public class SequenceBuilderCodelet extends Codelet
 	public void printSequence() {
 		System.out.println("------------------------------------");
 		try {
-			JSONArray es = new JSONArray(EVENTS_SEQUENCE_MO.getI());
+			JSONArray es = new JSONArray((String) EVENTS_SEQUENCE_MO.getI());
 
 			for(int i=0; i<es.length();i++){
 				JSONObject ev = es.getJSONObject(i);
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.behavior.glas.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+import br.unicamp.cst.behavior.glas.ActionSelectionCodelet;
+import br.unicamp.cst.behavior.glas.Cognit;
+import br.unicamp.cst.behavior.glas.SequenceBuilderCodelet;
+import br.unicamp.cst.core.entities.Memory;
+import br.unicamp.cst.core.entities.RawMemory;
+import br.unicamp.cst.learning.glas.LearnerCodelet;
+import br.unicamp.cst.memory.WorkingStorage;
+
+public class TestGlasCognit {
+
+	private static final String TRUE = String.valueOf(true);
+
+	private static Memory first(RawMemory rawMemory, String name) {
+		return rawMemory.getAllOfType(name).get(0);
+	}
+
+	/**
+	 * Presents a stimulus, lets the action selection answer it, rewards the action and records the event
+	 */
+	private static void event(Cognit cognit, RawMemory rawMemory, int stimulus, String reward) {
+		first(rawMemory, "STIMULUS").setI(String.valueOf(stimulus));
+		first(rawMemory, "NEW_STIM").setI(TRUE);
+		cognit.getActionSelectionCodelet().runOnce();
+		first(rawMemory, "REWARD").setI(reward);
+		first(rawMemory, "NEW_REWARD").setI(TRUE);
+		cognit.getSequenceBuilderCodelet().runOnce();
+	}
+
+	@Test
+	public void testActionReachesSequenceBuilder() {
+
+		RawMemory rawMemory = new RawMemory();
+		WorkingStorage ws = new WorkingStorage(64, rawMemory);
+		Cognit cognit = new Cognit(2, 2, null, rawMemory, ws);
+		ActionSelectionCodelet actionSelection = cognit.getActionSelectionCodelet();
+
+		Memory action = actionSelection.getOutput("ACTION", 0);
+		assertNotNull(action);
+		assertSame(action, first(rawMemory, "ACTION"));
+		assertSame(action, cognit.getSequenceBuilderCodelet().getInput("ACTION", 0));
+
+		// a new stimulus is answered with an action
+		first(rawMemory, "STIMULUS").setI("1");
+		first(rawMemory, "NEW_STIM").setI(TRUE);
+		actionSelection.runOnce();
+		assertEquals(TRUE, first(rawMemory, "NEW_ACTION").getI());
+		assertFalse("".equals(action.getI()));
+	}
+
+	@Test
+	public void testSolutionTreeIsRead() {
+
+		RawMemory rawMemory = new RawMemory();
+		WorkingStorage ws = new WorkingStorage(64, rawMemory);
+		Cognit cognit = new Cognit(2, 2, null, rawMemory, ws);
+
+		// the initial tree answers 1 with 1, this one answers it with 0
+		first(rawMemory, "SOLUTION_TREE").setI("[0,1,0,1,1,0]");
+		event(cognit, rawMemory, 1, "1");
+		assertEquals("0", first(rawMemory, "ACTION").getI());
+
+		// the sequence builder reads back the events it recorded
+		SequenceBuilderCodelet sequenceBuilder = cognit.getSequenceBuilderCodelet();
+		event(cognit, rawMemory, 0, "-1");
+		PrintStream out = System.out;
+		ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(printed, true));
+		try {
+			sequenceBuilder.printSequence();
+		} finally {
+			System.setOut(out);
+		}
+		assertTrue(printed.toString().contains("0(s,a,r)=(1,0,1)"));
+		assertTrue(printed.toString().contains("1(s,a,r)=(0,0,-1)"));
+	}
+
+	@Test(timeout = 60000)
+	public void testLearnerReadsSequence() {
+
+		RawMemory rawMemory = new RawMemory();
+		WorkingStorage ws = new WorkingStorage(64, rawMemory);
+		Cognit cognit = new Cognit(2, 2, null, rawMemory, ws);
+		LearnerCodelet learner = cognit.getLearnerCodelet();
+		learner.setMaxNumberOfNodes(2);
+
+		int maxEventsSequenceLenght = LearnerCodelet.getMaxEventsSequenceLenght();
+		try {
+			learner.setMaxEventsSequenceLenght(6);
+			for (int i = 0; i < 6; i++) {
+				event(cognit, rawMemory, i % 2, i % 2 == 0 ? "-1" : "1");
+			}
+
+			// a solution tree is learned from the sequence and written
+			Memory solutionTree = first(rawMemory, "SOLUTION_TREE");
+			long version = solutionTree.getVersion();
+			learner.runOnce();
+			assertTrue(solutionTree.getVersion() > version);
+			assertTrue(((String) solutionTree.getI()).startsWith("["));
+		} finally {
+			learner.setMaxEventsSequenceLenght(maxEventsSequenceLenght);
+		}
+	}
+}
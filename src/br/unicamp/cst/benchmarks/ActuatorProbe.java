@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+
+package br.unicamp.cst.benchmarks;
+
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.LatencyHistogram;
+import br.unicamp.cst.core.entities.Memory;
+
+/**
+ * Actuator codelet closing the loop of a {@link CognitiveWorkload}. At each run, it checks
+ * whether the action memory was written since the previous run and, if so, records the time
+ * elapsed since the sensor's last reading as the sense-to-act latency of that action.
+ *
+ * When the workload runs in synchronous steps, the benchmark calls {@link #observe()} after each
+ * step instead of inserting this codelet in the mind, so the latency covers whole cycles.
+ */
+public class ActuatorProbe extends Codelet
+{
+	private final Memory action;
+
+	private final SyntheticSensor sensor;
+
+	private final LatencyHistogram latencies = new LatencyHistogram();
+
+	private long lastVersion;
+
+	private volatile long cycles = 0;
+
+	private volatile long actions = 0;
+
+	/** Set by another thread to have the counters reset by the thread running this probe */
+	private volatile boolean resetRequested = false;
+
+	/**
+	 * @param action memory written by the workload when it acts
+	 * @param sensor sensor feeding the workload
+	 */
+	public ActuatorProbe(Memory action, SyntheticSensor sensor)
+	{
+		this.action = action;
+		this.sensor = sensor;
+		this.lastVersion = action.getVersion();
+		addInput(action);
+	}
+
+	@Override
+	public void accessMemoryObjects()
+	{
+	}
+
+	@Override
+	public void calculateActivation()
+	{
+	}
+
+	@Override
+	public void proc()
+	{
+		observe();
+	}
+
+	/**
+	 * Counts one cycle and, if the action memory changed, records the latency of the action.
+	 * Must not be called by more than one thread at the same time.
+	 */
+	public void observe()
+	{
+		long now = System.nanoTime();
+
+		if(resetRequested)
+		{
+			latencies.reset();
+			cycles = 0;
+			actions = 0;
+			resetRequested = false;
+		}
+
+		long version = action.getVersion();
+		if(version != lastVersion)
+		{
+			lastVersion = version;
+			latencies.record(now - sensor.getLastSenseTime());
+			actions++;
+		}
+		cycles++;
+	}
+
+	/**
+	 * Discards the cycles, actions and latencies counted so far. Takes effect on the next call to
+	 * {@link #observe()}, which makes it safe to call from any thread.
+	 */
+	public void reset()
+	{
+		resetRequested = true;
+	}
+
+	/**
+	 * @return the number of cycles observed
+	 */
+	public long getCycles()
+	{
+		return resetRequested ? 0L : cycles;
+	}
+
+	/**
+	 * @return the number of actions observed
+	 */
+	public long getActions()
+	{
+		return resetRequested ? 0L : actions;
+	}
+
+	/**
+	 * @return the sense-to-act latencies of the actions observed
+	 */
+	public LatencyHistogram getLatencies()
+	{
+		return latencies;
+	}
+}
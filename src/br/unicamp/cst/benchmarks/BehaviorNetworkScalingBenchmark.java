@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import br.unicamp.cst.behavior.bn.Behavior;
+import br.unicamp.cst.behavior.bn.BehaviorNetwork;
+import br.unicamp.cst.behavior.bn.GlobalVariables;
+import br.unicamp.cst.behavior.bn.SpreadingActivationEngine;
+import br.unicamp.cst.core.entities.Memory;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.Mind;
+import br.unicamp.cst.memory.WorkingStorage;
+
+/**
+ * Measures how the steps of a behavior network scale with its size and with the number of threads.
+ *
+ * For each size, it builds the chain network of BehaviorNetworkWorkload and steps it: by calling proc() on
+ * every behavior in turn, as SingleThreadBHCodelet does, by its SpreadingActivationEngine in the calling
+ * thread, and by the engine partitioned across ForkJoinPools of 1, 2, 4, ... threads, up to the number of
+ * processors. It reports the steps and behavior updates per second of each mode, and its speedup over the
+ * engine in the calling thread.
+ *
+ * Usage: BehaviorNetworkScalingBenchmark [durationPerModeInMillis [numberOfBehaviors...]]
+ */
+public class BehaviorNetworkScalingBenchmark
+{
+	public static void main(String[] args) throws Exception
+	{
+		long duration = args.length > 0 ? Long.parseLong(args[0]) : 3000L;
+		int[] sizes = {1000, 10000, 100000};
+		if(args.length > 1)
+		{
+			sizes = new int[args.length - 1];
+			for(int i = 1; i < args.length; i++)
+			{
+				sizes[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		System.out.println("Processors: "+processors+", duration per mode: "+duration+" ms");
+		System.out.println(String.format("%-10s %-8s %12s %14s %10s", "behaviors", "mode", "steps/s", "updates/s", "speedup"));
+
+		for(int size : sizes)
+		{
+			run(size, duration, processors);
+		}
+	}
+
+	private static void run(int size, long duration, int processors) throws Exception
+	{
+		final ChainNetwork network = new ChainNetwork(size);
+		final SpreadingActivationEngine engine = network.bn.getSpreadingActivationEngine();
+
+		double perBehavior = measure(network, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for(Behavior be : network.bn.getBehaviors())
+				{
+					be.proc();
+				}
+			}
+		}, duration);
+
+		Runnable step = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				engine.step();
+			}
+		};
+
+		engine.setForkJoinPool(null);
+		double sequential = measure(network, step, duration);
+
+		print(size, "proc", perBehavior, sequential);
+		print(size, "engine", sequential, sequential);
+
+		List<Integer> threadCounts = new ArrayList<Integer>();
+		for(int threads = 1; threads < processors; threads *= 2)
+		{
+			threadCounts.add(threads);
+		}
+		threadCounts.add(processors);
+
+		for(int threads : threadCounts)
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try
+			{
+				engine.setForkJoinPool(pool);
+				print(size, "fj-"+threads, measure(network, step, duration), sequential);
+			}finally
+			{
+				engine.setForkJoinPool(null);
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * @return steps per second, after a warm up of a quarter of the duration
+	 */
+	private static double measure(ChainNetwork network, Runnable step, long duration)
+	{
+		run(network, step, duration / 4);
+		return run(network, step, duration);
+	}
+
+	private static double run(ChainNetwork network, Runnable step, long duration)
+	{
+		long steps = 0;
+		long start = System.nanoTime();
+		long end = start + duration * 1000000L;
+		long now;
+		do
+		{
+			network.sense();
+			step.run();
+			steps++;
+			now = System.nanoTime();
+		}while(now < end);
+
+		return steps / ((now - start) / 1e9);
+	}
+
+	private static void print(int size, String mode, double stepsPerSecond, double sequential)
+	{
+		System.out.println(String.format("%-10d %-8s %12.1f %14.0f %9.2fx", size, mode, stepsPerSecond, stepsPerSecond * size, stepsPerSecond / sequential));
+	}
+
+	/**
+	 * The chain network of BehaviorNetworkWorkload: behavior i needs proposition P_i, adds P_i+1 and deletes P_i,
+	 * the goal is the last proposition, and two world state memories move along the chain at each step.
+	 */
+	private static class ChainNetwork
+	{
+		final BehaviorNetwork bn;
+
+		private final String[] names;
+
+		private final MemoryObject[] worldState = new MemoryObject[2];
+
+		private long tick = 0;
+
+		ChainNetwork(int size)
+		{
+			Mind mind = new Mind();
+			WorkingStorage ws = new WorkingStorage(size * 4 + 16, mind.getRawMemory());
+			bn = new BehaviorNetwork(mind.getCodeRack(), ws);
+			GlobalVariables globalVariables = new GlobalVariables();
+
+			names = new String[size + 1];
+			Memory[] propositions = new Memory[size + 1];
+			for(int i = 0; i <= size; i++)
+			{
+				names[i] = "P_" + i;
+				propositions[i] = mind.createMemoryObject("PROPOSITION", names[i]);
+			}
+
+			ws.putMemoryObject(mind.createMemoryObject("ONCE_ONLY_GOAL", names[size]));
+			for(int i = 0; i < worldState.length; i++)
+			{
+				worldState[i] = mind.createMemoryObject("WORLD_STATE", names[0]);
+				ws.putMemoryObject(worldState[i]);
+			}
+
+			for(int i = 0; i < size; i++)
+			{
+				ChainBehavior behavior = new ChainBehavior(ws, globalVariables);
+				behavior.setName("B_" + i);
+				behavior.addPreconList(propositions[i]);
+				behavior.addAddList(propositions[i + 1]);
+				behavior.addDelList(propositions[i]);
+				bn.addCodelet(behavior);
+			}
+			bn.setCoalition(new ArrayList<Behavior>(bn.getBehaviors()));
+		}
+
+		void sense()
+		{
+			int n = names.length - 1;
+			worldState[0].setI(names[(int) (tick % n)]);
+			worldState[1].setI(names[(int) ((tick * 5 + n / 2) % n)]);
+			tick++;
+		}
+	}
+
+	private static class ChainBehavior extends Behavior
+	{
+		ChainBehavior(WorkingStorage ws, GlobalVariables globalVariables)
+		{
+			super(ws, globalVariables);
+		}
+
+		@Override
+		public void accessMemoryObjects()
+		{
+		}
+
+		@Override
+		public void calculateActivation()
+		{
+		}
+
+		@Override
+		public void operation()
+		{
+		}
+	}
+}
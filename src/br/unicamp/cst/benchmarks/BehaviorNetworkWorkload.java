@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+
+package br.unicamp.cst.benchmarks;
+
+import java.util.ArrayList;
+
+import br.unicamp.cst.behavior.bn.Behavior;
+import br.unicamp.cst.behavior.bn.BehaviorNetwork;
+import br.unicamp.cst.behavior.bn.GlobalVariables;
+import br.unicamp.cst.core.entities.Memory;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.Mind;
+import br.unicamp.cst.memory.WorkingStorage;
+
+/**
+ * Maes behavior network with a chain of behaviors: behavior i needs proposition P_i, adds
+ * P_i+1 and deletes P_i, and the goal is the last proposition. The sensor moves two world state
+ * memories along the chain, so the executable behaviors change at every cycle, and the active
+ * behavior writes its name into the action memory.
+ *
+ * The size is the number of behaviors.
+ */
+public class BehaviorNetworkWorkload extends CognitiveWorkload
+{
+	@Override
+	public String getName()
+	{
+		return "bn";
+	}
+
+	@Override
+	public int getDefaultSize()
+	{
+		return 32;
+	}
+
+	@Override
+	public void build(Mind mind, int size)
+	{
+		WorkingStorage ws = new WorkingStorage(size * 4 + 16, mind.getRawMemory());
+		BehaviorNetwork bn = new BehaviorNetwork(mind.getCodeRack(), ws);
+		GlobalVariables globalVariables = new GlobalVariables();
+
+		final String[] names = new String[size + 1];
+		Memory[] propositions = new Memory[size + 1];
+		for(int i = 0; i <= size; i++)
+		{
+			names[i] = "P_" + i;
+			propositions[i] = mind.createMemoryObject("PROPOSITION", names[i]);
+		}
+
+		Memory goal = mind.createMemoryObject("ONCE_ONLY_GOAL", names[size]);
+		ws.putMemoryObject(goal);
+
+		final MemoryObject[] worldState = new MemoryObject[2];
+		for(int i = 0; i < worldState.length; i++)
+		{
+			worldState[i] = mind.createMemoryObject("WORLD_STATE", names[0]);
+			ws.putMemoryObject(worldState[i]);
+		}
+
+		final int n = size;
+		SyntheticSensor sensor = new SyntheticSensor()
+		{
+			@Override
+			public boolean sense(long tick)
+			{
+				worldState[0].setI(names[(int) (tick % n)]);
+				worldState[1].setI(names[(int) ((tick * 5 + n / 2) % n)]);
+				return true;
+			}
+		};
+		sensor.setName("bn sensor");
+		for(Memory mo : worldState)
+		{
+			sensor.addOutput(mo);
+		}
+		mind.insertCodelet(sensor);
+
+		MemoryObject action = mind.createMemoryObject("ACTION", "");
+
+		for(int i = 0; i < size; i++)
+		{
+			ChainBehavior behavior = new ChainBehavior(ws, globalVariables, action);
+			behavior.setName("B_" + i);
+			behavior.addPreconList(propositions[i]);
+			behavior.addAddList(propositions[i + 1]);
+			behavior.addDelList(propositions[i]);
+			mind.insertCodelet(behavior);
+			bn.addCodelet(behavior);
+		}
+		bn.setCoalition(new ArrayList<Behavior>(bn.getBehaviors()));
+
+		connect(sensor, action);
+	}
+
+	/**
+	 * Writes its name into the action memory when active.
+	 */
+	private static class ChainBehavior extends Behavior
+	{
+		private final MemoryObject action;
+
+		ChainBehavior(WorkingStorage ws, GlobalVariables globalVariables, MemoryObject action)
+		{
+			super(ws, globalVariables);
+			this.action = action;
+		}
+
+		@Override
+		public void accessMemoryObjects()
+		{
+		}
+
+		@Override
+		public void calculateActivation()
+		{
+			// the activation is spread by Behavior.proc()
+		}
+
+		@Override
+		public void operation()
+		{
+			action.setI(getName());
+		}
+	}
+}
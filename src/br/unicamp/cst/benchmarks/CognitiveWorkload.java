@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+
+package br.unicamp.cst.benchmarks;
+
+import br.unicamp.cst.core.entities.Memory;
+import br.unicamp.cst.core.entities.Mind;
+
+/**
+ * Reference cognitive workload run by the {@link MacroBenchmark}: a mind built from one of the
+ * toolkit's subsystems, fed by a {@link SyntheticSensor} and observed by an {@link ActuatorProbe}
+ * watching the memory where the subsystem writes its actions.
+ */
+public abstract class CognitiveWorkload
+{
+	private SyntheticSensor sensor;
+
+	private ActuatorProbe actuator;
+
+	/**
+	 * @return short name of this workload, used on the command line and in the baseline file
+	 */
+	public abstract String getName();
+
+	/**
+	 * @return size used when none is given, with the meaning described by {@link #build(Mind, int)}
+	 */
+	public abstract int getDefaultSize();
+
+	/**
+	 * Creates the memories and codelets of this workload in the given mind, including the sensor,
+	 * and calls {@link #connect(SyntheticSensor, Memory)}. The actuator probe is inserted by the
+	 * benchmark, if needed.
+	 *
+	 * @param mind empty mind
+	 * @param size scale of the workload, such as its number of behaviors or drives
+	 */
+	public abstract void build(Mind mind, int size);
+
+	/**
+	 * @return true if this workload runs in synchronous steps (see {@link Mind#step()}), false if its codelets free-run on their own threads
+	 */
+	public boolean isStepped()
+	{
+		return true;
+	}
+
+	/**
+	 * Stops the workload after the measurement.
+	 *
+	 * @param mind the mind given to build()
+	 */
+	public void shutDown(Mind mind)
+	{
+		mind.shutDown();
+	}
+
+	/**
+	 * Closes the sense-to-act loop measured by the benchmark.
+	 *
+	 * @param sensor sensor feeding this workload, already inserted in the mind
+	 * @param action memory written when this workload acts
+	 */
+	protected void connect(SyntheticSensor sensor, Memory action)
+	{
+		this.sensor = sensor;
+		this.actuator = new ActuatorProbe(action, sensor);
+		this.actuator.setName(getName()+" actuator");
+	}
+
+	/**
+	 * @return the sensor feeding this workload
+	 */
+	public SyntheticSensor getSensor()
+	{
+		return sensor;
+	}
+
+	/**
+	 * @return the probe observing the actions of this workload
+	 */
+	public ActuatorProbe getActuator()
+	{
+		return actuator;
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+
+package br.unicamp.cst.benchmarks;
+
+import br.unicamp.cst.behavior.glas.Cognit;
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.Memory;
+import br.unicamp.cst.core.entities.Mind;
+import br.unicamp.cst.core.entities.RawMemory;
+import br.unicamp.cst.learning.glas.LearnerCodelet;
+import br.unicamp.cst.memory.WorkingStorage;
+
+/**
+ * GLAS learning loop (see {@link Cognit}): the sensor presents a stimulus, the action selection
+ * codelet answers it, an environment codelet rewards the action if it is the expected one for
+ * the stimulus, and the sequence builder records the event. The learner learns a new solution
+ * tree from the last {@link #LEARNING_WINDOW} events, every {@link #LEARNING_WINDOW} events.
+ *
+ * The size is the number of stimuli, which is also the number of actions.
+ */
+public class GlasWorkload extends CognitiveWorkload
+{
+	/** Number of events between learning runs, and learned from at each run */
+	public static final int LEARNING_WINDOW = 20;
+
+	private static final String TRUE = String.valueOf(true);
+
+	private static final String FALSE = String.valueOf(false);
+
+	@Override
+	public String getName()
+	{
+		return "glas";
+	}
+
+	@Override
+	public int getDefaultSize()
+	{
+		return 3;
+	}
+
+	@Override
+	public void build(Mind mind, final int size)
+	{
+		RawMemory rawMemory = mind.getRawMemory();
+		WorkingStorage ws = new WorkingStorage(64, rawMemory);
+
+		Cognit cognit = new Cognit(size, size, mind.getCodeRack(), rawMemory, ws);
+		LearnerCodelet learner = cognit.getLearnerCodelet();
+		learner.setMaxEventsSequenceLenght(LEARNING_WINDOW);
+		learner.setMaxNumberOfNodes(3);
+
+		final Memory stimulus = first(rawMemory, "STIMULUS");
+		final Memory newStimulus = first(rawMemory, "NEW_STIM");
+		final Memory action = first(rawMemory, "ACTION");
+		final Memory newAction = first(rawMemory, "NEW_ACTION");
+		final Memory reward = first(rawMemory, "REWARD");
+		final Memory newReward = first(rawMemory, "NEW_REWARD");
+
+		SyntheticSensor sensor = new SyntheticSensor()
+		{
+			@Override
+			public boolean sense(long tick)
+			{
+				// waits until the sequence builder records the previous event
+				if(!FALSE.equals(newStimulus.getI()))
+					return false;
+
+				stimulus.setI(String.valueOf((tick * 7 + tick / 3) % size));
+				newStimulus.setI(TRUE);
+				return true;
+			}
+		};
+		sensor.setName("glas sensor");
+		sensor.addInput(newStimulus);
+		sensor.addOutput(stimulus);
+		sensor.addOutput(newStimulus);
+		mind.insertCodelet(sensor);
+
+		Codelet environment = new Codelet()
+		{
+			@Override
+			public void accessMemoryObjects()
+			{
+			}
+
+			@Override
+			public void calculateActivation()
+			{
+			}
+
+			@Override
+			public void proc()
+			{
+				if(TRUE.equals(newAction.getI()) && !TRUE.equals(newReward.getI()))
+				{
+					int expected = (Integer.parseInt((String) stimulus.getI()) + 1) % size;
+					boolean right = String.valueOf(expected).equals(action.getI());
+
+					reward.setI(right ? "1" : "-1");
+					newReward.setI(TRUE);
+				}
+			}
+		};
+		environment.setName("glas environment");
+		environment.addInput(stimulus);
+		environment.addInput(action);
+		environment.addInput(newAction);
+		environment.addOutput(reward);
+		environment.addOutput(newReward);
+		mind.insertCodelet(environment);
+
+		connect(sensor, action);
+	}
+
+	private static Memory first(RawMemory rawMemory, String name)
+	{
+		return rawMemory.getAllOfType(name).get(0);
+	}
+}
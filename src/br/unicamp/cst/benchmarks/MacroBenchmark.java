@@ -0,0 +1,407 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+
+package br.unicamp.cst.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import br.unicamp.cst.core.entities.LatencyHistogram;
+import br.unicamp.cst.core.entities.Mind;
+
+/**
+ * Runs the reference cognitive workloads end to end and reports, for each one:
+ * <ul>
+ * <li>cognitive cycles per second: synchronous steps of the mind, or runs of the actuator for free-running workloads;</li>
+ * <li>actions per second, and the sense-to-act latency percentiles of those actions;</li>
+ * <li>allocation rate, per second and per cycle, over all threads;</li>
+ * <li>number of threads started by the workload.</li>
+ * </ul>
+ *
+ * The results can be saved as a baseline (-save) and later runs compared to it: the metrics worse than the
+ * baseline by more than the tolerance (cycles per second lower, or latency, allocation or threads higher)
+ * are reported. With -check, the run then fails with exit code 1, or 2 if there is no baseline.
+ * Baselines depend on the machine, so none is shipped: save one on the machine running the comparisons.
+ *
+ * Usage: MacroBenchmark [-duration millis] [-warmup millis] [-size n] [-baseline file] [-tolerance fraction] [-save | -check] [workload ...]
+ * where the workloads are bn, glas, motivational and subsumption (all of them by default).
+ */
+public class MacroBenchmark
+{
+	public static final String DEFAULT_BASELINE_FILE = "benchmarks/macro-baseline.properties";
+
+	/** Relative change from the baseline tolerated before failing */
+	public static final double DEFAULT_TOLERANCE = 0.3d;
+
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws InterruptedException, IOException
+	{
+		long duration = 10000L;
+		long warmup = 3000L;
+		int size = -1;
+		double tolerance = DEFAULT_TOLERANCE;
+		File baselineFile = new File(DEFAULT_BASELINE_FILE);
+		boolean save = false;
+		boolean check = false;
+		List<String> names = new ArrayList<String>();
+
+		for(int i = 0; i < args.length; i++)
+		{
+			if(args[i].equals("-duration"))
+				duration = Long.parseLong(args[++i]);
+			else if(args[i].equals("-warmup"))
+				warmup = Long.parseLong(args[++i]);
+			else if(args[i].equals("-size"))
+				size = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-tolerance"))
+				tolerance = Double.parseDouble(args[++i]);
+			else if(args[i].equals("-baseline"))
+				baselineFile = new File(args[++i]);
+			else if(args[i].equals("-save"))
+				save = true;
+			else if(args[i].equals("-check"))
+				check = true;
+			else
+				names.add(args[i]);
+		}
+
+		List<CognitiveWorkload> workloads = new ArrayList<CognitiveWorkload>();
+		for(CognitiveWorkload workload : getWorkloads())
+		{
+			if(names.isEmpty() || names.contains(workload.getName()))
+				workloads.add(workload);
+		}
+		if(workloads.isEmpty())
+		{
+			System.out.println("Unknown workloads: "+names);
+			System.exit(2);
+		}
+
+		Properties baseline = new Properties();
+		if(baselineFile.exists())
+		{
+			InputStream in = new FileInputStream(baselineFile);
+			try
+			{
+				baseline.load(in);
+			}finally
+			{
+				in.close();
+			}
+		}
+
+		List<Result> results = new ArrayList<Result>();
+		List<String> regressions = new ArrayList<String>();
+		for(CognitiveWorkload workload : workloads)
+		{
+			int workloadSize = size > 0 ? size : workload.getDefaultSize();
+			System.out.println("Running "+workload.getName()+"."+workloadSize+"...");
+			Result result = run(workload, workloadSize, warmup, duration);
+			results.add(result);
+
+			if(save)
+				result.store(baseline);
+			else
+				result.compare(baseline, tolerance, regressions);
+		}
+
+		// printed at the end, since some subsystems print their progress while running
+		System.out.println();
+		System.out.println("Duration: "+duration+" ms, warm-up: "+warmup+" ms, processors: "+Runtime.getRuntime().availableProcessors()+", java "+System.getProperty("java.version"));
+		System.out.println(String.format("%-22s %12s %12s %10s %10s %10s %12s %12s %8s", "workload", "cycles/s", "actions/s", "p50 (us)", "p99 (us)", "max (us)", "alloc (MB/s)", "alloc (B/cy)", "threads"));
+		for(Result result : results)
+		{
+			System.out.println(result);
+		}
+
+		if(save)
+		{
+			store(baseline, baselineFile);
+			System.out.println("Baseline saved to "+baselineFile);
+		}else if(baseline.isEmpty())
+		{
+			System.out.println("No baseline in "+baselineFile+" to compare with (save one with -save)");
+			if(check)
+				System.exit(2);
+		}
+
+		for(String regression : regressions)
+		{
+			System.out.println("REGRESSION "+regression);
+		}
+
+		// some workloads leave threads behind, such as subsumption actions still paused
+		System.exit(check && !regressions.isEmpty() ? 1 : 0);
+	}
+
+	/**
+	 * @return all the reference workloads
+	 */
+	public static List<CognitiveWorkload> getWorkloads()
+	{
+		List<CognitiveWorkload> workloads = new ArrayList<CognitiveWorkload>();
+		workloads.add(new BehaviorNetworkWorkload());
+		workloads.add(new GlasWorkload());
+		workloads.add(new MotivationalWorkload());
+		workloads.add(new SubsumptionWorkload());
+		return workloads;
+	}
+
+	/**
+	 * Builds the workload in a new mind, runs it for the warm-up time, and then measures it.
+	 *
+	 * @param workload workload to be run
+	 * @param size scale of the workload
+	 * @param warmup warm-up time in milliseconds
+	 * @param duration measurement time in milliseconds
+	 * @return the measurements
+	 */
+	public static Result run(CognitiveWorkload workload, int size, long warmup, long duration) throws InterruptedException
+	{
+		int threadsBefore = threadMXBean.getThreadCount();
+		String threadName = Thread.currentThread().getName();
+
+		Mind mind = new Mind();
+		workload.build(mind, size);
+		// behaviors rename the thread creating them
+		Thread.currentThread().setName(threadName);
+
+		ActuatorProbe actuator = workload.getActuator();
+
+		if(workload.isStepped())
+		{
+			long end = System.nanoTime() + warmup * 1000000L;
+			while(System.nanoTime() < end)
+			{
+				mind.step();
+				actuator.observe();
+			}
+		}else
+		{
+			mind.insertCodelet(actuator);
+			mind.start();
+			Thread.sleep(warmup);
+		}
+
+		actuator.reset();
+		threadMXBean.resetPeakThreadCount();
+		long allocatedBefore = getAllocatedBytes();
+		long begin = System.nanoTime();
+
+		if(workload.isStepped())
+		{
+			long end = begin + duration * 1000000L;
+			while(System.nanoTime() < end)
+			{
+				mind.step();
+				actuator.observe();
+			}
+		}else
+		{
+			Thread.sleep(duration);
+		}
+
+		long nanos = System.nanoTime() - begin;
+		long allocated = getAllocatedBytes();
+		Result result = new Result(workload.getName()+"."+size, actuator, nanos, allocatedBefore >= 0 ? allocated - allocatedBefore : -1L, threadMXBean.getPeakThreadCount() - threadsBefore);
+
+		workload.shutDown(mind);
+
+		// waits for the threads of this workload to finish, so they are not counted in the next one
+		long end = System.currentTimeMillis() + 2000L;
+		while(threadMXBean.getThreadCount() > threadsBefore && System.currentTimeMillis() < end)
+		{
+			Thread.sleep(10L);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return bytes allocated so far by the live threads, or -1 if the JVM does not measure it
+	 */
+	private static long getAllocatedBytes()
+	{
+		if(!(threadMXBean instanceof com.sun.management.ThreadMXBean))
+			return -1L;
+
+		com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+		if(!allocationMXBean.isThreadAllocatedMemorySupported() || !allocationMXBean.isThreadAllocatedMemoryEnabled())
+			return -1L;
+
+		long total = 0L;
+		for(long bytes : allocationMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds()))
+		{
+			if(bytes > 0)
+				total += bytes;
+		}
+		return total;
+	}
+
+	/**
+	 * Writes the baseline sorted by key, so that its changes are easy to review.
+	 */
+	private static void store(Properties baseline, File file) throws IOException
+	{
+		if(file.getParentFile() != null)
+			file.getParentFile().mkdirs();
+
+		Map<String, String> sorted = new TreeMap<String, String>();
+		for(String key : baseline.stringPropertyNames())
+		{
+			sorted.put(key, baseline.getProperty(key));
+		}
+
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1"));
+		try
+		{
+			out.println("# Baselines of br.unicamp.cst.benchmarks.MacroBenchmark, written by its -save option.");
+			out.println("# Keys are workload.size.metric. They depend on the machine: save them where the comparisons run.");
+			out.println("# Saved with "+Runtime.getRuntime().availableProcessors()+" processors, java "+System.getProperty("java.version"));
+			for(Map.Entry<String, String> entry : sorted.entrySet())
+			{
+				out.println(entry.getKey()+"="+entry.getValue());
+			}
+		}finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Measurements of one run of a workload.
+	 */
+	public static class Result
+	{
+		private final String key;
+
+		private final double cyclesPerSecond;
+
+		private final double actionsPerSecond;
+
+		private final long p50;
+
+		private final long p99;
+
+		private final long max;
+
+		private final double allocatedBytesPerSecond;
+
+		private final double allocatedBytesPerCycle;
+
+		private final int threads;
+
+		Result(String key, ActuatorProbe actuator, long nanos, long allocatedBytes, int threads)
+		{
+			double seconds = nanos / 1e9;
+			long cycles = actuator.getCycles();
+			LatencyHistogram latencies = actuator.getLatencies();
+
+			this.key = key;
+			this.cyclesPerSecond = cycles / seconds;
+			this.actionsPerSecond = actuator.getActions() / seconds;
+			this.p50 = latencies.getPercentile(50.0d);
+			this.p99 = latencies.getPercentile(99.0d);
+			this.max = latencies.getMax();
+			this.allocatedBytesPerSecond = allocatedBytes >= 0 ? allocatedBytes / seconds : -1.0d;
+			this.allocatedBytesPerCycle = allocatedBytes >= 0 && cycles > 0 ? (double) allocatedBytes / cycles : -1.0d;
+			this.threads = Math.max(0, threads);
+		}
+
+		public double getCyclesPerSecond()
+		{
+			return cyclesPerSecond;
+		}
+
+		public double getActionsPerSecond()
+		{
+			return actionsPerSecond;
+		}
+
+		/**
+		 * @return the 99th percentile of the sense-to-act latency, in nanoseconds
+		 */
+		public long getP99Latency()
+		{
+			return p99;
+		}
+
+		public double getAllocatedBytesPerCycle()
+		{
+			return allocatedBytesPerCycle;
+		}
+
+		public int getThreads()
+		{
+			return threads;
+		}
+
+		void store(Properties baseline)
+		{
+			baseline.setProperty(key+".cyclesPerSecond", String.format(Locale.ROOT, "%.1f", cyclesPerSecond));
+			baseline.setProperty(key+".p99LatencyNanos", String.valueOf(p99));
+			baseline.setProperty(key+".allocatedBytesPerCycle", String.format(Locale.ROOT, "%.1f", allocatedBytesPerCycle));
+			baseline.setProperty(key+".threads", String.valueOf(threads));
+		}
+
+		void compare(Properties baseline, double tolerance, List<String> regressions)
+		{
+			double base = get(baseline, "cyclesPerSecond");
+			if(base > 0 && cyclesPerSecond < base * (1.0d - tolerance))
+				regressions.add(describe("cycles/s", cyclesPerSecond, base));
+
+			base = get(baseline, "p99LatencyNanos");
+			if(base > 0 && p99 > base * (1.0d + tolerance))
+				regressions.add(describe("p99 latency (ns)", p99, base));
+
+			base = get(baseline, "allocatedBytesPerCycle");
+			if(base >= 0 && allocatedBytesPerCycle >= 0 && allocatedBytesPerCycle > base * (1.0d + tolerance))
+				regressions.add(describe("allocated bytes/cycle", allocatedBytesPerCycle, base));
+
+			base = get(baseline, "threads");
+			if(base >= 0 && threads > Math.ceil(base * (1.0d + tolerance)))
+				regressions.add(describe("threads", threads, base));
+		}
+
+		private double get(Properties baseline, String metric)
+		{
+			String value = baseline.getProperty(key+"."+metric);
+			return value != null ? Double.parseDouble(value) : -1.0d;
+		}
+
+		private String describe(String metric, double value, double base)
+		{
+			return String.format("%s %s: %.1f, baseline %.1f (%+.0f%%)", key, metric, value, base, (value - base) * 100.0d / base);
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%-22s %12.1f %12.1f %10.1f %10.1f %10.1f %12.1f %12.0f %8d", key, cyclesPerSecond, actionsPerSecond, p50 / 1e3, p99 / 1e3, max / 1e3,
+					allocatedBytesPerSecond / (1024.0d * 1024.0d), allocatedBytesPerCycle, threads);
+		}
+	}
+}
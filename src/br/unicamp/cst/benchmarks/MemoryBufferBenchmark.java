@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import br.unicamp.cst.core.entities.MemoryBuffer;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.SpscMemoryBuffer;
+
+/**
+ * Measures the throughput of memory buffers at several capacities:
+ * <ul>
+ * <li>list: a full buffer on an ArrayList, removing its first element at each put (how MemoryBuffer used to work);</li>
+ * <li>ring: a full MemoryBuffer, at each put, on a single thread;</li>
+ * <li>ring 1P1C: a MemoryBuffer with one producer and one consumer thread;</li>
+ * <li>spsc 1P1C: a SpscMemoryBuffer with one producer and one consumer thread.</li>
+ * </ul>
+ *
+ * Usage: MemoryBufferBenchmark [durationInMillis]
+ */
+public class MemoryBufferBenchmark
+{
+	private static final int[] CAPACITIES = {16, 1024, 65536};
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		long duration = args.length > 0 ? Long.parseLong(args[0]) : 2000L;
+
+		MemoryObject[] contents = new MemoryObject[1024];
+		for(int i = 0; i < contents.length; i++)
+		{
+			contents[i] = new MemoryObject();
+			contents[i].setI(i);
+		}
+
+		System.out.println(String.format("%-12s %10s %16s", "buffer", "capacity", "ops/s"));
+
+		for(int capacity : CAPACITIES)
+		{
+			print("list", capacity, list(capacity, contents, duration));
+			print("ring", capacity, ring(capacity, contents, duration));
+			print("ring 1P1C", capacity, ringProducerConsumer(capacity, contents, duration));
+			print("spsc 1P1C", capacity, spscProducerConsumer(capacity, contents, duration));
+		}
+	}
+
+	private static void print(String buffer, int capacity, double opsPerSecond)
+	{
+		System.out.println(String.format("%-12s %10d %16.0f", buffer, capacity, opsPerSecond));
+	}
+
+	private static double list(int capacity, MemoryObject[] contents, long duration)
+	{
+		ArrayList<MemoryObject> list = new ArrayList<MemoryObject>();
+		for(int i = 0; i < capacity; i++)
+		{
+			list.add(contents[i % contents.length]);
+		}
+
+		long ops = 0;
+		long begin = System.nanoTime();
+		long end = begin + duration * 1000000L;
+		long now;
+		do
+		{
+			for(int i = 0; i < 256; i++)
+			{
+				list.remove(0);
+				list.add(contents[(int) (ops++ & (contents.length - 1))]);
+			}
+			now = System.nanoTime();
+		}while(now < end);
+
+		return ops / ((now - begin) / 1e9);
+	}
+
+	private static double ring(int capacity, MemoryObject[] contents, long duration)
+	{
+		MemoryBuffer buffer = new MemoryBuffer(capacity, null);
+		for(int i = 0; i < capacity; i++)
+		{
+			buffer.put(contents[i % contents.length]);
+		}
+
+		long ops = 0;
+		long begin = System.nanoTime();
+		long end = begin + duration * 1000000L;
+		long now;
+		do
+		{
+			for(int i = 0; i < 256; i++)
+			{
+				buffer.put(contents[(int) (ops++ & (contents.length - 1))]);
+			}
+			now = System.nanoTime();
+		}while(now < end);
+
+		return ops / ((now - begin) / 1e9);
+	}
+
+	private static double ringProducerConsumer(int capacity, final MemoryObject[] contents, long duration) throws InterruptedException
+	{
+		final MemoryBuffer buffer = new MemoryBuffer(capacity, null);
+
+		return producerConsumer(new Runnable()
+		{
+			private int i = 0;
+
+			@Override
+			public void run()
+			{
+				// the consumer keeps up, so the producer never waits
+				buffer.put(contents[i++ & (contents.length - 1)]);
+			}
+		}, new Consumer()
+		{
+			@Override
+			public boolean consume()
+			{
+				return buffer.pop() != null;
+			}
+		}, duration);
+	}
+
+	private static double spscProducerConsumer(int capacity, final MemoryObject[] contents, long duration) throws InterruptedException
+	{
+		final SpscMemoryBuffer buffer = new SpscMemoryBuffer(capacity);
+
+		return producerConsumer(new Runnable()
+		{
+			private int i = 0;
+
+			@Override
+			public void run()
+			{
+				if(buffer.put(contents[i & (contents.length - 1)]))
+					i++;
+				else
+					Thread.yield();
+			}
+		}, new Consumer()
+		{
+			@Override
+			public boolean consume()
+			{
+				return buffer.pop() != null;
+			}
+		}, duration);
+	}
+
+	private interface Consumer
+	{
+		/**
+		 * @return false if there was nothing to consume
+		 */
+		boolean consume();
+	}
+
+	/**
+	 * Runs a producer and a consumer thread for the given duration.
+	 *
+	 * @return number of memory objects consumed per second
+	 */
+	private static double producerConsumer(final Runnable put, final Consumer pop, long duration) throws InterruptedException
+	{
+		final AtomicLong consumed = new AtomicLong();
+		final AtomicBoolean stop = new AtomicBoolean(false);
+
+		Thread producer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				while(!stop.get())
+				{
+					for(int i = 0; i < 256; i++)
+					{
+						put.run();
+					}
+					// lets the consumer run when both share a processor
+					Thread.yield();
+				}
+			}
+		});
+
+		Thread consumer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				long count = 0;
+				while(!stop.get())
+				{
+					if(pop.consume())
+						count++;
+					else
+						Thread.yield();
+				}
+				consumed.set(count);
+			}
+		});
+
+		long begin = System.nanoTime();
+		producer.start();
+		consumer.start();
+		Thread.sleep(duration);
+		stop.set(true);
+		producer.join();
+		consumer.join();
+		double seconds = (System.nanoTime() - begin) / 1e9;
+
+		return consumed.get() / seconds;
+	}
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.Mind;
+
+/**
+ * Measures reads and writes of memory objects shared by many codelets.
+ *
+ * Each codelet runs continuously (timeStep 0) on its own thread, reading every shared memory
+ * object and writing one of them at each cycle. Besides the number of reads and writes per second,
+ * it reports how many times and for how long the codelet threads were blocked on a monitor,
+ * which should stay at zero since MemoryObject reads and writes do not lock.
+ *
+ * Usage: MemoryObjectBenchmark [numberOfCodelets [numberOfMemoryObjects [durationInMillis]]]
+ */
+public class MemoryObjectBenchmark
+{
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		int numberOfCodelets = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int numberOfMemoryObjects = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		long duration = args.length > 2 ? Long.parseLong(args[2]) : 5000L;
+
+		if(threadMXBean.isThreadContentionMonitoringSupported())
+			threadMXBean.setThreadContentionMonitoringEnabled(true);
+
+		Mind mind = new Mind();
+
+		List<MemoryObject> memoryObjects = new ArrayList<MemoryObject>();
+		for(int i = 0; i < numberOfMemoryObjects; i++)
+		{
+			memoryObjects.add(mind.createMemoryObject("SHARED_"+i, 0L));
+		}
+
+		List<ReadWriteCodelet> codelets = new ArrayList<ReadWriteCodelet>();
+		for(int i = 0; i < numberOfCodelets; i++)
+		{
+			ReadWriteCodelet co = new ReadWriteCodelet(memoryObjects, i % numberOfMemoryObjects);
+			mind.insertCodelet(co);
+			codelets.add(co);
+		}
+
+		mind.start();
+		Thread.sleep(Math.min(1000L, duration)); // warm up
+
+		long readsBefore = 0, writesBefore = 0, blockedCountBefore = 0, blockedTimeBefore = 0;
+		for(ReadWriteCodelet co : codelets)
+		{
+			readsBefore += co.reads;
+			writesBefore += co.writes;
+			ThreadInfo info = threadMXBean.getThreadInfo(co.threadId);
+			if(info != null)
+			{
+				blockedCountBefore += info.getBlockedCount();
+				blockedTimeBefore += info.getBlockedTime();
+			}
+		}
+
+		long begin = System.nanoTime();
+		Thread.sleep(duration);
+
+		long reads = 0, writes = 0, blockedCount = 0, blockedTime = 0;
+		for(ReadWriteCodelet co : codelets)
+		{
+			reads += co.reads;
+			writes += co.writes;
+			ThreadInfo info = threadMXBean.getThreadInfo(co.threadId);
+			if(info != null)
+			{
+				blockedCount += info.getBlockedCount();
+				blockedTime += info.getBlockedTime();
+			}
+		}
+		double seconds = (System.nanoTime() - begin) / 1e9;
+
+		mind.shutDown();
+
+		System.out.println("Codelets: "+numberOfCodelets+", shared memory objects: "+numberOfMemoryObjects+", duration: "+duration+" ms");
+		System.out.println(String.format("reads/s: %.0f", (reads - readsBefore) / seconds));
+		System.out.println(String.format("writes/s: %.0f", (writes - writesBefore) / seconds));
+		System.out.println("times blocked on a monitor: "+(blockedCount - blockedCountBefore));
+		System.out.println("time blocked on a monitor (ms): "+(threadMXBean.isThreadContentionMonitoringEnabled() ? String.valueOf(blockedTime - blockedTimeBefore) : "not supported"));
+	}
+
+	/**
+	 * Reads all shared memory objects and increments one of them at every cycle.
+	 */
+	private static class ReadWriteCodelet extends Codelet
+	{
+		private final List<MemoryObject> memoryObjects;
+
+		private final MemoryObject written;
+
+		volatile long threadId = -1;
+
+		volatile long reads = 0;
+
+		volatile long writes = 0;
+
+		/** Keeps the reads from being optimized away */
+		long checksum = 0;
+
+		ReadWriteCodelet(List<MemoryObject> memoryObjects, int writtenIndex)
+		{
+			this.memoryObjects = memoryObjects;
+			this.written = memoryObjects.get(writtenIndex);
+		}
+
+		@Override
+		public void accessMemoryObjects()
+		{
+		}
+
+		@Override
+		public void calculateActivation()
+		{
+		}
+
+		@Override
+		public void proc()
+		{
+			if(threadId < 0)
+				threadId = Thread.currentThread().getId();
+
+			long sum = 0;
+			for(MemoryObject mo : memoryObjects)
+			{
+				sum += (Long) mo.getI();
+			}
+			reads += memoryObjects.size();
+			checksum += sum;
+
+			written.setI((Long) written.getI() + 1);
+			writes++;
+		}
+	}
+}
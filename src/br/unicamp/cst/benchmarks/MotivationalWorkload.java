@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+
+package br.unicamp.cst.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.Memory;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.Mind;
+import br.unicamp.cst.core.exceptions.CodeletActivationBoundsException;
+import br.unicamp.cst.memory.EpisodicMemory;
+import br.unicamp.cst.motivational.Appraisal;
+import br.unicamp.cst.motivational.Drive;
+import br.unicamp.cst.motivational.EmotionalCodelet;
+import br.unicamp.cst.motivational.Mood;
+import br.unicamp.cst.motivational.MoodCodelet;
+import br.unicamp.cst.motivational.MotivationalCodelet;
+
+/**
+ * Motivational pipeline: drive codelets compute their activation from the sensors, a collector
+ * codelet gathers the drives, a mood codelet turns them into a mood, and emotional codelets
+ * distort one drive each according to the mood. The action is the output of the first emotion.
+ *
+ * The size is the number of drives. There is one emotion for every 4 drives.
+ */
+public class MotivationalWorkload extends CognitiveWorkload
+{
+	private static final int SENSORS = 4;
+
+	@Override
+	public String getName()
+	{
+		return "motivational";
+	}
+
+	@Override
+	public int getDefaultSize()
+	{
+		return 16;
+	}
+
+	@Override
+	public void build(Mind mind, int size)
+	{
+		final MemoryObject[] sensors = new MemoryObject[SENSORS];
+		List<Memory> sensorList = new ArrayList<Memory>();
+		for(int i = 0; i < SENSORS; i++)
+		{
+			sensors[i] = mind.createMemoryObject("SENSOR_" + i, 0.0d);
+			sensorList.add(sensors[i]);
+		}
+		MemoryObject sensorsMO = mind.createMemoryObject(MotivationalCodelet.INPUT_SENSORS_MEMORY, sensorList);
+
+		SyntheticSensor sensor = new SyntheticSensor()
+		{
+			@Override
+			public boolean sense(long tick)
+			{
+				for(int i = 0; i < sensors.length; i++)
+				{
+					sensors[i].setI(((tick * (i + 3) + i * 17) % 100) / 100.0d);
+				}
+				return true;
+			}
+		};
+		sensor.setName("motivational sensor");
+		sensor.addOutputs(sensorList);
+		mind.insertCodelet(sensor);
+
+		final List<Memory> driveMOs = new ArrayList<Memory>();
+		for(int i = 0; i < size; i++)
+		{
+			try
+			{
+				SensorDrive drive = new SensorDrive("DRIVE_" + i, (i + 1.0d) / (size + 1.0d), i);
+				drive.addInput(sensorsMO);
+				drive.addInputs(sensorList);
+				MemoryObject driveMO = mind.createMemoryObject(MotivationalCodelet.OUTPUT_DRIVE_MEMORY);
+				drive.addOutput(driveMO);
+				driveMOs.add(driveMO);
+				mind.insertCodelet(drive);
+			}catch(CodeletActivationBoundsException e)
+			{
+				e.printStackTrace();
+			}
+		}
+
+		// gathers the drives in the list read by the mood and the map read by the emotions
+		final MemoryObject driveListMO = mind.createMemoryObject(MoodCodelet.INPUT_DRIVES_MEMORY, new ArrayList<Drive>());
+		final MemoryObject driveMapMO = mind.createMemoryObject(EmotionalCodelet.INPUT_DRIVES_MEMORY, new HashMap<Drive, Double>());
+		Codelet collector = new Codelet()
+		{
+			@Override
+			public void accessMemoryObjects()
+			{
+			}
+
+			@Override
+			public void calculateActivation()
+			{
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public void proc()
+			{
+				List<Drive> drives = new ArrayList<Drive>(driveMOs.size());
+				HashMap<Drive, Double> relevances = (HashMap<Drive, Double>) driveMapMO.getI();
+
+				for(int i = 0; i < driveMOs.size(); i++)
+				{
+					Drive drive = (Drive) driveMOs.get(i).getI();
+					if(drive != null)
+					{
+						drives.add(drive);
+						relevances.put(drive, 1.0d / (1 + i % 4));
+					}
+				}
+
+				driveListMO.setI(drives);
+				// the emotions keep the same map, so it is only changed in place
+				driveMapMO.setI(relevances);
+			}
+		};
+		collector.setName("drives collector");
+		collector.addInputs(driveMOs);
+		collector.addOutput(driveListMO);
+		collector.addOutput(driveMapMO);
+		mind.insertCodelet(collector);
+
+		MemoryObject moodMO = mind.createMemoryObject(MoodCodelet.OUTPUT_MOOD_MEMORY);
+		MoodCodelet mood = new DriveMood("MOOD");
+		mood.addInput(driveListMO);
+		mood.addInput(mind.createMemoryObject(MoodCodelet.INPUT_APPRAISAL_MEMORY, new Appraisal("NEUTRAL", "NEUTRAL", 0.5d, null, null)));
+		mood.addInput(mind.createMemoryObject(MoodCodelet.INPUT_EPISODIC_RECALL_MEMORY));
+		mood.addOutput(moodMO);
+		mind.insertCodelet(mood);
+
+		Memory action = null;
+		for(int i = 0; i < Math.max(1, size / 4); i++)
+		{
+			try
+			{
+				EmotionalCodelet emotion = new MoodDistortion("EMOTION_" + i);
+				emotion.addInput(driveMapMO);
+				emotion.addInput(moodMO);
+				emotion.addInput(driveMOs.get(i * 4));
+				MemoryObject emotionMO = mind.createMemoryObject(EmotionalCodelet.OUTPUT_AFFECTED_DRIVE_MEMORY);
+				emotion.addOutput(emotionMO);
+				mind.insertCodelet(emotion);
+
+				if(action == null)
+					action = emotionMO;
+			}catch(CodeletActivationBoundsException e)
+			{
+				e.printStackTrace();
+			}
+		}
+
+		connect(sensor, action);
+	}
+
+	/**
+	 * Primary drive whose activation is a weighted mean of the sensors.
+	 */
+	private static class SensorDrive extends MotivationalCodelet
+	{
+		private final int index;
+
+		SensorDrive(String name, double priority, int index) throws CodeletActivationBoundsException
+		{
+			super(name, 0.0d, priority, 0.5d, 0.8d, 0.2d);
+			this.index = index;
+		}
+
+		@Override
+		public double calculateSimpleActivation(List<Memory> sensors)
+		{
+			double sum = 0.0d;
+			double weights = 0.0d;
+			for(int i = 0; i < sensors.size(); i++)
+			{
+				double weight = (index + i) % 3 + 1;
+				sum += weight * (Double) sensors.get(i).getI();
+				weights += weight;
+			}
+			return weights > 0 ? sum / weights : 0.0d;
+		}
+
+		@Override
+		public double calculateUrgentActivation(List<Memory> sensors, List<Drive> listOfHighPriorityDrives)
+		{
+			double activation = calculateSimpleActivation(sensors);
+			return activation >= getUrgentActivationThreshold() ? activation : 0.0d;
+		}
+
+		@Override
+		public double calculateSecundaryDriveActivation(List<Memory> sensors, List<Drive> listOfDrives)
+		{
+			return 0.0d;
+		}
+	}
+
+	/**
+	 * Mood given by the mean activation of the drives.
+	 */
+	private static class DriveMood extends MoodCodelet
+	{
+		DriveMood(String name)
+		{
+			super(name);
+		}
+
+		@Override
+		public Mood moodGenerate(List<Drive> listOfDrives, Appraisal appraisal, EpisodicMemory episodicMemory)
+		{
+			double sum = 0.0d;
+			for(Drive drive : listOfDrives)
+			{
+				sum += drive.getActivation();
+			}
+			double value = listOfDrives.isEmpty() ? 0.0d : sum / listOfDrives.size();
+
+			return new Mood(getName(), value * appraisal.getEvaluation() * 2.0d);
+		}
+	}
+
+	/**
+	 * Emotion raising its drive with the mood.
+	 */
+	private static class MoodDistortion extends EmotionalCodelet
+	{
+		MoodDistortion(String name) throws CodeletActivationBoundsException
+		{
+			super(name);
+		}
+
+		@Override
+		public void accessMemoryObjects()
+		{
+			// the mood and the affected drive are read straight from the memories written by their codelets
+			if(getInputMoodMO() == null)
+				setInputMoodMO(getInput(MoodCodelet.OUTPUT_MOOD_MEMORY, 0));
+			if(getInputAffectedDriveMO() == null)
+				setInputAffectedDriveMO(getInput(MotivationalCodelet.OUTPUT_DRIVE_MEMORY, 0));
+
+			super.accessMemoryObjects();
+		}
+
+		@Override
+		public double calculateMoodFilterDistortion(List<Drive> listOfDrives, Mood mood)
+		{
+			if(mood == null || getInputAffectedDriveMO() == null || getInputAffectedDriveMO().getI() == null)
+				return 0.0d;
+
+			double activation = ((Drive) getInputAffectedDriveMO().getI()).getActivation();
+			return Math.max(0.0d, Math.min(1.0d, activation * (0.5d + mood.getValue())));
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+
+package br.unicamp.cst.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import br.unicamp.cst.behavior.subsumption.SubsumptionAction;
+import br.unicamp.cst.behavior.subsumption.SubsumptionArchitecture;
+import br.unicamp.cst.behavior.subsumption.SubsumptionBehaviourLayer;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.Mind;
+
+/**
+ * Subsumption architecture robot: the bottom layer wanders forward, and each layer above it
+ * suppresses the one below and turns away when the obstacle distance read by the sensor is
+ * below its threshold, which gets closer at each layer. All of them drive the same motor memory.
+ *
+ * Suppressed actions block their thread until they are resumed, so this workload free-runs,
+ * each codelet on its own thread and once every {@link #TIME_STEP} milliseconds, like a robot
+ * control loop. The size is the number of layers.
+ */
+public class SubsumptionWorkload extends CognitiveWorkload
+{
+	/** Time step of all the codelets, in milliseconds */
+	public static final long TIME_STEP = 1L;
+
+	private final List<SubsumptionAction> actions = new ArrayList<SubsumptionAction>();
+
+	@Override
+	public String getName()
+	{
+		return "subsumption";
+	}
+
+	@Override
+	public int getDefaultSize()
+	{
+		return 4;
+	}
+
+	@Override
+	public boolean isStepped()
+	{
+		return false;
+	}
+
+	@Override
+	public void build(Mind mind, int size)
+	{
+		final MemoryObject distance = mind.createMemoryObject("DISTANCE", 100.0d);
+		MemoryObject motor = mind.createMemoryObject("MOTOR", "");
+
+		SyntheticSensor sensor = new SyntheticSensor()
+		{
+			@Override
+			public boolean sense(long tick)
+			{
+				distance.setI((double) ((tick * 13) % 100));
+				return true;
+			}
+		};
+		sensor.setName("subsumption sensor");
+		sensor.setTimeStep(TIME_STEP);
+		sensor.addOutput(distance);
+		mind.insertCodelet(sensor);
+
+		connect(sensor, motor);
+		getActuator().setTimeStep(TIME_STEP);
+
+		SubsumptionArchitecture architecture = new SubsumptionArchitecture(mind);
+		SubsumptionAction below = null;
+
+		for(int i = 0; i < size; i++)
+		{
+			SubsumptionBehaviourLayer layer = new SubsumptionBehaviourLayer();
+			double threshold = 100.0d * (size - i) / size;
+			SubsumptionAction action = new MotorAction(architecture, (i == 0 ? "WANDER" : "AVOID_" + i), motor, distance, threshold);
+			action.setTimeStep(TIME_STEP);
+
+			layer.addAction(action);
+			layer.attachActionToSensor(action, sensor);
+			layer.attachActionToActuator(action, getActuator());
+			architecture.addLayer(layer);
+
+			if(below != null)
+				architecture.addSuppressedAction(action, below);
+
+			actions.add(action);
+			below = action;
+		}
+	}
+
+	@Override
+	public void shutDown(Mind mind)
+	{
+		super.shutDown(mind);
+
+		// lets the suppressed actions leave their pause and see they were stopped
+		for(SubsumptionAction action : actions)
+		{
+			action.resumeThread();
+		}
+	}
+
+	/**
+	 * Writes its name into the motor memory, suppressing the action below it while the
+	 * obstacle is closer than its threshold.
+	 */
+	private static class MotorAction extends SubsumptionAction
+	{
+		private final MemoryObject motor;
+
+		private final MemoryObject distance;
+
+		private final double threshold;
+
+		MotorAction(SubsumptionArchitecture architecture, String name, MemoryObject motor, MemoryObject distance, double threshold)
+		{
+			super(architecture, name);
+			this.motor = motor;
+			this.distance = distance;
+			this.threshold = threshold;
+		}
+
+		@Override
+		public boolean suppressCondition()
+		{
+			return (Double) distance.getI() < threshold;
+		}
+
+		@Override
+		public boolean inhibitCondition()
+		{
+			return false;
+		}
+
+		@Override
+		public void act()
+		{
+			motor.setI(getName());
+		}
+
+		@Override
+		public void accessMemoryObjects()
+		{
+		}
+
+		@Override
+		public void calculateActivation()
+		{
+		}
+	}
+}
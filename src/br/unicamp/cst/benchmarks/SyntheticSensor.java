@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+
+package br.unicamp.cst.benchmarks;
+
+import br.unicamp.cst.core.entities.Codelet;
+
+/**
+ * Sensor codelet feeding a {@link CognitiveWorkload} with synthetic readings, so that every run
+ * of a workload sees the same sequence of stimuli. Subclasses write the reading for each tick
+ * into their output memories.
+ */
+public abstract class SyntheticSensor extends Codelet
+{
+	/** Number of readings produced so far */
+	private volatile long ticks = 0;
+
+	/** Value of System.nanoTime() when the last reading was produced */
+	private volatile long lastSenseTime = System.nanoTime();
+
+	/**
+	 * Writes the reading for the given tick into the output memories.
+	 *
+	 * @param tick number of the reading, starting at 0
+	 * @return false if no reading was produced, e.g. because the previous one was not consumed yet
+	 */
+	public abstract boolean sense(long tick);
+
+	@Override
+	public void accessMemoryObjects()
+	{
+	}
+
+	@Override
+	public void calculateActivation()
+	{
+	}
+
+	@Override
+	public void proc()
+	{
+		long now = System.nanoTime();
+
+		if(sense(ticks))
+		{
+			lastSenseTime = now;
+			ticks++;
+		}
+	}
+
+	/**
+	 * @return the number of readings produced so far
+	 */
+	public long getTicks()
+	{
+		return ticks;
+	}
+
+	/**
+	 * @return the value of System.nanoTime() when the last reading was produced
+	 */
+	public long getLastSenseTime()
+	{
+		return lastSenseTime;
+	}
+}
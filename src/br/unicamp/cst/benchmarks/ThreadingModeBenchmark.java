@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.CodeletScheduler;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.Mind;
+import br.unicamp.cst.core.entities.VirtualThreadFactory;
+
+/**
+ * Compares the ways a Mind can run its codelets: one platform thread per codelet,
+ * a pooled CodeletScheduler and virtual threads (Java 21 or newer only).
+ *
+ * For each mode, it starts a mind with many small codelets, each one reading and writing its
+ * own memory object every timeStep, and reports the number of live threads, the heap used
+ * by the running mind and the number of codelet cycles per second.
+ *
+ * Usage: ThreadingModeBenchmark [numberOfCodelets [durationInMillis [timeStepInMillis]]]
+ */
+public class ThreadingModeBenchmark
+{
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		int numberOfCodelets = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		long duration = args.length > 1 ? Long.parseLong(args[1]) : 5000L;
+		long timeStep = args.length > 2 ? Long.parseLong(args[2]) : 10L;
+
+		System.out.println("Codelets: "+numberOfCodelets+", timeStep: "+timeStep+" ms, duration: "+duration+" ms");
+		System.out.println(String.format("%-10s %12s %12s %14s %16s", "mode", "threads", "peak threads", "heap used (MB)", "cycles/s"));
+
+		run("platform", numberOfCodelets, duration, timeStep);
+		run("pooled", numberOfCodelets, duration, timeStep);
+
+		if(VirtualThreadFactory.isSupported())
+			run("virtual", numberOfCodelets, duration, timeStep);
+		else
+			System.out.println(String.format("%-10s %s", "virtual", "not supported by this JVM (requires Java 21)"));
+	}
+
+	private static void run(String mode, int numberOfCodelets, long duration, long timeStep) throws InterruptedException
+	{
+		int threadsBefore = threadMXBean.getThreadCount();
+		long heapBefore = usedHeap();
+		threadMXBean.resetPeakThreadCount();
+
+		Mind mind;
+		if(mode.equals("pooled"))
+		{
+			mind = new Mind(new CodeletScheduler());
+		}else
+		{
+			mind = new Mind();
+			if(mode.equals("virtual"))
+				mind.setVirtualThreads(true);
+		}
+
+		List<CountingCodelet> codelets = new ArrayList<CountingCodelet>();
+		for(int i = 0; i < numberOfCodelets; i++)
+		{
+			CountingCodelet co = new CountingCodelet(mind.createMemoryObject("COUNTER_"+i, 0L));
+			co.setTimeStep(timeStep);
+			mind.insertCodelet(co);
+			codelets.add(co);
+		}
+
+		mind.start();
+		Thread.sleep(Math.min(1000L, duration)); // warm up
+
+		long cyclesBefore = countCycles(codelets);
+		long begin = System.nanoTime();
+		Thread.sleep(duration);
+		long cycles = countCycles(codelets) - cyclesBefore;
+		double seconds = (System.nanoTime() - begin) / 1e9;
+
+		int threads = threadMXBean.getThreadCount() - threadsBefore;
+		int peakThreads = threadMXBean.getPeakThreadCount() - threadsBefore;
+		double heap = (usedHeap() - heapBefore) / (1024.0 * 1024.0);
+
+		mind.shutDown();
+		waitForThreads(threadsBefore, 10000L);
+
+		System.out.println(String.format("%-10s %12d %12d %14.1f %16.0f", mode, threads, peakThreads, heap, cycles / seconds));
+	}
+
+	private static long countCycles(List<CountingCodelet> codelets)
+	{
+		long cycles = 0;
+		for(CountingCodelet co : codelets)
+		{
+			cycles += co.cycles;
+		}
+		return cycles;
+	}
+
+	private static long usedHeap()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++)
+		{
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static void waitForThreads(int threadCount, long timeout) throws InterruptedException
+	{
+		long limit = System.currentTimeMillis() + timeout;
+		while(threadMXBean.getThreadCount() > threadCount && System.currentTimeMillis() < limit)
+		{
+			Thread.sleep(50L);
+		}
+	}
+
+	/**
+	 * Reads and increments its own memory object at every cycle.
+	 */
+	private static class CountingCodelet extends Codelet
+	{
+		private final MemoryObject counter;
+
+		volatile long cycles = 0;
+
+		CountingCodelet(MemoryObject counter)
+		{
+			this.counter = counter;
+		}
+
+		@Override
+		public void accessMemoryObjects()
+		{
+		}
+
+		@Override
+		public void calculateActivation()
+		{
+		}
+
+		@Override
+		public void proc()
+		{
+			counter.setI((Long) counter.getI() + 1);
+			cycles++;
+		}
+	}
+}
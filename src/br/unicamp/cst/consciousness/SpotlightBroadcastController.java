@@ -11,12 +11,9 @@
 
 package br.unicamp.cst.consciousness;
 
-import java.util.ArrayList;
-import java.util.List;
-
+import br.unicamp.cst.core.entities.BroadcastChannel;
 import br.unicamp.cst.core.entities.CodeRack;
 import br.unicamp.cst.core.entities.Codelet;
-import br.unicamp.cst.core.entities.Memory;
 import br.unicamp.cst.core.exceptions.CodeletActivationBoundsException;
 
 
@@ -26,6 +23,10 @@ import br.unicamp.cst.core.exceptions.CodeletActivationBoundsException;
  *	A codelet-based implementation of the Global Workspace Theory, originally formulated 
  *  in [1988 Baars] Bernard J. Baars. A Cognitive Theory of Consciousness. Cambridge University Press, 1988.
  *
+ *  The outputs of the conscious codelet are published in the broadcast channel of the coderack, which all 
+ *  codelets read, so each cycle costs O(log n) in the number of codelets and allocates nothing unless the 
+ *  conscious content changes.
+ *
  */
 public class SpotlightBroadcastController extends Codelet 
 {
@@ -33,6 +34,9 @@ public class SpotlightBroadcastController extends Codelet
 	
 	/** access to all codelets, so the broadcast can be made*/
 	private CodeRack codeRack;
+
+	/** where the broadcast is published, and the most active codelet found */
+	private BroadcastChannel broadcastChannel;
 	
 	private double thresholdActivation = 0.9d;
 	
@@ -40,6 +44,7 @@ public class SpotlightBroadcastController extends Codelet
 	{
 		this.setName("SpotlightBroadcastController");
 		this.codeRack = codeRack;		
+		this.broadcastChannel = codeRack != null ? codeRack.getBroadcastChannel() : null;
 		consciousCodelet = null;
 		this.timeStep = 300l;
 	}
@@ -77,65 +82,44 @@ public class SpotlightBroadcastController extends Codelet
 		
 		if(consciousCodelet!=null)
 		{
-			if(consciousCodelet.getActivation() < thresholdActivation)
+			if(consciousCodelet.getActivation() < thresholdActivation || !broadcastChannel.contains(consciousCodelet))
 			{			
 				consciousCodelet = null;
 			}
 		}	
 		
-		if(codeRack!=null)
+		if(broadcastChannel!=null)
 		{
 			//first, select the coalition with greater activation to gain consciousness
-			List<Codelet> allCodeletsList = codeRack.getAllCodelets();    
-			
-			if(allCodeletsList!=null)
+			Codelet mostActive = broadcastChannel.getMostActive();
+
+			if(mostActive != null)
 			{
-				for (Codelet codelet: allCodeletsList)
-				{ 
-					if(consciousCodelet == null)
-					{
-						if(codelet.getActivation() > thresholdActivation)
-						{					
-							consciousCodelet = codelet;
-						}
-					}else
-					{
-						if(codelet.getActivation() > consciousCodelet.getActivation())
-						{
-							consciousCodelet = codelet;
-						}
-					}			
-				}
-						
-				//then, broadcast its information to all codelets
-				
-				if(consciousCodelet!=null)
-				{											
-					List<Memory> memoriesToBeBroadcasted  = consciousCodelet.getOutputs();
-					if(memoriesToBeBroadcasted!=null)
-					{
-						for (Codelet codelet: allCodeletsList)
-						{ 
-							if(!codelet.getName().equalsIgnoreCase(consciousCodelet.getName()))
-								codelet.setBroadcast(memoriesToBeBroadcasted);
-							else
-								codelet.setBroadcast(new ArrayList<Memory>());
-						}
-					}else
-					{
-						for (Codelet codelet: allCodeletsList)
-						{ 					
-							codelet.setBroadcast(new ArrayList<Memory>());
-						}
+				if(consciousCodelet == null)
+				{
+					if(mostActive.getActivation() > thresholdActivation)
+					{					
+						consciousCodelet = mostActive;
 					}
 				}else
 				{
-					for (Codelet codelet: allCodeletsList)
-					{ 					
-						codelet.setBroadcast(new ArrayList<Memory>());
-					}						
+					if(mostActive.getActivation() > consciousCodelet.getActivation())
+					{
+						consciousCodelet = mostActive;
+					}
 				}
 			}
+
+			//then, broadcast its information to all codelets, unless it is already their broadcast
+			broadcastChannel.publish(consciousCodelet);
 		}	
 	}
+
+	/**
+	 * @return the codelet whose outputs are broadcast, or null if there is none
+	 */
+	public Codelet getConsciousCodelet()
+	{
+		return consciousCodelet;
+	}
 }
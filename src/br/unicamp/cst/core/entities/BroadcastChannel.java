@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import br.unicamp.cst.util.IndexedMaxHeap;
+
+/**
+ * Conscious broadcast of the codelets of a {@link CodeRack}, created by {@link CodeRack#getBroadcastChannel()}.
+ *
+ * The broadcast is published once, as an immutable snapshot of the outputs of the conscious codelet behind a
+ * single volatile reference, which every codelet in the coderack reads through {@link Codelet#getBroadcast()}
+ * (the conscious codelet itself, and codelets with the same name, read an empty broadcast). Publishing does
+ * not touch the codelets, except the event driven ones, which are woken up when the broadcast changes.
+ *
+ * The channel also keeps the codelets ordered by activation, to find the most active one in O(log n):
+ * setActivation() only queues the codelet, without locking, and the queued codelets are moved in the
+ * ordering the next time the most active codelet is asked for.
+ */
+public final class BroadcastChannel
+{
+	/** What the codelets read as their broadcast */
+	static final class Broadcast
+	{
+		final Codelet source;
+
+		final String sourceName;
+
+		final MemoryList memories;
+
+		/** Incremented at each change */
+		final long version;
+
+		Broadcast(Codelet source, MemoryList memories, long version)
+		{
+			this.source = source;
+			this.sourceName = source != null ? source.getName() : null;
+			this.memories = memories;
+			this.version = version;
+		}
+
+		MemoryList memoriesFor(Codelet co)
+		{
+			if(source == null)
+				return memories;
+
+			if(co == source)
+				return MemoryList.EMPTY;
+
+			String name = co.getName();
+			if(name != null && name.equalsIgnoreCase(sourceName))
+				return MemoryList.EMPTY;
+
+			return memories;
+		}
+	}
+
+	private static final Broadcast NONE = new Broadcast(null, MemoryList.EMPTY, 0L);
+
+	private volatile Broadcast current = NONE;
+
+	/** Codelets by slot, the slot being their id in the activation ordering */
+	private Codelet[] members = new Codelet[16];
+
+	private int memberCount = 0;
+
+	/** Slots freed by detached codelets */
+	private int[] freeSlots = new int[16];
+
+	private int freeCount = 0;
+
+	private int nextSlot = 0;
+
+	private final IndexedMaxHeap activations = new IndexedMaxHeap(16);
+
+	/** Codelets whose activation changed since the ordering was last updated */
+	private final ConcurrentLinkedQueue<Codelet> changedActivations = new ConcurrentLinkedQueue<Codelet>();
+
+	/** Event driven codelets, woken up when the broadcast changes */
+	private final List<Codelet> observers = new CopyOnWriteArrayList<Codelet>();
+
+	BroadcastChannel()
+	{
+	}
+
+	/**
+	 * Makes a codelet read its broadcast from this channel, and take part in the activation ordering.
+	 */
+	void attach(Codelet co)
+	{
+		BroadcastChannel other = co.broadcastChannel;
+		if(other != null && other != this)
+			other.detach(co);
+
+		add(co);
+	}
+
+	private synchronized void add(Codelet co)
+	{
+		if(co.broadcastChannel != null)
+			return;
+
+		int slot;
+		if(freeCount > 0)
+		{
+			slot = freeSlots[--freeCount];
+		}else
+		{
+			slot = nextSlot++;
+			if(slot >= members.length)
+				members = Arrays.copyOf(members, members.length * 2);
+		}
+
+		members[slot] = co;
+		memberCount++;
+		co.broadcastSlot = slot;
+		co.broadcastChannel = this;
+		activations.set(slot, co.getActivation());
+		co.broadcastChanged();
+	}
+
+	/**
+	 * Makes a codelet read its own broadcast list again.
+	 */
+	synchronized void detach(Codelet co)
+	{
+		if(co.broadcastChannel != this)
+			return;
+
+		int slot = co.broadcastSlot;
+		activations.remove(slot);
+		members[slot] = null;
+		memberCount--;
+		if(freeCount == freeSlots.length)
+			freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+		freeSlots[freeCount++] = slot;
+
+		co.broadcastSlot = -1;
+		co.broadcastChannel = null;
+		observers.remove(co);
+		co.broadcastChanged();
+	}
+
+	/**
+	 * @return true if the codelet reads its broadcast from this channel
+	 */
+	public boolean contains(Codelet co)
+	{
+		return co != null && co.broadcastChannel == this;
+	}
+
+	/**
+	 * @return the number of codelets reading their broadcast from this channel
+	 */
+	public synchronized int size()
+	{
+		return memberCount;
+	}
+
+	/**
+	 * Called by setActivation(), from any thread
+	 */
+	void activationChanged(Codelet co)
+	{
+		if(co.activationQueued.compareAndSet(false, true))
+			changedActivations.offer(co);
+	}
+
+	/**
+	 * @return the codelet with the highest activation (ties broken by the order in which they were attached, slots of destroyed codelets being reused), or null if there is none
+	 */
+	public synchronized Codelet getMostActive()
+	{
+		Codelet co;
+		while((co = changedActivations.poll()) != null)
+		{
+			// cleared before reading the activation, so a later change is queued again
+			co.activationQueued.set(false);
+			if(co.broadcastChannel == this)
+				activations.set(co.broadcastSlot, co.getActivation());
+		}
+
+		int top = activations.peek();
+		return top >= 0 ? members[top] : null;
+	}
+
+	/**
+	 * Publishes the outputs of a codelet as the broadcast of all the other codelets, if they are not already the
+	 * broadcast. As the output lists are immutable snapshots, they are not copied.
+	 *
+	 * @param conscious the conscious codelet, or null to make the broadcast empty
+	 */
+	public synchronized void publish(Codelet conscious)
+	{
+		Broadcast old = current;
+		MemoryList memories = conscious != null ? MemoryList.of(conscious.getOutputs()) : MemoryList.EMPTY;
+
+		if(old.source == conscious && old.memories == memories)
+			return;
+
+		current = new Broadcast(conscious, memories, old.version + 1);
+
+		for(Codelet co : observers)
+		{
+			co.broadcastChanged();
+		}
+	}
+
+	/**
+	 * @return the conscious codelet, or null if there is none
+	 */
+	public Codelet getConsciousCodelet()
+	{
+		return current.source;
+	}
+
+	/**
+	 * @return the number of times the broadcast changed
+	 */
+	public long getVersion()
+	{
+		return current.version;
+	}
+
+	/**
+	 * @return the broadcast read by the given codelet
+	 */
+	MemoryList getBroadcast(Codelet co)
+	{
+		return current.memoriesFor(co);
+	}
+
+	void addObserver(Codelet co)
+	{
+		if(!observers.contains(co))
+			observers.add(co);
+	}
+
+	void removeObserver(Codelet co)
+	{
+		observers.remove(co);
+	}
+}
@@ -13,6 +13,7 @@ package br.unicamp.cst.core.entities;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ThreadFactory;
 
 import br.unicamp.cst.core.exceptions.CodeletActivationBoundsException;
 
@@ -31,6 +32,27 @@ public class CodeRack
 	 */
 	private List<Codelet> allCodelets;
 
+	/**
+	 * Scheduler running the codelets in this coderack. If null, each codelet runs on its own thread.
+	 */
+	private CodeletScheduler scheduler;
+
+	/**
+	 * Factory used to create the threads of the codelets in this coderack when there is no scheduler.
+	 * If null, standard platform threads are used.
+	 */
+	private ThreadFactory threadFactory;
+
+	/**
+	 * Conscious broadcast of the codelets in this coderack, or null until it is asked for
+	 */
+	private volatile BroadcastChannel broadcastChannel;
+
+	/**
+	 * Mind owning this coderack, told when a codelet is destroyed, or null
+	 */
+	private volatile Mind mind;
+
 	/**
 	 * Default constructor
 	 */
@@ -39,6 +61,70 @@ public class CodeRack
 		allCodelets = new ArrayList<Codelet>();
 	}
 
+	/**
+	 * @return the scheduler running the codelets in this coderack, or null if each codelet runs on its own thread
+	 */
+	public synchronized CodeletScheduler getScheduler()
+	{
+		return scheduler;
+	}
+
+	/**
+	 * Sets the scheduler which runs the codelets in this coderack, including the ones already inserted.
+	 * Must be called before start().
+	 * 
+	 * @param scheduler
+	 *           the scheduler to use, or null to run each codelet on its own thread
+	 */
+	public synchronized void setScheduler(CodeletScheduler scheduler)
+	{
+		this.scheduler = scheduler;
+
+		for(Codelet co: allCodelets)
+		{
+			co.setScheduler(scheduler);
+		}
+	}
+
+	/**
+	 * @return the factory used to create codelet threads, or null if standard platform threads are used
+	 */
+	public synchronized ThreadFactory getThreadFactory()
+	{
+		return threadFactory;
+	}
+
+	/**
+	 * Sets the factory used to create the threads of the codelets in this coderack, including the ones 
+	 * already inserted. Must be called before start().
+	 * 
+	 * @param threadFactory
+	 *           the factory to use (e.g. a {@link VirtualThreadFactory}), or null for standard platform threads
+	 */
+	public synchronized void setThreadFactory(ThreadFactory threadFactory)
+	{
+		this.threadFactory = threadFactory;
+
+		for(Codelet co: allCodelets)
+		{
+			co.setThreadFactory(threadFactory);
+		}
+	}
+
+	/**
+	 * Makes the given codelet run in the same way as the codelets in this coderack (on its scheduler or 
+	 * on threads from its thread factory), without adding it to the coderack. Used by proxies which start
+	 * their own codelets, like PerceptionProxy and BodyProxy.
+	 * 
+	 * @param co
+	 *           codelet to be configured
+	 */
+	public synchronized void applyExecutionMode(Codelet co)
+	{
+		co.setScheduler(scheduler);
+		co.setThreadFactory(threadFactory);
+	}
+
 	/**
 	 * @return the allCodelets
 	 */
@@ -53,9 +139,38 @@ public class CodeRack
 	 */
 	public void setAllCodelets(List<Codelet> allCodelets)
 	{
+		BroadcastChannel channel = broadcastChannel;
+		if(channel != null)
+		{
+			for(Codelet co : this.allCodelets)
+				channel.detach(co);
+			for(Codelet co : allCodelets)
+				channel.attach(co);
+		}
+
 		this.allCodelets = allCodelets;
 	}
 
+	/**
+	 * Gives the codelets in this coderack a shared broadcast, published once for all of them by a broadcast 
+	 * controller such as the SpotlightBroadcastController. From the first call on, every codelet in this 
+	 * coderack reads its broadcast from the channel, until it is destroyed.
+	 * 
+	 * @return the broadcast channel of this coderack
+	 */
+	public synchronized BroadcastChannel getBroadcastChannel()
+	{
+		if(broadcastChannel == null)
+		{
+			BroadcastChannel channel = new BroadcastChannel();
+			for(Codelet co : allCodelets)
+				channel.attach(co);
+			broadcastChannel = channel;
+		}
+
+		return broadcastChannel;
+	}
+
 	/**
 	 * Adds a new Codelet to the Coderack
 	 * 
@@ -64,6 +179,15 @@ public class CodeRack
 	 */
 	public void addCodelet(Codelet co)
 	{
+		if(scheduler!=null)
+			co.setScheduler(scheduler);
+		if(threadFactory!=null)
+			co.setThreadFactory(threadFactory);
+
+		BroadcastChannel channel = broadcastChannel;
+		if(channel != null)
+			channel.attach(co);
+
 		allCodelets.add(co);
 	}
 
@@ -116,19 +240,40 @@ public class CodeRack
 		co.stop();
 		this.allCodelets.remove(co);
 
+		BroadcastChannel channel = broadcastChannel;
+		if(channel != null)
+			channel.detach(co);
+
+		Mind owner = mind;
+		if(owner != null)
+			owner.codeletDestroyed(co);
+	}
+
+	/**
+	 * @param mind the mind owning this coderack
+	 */
+	void setMind(Mind mind)
+	{
+		this.mind = mind;
 	}
 
 /**
- * Destroys all codelets. Stops CodeRack's thread.
+ * Destroys all codelets. Stops CodeRack's thread and its scheduler, if any.
  */
 	public void shutDown()
 	{
+		BroadcastChannel channel = broadcastChannel;
 		for(Codelet co: this.getAllCodelets())
 		{
 			co.stop();
+			if(channel != null)
+				channel.detach(co);
 		}
 		
 		this.allCodelets.clear();
+
+		if(scheduler!=null)
+			scheduler.shutDown();
 	}
 
 	/**
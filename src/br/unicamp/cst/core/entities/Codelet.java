@@ -12,7 +12,16 @@
 package br.unicamp.cst.core.entities;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -48,27 +57,41 @@ import br.unicamp.cst.core.exceptions.CodeletThresholdBoundsException;
 public abstract class Codelet implements Runnable 
 {	
 	/**
-	 * Activation level of the Codelet. Ranges from 0.0 to 1.0d.
+	 * Activation level of the Codelet. Ranges from 0.0 to 1.0d. Volatile, so that other threads
+	 * (e.g. a broadcast controller) read it without locking this codelet.
 	 */
-	private double activation=0.0d;
+	private volatile double activation=0.0d;
 
 	/**
 	 * Threshold of the codelet, which is used to decide if it runs or not. If activation is equal or
 	 * greater than activation, codelet runs proc().Ranges from 0.0 to 1.0d.
 	 */
-	private double threshold=0.0d;
+	private volatile double threshold=0.0d;
 	/**
-	 * Input memories, the ones that are read.
+	 * Input memories, the ones that are read. The lists are immutable snapshots, replaced 
+	 * (while holding this codelet's monitor) whenever memories are added or removed.
 	 */
-	private List<Memory> inputs=new ArrayList<Memory>();
+	private volatile MemoryList inputs=MemoryList.EMPTY;
 	/**
 	 * Output memories, the ones that are written.
 	 */
-	private List<Memory> outputs=new ArrayList<Memory>();
+	private volatile MemoryList outputs=MemoryList.EMPTY;
 	/**
 	 * Input memories, the ones that were broadcasted.
 	 */
-	private List<Memory> broadcast=new ArrayList<Memory>();
+	private volatile MemoryList broadcast=MemoryList.EMPTY;
+
+	/** If not null, the broadcast is the one published in this channel instead of the broadcast list */
+	volatile BroadcastChannel broadcastChannel;
+
+	/** Id of this codelet in its broadcast channel. Guarded by the channel */
+	int broadcastSlot=-1;
+
+	/** Set while this codelet waits in its broadcast channel's queue of activation changes */
+	final AtomicBoolean activationQueued=new AtomicBoolean(false);
+
+	/** Broadcast channel this codelet is registered to be woken up by, in the event driven mode */
+	private BroadcastChannel observedChannel;
 	
 	/** defines if proc() should be automatically called in a loop */
 	private boolean loop=true; //
@@ -82,14 +105,81 @@ public abstract class Codelet implements Runnable
 	/** A codelet is a priori enabled to run its proc(). However, if it tries to read from a given output and fails, it becomes not able to do so.*/
 	private boolean enabled=true; 
 	
-	/** Must be zero for this codelet to be enabled*/
+	/** Must be zero for this codelet to be enabled. Only changed by the thread running this codelet */
 	private int enable_count=0;
 	
 	/** Gives this codelet a name, mainly for debugging purposes */
 	private String name=Thread.currentThread().getName();
 	
 	/** This variable is a safe lock for multithread access */
-	public Lock lock= new ReentrantLock();
+	public Lock lock= new OrderedLock(this);
+
+	/** Acquires this codelet's lock together with other codelets' locks, in impendingAccess() */
+	private volatile LockManager lockManager=LockManager.getDefault();
+
+	/** If not null, start() runs this codelet on the scheduler's pool instead of creating a new thread */
+	private volatile CodeletScheduler scheduler;
+
+	/** If not null and there is no scheduler, start() creates this codelet's thread with this factory */
+	private volatile ThreadFactory threadFactory;
+
+	/** If true, this codelet only runs when one of its inputs or its broadcast changed since its last execution */
+	private volatile boolean eventDriven=false;
+
+	/** In the event driven mode, maximum time (in milliseconds) this codelet waits for a change before running anyway. 0 means no limit */
+	private volatile long maxStaleness=0;
+
+	/** Set when an input or the broadcast changes, cleared when this codelet runs */
+	private final AtomicBoolean inputsChanged=new AtomicBoolean(true);
+
+	/** System.nanoTime() of the last execution in the event driven mode */
+	private volatile long lastRunTime=System.nanoTime();
+
+	/** Inputs and broadcast memories this codelet is registered to observe in the event driven mode */
+	private Set<Memory> observedMemories=Collections.newSetFromMap(new IdentityHashMap<Memory, Boolean>());
+
+	/** Guards inputChange. A lock rather than a monitor, so that a virtual thread waiting on it does not pin its carrier thread */
+	private final ReentrantLock wakeUpLock=new ReentrantLock();
+
+	/** Awaited by this codelet's own thread, in the event driven mode, until an input changes */
+	private final Condition inputChange=wakeUpLock.newCondition();
+
+	/** Called when an input changes, so that a scheduler can run this codelet again */
+	private volatile Runnable wakeUpListener;
+
+	/** Receives the notifications of changes in the observed memories */
+	private final MemoryObserver inputObserver=new MemoryObserver()
+	{
+		@Override
+		public void notifyMemoryChanged(Memory memory)
+		{
+			signalInputChange();
+		}
+	};
+
+	/** If true, calculateActivation() and proc() are skipped when none of the inputs and broadcast memories changed since they last ran */
+	private volatile boolean skipIfUnchanged=false;
+
+	/** Set when the input or broadcast lists change, cleared when calculateActivation() and proc() run */
+	private volatile boolean inputListsChanged=true;
+
+	/** Version of each input and broadcast memory consumed by the last execution of calculateActivation() and proc() */
+	private Map<Memory, Long> consumedVersions=new IdentityHashMap<Memory, Long>();
+
+	/** Versions consumed by the execution before the last one, used to tell which inputs changed */
+	private Map<Memory, Long> previousConsumedVersions=new IdentityHashMap<Memory, Long>();
+
+	/** Runtime metrics of this codelet, or null if disabled */
+	private volatile CodeletMetrics metrics=new CodeletMetrics(this);
+
+	/** Thread running a cycle of this codelet at the moment, or null between cycles */
+	private volatile Thread runningThread;
+
+	/** Number of cycles in which calculateActivation() ran */
+	private volatile long executedCycles=0;
+
+	/** Number of cycles in which calculateActivation() and proc() were skipped because no input changed */
+	private volatile long skippedCycles=0;
 
 	/** 
 	 * This method is used in every Codelet to capture input, broadcast and output MemoryObjects
@@ -117,41 +207,136 @@ public abstract class Codelet implements Runnable
 
 		do
 		{
+			this.runOnce();
+
 			try
 			{
-				this.accessMemoryObjects();//tries to connect to memory objects			
+				if(timeStep > 0)
+					Thread.sleep(timeStep);
+
+				if(eventDriven)
+					awaitInputChange();
+			}catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+		}while(this.shouldLoop());
+	}
 
-				if (enable_count==0)
+	/**
+	 * Runs a single cycle of this codelet: accessMemoryObjects(), calculateActivation() and, 
+	 * if the activation reaches the threshold, proc(). Used by run() and by the {@link CodeletScheduler}.
+	 */
+	public void runOnce()
+	{
+		if(eventDriven)
+		{
+			inputsChanged.set(false);
+			lastRunTime=System.nanoTime();
+			updateObservedMemories();
+		}
+
+		runningThread=Thread.currentThread();
+
+		CodeletMetrics m=metrics;
+		boolean sampled=m!=null && m.sample();
+		Object event=CstEvents.enabled ? CstEvents.beginCodeletCycle() : null;
+		boolean timed=sampled || event!=null;
+		long begin=timed ? System.nanoTime() : 0L;
+		long accessTime=0L;
+		long calculateActivationTime=0L;
+		long procTime=0L;
+		boolean procExecuted=false;
+		boolean skipped=false;
+
+		try
+		{
+			this.accessMemoryObjects();//tries to connect to memory objects			
+
+			long time=0L;
+			if(timed)
+			{
+				time=System.nanoTime();
+				accessTime=time-begin;
+				if(sampled)
+					m.recordAccessMemoryObjects(accessTime);
+			}
+
+			if (enable_count==0)
+			{
+				if(skipIfUnchanged && !consumeInputVersions())
 				{
+					skippedCycles++;
+					skipped=true;
+				}else
+				{
+					executedCycles++;
 					this.calculateActivation();
+
+					if(timed)
+					{
+						long now=System.nanoTime();
+						calculateActivationTime=now-time;
+						if(sampled)
+							m.recordCalculateActivation(calculateActivationTime);
+						time=now;
+					}
+
 					if(activation>=threshold)
-						proc(); 				
-				}else
-				{					
-					System.out.println("This codelet thread could not find a memory object it needs (Class):"+this.getClass().getCanonicalName());
+					{
+						proc();
+						procExecuted=true;
+						if(timed)
+						{
+							procTime=System.nanoTime()-time;
+							if(sampled)
+								m.recordProc(procTime);
+						}
+					}else if(m!=null)
+					{
+						m.countBelowThreshold();
+					}
 				}
-				enable_count=0;
+			}else
+			{					
+				if(m!=null)
+					m.countMissingInput();
+				System.out.println("This codelet thread could not find a memory object it needs (Class):"+this.getClass().getCanonicalName());
+			}
+			enable_count=0;
 
-				if(timeStep > 0)
-				{
-									
-					long timeMarker = System.currentTimeMillis();
+		}catch(Exception e)
+		{
+			if(m!=null)
+				m.countException();
+			e.printStackTrace();
+		}
 
-					while(System.currentTimeMillis() < timeMarker + timeStep){}
-				}	
-				
-			}catch(Exception e)
-			{
-				e.printStackTrace();
-			}
-		
-		}while(this.shouldLoop());
+		if(m!=null)
+			m.recordCycle(sampled ? System.nanoTime()-begin : -1L);
+
+		if(event!=null)
+			CstEvents.endCodeletCycle(event, this, accessTime, calculateActivationTime, procTime, procExecuted, skipped);
+
+		runningThread=null;
 	}
 
+	/**
+	 * Starts running this codelet, either on its own thread or, if a scheduler was set, on the scheduler's pool.
+	 * The thread is created by the thread factory, if one was set (e.g. a {@link VirtualThreadFactory}).
+	 */
 	public synchronized void start()
 	{ 
-		Thread t = new Thread(this);			
-		t.start();		
+		if(scheduler!=null)
+		{
+			scheduler.schedule(this);
+		}else
+		{
+			Thread t = (threadFactory!=null) ? threadFactory.newThread(this) : new Thread(this);			
+			t.start();
+		}
 	}
 
 	/**
@@ -160,70 +345,484 @@ public abstract class Codelet implements Runnable
 	public synchronized void stop()
 	{
 		this.setLoop(false);
+		if(scheduler!=null)
+			scheduler.unschedule(this);
+
+		wakeUpThread();
 	}
 
 	/**
-	 * Safe access to other Codelets through reentrant locks
+	 * In the event driven mode, blocks until an input or the broadcast changes, 
+	 * the maximum staleness elapses or this codelet is stopped.
 	 * 
-	 * @param accesing
-	 * @return
+	 * @throws InterruptedException
 	 */
-	public boolean impendingAccess(Codelet accesing)
+	private void awaitInputChange() throws InterruptedException
+	{
+		wakeUpLock.lock();
+		try
+		{
+			while(eventDriven && shouldLoop() && !isReadyToRun())
+			{
+				long remaining=getStalenessRemaining();
+				if(remaining>0)
+					inputChange.awaitNanos(remaining);
+				else
+					inputChange.await();
+			}
+		}finally
+		{
+			wakeUpLock.unlock();
+		}
+	}
+
+	/**
+	 * Wakes this codelet's own thread up, if it is waiting in awaitInputChange()
+	 */
+	private void wakeUpThread()
 	{
-		Boolean myLock = false;
-		Boolean yourLock = false;
+		wakeUpLock.lock();
 		try
 		{
-			myLock = lock.tryLock();
-			yourLock = accesing.lock.tryLock();
-		} finally
+			inputChange.signalAll();
+		}finally
 		{
-			if (!(myLock && yourLock))
+			wakeUpLock.unlock();
+		}
+	}
+
+	/**
+	 * @return false if this codelet is event driven and none of its inputs changed since its last 
+	 * execution (and the maximum staleness did not elapse), true otherwise
+	 */
+	boolean isReadyToRun()
+	{
+		if(!eventDriven || inputsChanged.get())
+			return true;
+
+		return maxStaleness>0 && getStalenessRemaining()<=0;
+	}
+
+	/**
+	 * @return nanoseconds until the maximum staleness elapses, or 0 if there is no maximum staleness
+	 */
+	long getStalenessRemaining()
+	{
+		if(maxStaleness<=0)
+			return 0L;
+
+		long remaining=lastRunTime+TimeUnit.MILLISECONDS.toNanos(maxStaleness)-System.nanoTime();
+		return remaining>0 ? remaining : -1L;
+	}
+
+	/**
+	 * Marks the inputs as changed and wakes this codelet up, if it is waiting for a change.
+	 */
+	private void signalInputChange()
+	{
+		if(inputsChanged.compareAndSet(false, true))
+		{
+			wakeUpThread();
+
+			Runnable listener=wakeUpListener;
+			if(listener!=null)
+				listener.run();
+		}
+	}
+
+	/**
+	 * Registers this codelet as an observer of its current inputs and broadcast memories, 
+	 * and unregisters it from the memories which are not there anymore.
+	 */
+	private synchronized void updateObservedMemories()
+	{
+		Set<Memory> current=Collections.newSetFromMap(new IdentityHashMap<Memory, Boolean>());
+		current.addAll(inputs);
+		current.addAll(currentBroadcast());
+
+		BroadcastChannel channel=broadcastChannel;
+		if(channel!=observedChannel)
+		{
+			if(observedChannel!=null)
+				observedChannel.removeObserver(this);
+			if(channel!=null)
+				channel.addObserver(this);
+			observedChannel=channel;
+		}
+
+		for(Memory m:current)
+		{
+			if(m!=null && observedMemories.add(m))
+				observe(m, true);
+		}
+
+		Iterator<Memory> it=observedMemories.iterator();
+		while(it.hasNext())
+		{
+			Memory m=it.next();
+			if(!current.contains(m))
 			{
-				if (myLock)
-				{
-					lock.unlock();
-				}
-				if (yourLock)
-				{
-					accesing.lock.unlock();
-				}
+				observe(m, false);
+				it.remove();
 			}
 		}
-		return myLock && yourLock;
 	}
+
+	private synchronized void stopObservingMemories()
+	{
+		if(observedChannel!=null)
+		{
+			observedChannel.removeObserver(this);
+			observedChannel=null;
+		}
+
+		for(Memory m:observedMemories)
+		{
+			observe(m, false);
+		}
+		observedMemories.clear();
+	}
+
+	private void observe(Memory m, boolean observe)
+	{
+		if(m instanceof MemoryObject)
+		{
+			if(observe)
+				((MemoryObject) m).addMemoryObserver(inputObserver);
+			else
+				((MemoryObject) m).removeMemoryObserver(inputObserver);
+		}else if(m instanceof MemoryContainer)
+		{
+			if(observe)
+				((MemoryContainer) m).addMemoryObserver(inputObserver);
+			else
+				((MemoryContainer) m).removeMemoryObserver(inputObserver);
+		}
+	}
+
 	/**
-	 * Safe access to MemoryBuffers through reentrant locks
+	 * Called by the broadcast channel when it publishes a new broadcast
+	 */
+	void broadcastChanged()
+	{
+		signalInputChange();
+	}
+
+	/**
+	 * Marks the inputs as changed after a change in the input or broadcast lists.
+	 */
+	private void inputListChanged()
+	{
+		inputListsChanged=true;
+		signalInputChange();
+	}
+
+	/**
+	 * Records the current version of each input and broadcast memory, unless none of them 
+	 * changed since the versions were last recorded.
 	 * 
-	 * @param accesing
-	 * @return
+	 * @return true if the versions were recorded, false if nothing changed
 	 */
-	public boolean impendingAccessBuffer(MemoryBuffer accesing)
+	private synchronized boolean consumeInputVersions()
 	{
+		List<Memory> currentInputs=inputs;
+		List<Memory> currentBroadcast=currentBroadcast();
 
-		Boolean myLock = false;
-		Boolean yourLock = false;
-		try
-		{
-			myLock = lock.tryLock();
-			yourLock = accesing.lock.tryLock();
-		} finally
+		if(!inputListsChanged && !versionsChanged(currentInputs, currentBroadcast, consumedVersions))
+			return false;
+
+		inputListsChanged=false;
+
+		Map<Memory, Long> versions=previousConsumedVersions;
+		previousConsumedVersions=consumedVersions;
+		versions.clear();
+
+		recordVersions(currentInputs, versions);
+		recordVersions(currentBroadcast, versions);
+		consumedVersions=versions;
+
+		return true;
+	}
+
+	private static boolean versionsChanged(List<Memory> inputs, List<Memory> broadcast, Map<Memory, Long> versions)
+	{
+		int inputCount=countUnchanged(inputs, versions);
+		if(inputCount<0)
+			return true;
+
+		int broadcastCount=countUnchanged(broadcast, versions);
+		if(broadcastCount<0)
+			return true;
+
+		// a memory was removed from the lists without going through this codelet
+		return inputCount+broadcastCount<versions.size();
+	}
+
+	/**
+	 * @return the number of memories in the list whose version is the recorded one, or -1 if any of them changed
+	 */
+	private static int countUnchanged(List<Memory> list, Map<Memory, Long> versions)
+	{
+		int count=0;
+
+		if(list!=null)
 		{
-			if (!(myLock && yourLock))
+			for(Memory m:list)
 			{
-				if (myLock)
-				{
-					lock.unlock();
-				}
-				if (yourLock)
-				{
-					accesing.lock.unlock();
-				}
+				if(m==null)
+					continue;
+
+				Long version=versions.get(m);
+				if(version==null || version.longValue()!=m.getVersion() || version.longValue()==Memory.UNVERSIONED)
+					return -1;
+				count++;
 			}
 		}
-		return myLock && yourLock;
+
+		return count;
+	}
+
+	private static void recordVersions(List<Memory> list, Map<Memory, Long> versions)
+	{
+		if(list==null)
+			return;
+
+		for(Memory m:list)
+		{
+			if(m!=null)
+				versions.put(m, m.getVersion());
+		}
+	}
+
+	/**
+	 * Tells, from inside calculateActivation() or proc(), which input and broadcast memories changed 
+	 * since the previous time these methods ran. Versions are only tracked if skipIfUnchanged is set, 
+	 * otherwise all inputs and broadcast memories are returned.
+	 * 
+	 * @return the memories which changed, in no particular order
+	 */
+	public synchronized List<Memory> getChangedInputs()
+	{
+		List<Memory> changed=new ArrayList<Memory>();
+
+		if(!skipIfUnchanged)
+		{
+			Set<Memory> all=Collections.newSetFromMap(new IdentityHashMap<Memory, Boolean>());
+			all.addAll(inputs);
+			all.addAll(currentBroadcast());
+			all.remove(null);
+			changed.addAll(all);
+			return changed;
+		}
+
+		for(Map.Entry<Memory, Long> entry:consumedVersions.entrySet())
+		{
+			if(entry.getValue().longValue()==Memory.UNVERSIONED || !entry.getValue().equals(previousConsumedVersions.get(entry.getKey())))
+				changed.add(entry.getKey());
+		}
+
+		return changed;
+	}
+
+	/**
+	 * @return true if calculateActivation() and proc() are skipped when no input changed
+	 */
+	public boolean isSkipIfUnchanged()
+	{
+		return skipIfUnchanged;
+	}
+
+	/**
+	 * If set, each cycle compares the version of the input and broadcast memories (see {@link Memory#getVersion()}) 
+	 * with the ones consumed by the last execution, and skips calculateActivation() and proc() when none changed 
+	 * and the input and broadcast lists are the same. Memories without a version ({@link Memory#UNVERSIONED}) are 
+	 * always taken as changed. Only codelets whose result depends only on these memories should be set to skip.
+	 * 
+	 * @param skipIfUnchanged true to skip cycles in which no input changed
+	 */
+	public synchronized void setSkipIfUnchanged(boolean skipIfUnchanged)
+	{
+		this.skipIfUnchanged=skipIfUnchanged;
+		this.inputListsChanged=true;
+	}
+
+	/**
+	 * @return the thread running a cycle of this codelet at the moment, or null if it is between cycles
+	 */
+	public Thread getRunningThread()
+	{
+		return runningThread;
+	}
+
+	/**
+	 * @return the number of cycles in which calculateActivation() ran
+	 */
+	public long getExecutedCycles()
+	{
+		return executedCycles;
+	}
+
+	/**
+	 * @return the number of cycles in which calculateActivation() and proc() were skipped because no input changed
+	 */
+	public long getSkippedCycles()
+	{
+		return skippedCycles;
+	}
+
+	/**
+	 * @return the fraction of cycles skipped because no input changed, from 0.0 to 1.0
+	 */
+	public double getSkipRate()
+	{
+		long skipped=skippedCycles;
+		long total=skipped+executedCycles;
+		return total>0 ? (double) skipped/total : 0.0d;
+	}
+
+	/**
+	 * @return the runtime metrics of this codelet, or null if they are disabled
+	 */
+	public CodeletMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * Metrics are enabled by default. Disabling them discards the metrics recorded so far.
+	 * 
+	 * @param enabled true to record the runtime metrics of this codelet
+	 */
+	public synchronized void setMetricsEnabled(boolean enabled)
+	{
+		if(enabled && metrics==null)
+			metrics=new CodeletMetrics(this);
+		else if(!enabled)
+			metrics=null;
+	}
+
+	/**
+	 * @return true if the runtime metrics of this codelet are being recorded
+	 */
+	public boolean isMetricsEnabled()
+	{
+		return metrics!=null;
+	}
+
+	/**
+	 * @param listener called when an input changes, in the event driven mode
+	 */
+	void setWakeUpListener(Runnable listener)
+	{
+		this.wakeUpListener=listener;
+	}
+
+	/**
+	 * @return true if this codelet only runs when its inputs or broadcast change
+	 */
+	public boolean isEventDriven()
+	{
+		return eventDriven;
+	}
+
+	/**
+	 * Sets the event driven mode. In this mode, after each execution (and after waiting its timeStep, 
+	 * if any), this codelet waits until one of its input or broadcast memories changes, 
+	 * or the input or broadcast lists themselves change, before running again.
+	 * 
+	 * @param eventDriven true to run only when the inputs or broadcast change
+	 */
+	public void setEventDriven(boolean eventDriven)
+	{
+		this.eventDriven=eventDriven;
+
+		if(eventDriven)
+		{
+			signalInputChange();
+		}else
+		{
+			stopObservingMemories();
+			wakeUpThread();
+			Runnable listener=wakeUpListener;
+			if(listener!=null)
+				listener.run();
+		}
+	}
+
+	/**
+	 * @return the maximum time (in milliseconds) this codelet waits for a change in the event driven mode. 0 means no limit
+	 */
+	public long getMaxStaleness()
+	{
+		return maxStaleness;
+	}
+
+	/**
+	 * @param maxStaleness maximum time (in milliseconds) this codelet waits for a change in the event driven mode 
+	 * before running anyway. 0 means no limit
+	 */
+	public void setMaxStaleness(long maxStaleness)
+	{
+		this.maxStaleness=maxStaleness;
+	}
+
+	/**
+	 * Safe access to other Codelets through reentrant locks. Both locks are acquired through this 
+	 * codelet's {@link LockManager}, in a global order and waiting at most the manager's timeout.
+	 * 
+	 * @param accesing
+	 * @return true if both locks were acquired, in which case the caller must unlock both
+	 */
+	public boolean impendingAccess(Codelet accesing)
+	{
+		if(CstEvents.enabled)
+			return recordedAccess(accesing, accesing.lock);
+
+		return lockManager.lockAll(lock, accesing.lock);
+	}
+	/**
+	 * Safe access to MemoryBuffers through reentrant locks
+	 * 
+	 * @param accesing
+	 * @return true if both locks were acquired, in which case the caller must unlock both
+	 * @see #impendingAccess(Codelet)
+	 */
+	public boolean impendingAccessBuffer(MemoryBuffer accesing)
+	{
+		if(CstEvents.enabled)
+			return recordedAccess(accesing, accesing.lock);
+
+		return lockManager.lockAll(lock, accesing.lock);
 	}	
 
+	/**
+	 * impendingAccess() emitting a Flight Recorder event
+	 */
+	boolean recordedAccess(Object accessed, Lock accessedLock)
+	{
+		Object event=CstEvents.beginLockAccess();
+		boolean acquired=lockManager.lockAll(lock, accessedLock);
+		CstEvents.endLockAccess(event, this, accessed, acquired);
+		return acquired;
+	}
+
+	/**
+	 * @return the manager used by impendingAccess() to acquire the locks
+	 */
+	public LockManager getLockManager()
+	{
+		return lockManager;
+	}
+
+	/**
+	 * @param lockManager the manager used by impendingAccess() to acquire the locks. By default, 
+	 * all codelets share {@link LockManager#getDefault()}
+	 */
+	public void setLockManager(LockManager lockManager)
+	{
+		this.lockManager = lockManager;
+	}
+
 	/**
 	 * @return the loop
 	 */
@@ -263,7 +862,7 @@ public abstract class Codelet implements Runnable
 	/**
 	 * @return the activation
 	 */
-	public synchronized double getActivation()
+	public double getActivation()
 	{
 		return activation;
 	}
@@ -272,43 +871,57 @@ public abstract class Codelet implements Runnable
 	 * @param activation the activation to set
 	 * @throws CodeletActivationBoundsException 
 	 */
-	public synchronized void setActivation(double activation) throws CodeletActivationBoundsException
+	public void setActivation(double activation) throws CodeletActivationBoundsException
 	{
 		if(activation>1.0d)
 		{
-			this.activation = 1.0d;
+			changeActivation(1.0d);
 			throw (new CodeletActivationBoundsException("Codelet activation set to value > 1.0"));
 		}else if(activation<0.0d)
 		{
-			this.activation = 0.0d;
+			changeActivation(0.0d);
 			throw (new CodeletActivationBoundsException("Codelet activation set to value < 0.0"));
 		}else
 		{
-			this.activation = activation;
+			changeActivation(activation);
 		}		
 	}
 
+	private void changeActivation(double activation)
+	{
+		if(this.activation==activation)
+			return;
+
+		this.activation = activation;
+
+		BroadcastChannel channel=broadcastChannel;
+		if(channel!=null)
+			channel.activationChanged(this);
+	}
+
 	/**
-	 * @return the inputs
+	 * @return the inputs, as an immutable snapshot: later changes to the inputs do not affect it
 	 */
-	public synchronized List<Memory> getInputs()
+	public List<Memory> getInputs()
 	{
 		return inputs;
 	}
 
 	/**
-	 * @param inputs the inputs to set
+	 * @param inputs the inputs to set. The memories are copied into this codelet's own input list
 	 */
 	public synchronized void setInputs(List<Memory> inputs)
 	{
-		this.inputs = inputs;
+		this.inputs = MemoryList.of(inputs);
+		inputListChanged();
 	}
 	/**
 	 * @param adds one input to set
 	 */
 	public synchronized void addInput(Memory input)
 	{
-		this.inputs.add(input);
+		this.inputs = this.inputs.with(input);
+		inputListChanged();
 	}
 
         /**
@@ -316,7 +929,8 @@ public abstract class Codelet implements Runnable
 	 */
 	public synchronized void addInputs(List<Memory> inputs)
 	{
-		this.inputs.addAll(inputs);
+		this.inputs = this.inputs.withAll(inputs);
+		inputListChanged();
 	}
 
 	/**
@@ -324,7 +938,7 @@ public abstract class Codelet implements Runnable
 	 */
 	public synchronized void addOutput(Memory output)
 	{
-		this.outputs.add(output);
+		this.outputs = this.outputs.with(output);
 	}
 
 	/**
@@ -332,34 +946,36 @@ public abstract class Codelet implements Runnable
 	 * @param output
 	 */
 	public synchronized void removesOutput(Memory output){
-		this.outputs.remove(output);
+		this.outputs = this.outputs.without(output);
 	}
 	/**
 	 * Removes a given memory from input list
 	 * @param output
 	 */
 	public synchronized void removesInput(Memory input){
-		this.inputs.remove(input);
+		this.inputs = this.inputs.without(input);
+		inputListChanged();
 	}
 
 	public synchronized void removeFromOutput(List<Memory> outputs)
 	{
-		this.outputs.removeAll(outputs);
+		this.outputs = this.outputs.withoutAll(outputs);
 	}
 	
 	public synchronized void removeFromInput(List<Memory> inputs)
 	{
-		this.inputs.removeAll(inputs);
+		this.inputs = this.inputs.withoutAll(inputs);
+		inputListChanged();
 	}
         public synchronized void addOutputs(List<Memory> outputs)
 	{
-		this.outputs.addAll(outputs);
+		this.outputs = this.outputs.withAll(outputs);
 	}
 
 	/**
-	 * @return the outputs
+	 * @return the outputs, as an immutable snapshot: later changes to the outputs do not affect it
 	 */
-	public synchronized List<Memory> getOutputs()
+	public List<Memory> getOutputs()
 	{
 		return outputs;
 	}
@@ -368,76 +984,80 @@ public abstract class Codelet implements Runnable
 	 * @param type
 	 * @return list of all memory objects in output of a given type
 	 */
-	private synchronized ArrayList<Memory> getOutputsOfType(String type) 
+	private ArrayList<Memory> getOutputsOfType(String type) 
 	{
-		ArrayList<Memory> outputsOfType = new ArrayList<Memory>();
-		
-		if(outputs!=null&&outputs.size()>0)
-			for(Memory mo:this.outputs)
-			{
-				if(mo.getName()!=null && mo.getName().equalsIgnoreCase(type))
-				{
-					outputsOfType.add(mo);
-				}
-			}
-		return outputsOfType;
+		return new ArrayList<Memory>(outputs.getAll(type));
 	}
 
 	/**
 	 * @param type
 	 * @return list of memory objects in input of a given type
 	 */
-	public synchronized ArrayList<Memory> getInputsOfType(String type) 
+	public ArrayList<Memory> getInputsOfType(String type) 
 	{
-		ArrayList<Memory> inputsOfType = new ArrayList<Memory>();
-		
-		if(inputs!=null&&inputs.size()>0)
-			for(Memory mo:this.inputs)
-			{
-				if(mo.getName()!=null && mo.getName().equalsIgnoreCase(type))
-				{
-					inputsOfType.add(mo);
-				}
-			}
-		
-		return inputsOfType;
+		return new ArrayList<Memory>(inputs.getAll(type));
 	}
 
 
 	/**
-	 * @param outputs the outputs to set
+	 * @param outputs the outputs to set. The memories are copied into this codelet's own output list
 	 */
 	public synchronized void setOutputs(List<Memory> outputs)
 	{
-		this.outputs = outputs;
+		this.outputs = MemoryList.of(outputs);
 	}
 
 	/**
-	 * @return the broadcast
+	 * @return the broadcast, as an immutable snapshot: later changes to the broadcast do not affect it. 
+	 * If this codelet is in a coderack whose broadcast channel is in use (see {@link CodeRack#getBroadcastChannel()}), 
+	 * this is the broadcast published in the channel, otherwise it is this codelet's own broadcast list
 	 */
-	public synchronized List<Memory> getBroadcast()
+	public List<Memory> getBroadcast()
+	{
+		return currentBroadcast();
+	}
+
+	private MemoryList currentBroadcast()
 	{
-		return broadcast;
+		BroadcastChannel channel=broadcastChannel;
+		return channel!=null ? channel.getBroadcast(this) : broadcast;
 	}
 
 
 	/**
-	 * @param broadcast the broadcast to set
+	 * @param broadcast the broadcast to set. The memories are copied into this codelet's own broadcast list, 
+	 * unless the given list is itself a snapshot returned by a codelet, which is immutable and then shared. 
+	 * The list is ignored while this codelet reads its broadcast from a broadcast channel
 	 */
 	public synchronized void setBroadcast(List<Memory> broadcast)
 	{
-		this.broadcast = broadcast;
+		if(sameMemories(this.broadcast, broadcast))
+			return;
+
+		this.broadcast = MemoryList.of(broadcast);
+		inputListChanged();
 	}
 
-	public synchronized Memory getBroadcast(String name) 
+	/**
+	 * @return true if both lists hold the same memories (by identity) in the same order
+	 */
+	private static boolean sameMemories(List<Memory> a, List<Memory> b)
 	{
-		if(broadcast!=null&&broadcast.size()>0)
-			for (Memory mo : broadcast) 
-			{
-				if (mo.getName()!=null && mo.getName().equalsIgnoreCase(name)) 
-					return mo;
-			}
-		return null;
+		if(a==b)
+			return true;
+		if(a==null || b==null || a.size()!=b.size())
+			return false;
+		for(int i=0;i<a.size();i++)
+		{
+			if(a.get(i)!=b.get(i))
+				return false;
+		}
+		return true;
+	}
+
+	public Memory getBroadcast(String name) 
+	{
+		return currentBroadcast().get(name);
 	}
 
 	/**
@@ -445,7 +1065,8 @@ public abstract class Codelet implements Runnable
 	 */
 	 public synchronized void addBroadcast(Memory b)
 	 {
-		 this.broadcast.add(b);
+		 this.broadcast = this.broadcast.with(b);
+		 inputListChanged();
 	 }
 
 	 /**
@@ -460,10 +1081,13 @@ public abstract class Codelet implements Runnable
 	  * @see java.lang.Object#toString()
 	  */
 	 @Override
-	 public synchronized String toString()
+	 public String toString()
 	 {
 		 final int maxLen = 10;
-		 return "Codelet [activation=" + activation + ", " + "name=" + name + ", " +(broadcast != null ? "broadcast=" + broadcast.subList(0, Math.min(broadcast.size(), maxLen)) + ", " : "") + (inputs != null ? "inputs=" + inputs.subList(0, Math.min(inputs.size(), maxLen)) + ", " : "") + (outputs != null ? "outputs=" + outputs.subList(0, Math.min(outputs.size(), maxLen)) : "") + "]";
+		 List<Memory> broadcast = currentBroadcast();
+		 List<Memory> inputs = this.inputs;
+		 List<Memory> outputs = this.outputs;
+		 return "Codelet [activation=" + activation + ", " + "name=" + name + ", " + "broadcast=" + broadcast.subList(0, Math.min(broadcast.size(), maxLen)) + ", " + "inputs=" + inputs.subList(0, Math.min(inputs.size(), maxLen)) + ", " + "outputs=" + outputs.subList(0, Math.min(outputs.size(), maxLen)) + "]";
 	 }
 
 	 /**
@@ -474,22 +1098,11 @@ public abstract class Codelet implements Runnable
 	  * @param index position of memory in the sublist
 	  * @return memory of type at position 
 	  */
-	 public synchronized Memory getInput(String type, int index)
+	 public Memory getInput(String type, int index)
 	 {
-		 Memory inputMO = null;
-		 ArrayList<Memory> listMO=new ArrayList<Memory>();
-
-		 if(inputs!=null&&inputs.size()>0)
-			 for(Memory mo:inputs)
-			 {
-				 if(mo.getName()!=null && mo.getName().equalsIgnoreCase(type))
-				 {
-					 listMO.add(mo);
-				 }
-			 }
-
-		 if(listMO.size()>=index+1){
-			 inputMO=listMO.get(index);
+		 Memory inputMO = inputs.get(type, index);
+
+		 if(inputMO!=null){
 			 this.enabled=true;
 		 }else{
 			 this.enabled=false; //It must not run proc yet, for it still needs to find this mo it wants
@@ -499,16 +1112,9 @@ public abstract class Codelet implements Runnable
 		 return inputMO;
 	 }
 
-	 public synchronized Memory getInput(String name) 
+	 public Memory getInput(String name) 
 	 {
-		 if(inputs!=null&&inputs.size()>0)
-			 for (Memory mo : inputs) 
-			 {
-				 if (mo.getName()!=null && mo.getName().equalsIgnoreCase(name)) 
-					 return mo;
-			 }
-		 
-		 return null;
+		 return inputs.get(name);
 	 }
 
 	 /**
@@ -519,23 +1125,12 @@ public abstract class Codelet implements Runnable
 	  * @param position position of memory in the sublist
 	  * @return memory of type at position 
 	  */
-	 public synchronized Memory getOutput(String type, int index)
+	 public Memory getOutput(String type, int index)
 	 {
-		 Memory outputMO = null;
-		 ArrayList<Memory> listMO=new ArrayList<Memory>();
-
-		 if(outputs!=null&&outputs.size()>0)
-			 for(Memory mo:outputs)
-			 {
-				 if(mo!=null && type!=null && mo.getName()!=null && mo.getName().equalsIgnoreCase(type))
-				 {
-					 listMO.add(mo);
-				 }
-			 }
-
-		 if(listMO.size()>=index+1)
+		 Memory outputMO = outputs.get(type, index);
+
+		 if(outputMO!=null)
 		 {
-			 outputMO=listMO.get(index);
 			 this.enabled=true;
 		 }else
 		 {
@@ -546,16 +1141,9 @@ public abstract class Codelet implements Runnable
 		 return outputMO;
 	 }
 
-	 public synchronized Memory getOutput(String name) 
+	 public Memory getOutput(String name) 
 	 {
-		 if(outputs!=null&&outputs.size()>0)
-			 for (Memory mo : outputs) 
-			 {
-				 if (mo.getName()!=null && mo.getName().equalsIgnoreCase(name)) 
-					 return mo;
-			 }
-		 
-		 return null;
+		 return outputs.get(name);
 	 }
 
 	 /**
@@ -564,35 +1152,15 @@ public abstract class Codelet implements Runnable
 	  * @param index
 	  * @return
 	  */
-	 public synchronized Memory getBroadcast(String type, int index)
+	 public Memory getBroadcast(String type, int index)
 	 {
-		 Memory broadcastMO = null;
-		 
-		 ArrayList<Memory> listMO=new ArrayList<Memory>();
-
-		 if(broadcast!=null&&broadcast.size()>0)
-		 {
-			 for(Memory mo:broadcast)
-			 {
-				 if(mo.getName()!=null && mo.getName().equalsIgnoreCase(type))
-				 {
-					 listMO.add(mo);
-				 }
-			 }
-		 }		
-
-		 if(listMO.size()>=index+1)
-		 {
-			 broadcastMO=listMO.get(index);
-		 }
-
-		 return broadcastMO;
+		 return currentBroadcast().get(type, index);
 	 }
 
 	 /**
 	  * @return the threshold
 	  */
-	 public synchronized double getThreshold() 
+	 public double getThreshold() 
 	 {
 		 return threshold;
 	 }
@@ -602,7 +1170,7 @@ public abstract class Codelet implements Runnable
 	  * @param threshold
 	  * @throws CodeletThresholdBoundsException
 	  */
-	 public synchronized void setThreshold(double threshold) throws CodeletThresholdBoundsException 
+	 public void setThreshold(double threshold) throws CodeletThresholdBoundsException 
 	 {		
 		 if(threshold>1.0d)
 		 {
@@ -618,6 +1186,34 @@ public abstract class Codelet implements Runnable
 		 }
 	 }
 
+	/**
+	 * @return the scheduler running this codelet, or null if it runs on its own thread
+	 */
+	public CodeletScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * @param scheduler the scheduler which should run this codelet, or null to run it on its own thread
+	 */
+	public void setScheduler(CodeletScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * @return the factory used to create this codelet's thread, or null for a standard platform thread
+	 */
+	public ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+
+	/**
+	 * @param threadFactory the factory used to create this codelet's thread, or null for a standard platform thread
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
 	/**
 	 * @return the timeStep
 	 */
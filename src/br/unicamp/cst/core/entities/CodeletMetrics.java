@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities;
+
+/**
+ * Runtime metrics of a codelet: how long each phase of its cycles takes (accessMemoryObjects(), 
+ * calculateActivation() and proc()), how often it runs, and how many cycles ended without 
+ * running proc() because the activation was below the threshold, an input was missing 
+ * (see {@link Codelet#getInput(String, int)}) or an exception was thrown.
+ *
+ * The counters are exact. The phases are timed once every samplingInterval cycles (one in 16 by 
+ * default, since reading the clock costs more than an empty cycle), and the duty cycle is estimated 
+ * from the sampled cycles. Metrics are only written by the thread running the codelet, so recording 
+ * them takes no lock.
+ *
+ * @see Codelet#getMetrics()
+ * @see Mind#getMetrics()
+ */
+public class CodeletMetrics implements CodeletMetricsMBean
+{
+	/** One in how many cycles is timed by default */
+	public static final int DEFAULT_SAMPLING_INTERVAL = 16;
+
+	private final Codelet codelet;
+
+	private final LatencyHistogram accessMemoryObjectsTime = new LatencyHistogram();
+
+	private final LatencyHistogram calculateActivationTime = new LatencyHistogram();
+
+	private final LatencyHistogram procTime = new LatencyHistogram();
+
+	private volatile long cycles = 0;
+
+	private volatile long sampledCycles = 0;
+
+	/** Sum of the durations of the sampled cycles, in nanoseconds */
+	private volatile long sampledBusyTime = 0;
+
+	private volatile long belowThresholdCount = 0;
+
+	private volatile long missingInputCount = 0;
+
+	private volatile long exceptionCount = 0;
+
+	/** System.nanoTime() of the creation or last reset of these metrics */
+	private volatile long startTime = System.nanoTime();
+
+	private volatile int samplingInterval = DEFAULT_SAMPLING_INTERVAL;
+
+	/** Cycles until the next sampled one */
+	private int countdown = 0;
+
+	CodeletMetrics(Codelet codelet)
+	{
+		this.codelet = codelet;
+	}
+
+	/**
+	 * @return true if the cycle beginning now should be timed
+	 */
+	boolean sample()
+	{
+		if(--countdown > 0)
+			return false;
+
+		countdown = samplingInterval;
+		return true;
+	}
+
+	void recordAccessMemoryObjects(long nanos)
+	{
+		accessMemoryObjectsTime.record(nanos);
+	}
+
+	void recordCalculateActivation(long nanos)
+	{
+		calculateActivationTime.record(nanos);
+	}
+
+	void recordProc(long nanos)
+	{
+		procTime.record(nanos);
+	}
+
+	/**
+	 * @param nanos duration of the cycle, or a negative number if it was not sampled
+	 */
+	void recordCycle(long nanos)
+	{
+		cycles++;
+		if(nanos >= 0)
+		{
+			sampledCycles++;
+			sampledBusyTime += nanos;
+		}
+	}
+
+	void countBelowThreshold()
+	{
+		belowThresholdCount++;
+	}
+
+	void countMissingInput()
+	{
+		missingInputCount++;
+	}
+
+	void countException()
+	{
+		exceptionCount++;
+	}
+
+	/**
+	 * @return the codelet these metrics are about
+	 */
+	public Codelet getCodelet()
+	{
+		return codelet;
+	}
+
+	@Override
+	public String getCodeletName()
+	{
+		return codelet.getName();
+	}
+
+	/**
+	 * @return durations of accessMemoryObjects(), in nanoseconds
+	 */
+	public LatencyHistogram getAccessMemoryObjectsTime()
+	{
+		return accessMemoryObjectsTime;
+	}
+
+	/**
+	 * @return durations of calculateActivation(), in nanoseconds
+	 */
+	public LatencyHistogram getCalculateActivationTime()
+	{
+		return calculateActivationTime;
+	}
+
+	/**
+	 * @return durations of proc(), in nanoseconds
+	 */
+	public LatencyHistogram getProcTime()
+	{
+		return procTime;
+	}
+
+	/**
+	 * @return the number of cycles run
+	 */
+	@Override
+	public long getCycles()
+	{
+		return cycles;
+	}
+
+	/**
+	 * @return the number of cycles skipped because no input changed
+	 * @see Codelet#setSkipIfUnchanged(boolean)
+	 */
+	@Override
+	public long getSkippedCycles()
+	{
+		return codelet.getSkippedCycles();
+	}
+
+	/**
+	 * @return the number of cycles in which proc() did not run because the activation was below the threshold
+	 */
+	@Override
+	public long getBelowThresholdCount()
+	{
+		return belowThresholdCount;
+	}
+
+	/**
+	 * @return the number of cycles in which proc() did not run because an input or output was missing
+	 */
+	@Override
+	public long getMissingInputCount()
+	{
+		return missingInputCount;
+	}
+
+	/**
+	 * @return the number of cycles ended by an exception
+	 */
+	@Override
+	public long getExceptionCount()
+	{
+		return exceptionCount;
+	}
+
+	/**
+	 * @return the estimated fraction of the time since these metrics were created or reset 
+	 * during which the codelet was running a cycle, from 0.0 to 1.0
+	 */
+	@Override
+	public double getDutyCycle()
+	{
+		long sampled = sampledCycles;
+		long elapsed = System.nanoTime() - startTime;
+
+		if(sampled == 0 || elapsed <= 0)
+			return 0.0d;
+
+		double busy = (double) sampledBusyTime / sampled * cycles;
+		return Math.min(1.0d, busy / elapsed);
+	}
+
+	@Override
+	public double getAccessMemoryObjectsMean()
+	{
+		return accessMemoryObjectsTime.getMean();
+	}
+
+	@Override
+	public long getAccessMemoryObjectsP99()
+	{
+		return accessMemoryObjectsTime.getPercentile(99.0d);
+	}
+
+	@Override
+	public double getCalculateActivationMean()
+	{
+		return calculateActivationTime.getMean();
+	}
+
+	@Override
+	public long getCalculateActivationP99()
+	{
+		return calculateActivationTime.getPercentile(99.0d);
+	}
+
+	@Override
+	public double getProcMean()
+	{
+		return procTime.getMean();
+	}
+
+	@Override
+	public long getProcP50()
+	{
+		return procTime.getPercentile(50.0d);
+	}
+
+	@Override
+	public long getProcP99()
+	{
+		return procTime.getPercentile(99.0d);
+	}
+
+	@Override
+	public long getProcMax()
+	{
+		return procTime.getMax();
+	}
+
+	/**
+	 * @return one in how many cycles is timed
+	 */
+	@Override
+	public int getSamplingInterval()
+	{
+		return samplingInterval;
+	}
+
+	/**
+	 * @param samplingInterval one in how many cycles should be timed. 1 times every cycle
+	 */
+	@Override
+	public void setSamplingInterval(int samplingInterval)
+	{
+		if(samplingInterval < 1)
+			throw new IllegalArgumentException("Sampling interval must be at least 1");
+
+		this.samplingInterval = samplingInterval;
+	}
+
+	/**
+	 * Discards all metrics recorded so far. Values recorded by a cycle running at the same time may be lost.
+	 */
+	@Override
+	public void reset()
+	{
+		accessMemoryObjectsTime.reset();
+		calculateActivationTime.reset();
+		procTime.reset();
+		cycles = 0;
+		sampledCycles = 0;
+		sampledBusyTime = 0;
+		belowThresholdCount = 0;
+		missingInputCount = 0;
+		exceptionCount = 0;
+		startTime = System.nanoTime();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CodeletMetrics [codelet=" + getCodeletName() + ", cycles=" + getCycles() + ", skipped=" + getSkippedCycles() 
+				+ ", belowThreshold=" + getBelowThresholdCount() + ", missingInput=" + getMissingInputCount() 
+				+ ", exceptions=" + getExceptionCount() + ", dutyCycle=" + String.format("%.3f", getDutyCycle()) 
+				+ ", proc: " + procTime + "]";
+	}
+}
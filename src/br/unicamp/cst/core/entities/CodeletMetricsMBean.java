@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities;
+
+/**
+ * JMX view of the metrics of a codelet. Times are in nanoseconds.
+ *
+ * @see CodeletMetrics
+ * @see Mind#setJmxEnabled(boolean)
+ */
+public interface CodeletMetricsMBean
+{
+	String getCodeletName();
+
+	long getCycles();
+
+	long getSkippedCycles();
+
+	long getBelowThresholdCount();
+
+	long getMissingInputCount();
+
+	long getExceptionCount();
+
+	double getDutyCycle();
+
+	double getAccessMemoryObjectsMean();
+
+	long getAccessMemoryObjectsP99();
+
+	double getCalculateActivationMean();
+
+	long getCalculateActivationP99();
+
+	double getProcMean();
+
+	long getProcP50();
+
+	long getProcP99();
+
+	long getProcMax();
+
+	int getSamplingInterval();
+
+	void setSamplingInterval(int samplingInterval);
+
+	void reset();
+}
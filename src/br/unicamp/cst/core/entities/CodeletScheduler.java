@@ -0,0 +1,406 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The CodeletScheduler runs codelets on a bounded pool of threads, instead of
+ * starting one thread per codelet. Each scheduled codelet is a task that executes
+ * one cycle of the codelet (see {@link Codelet#runOnce()}) and then schedules its
+ * next cycle according to the codelet's timeStep, so waiting codelets do not
+ * hold a thread. A timeStep of 0 resubmits the codelet right away, behind the
+ * other codelets already waiting for the pool.
+ *
+ * The timeStep can be treated either as a fixed delay between the end of one
+ * cycle and the beginning of the next (the default, which is what the
+ * thread-per-codelet mode does) or as a fixed rate, where cycles are released
+ * every timeStep milliseconds regardless of how long proc() takes. Periods
+ * missed because of an overloaded pool are skipped instead of being run in a burst.
+ *
+ * Event driven codelets (see {@link Codelet#setEventDriven(boolean)}) do not hold a pool
+ * thread or a timer while waiting for a change in their inputs: they are resubmitted by
+ * the change notification itself, or by a timer when their maximum staleness elapses.
+ *
+ * Codelets which block inside proc() (waiting on sockets, for instance) hold one
+ * of the pool threads while blocked, so these should be left running on their own threads.
+ *
+ * The schedulers of the minds in a {@link MindHost} share the host's pool instead of having their own.
+ *
+ * @see CodeRack#setScheduler(CodeletScheduler)
+ */
+public class CodeletScheduler
+{
+	private static final AtomicInteger schedulerCount = new AtomicInteger();
+
+	/** Runs the timers and, unless this scheduler belongs to a MindHost, the codelets */
+	private ScheduledExecutorService executor;
+
+	/** Runs the codelets which are due */
+	private Executor runner;
+
+	/** False if the pool belongs to a MindHost, and must not be shut down with this scheduler */
+	private boolean ownsPool = true;
+
+	private int poolSize;
+
+	private volatile boolean shutDown = false;
+
+	/** If true, timeStep is a fixed rate. Otherwise it is a fixed delay between cycles */
+	private boolean fixedRate;
+
+	/** Tasks of all codelets currently scheduled */
+	private Map<Codelet, CodeletTask> tasks = new ConcurrentHashMap<Codelet, CodeletTask>();
+
+	/**
+	 * Creates a fixed-delay scheduler with one thread per available processor.
+	 */
+	public CodeletScheduler()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a fixed-delay scheduler.
+	 *
+	 * @param poolSize maximum number of threads running codelets at the same time
+	 */
+	public CodeletScheduler(int poolSize)
+	{
+		this(poolSize, false);
+	}
+
+	/**
+	 * @param poolSize maximum number of threads running codelets at the same time
+	 * @param fixedRate if true, timeStep is treated as a fixed rate, otherwise as a fixed delay
+	 */
+	public CodeletScheduler(int poolSize, boolean fixedRate)
+	{
+		if(poolSize < 1)
+			throw new IllegalArgumentException("CodeletScheduler pool size must be at least 1");
+
+		this.fixedRate = fixedRate;
+		this.poolSize = poolSize;
+
+		final String prefix = "CodeletScheduler-" + schedulerCount.incrementAndGet() + "-";
+		ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(poolSize, new ThreadFactory()
+		{
+			private AtomicInteger threadCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				return new Thread(r, prefix + threadCount.incrementAndGet());
+			}
+		});
+		pool.setRemoveOnCancelPolicy(true);
+
+		executor = pool;
+		runner = pool;
+	}
+
+	/**
+	 * Creates a scheduler running its codelets on a pool it does not own, used by {@link MindHost}.
+	 *
+	 * @param timer runs the timers, which only hand the codelets over to the runner
+	 * @param runner runs the codelets which are due
+	 * @param poolSize number of threads of the runner
+	 * @param fixedRate if true, timeStep is treated as a fixed rate, otherwise as a fixed delay
+	 */
+	CodeletScheduler(ScheduledExecutorService timer, Executor runner, int poolSize, boolean fixedRate)
+	{
+		this.executor = timer;
+		this.runner = runner;
+		this.poolSize = poolSize;
+		this.fixedRate = fixedRate;
+		this.ownsPool = false;
+	}
+
+	/**
+	 * Starts running the given codelet on this scheduler's pool. Scheduling a
+	 * codelet which is already scheduled, or after shutDown(), has no effect.
+	 *
+	 * @param co codelet to be scheduled
+	 */
+	public void schedule(Codelet co)
+	{
+		if(shutDown)
+			return;
+
+		CodeletTask task = new CodeletTask(co);
+
+		if(tasks.putIfAbsent(co, task) == null)
+		{
+			co.setWakeUpListener(task.wakeUp);
+			task.submit(0L);
+		}
+	}
+
+	/**
+	 * Stops running the given codelet. A cycle already in progress is allowed to finish.
+	 *
+	 * @param co codelet to be removed from this scheduler
+	 */
+	public void unschedule(Codelet co)
+	{
+		CodeletTask task = tasks.remove(co);
+
+		if(task != null)
+		{
+			co.setWakeUpListener(null);
+			task.cancel();
+		}
+	}
+
+	/**
+	 * @param co
+	 * @return true if the codelet is currently scheduled
+	 */
+	public boolean isScheduled(Codelet co)
+	{
+		return tasks.containsKey(co);
+	}
+
+	/**
+	 * @return the number of codelets currently scheduled
+	 */
+	public int getNumberOfScheduledCodelets()
+	{
+		return tasks.size();
+	}
+
+	/**
+	 * @return the maximum number of threads running codelets at the same time
+	 */
+	public int getPoolSize()
+	{
+		return poolSize;
+	}
+
+	/**
+	 * @return true if timeStep is treated as a fixed rate, false if it is a fixed delay
+	 */
+	public boolean isFixedRate()
+	{
+		return fixedRate;
+	}
+
+	/**
+	 * Unschedules all codelets and stops the pool threads, unless the pool belongs to a MindHost.
+	 */
+	public void shutDown()
+	{
+		shutDown = true;
+
+		for(CodeletTask task : tasks.values())
+		{
+			task.codelet.setWakeUpListener(null);
+			task.cancel();
+		}
+		tasks.clear();
+
+		if(ownsPool)
+			executor.shutdownNow();
+	}
+
+	/**
+	 * @return true if this scheduler was shut down
+	 */
+	public boolean isShutDown()
+	{
+		return shutDown || executor.isShutdown();
+	}
+
+	/**
+	 * Runs one cycle of a codelet and schedules the next one.
+	 */
+	private class CodeletTask implements Runnable
+	{
+		private final Codelet codelet;
+
+		/** Release time of the current cycle, used by the fixed rate mode (System.nanoTime()) */
+		private long release;
+
+		private volatile boolean cancelled = false;
+
+		private volatile ScheduledFuture<?> future;
+
+		/** Timer for the maximum staleness of an event driven codelet waiting for a change */
+		private volatile ScheduledFuture<?> stalenessTimer;
+
+		/** Hands this task over to the runner when its timer expires, if the runner is not the timer's pool */
+		private final Runnable handOver = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					runner.execute(CodeletTask.this);
+				}catch(RejectedExecutionException e)
+				{
+					tasks.remove(codelet, CodeletTask.this);
+				}
+			}
+		};
+
+		/** Set while an event driven codelet waits for a change in its inputs */
+		private final AtomicBoolean waiting = new AtomicBoolean(false);
+
+		/** Resubmits the codelet if it is waiting for a change. Called on input changes and when the maximum staleness elapses */
+		final Runnable wakeUp = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if(!cancelled && waiting.compareAndSet(true, false))
+				{
+					// woken up by a change: the timer is not needed anymore
+					cancelStalenessTimer();
+					submit(0L);
+				}
+			}
+		};
+
+		CodeletTask(Codelet codelet)
+		{
+			this.codelet = codelet;
+		}
+
+		@Override
+		public void run()
+		{
+			if(cancelled)
+				return;
+
+			if(!codelet.isReadyToRun())
+			{
+				park();
+				return;
+			}
+
+			codelet.runOnce();
+
+			if(cancelled || !codelet.shouldLoop())
+			{
+				tasks.remove(codelet, this);
+				return;
+			}
+
+			long period = TimeUnit.MILLISECONDS.toNanos(codelet.getTimeStep());
+			long delay;
+
+			if(period <= 0)
+			{
+				delay = 0L;
+			}else if(fixedRate)
+			{
+				long now = System.nanoTime();
+				delay = release + period - now;
+				if(delay < 0)
+				{
+					// Overrun: skip the missed periods instead of running them in a burst
+					delay = 0L;
+				}
+			}else
+			{
+				delay = period;
+			}
+
+			submit(delay);
+		}
+
+		void submit(long delay)
+		{
+			release = System.nanoTime() + delay;
+
+			try
+			{
+				if(delay <= 0)
+				{
+					future = null;
+					runner.execute(this);
+				}else
+				{
+					future = executor.schedule(runner == executor ? this : handOver, delay, TimeUnit.NANOSECONDS);
+				}
+			}catch(RejectedExecutionException e)
+			{
+				// the scheduler was shut down
+				tasks.remove(codelet, this);
+			}
+		}
+
+		/**
+		 * Leaves an event driven codelet waiting for a change in its inputs, 
+		 * with a timer for its maximum staleness, if any.
+		 */
+		void park()
+		{
+			waiting.set(true);
+
+			if(codelet.isReadyToRun())
+			{
+				// a change arrived before the waiting flag was set
+				wakeUp.run();
+				return;
+			}
+
+			long stalenessRemaining = codelet.getStalenessRemaining();
+			if(stalenessRemaining > 0)
+			{
+				try
+				{
+					stalenessTimer = executor.schedule(wakeUp, stalenessRemaining, TimeUnit.NANOSECONDS);
+				}catch(RejectedExecutionException e)
+				{
+					tasks.remove(codelet, this);
+					return;
+				}
+
+				// a change arrived while the timer was being scheduled
+				if(!waiting.get())
+					cancelStalenessTimer();
+			}
+		}
+
+		private void cancelStalenessTimer()
+		{
+			ScheduledFuture<?> timer = stalenessTimer;
+			if(timer != null)
+			{
+				stalenessTimer = null;
+				timer.cancel(false);
+			}
+		}
+
+		void cancel()
+		{
+			cancelled = true;
+
+			ScheduledFuture<?> f = future;
+			if(f != null)
+				f.cancel(false);
+			cancelStalenessTimer();
+		}
+	}
+}
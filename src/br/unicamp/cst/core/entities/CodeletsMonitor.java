@@ -15,66 +15,362 @@ import br.unicamp.cst.behavior.bn.support.Grafico;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
+import java.awt.GraphicsEnvironment;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.swing.SwingUtilities;
 
 /**
+ * Samples the activation of a set of codelets every refreshPeriod milliseconds.
+ *
+ * The last samples of each codelet are kept in fixed-size ring buffers of primitives, so
+ * the memory used stays the same however long the mind runs, and no object is allocated
+ * per sample. Every sample is also passed to the listeners, such as a
+ * {@link CodeletsMonitorWriter} streaming the samples to a CSV or binary file, and the
+ * activation chart, which is optional and also keeps only the last samples.
+ *
+ * The set of codelets is taken when the monitor starts. The monitor samples in its own thread after
+ * start(), or in the calling thread when run() is called directly, until stop(). It can be started again
+ * after being stopped, with empty buffers.
+ *
  * @author klaus
  *
  */
 public class CodeletsMonitor implements Runnable {
 
-    private double initialTime = Calendar.getInstance().getTimeInMillis();
+    /**
+     * Default number of samples kept for each codelet
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Receives the samples taken by a monitor, on the monitor's thread.
+     */
+    public interface Listener {
+
+        /**
+         * Called once, when the monitor starts, before any sample, by the thread starting it. A listener
+         * which cannot be started again throws IllegalStateException, and the monitor is not started.
+         *
+         * @param codelets the codelets monitored, in the order of the activations
+         */
+        void monitorStarted(List<Codelet> codelets);
+
+        /**
+         * @param time milliseconds since the monitor started
+         * @param activations activation of each codelet, in the order given to monitorStarted().
+         * The array is reused for the next sample
+         */
+        void sampleTaken(long time, double[] activations);
+
+        /**
+         * Called once, when the monitor stops.
+         */
+        void monitorStopped();
+    }
+
+    private long initialTime = System.currentTimeMillis();
     private List<Codelet> listOfCodelets = new ArrayList<Codelet>();
     private long refreshPeriod;
     private String title;
+    private final boolean chartEnabled;
+    private final int capacity;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    private volatile boolean running = false;
+    /**
+     * Thread sampling, from start() or from the call to run() until the listeners are told the monitor stopped
+     */
+    private Thread runner;
+
+    /**
+     * Codelets being monitored, taken when the monitor starts
+     */
+    private List<Codelet> codelets = Collections.emptyList();
+    /**
+     * Ring buffers: time of each sample, and activation of each codelet at each sample
+     */
+    private long[] times;
+    private double[][] activations;
+    /**
+     * Number of samples taken, the last capacity ones being in the ring buffers
+     */
+    private long sampleCount = 0;
 
+    /**
+     * Creates a monitor showing the activations in a chart, as long as the JVM is not headless.
+     */
     public CodeletsMonitor(List<Codelet> listOfCodelets, long refreshPeriod, String title) {
+        this(listOfCodelets, refreshPeriod, title, true, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param listOfCodelets codelets to be monitored
+     * @param refreshPeriod time between samples, in milliseconds
+     * @param title title of the chart
+     * @param chartEnabled true to show the activations in a chart. Ignored if the JVM is headless
+     * @param capacity number of samples kept for each codelet, in memory and in the chart
+     */
+    public CodeletsMonitor(List<Codelet> listOfCodelets, long refreshPeriod, String title, boolean chartEnabled, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("CodeletsMonitor capacity must be at least 1");
+        }
+
         this.listOfCodelets = listOfCodelets;
         this.refreshPeriod = refreshPeriod;
         this.setTitle(title);
+        this.chartEnabled = chartEnabled && !GraphicsEnvironment.isHeadless();
+        this.capacity = capacity;
+
+        if (this.chartEnabled) {
+            listeners.add(new ChartListener());
+        }
+    }
+
+    /**
+     * Creates a headless monitor, which only keeps the samples and passes them to the listeners.
+     *
+     * @param listOfCodelets codelets to be monitored
+     * @param refreshPeriod time between samples, in milliseconds
+     */
+    public CodeletsMonitor(List<Codelet> listOfCodelets, long refreshPeriod) {
+        this(listOfCodelets, refreshPeriod, "", false, DEFAULT_CAPACITY);
     }
 
+    /**
+     * Samples until stop() is called. Called directly, rather than by the thread of start(), it samples in
+     * the calling thread.
+     *
+     * @throws IllegalStateException if the monitor is already running in another thread, or a listener
+     * cannot be started again
+     */
     @Override
-    public synchronized void run() {
+    public void run() {
+        List<Codelet> monitored;
+
+        synchronized (this) {
+            if (runner == null) {
+                begin();
+                running = true;
+                runner = Thread.currentThread();
+            } else if (runner != Thread.currentThread()) {
+                throw new IllegalStateException("CodeletsMonitor is already running");
+            }
+            monitored = codelets;
+        }
+
+        double[] sample = new double[monitored.size()];
+        boolean interrupted = false;
+
+        try {
+            while (running) {
+                long instant = System.currentTimeMillis() - initialTime;
+
+                for (int i = 0; i < sample.length; i++) {
+                    sample[i] = monitored.get(i).getActivation();
+                }
+
+                record(instant, sample);
+
+                for (Listener listener : listeners) {
+                    listener.sampleTaken(instant, sample);
+                }
+
+                Thread.sleep(refreshPeriod);
+            }
+        } catch (InterruptedException e) {
+            // stopped, or interrupted by someone else, who is told so
+            interrupted = running;
+        } finally {
+            for (Listener listener : listeners) {
+                listener.monitorStopped();
+            }
 
-        XYSeriesCollection dataset = new XYSeriesCollection();
+            synchronized (this) {
+                running = false;
+                runner = null;
+                notifyAll();
+            }
 
-        for (Codelet co : listOfCodelets) {
-            dataset.addSeries(new XYSeries(co.getName()));
+            // stop() interrupts the thread only while it is the runner
+            Thread.interrupted();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
+    }
 
-        Grafico activationLevel = new Grafico("Activation Levels", getTitle(), "time", "activation", dataset);
+    /**
+     * Takes the codelets, clears the buffers and tells the listeners the monitor started. Called holding the lock
+     */
+    private void begin() {
+        List<Codelet> monitored = snapshot();
 
-        while (true) {
-            ArrayList<Codelet> tempCodeletsList = new ArrayList<Codelet>();
-            tempCodeletsList.addAll(this.listOfCodelets);
+        initialTime = System.currentTimeMillis();
+        codelets = monitored;
+        times = new long[capacity];
+        activations = new double[monitored.size()][capacity];
+        sampleCount = 0;
 
-            synchronized (tempCodeletsList) {
+        List<Listener> started = new ArrayList<Listener>();
+        try {
+            for (Listener listener : listeners) {
+                listener.monitorStarted(monitored);
+                started.add(listener);
+            }
+        } catch (RuntimeException e) {
+            for (Listener listener : started) {
+                listener.monitorStopped();
+            }
+            throw e;
+        }
+    }
 
-                for (Codelet co : tempCodeletsList) {
+    private List<Codelet> snapshot() {
+        synchronized (listOfCodelets) {
+            return new ArrayList<Codelet>(listOfCodelets);
+        }
+    }
 
-                    double instant = Calendar.getInstance().getTimeInMillis() - initialTime;
+    private synchronized void record(long instant, double[] sample) {
+        int position = (int) (sampleCount % capacity);
 
-                    dataset.getSeries(co.getName()).add(instant, co.getActivation());
-                }
-                try {
-                    Thread.currentThread().sleep(refreshPeriod);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+        times[position] = instant;
+        for (int i = 0; i < sample.length; i++) {
+            activations[i][position] = sample[i];
+        }
+
+        sampleCount++;
+    }
 
+    /**
+     * Starts sampling in a new thread, unless the monitor is already running.
+     *
+     * @throws IllegalStateException if a listener cannot be started again
+     */
+    public synchronized void start() {
+        if (runner != null) {
+            return;
+        }
+
+        begin();
+        running = true;
+        runner = new Thread(this, "CodeletsMonitor");
+        runner.setDaemon(true);
+        runner.start();
+    }
+
+    /**
+     * Stops sampling, and waits until the listeners are told so, unless called by a listener.
+     */
+    public synchronized void stop() {
+        running = false;
+
+        Thread t = runner;
+        if (t == null) {
+            return;
+        }
+
+        t.interrupt();
+        if (t == Thread.currentThread()) {
+            return;
+        }
+
+        boolean interrupted = false;
+        while (runner == t) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if the monitor is sampling
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @param listener receives every sample from now on. Must be added before start() to be told the monitor started
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the number of samples kept for each codelet
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of samples taken since the monitor started, of which at most capacity are kept
+     */
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return the codelets being monitored, empty before the monitor starts
+     */
+    public synchronized List<Codelet> getCodelets() {
+        return Collections.unmodifiableList(codelets);
+    }
+
+    /**
+     * @return the time of the samples kept, in milliseconds since the monitor started, from the oldest
+     */
+    public synchronized long[] getTimes() {
+        long[] copy = new long[kept()];
+        if (times != null) {
+            long first = sampleCount - copy.length;
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = times[(int) ((first + i) % capacity)];
             }
         }
+        return copy;
     }
 
-    public void start() {
-        new Thread(this).start();
+    /**
+     * @param co a codelet being monitored
+     * @return the activations of the codelet in the samples kept, from the oldest, or null if it is not monitored
+     */
+    public synchronized double[] getActivations(Codelet co) {
+        int index = codelets.indexOf(co);
+        if (index < 0) {
+            return null;
+        }
+
+        double[] copy = new double[kept()];
+        long first = sampleCount - copy.length;
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = activations[index][(int) ((first + i) % capacity)];
+        }
+        return copy;
     }
 
-    public void stop() {
-        new Thread(this).interrupt();
+    private int kept() {
+        return (int) Math.min(sampleCount, (long) capacity);
+    }
+
+    /**
+     * @return true if the activations are shown in a chart
+     */
+    public boolean isChartEnabled() {
+        return chartEnabled;
     }
 
     /**
@@ -90,4 +386,49 @@ public class CodeletsMonitor implements Runnable {
     public void setTitle(String title) {
         this.title = title;
     }
+
+    /**
+     * Shows the activations in a chart, keeping only the last samples of each codelet.
+     */
+    private class ChartListener implements Listener {
+
+        private final XYSeriesCollection dataset = new XYSeriesCollection();
+        private final List<XYSeries> series = new ArrayList<XYSeries>();
+
+        @Override
+        public void monitorStarted(List<Codelet> codelets) {
+            if (!series.isEmpty()) {
+                // restarted: keeps the same chart
+                return;
+            }
+
+            for (Codelet co : codelets) {
+                XYSeries s = new XYSeries(co.getName(), true, true);
+                s.setMaximumItemCount(capacity);
+                series.add(s);
+                dataset.addSeries(s);
+            }
+
+            new Grafico("Activation Levels", getTitle(), "time", "activation", dataset);
+        }
+
+        @Override
+        public void sampleTaken(final long time, double[] activations) {
+            final double[] copy = activations.clone();
+
+            // the chart is only changed on the Swing thread, which repaints it
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < copy.length; i++) {
+                        series.get(i).add(time, copy[i]);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void monitorStopped() {
+        }
+    }
 }
@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Streams the samples of a {@link CodeletsMonitor} to a file, as they are taken, in one of two formats:
+ * <ul>
+ * <li>CSV: a header line "time,(codelet name),..." followed by one line per sample, with the time in
+ * milliseconds since the monitor started and each activation with up to 6 decimal places;</li>
+ * <li>BINARY: big endian, the int {@link #MAGIC} and the int {@link #VERSION}, the number of codelets
+ * as an int and their names as modified UTF-8 (see DataOutput.writeUTF()), followed by one record per
+ * sample: the time as a long and each activation as a float.</li>
+ * </ul>
+ * The output is buffered and flushed at least once a second, so memory use stays constant and a file
+ * being written can be followed. Writing does not allocate anything per sample. If the output fails,
+ * the error is printed and nothing else is written. A writer closing its output when the monitor stops
+ * cannot be used again: restarting its monitor throws IllegalStateException, and a new writer is needed.
+ * Otherwise, each restart writes a new header and the samples that follow.
+ */
+public class CodeletsMonitorWriter implements CodeletsMonitor.Listener
+{
+	public enum Format
+	{
+		CSV, BINARY
+	}
+
+	/** First int of a binary file: "CSTM" in ASCII */
+	public static final int MAGIC = 0x4353544D;
+
+	/** Version of the binary format */
+	public static final int VERSION = 1;
+
+	/** Maximum time between flushes, in milliseconds */
+	private static final long FLUSH_PERIOD = 1000L;
+
+	private static final int DECIMAL_PLACES = 6;
+
+	private static final long DECIMAL_SCALE = 1000000L;
+
+	private final DataOutputStream out;
+
+	private final Format format;
+
+	private final boolean closeOnStop;
+
+	/** Reused to write each CSV line */
+	private final StringBuilder line = new StringBuilder();
+
+	private long lastFlush = System.currentTimeMillis();
+
+	private boolean failed = false;
+
+	private boolean closed = false;
+
+	/**
+	 * Writes to a new file, closed when the monitor stops.
+	 *
+	 * @param file file to be written, replaced if it exists
+	 * @param format format of the file
+	 * @throws IOException if the file cannot be created
+	 */
+	public CodeletsMonitorWriter(File file, Format format) throws IOException
+	{
+		this(new FileOutputStream(file), format, true);
+	}
+
+	/**
+	 * @param out stream to be written
+	 * @param format format of the output
+	 * @param closeOnStop true to close the stream when the monitor stops, false to only flush it
+	 */
+	public CodeletsMonitorWriter(OutputStream out, Format format, boolean closeOnStop)
+	{
+		this.out = new DataOutputStream(new BufferedOutputStream(out, 65536));
+		this.format = format;
+		this.closeOnStop = closeOnStop;
+	}
+
+	@Override
+	public void monitorStarted(List<Codelet> codelets)
+	{
+		if(closed)
+			throw new IllegalStateException("CodeletsMonitorWriter was closed when its monitor stopped");
+
+		try
+		{
+			if(format == Format.BINARY)
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(codelets.size());
+				for(Codelet co : codelets)
+				{
+					out.writeUTF(String.valueOf(co.getName()));
+				}
+			}else
+			{
+				line.setLength(0);
+				line.append("time");
+				for(Codelet co : codelets)
+				{
+					line.append(',');
+					appendCsvField(line, String.valueOf(co.getName()));
+				}
+				line.append('\n');
+				out.write(line.toString().getBytes("UTF-8"));
+			}
+			out.flush();
+		}catch(IOException e)
+		{
+			fail(e);
+		}
+	}
+
+	@Override
+	public void sampleTaken(long time, double[] activations)
+	{
+		if(failed)
+			return;
+
+		try
+		{
+			if(format == Format.BINARY)
+			{
+				out.writeLong(time);
+				for(double activation : activations)
+				{
+					out.writeFloat((float) activation);
+				}
+			}else
+			{
+				line.setLength(0);
+				line.append(time);
+				for(double activation : activations)
+				{
+					line.append(',');
+					appendDecimal(line, activation);
+				}
+				line.append('\n');
+				for(int i = 0; i < line.length(); i++)
+				{
+					out.write(line.charAt(i));
+				}
+			}
+
+			long now = System.currentTimeMillis();
+			if(now - lastFlush >= FLUSH_PERIOD)
+			{
+				out.flush();
+				lastFlush = now;
+			}
+		}catch(IOException e)
+		{
+			fail(e);
+		}
+	}
+
+	@Override
+	public void monitorStopped()
+	{
+		try
+		{
+			if(closeOnStop)
+			{
+				closed = true;
+				out.close();
+			}else if(!failed)
+				out.flush();
+		}catch(IOException e)
+		{
+			fail(e);
+		}
+	}
+
+	private void fail(IOException e)
+	{
+		if(!failed)
+			e.printStackTrace();
+		failed = true;
+	}
+
+	/**
+	 * Appends a number with up to 6 decimal places, without trailing zeros and without allocating
+	 */
+	private static void appendDecimal(StringBuilder sb, double value)
+	{
+		if(Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= Long.MAX_VALUE / DECIMAL_SCALE)
+		{
+			sb.append(value);
+			return;
+		}
+
+		long scaled = Math.round(Math.abs(value) * DECIMAL_SCALE);
+		if(value < 0 && scaled != 0)
+			sb.append('-');
+
+		sb.append(scaled / DECIMAL_SCALE);
+
+		long fraction = scaled % DECIMAL_SCALE;
+		if(fraction == 0)
+			return;
+
+		sb.append('.');
+		int digits = DECIMAL_PLACES;
+		while(fraction % 10 == 0)
+		{
+			fraction /= 10;
+			digits--;
+		}
+		for(long d = fraction * 10; d < pow10(digits); d *= 10)
+		{
+			sb.append('0');
+		}
+		sb.append(fraction);
+	}
+
+	private static long pow10(int n)
+	{
+		long p = 1;
+		for(int i = 0; i < n; i++)
+		{
+			p *= 10;
+		}
+		return p;
+	}
+
+	private static void appendCsvField(StringBuilder sb, String field)
+	{
+		if(field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0)
+		{
+			sb.append(field);
+			return;
+		}
+
+		sb.append('"').append(field.replace("\"", "\"\"")).append('"');
+	}
+}
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Synchronous, stepped execution of all the codelets in a CodeRack. Instead of letting each
+ * codelet free-run on its own thread, each call to {@link #step()} runs every codelet exactly
+ * once (see {@link Codelet#runOnce()}), and returns only after all of them have finished.
+ * The codelets' timeStep is not used in this mode.
+ *
+ * Inside a step, codelets are partitioned into levels by their declared inputs, broadcast and
+ * outputs. A codelet is placed in a level after every codelet inserted before it in the
+ * CodeRack that writes a memory it reads, or reads or writes a memory it writes. Codelets in
+ * the same level share no written memory, so they run in parallel on a ForkJoinPool, while
+ * the levels run one after the other. As long as codelets only touch the memories in their
+ * input, broadcast and output lists, the result of each step does not depend on the number
+ * of threads, and a sensor-perception-behavior-actuator chain inserted in this order completes
+ * within one step.
+ *
+ * @see Mind#step()
+ * @see Mind#run(int)
+ */
+public class CognitiveCycle
+{
+	private CodeRack codeRack;
+
+	private ForkJoinPool pool;
+
+	/** Number of steps performed so far */
+	private long stepCount = 0;
+
+	/** Duration of the last step in nanoseconds */
+	private long lastStepTime = 0;
+
+	/** Sum of the durations of all steps in nanoseconds */
+	private long totalStepTime = 0;
+
+	/**
+	 * Creates a cognitive cycle with one thread per available processor.
+	 *
+	 * @param codeRack the coderack whose codelets are run at each step
+	 */
+	public CognitiveCycle(CodeRack codeRack)
+	{
+		this(codeRack, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param codeRack the coderack whose codelets are run at each step
+	 * @param parallelism maximum number of codelets running at the same time
+	 */
+	public CognitiveCycle(CodeRack codeRack, int parallelism)
+	{
+		this.codeRack = codeRack;
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Runs every codelet in the coderack once, level by level.
+	 */
+	public synchronized void step()
+	{
+		long begin = System.nanoTime();
+
+		List<List<Codelet>> levels = partition();
+
+		for(List<Codelet> level : levels)
+		{
+			if(level.size() == 1)
+				level.get(0).runOnce();
+			else
+				pool.invoke(new LevelTask(level, 0, level.size()));
+		}
+
+		lastStepTime = System.nanoTime() - begin;
+		totalStepTime += lastStepTime;
+		stepCount++;
+	}
+
+	/**
+	 * Performs a number of steps in a row.
+	 *
+	 * @param nCycles number of steps to perform
+	 * @return the number of steps per second achieved
+	 */
+	public synchronized double run(int nCycles)
+	{
+		long begin = System.nanoTime();
+
+		for(int i = 0; i < nCycles; i++)
+		{
+			step();
+		}
+
+		long elapsed = System.nanoTime() - begin;
+
+		return elapsed > 0 ? nCycles / (elapsed / 1e9) : 0.0d;
+	}
+
+	/**
+	 * Splits the codelets of the coderack into levels. Codelets in the same level do not write
+	 * memories read or written by the others, and each level only depends on previous levels.
+	 * This is recomputed at each step, since inputs and outputs may change at any time.
+	 *
+	 * @return the list of levels, in execution order
+	 */
+	public List<List<Codelet>> partition()
+	{
+		List<Codelet> codelets = new ArrayList<Codelet>(codeRack.getAllCodelets());
+
+		// Highest level in which each memory was written, and in which it was read or written
+		Map<Memory, Integer> lastWrite = new IdentityHashMap<Memory, Integer>();
+		Map<Memory, Integer> lastAccess = new IdentityHashMap<Memory, Integer>();
+
+		List<List<Codelet>> levels = new ArrayList<List<Codelet>>();
+
+		for(Codelet co : codelets)
+		{
+			List<Memory> inputs = new ArrayList<Memory>(co.getInputs());
+			inputs.addAll(co.getBroadcast());
+			List<Memory> outputs = new ArrayList<Memory>(co.getOutputs());
+
+			int level = 0;
+
+			for(Memory m : inputs)
+			{
+				Integer written = lastWrite.get(m);
+				if(written != null && written + 1 > level)
+					level = written + 1;
+			}
+			for(Memory m : outputs)
+			{
+				Integer accessed = lastAccess.get(m);
+				if(accessed != null && accessed + 1 > level)
+					level = accessed + 1;
+			}
+
+			for(Memory m : inputs)
+			{
+				Integer accessed = lastAccess.get(m);
+				if(accessed == null || accessed < level)
+					lastAccess.put(m, level);
+			}
+			for(Memory m : outputs)
+			{
+				lastWrite.put(m, level);
+				lastAccess.put(m, level);
+			}
+
+			while(levels.size() <= level)
+			{
+				levels.add(new ArrayList<Codelet>());
+			}
+			levels.get(level).add(co);
+		}
+
+		return levels;
+	}
+
+	/**
+	 * @return the number of steps performed so far
+	 */
+	public synchronized long getStepCount()
+	{
+		return stepCount;
+	}
+
+	/**
+	 * @return the duration of the last step in nanoseconds
+	 */
+	public synchronized long getLastStepTime()
+	{
+		return lastStepTime;
+	}
+
+	/**
+	 * @return the mean number of steps per second since this cognitive cycle was created
+	 */
+	public synchronized double getCyclesPerSecond()
+	{
+		return totalStepTime > 0 ? stepCount / (totalStepTime / 1e9) : 0.0d;
+	}
+
+	/**
+	 * @return the maximum number of codelets running at the same time
+	 */
+	public int getParallelism()
+	{
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Stops the threads used by this cognitive cycle.
+	 */
+	public void shutDown()
+	{
+		pool.shutdown();
+	}
+
+	/**
+	 * Runs the codelets of a level, splitting them among the pool threads.
+	 */
+	private static class LevelTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final List<Codelet> level;
+
+		private final int from;
+
+		private final int to;
+
+		LevelTask(List<Codelet> level, int from, int to)
+		{
+			this.level = level;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(to - from == 1)
+			{
+				level.get(from).runOnce();
+			}else
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new LevelTask(level, from, middle), new LevelTask(level, middle, to));
+			}
+		}
+	}
+}
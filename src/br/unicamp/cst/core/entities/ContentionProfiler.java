@@ -0,0 +1,495 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Deadlock detector which also finds out which codelets and memories serialize a mind: every
+ * ddRefreshPeriod milliseconds, besides looking for deadlocks, it looks at the threads running
+ * the mind's codelets and records what they are waiting for.
+ *
+ * Two rankings are kept, from the start of the profiler (or the last reset):
+ * <ul>
+ * <li>resources: the {@link OrderedLock}s of codelets and memory buffers, with the exact number
+ * of times a thread waited for them and for how long, and the object monitors (synchronized
+ * codelets, memory objects, raw memory...), with the number of samples in which a codelet was
+ * blocked on them and the time this represents;</li>
+ * <li>codelets: for each codelet, the time its thread was blocked on monitors (measured by the
+ * JVM, with thread contention monitoring enabled by the profiler) plus the time it was seen
+ * waiting for an OrderedLock.</li>
+ * </ul>
+ * When codelets share pooled threads (see {@link CodeletScheduler}), the blocked time of a thread
+ * is attributed to the codelet it was running at the last sample.
+ *
+ * The rankings are available through {@link #getTopResources(int)}, {@link #getTopCodelets(int)}
+ * and {@link #getReport(int)}. If a report period is set, the report is also logged periodically, at level INFO,
+ * to the logger named after this class.
+ */
+public class ContentionProfiler extends DeadLockDetector
+{
+	/** Default number of entries in each ranking of the logged report */
+	public static final int DEFAULT_TOP = 10;
+
+	private static final Logger logger = Logger.getLogger(ContentionProfiler.class.getName());
+
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+	private final Mind mind;
+
+	/** Monitors by description */
+	private final Map<String, Accumulator> monitors = new HashMap<String, Accumulator>();
+
+	private final Map<OrderedLock, Accumulator> locks = new IdentityHashMap<OrderedLock, Accumulator>();
+
+	private final Map<Codelet, Accumulator> codelets = new IdentityHashMap<Codelet, Accumulator>();
+
+	/** Codelet last seen on each thread, by thread id */
+	private final Map<Long, Codelet> threadCodelets = new HashMap<Long, Codelet>();
+
+	/** Blocked count and time (ms) of each thread at the last sample, by thread id */
+	private final Map<Long, long[]> threadBlocked = new HashMap<Long, long[]>();
+
+	private long lastSampleTime = 0;
+
+	private volatile long reportPeriod = 0;
+
+	private volatile int top = DEFAULT_TOP;
+
+	private long lastReportTime = System.nanoTime();
+
+	/**
+	 * Profiles the given mind, sampling every 100 ms.
+	 *
+	 * @param mind mind whose codelets are profiled
+	 */
+	public ContentionProfiler(Mind mind)
+	{
+		this(mind, 100);
+	}
+
+	/**
+	 * @param mind mind whose codelets are profiled
+	 * @param ddRefreshPeriod sampling period, in milliseconds
+	 */
+	public ContentionProfiler(Mind mind, int ddRefreshPeriod)
+	{
+		super(ddRefreshPeriod);
+		this.mind = mind;
+
+		if(threadMXBean.isThreadContentionMonitoringSupported() && !threadMXBean.isThreadContentionMonitoringEnabled())
+			threadMXBean.setThreadContentionMonitoringEnabled(true);
+	}
+
+	@Override
+	protected void poll()
+	{
+		super.poll();
+
+		sample();
+
+		long period = reportPeriod;
+		if(period > 0 && System.nanoTime() - lastReportTime >= period * 1000000L)
+		{
+			lastReportTime = System.nanoTime();
+			logger.info(getReport(top));
+		}
+	}
+
+	/**
+	 * Takes one sample of what the codelet threads are waiting for. Called every ddRefreshPeriod
+	 * milliseconds once the profiler is started, but may also be called directly.
+	 */
+	public synchronized void sample()
+	{
+		long now = System.nanoTime();
+		long elapsed = lastSampleTime > 0 ? now - lastSampleTime : 0L;
+		lastSampleTime = now;
+
+		Map<Integer, String> descriptions = null;
+
+		for(Codelet co : getCodelets())
+		{
+			addLock(co.lock);
+
+			Thread thread = co.getRunningThread();
+			if(thread == null)
+				continue;
+
+			threadCodelets.put(thread.getId(), co);
+
+			ThreadInfo info = threadMXBean.getThreadInfo(thread.getId());
+			if(info == null)
+				continue;
+
+			OrderedLock waited = OrderedLock.getLockWaitedBy(thread);
+			if(waited != null)
+			{
+				addLock(waited);
+				getCodelet(co).add(1L, elapsed);
+			}else if(info.getThreadState() == Thread.State.BLOCKED && info.getLockInfo() != null)
+			{
+				if(descriptions == null)
+					descriptions = describeMonitors();
+				// the codelet's own blocked time is measured by the JVM below
+				getMonitor(describe(info.getLockInfo(), descriptions)).add(1L, elapsed);
+			}
+		}
+
+		// monitor blocking, as measured by the JVM for each thread
+		for(Map.Entry<Long, Codelet> entry : threadCodelets.entrySet())
+		{
+			ThreadInfo info = threadMXBean.getThreadInfo(entry.getKey());
+			if(info == null || info.getBlockedTime() < 0)
+				continue;
+
+			long[] last = threadBlocked.get(entry.getKey());
+			if(last == null)
+			{
+				last = new long[]{info.getBlockedCount(), info.getBlockedTime()};
+				threadBlocked.put(entry.getKey(), last);
+				continue;
+			}
+
+			long count = info.getBlockedCount() - last[0];
+			long time = info.getBlockedTime() - last[1];
+			if(count > 0 || time > 0)
+				getCodelet(entry.getValue()).add(count, time * 1000000L);
+
+			last[0] = info.getBlockedCount();
+			last[1] = info.getBlockedTime();
+		}
+	}
+
+	private List<Codelet> getCodelets()
+	{
+		List<Codelet> all = new ArrayList<Codelet>();
+		CodeRack codeRack = mind.getCodeRack();
+		if(codeRack != null)
+		{
+			for(Codelet co : codeRack.getAllCodelets().toArray(new Codelet[0]))
+			{
+				if(co != null)
+					all.add(co);
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * Starts following the exact contention counts of a lock, such as the lock of a memory buffer.
+	 * The locks of the mind's codelets are followed automatically, and so are the other locks as
+	 * soon as a codelet is seen waiting for them.
+	 *
+	 * @param lock the lock, ignored if it is not an {@link OrderedLock}
+	 */
+	public synchronized void addLock(Object lock)
+	{
+		if(!(lock instanceof OrderedLock) || locks.containsKey(lock))
+			return;
+
+		Accumulator accumulator = new Accumulator(null);
+		accumulator.setLock((OrderedLock) lock);
+		locks.put((OrderedLock) lock, accumulator);
+	}
+
+	/**
+	 * @return descriptions of the monitors of the mind's codelets and memories, by identity hash code
+	 */
+	private Map<Integer, String> describeMonitors()
+	{
+		Map<Integer, String> monitors = new HashMap<Integer, String>();
+
+		RawMemory rawMemory = mind.getRawMemory();
+		if(rawMemory != null)
+		{
+			monitors.put(System.identityHashCode(rawMemory), "monitor of RawMemory");
+			for(Memory memory : rawMemory.getAllMemoryObjects())
+			{
+				monitors.put(System.identityHashCode(memory), "monitor of memory " + memory.getName());
+			}
+		}
+
+		CodeRack codeRack = mind.getCodeRack();
+		if(codeRack != null)
+			monitors.put(System.identityHashCode(codeRack), "monitor of CodeRack");
+
+		monitors.put(System.identityHashCode(mind), "monitor of Mind");
+
+		for(Codelet co : getCodelets())
+		{
+			monitors.put(System.identityHashCode(co), "monitor of codelet " + co.getName());
+		}
+
+		return monitors;
+	}
+
+	private static String describe(LockInfo lockInfo, Map<Integer, String> monitors)
+	{
+		String description = monitors.get(lockInfo.getIdentityHashCode());
+		if(description != null)
+			return description;
+
+		return "monitor of " + lockInfo.getClassName() + "@" + Integer.toHexString(lockInfo.getIdentityHashCode());
+	}
+
+	private Accumulator getMonitor(String name)
+	{
+		Accumulator accumulator = monitors.get(name);
+		if(accumulator == null)
+		{
+			accumulator = new Accumulator(name);
+			monitors.put(name, accumulator);
+		}
+		return accumulator;
+	}
+
+	private Accumulator getCodelet(Codelet co)
+	{
+		Accumulator accumulator = codelets.get(co);
+		if(accumulator == null)
+		{
+			accumulator = new Accumulator(co.getName());
+			codelets.put(co, accumulator);
+		}
+		return accumulator;
+	}
+
+	/**
+	 * @param n maximum number of entries
+	 * @return the locks and monitors codelets waited for the longest, from the longest
+	 */
+	public synchronized List<Entry> getTopResources(int n)
+	{
+		List<Accumulator> resources = new ArrayList<Accumulator>(locks.values());
+		resources.addAll(monitors.values());
+		return top(resources, n);
+	}
+
+	/**
+	 * @param n maximum number of entries
+	 * @return the codelets which were blocked or waited for a lock the longest, from the longest
+	 */
+	public synchronized List<Entry> getTopCodelets(int n)
+	{
+		return top(codelets.values(), n);
+	}
+
+	private static List<Entry> top(Collection<Accumulator> accumulators, int n)
+	{
+		List<Entry> entries = new ArrayList<Entry>();
+		for(Accumulator accumulator : accumulators)
+		{
+			Entry entry = accumulator.toEntry();
+			if(entry.getCount() > 0 || entry.getTime() > 0)
+				entries.add(entry);
+		}
+
+		Collections.sort(entries, new Comparator<Entry>()
+		{
+			@Override
+			public int compare(Entry a, Entry b)
+			{
+				return Long.compare(b.getTime(), a.getTime());
+			}
+		});
+
+		return entries.size() > n ? new ArrayList<Entry>(entries.subList(0, n)) : entries;
+	}
+
+	/**
+	 * @param n maximum number of entries in each ranking
+	 * @return a report of the top resources and codelets
+	 */
+	public String getReport(int n)
+	{
+		StringBuilder report = new StringBuilder();
+
+		report.append("Top contended resources:\n");
+		appendEntries(report, getTopResources(n));
+
+		report.append("Top blocked codelets:\n");
+		appendEntries(report, getTopCodelets(n));
+
+		return report.toString();
+	}
+
+	private static void appendEntries(StringBuilder report, List<Entry> entries)
+	{
+		if(entries.isEmpty())
+			report.append("  (none)\n");
+
+		for(Entry entry : entries)
+		{
+			report.append(String.format("  %10.1f ms %8d times  %s%n", entry.getTime() / 1e6, entry.getCount(), entry.getName()));
+		}
+	}
+
+	/**
+	 * Discards everything recorded so far.
+	 */
+	public synchronized void reset()
+	{
+		for(Accumulator accumulator : locks.values())
+		{
+			accumulator.reset();
+		}
+		monitors.clear();
+		codelets.clear();
+		threadCodelets.clear();
+		threadBlocked.clear();
+		lastSampleTime = 0;
+	}
+
+	/**
+	 * @return how often the report is logged, in milliseconds. 0 means never
+	 */
+	public long getReportPeriod()
+	{
+		return reportPeriod;
+	}
+
+	/**
+	 * @param reportPeriod how often the report is logged while the profiler runs, in milliseconds. 0 means never
+	 */
+	public void setReportPeriod(long reportPeriod)
+	{
+		this.reportPeriod = reportPeriod;
+	}
+
+	/**
+	 * @return the number of entries in each ranking of the logged report
+	 */
+	public int getTop()
+	{
+		return top;
+	}
+
+	/**
+	 * @param top the number of entries in each ranking of the logged report
+	 */
+	public void setTop(int top)
+	{
+		this.top = top;
+	}
+
+	/**
+	 * A resource or codelet in a ranking.
+	 */
+	public static class Entry
+	{
+		private final String name;
+
+		private final long count;
+
+		private final long time;
+
+		Entry(String name, long count, long time)
+		{
+			this.name = name;
+			this.count = count;
+			this.time = time;
+		}
+
+		/**
+		 * @return the description of the resource, or the name of the codelet
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * @return the number of times threads waited, or of samples in which they were waiting
+		 */
+		public long getCount()
+		{
+			return count;
+		}
+
+		/**
+		 * @return the time spent waiting, in nanoseconds
+		 */
+		public long getTime()
+		{
+			return time;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name + ": " + count + " times, " + (time / 1000000L) + " ms";
+		}
+	}
+
+	private static class Accumulator
+	{
+		private final String name;
+
+		private long count;
+
+		private long time;
+
+		/** If not null, the exact counts are read from this lock, from the base values */
+		private OrderedLock lock;
+
+		private long baseCount;
+
+		private long baseTime;
+
+		Accumulator(String name)
+		{
+			this.name = name;
+		}
+
+		void setLock(OrderedLock lock)
+		{
+			this.lock = lock;
+			this.baseCount = lock.getContentions();
+			this.baseTime = lock.getWaitTime();
+		}
+
+		void add(long count, long time)
+		{
+			this.count += count;
+			this.time += time;
+		}
+
+		void reset()
+		{
+			count = 0;
+			time = 0;
+			if(lock != null)
+				setLock(lock);
+		}
+
+		Entry toEntry()
+		{
+			if(lock != null)
+				return new Entry(lock.describe(), lock.getContentions() - baseCount, lock.getWaitTime() - baseTime);
+
+			return new Entry(name, count, time);
+		}
+	}
+}
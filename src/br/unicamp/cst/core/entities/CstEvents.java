@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities;
+
+import java.util.logging.Logger;
+
+/**
+ * Emits JDK Flight Recorder events for the cognitive activity of the minds in this JVM: codelet cycles,
+ * memory writes, memories created and destroyed, impendingAccess() lock waits, behavior network
+ * selections and GLAS learning runs. The events are named br.unicamp.cst.*, in the CST category, so
+ * they can be recorded and analyzed with the standard JFR tools (jcmd JFR.start, Java Mission Control),
+ * together with the GC and CPU events of the JVM.
+ *
+ * The events are disabled by default, and the instrumented code then only reads one volatile field.
+ * When enabled, they are created whether or not a recording is running, so they should be disabled when
+ * not profiling. Flight Recorder requires a JVM with the jdk.jfr API (Java 8u262 or newer, or Java 11).
+ *
+ * This class does not use the jdk.jfr API itself, so it loads on any JVM. The events are in JfrEvents.
+ *
+ * @see Mind#setFlightRecorderEvents(boolean)
+ */
+public final class CstEvents
+{
+	/** Read by the instrumented code before creating any event */
+	static volatile boolean enabled = false;
+
+	private CstEvents()
+	{
+	}
+
+	/**
+	 * Enables or disables the events, for all minds in this JVM.
+	 *
+	 * @param enable true to emit the events
+	 * @return true if the events are enabled, which may not be the case if this JVM has no Flight Recorder
+	 */
+	public static synchronized boolean setEnabled(boolean enable)
+	{
+		if(enable && !enabled)
+		{
+			try
+			{
+				Class.forName("jdk.jfr.Event");
+			}catch(ClassNotFoundException e)
+			{
+				Logger.getLogger(CstEvents.class.getName()).info("Flight Recorder is not supported by this JVM. CST events stay disabled.");
+				return false;
+			}
+		}
+
+		enabled = enable;
+		return enabled;
+	}
+
+	/**
+	 * @return true if the events are enabled
+	 */
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Starts timing a codelet cycle
+	 *
+	 * @return the event, to be passed to endCodeletCycle()
+	 */
+	static Object beginCodeletCycle()
+	{
+		return JfrEvents.beginCodeletCycle();
+	}
+
+	static void endCodeletCycle(Object event, Codelet co, long accessTime, long calculateActivationTime, long procTime, boolean procExecuted, boolean skipped)
+	{
+		JfrEvents.endCodeletCycle(event, co, accessTime, calculateActivationTime, procTime, procExecuted, skipped);
+	}
+
+	/**
+	 * Starts timing a write to a memory object
+	 *
+	 * @return the event, to be passed to endMemoryWrite()
+	 */
+	static Object beginMemoryWrite()
+	{
+		return JfrEvents.beginMemoryWrite();
+	}
+
+	static void endMemoryWrite(Object event, MemoryObject mo, Object info)
+	{
+		JfrEvents.endMemoryWrite(event, mo, info);
+	}
+
+	static void memoryCreated(Memory memory)
+	{
+		JfrEvents.memoryCreated(memory);
+	}
+
+	static void memoryDestroyed(Memory memory)
+	{
+		JfrEvents.memoryDestroyed(memory);
+	}
+
+	/**
+	 * Starts timing an impendingAccess()
+	 *
+	 * @return the event, to be passed to endLockAccess()
+	 */
+	static Object beginLockAccess()
+	{
+		return JfrEvents.beginLockAccess();
+	}
+
+	static void endLockAccess(Object event, Codelet accessing, Object accessed, boolean acquired)
+	{
+		JfrEvents.endLockAccess(event, accessing, accessed, acquired);
+	}
+
+	/**
+	 * Emits the choice of a behavior by a winner-takes-all codelet. Call only if isEnabled().
+	 *
+	 * @param selector the codelet choosing the behavior
+	 * @param behavior the behavior chosen, or null if none was executable
+	 * @param activation activation of the behavior chosen
+	 * @param candidates number of executable behaviors above the activation threshold
+	 * @param threshold activation threshold
+	 */
+	public static void behaviorSelected(Codelet selector, Codelet behavior, double activation, int candidates, double threshold)
+	{
+		JfrEvents.behaviorSelected(selector, behavior, activation, candidates, threshold);
+	}
+
+	/**
+	 * Starts timing a GLAS learning run. Call only if isEnabled().
+	 *
+	 * @return the event, to be passed to endGlasLearningRun()
+	 */
+	public static Object beginGlasLearningRun()
+	{
+		return JfrEvents.beginGlasLearningRun();
+	}
+
+	/**
+	 * @param event returned by beginGlasLearningRun()
+	 * @param events number of events in the sequence learned
+	 * @param reRuns number of optimizations run
+	 * @param bestFitness fitness of the best solution found
+	 */
+	public static void endGlasLearningRun(Object event, int events, int reRuns, double bestFitness)
+	{
+		JfrEvents.endGlasLearningRun(event, events, reRuns, bestFitness);
+	}
+}
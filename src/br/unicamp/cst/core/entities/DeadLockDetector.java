@@ -28,7 +28,7 @@ import java.lang.management.ThreadMXBean;
 public class DeadLockDetector implements Runnable{
 
 	private int ddRefreshPeriod=1000;
-	private boolean shouldLoop=true;
+	private volatile boolean shouldLoop=true;
 
 	public DeadLockDetector(int ddRefreshPeriod){
 		this.ddRefreshPeriod=ddRefreshPeriod;
@@ -39,22 +39,31 @@ public class DeadLockDetector implements Runnable{
 	@Override
 	public void run() {
 		do{
-			ThreadMXBean tmx = ManagementFactory.getThreadMXBean();
-			long[] ids = tmx.findDeadlockedThreads();
-			if (ids != null) {
-				ThreadInfo[] infos = tmx.getThreadInfo(ids, true, true);
-				System.out.println("The following threads are deadlocked: ");
-				for (ThreadInfo ti : infos) {
-					System.out.println(ti);
-				}
-			}
-			try {Thread.currentThread().sleep(this.ddRefreshPeriod);} catch (InterruptedException e) {e.printStackTrace();}
+			poll();
+			try {Thread.sleep(this.ddRefreshPeriod);} catch (InterruptedException e) {e.printStackTrace(); return;}
 		}while(shouldLoop);
 	}
 
+	/**
+	 * Called every ddRefreshPeriod milliseconds. Looks for deadlocked threads and prints them.
+	 */
+	protected void poll() {
+		ThreadMXBean tmx = ManagementFactory.getThreadMXBean();
+		long[] ids = tmx.findDeadlockedThreads();
+		if (ids != null) {
+			ThreadInfo[] infos = tmx.getThreadInfo(ids, true, true);
+			System.out.println("The following threads are deadlocked: ");
+			for (ThreadInfo ti : infos) {
+				System.out.println(ti);
+			}
+		}
+	}
+
 	public void start()
 	{ 		this.shouldLoop=true;
-			new Thread(this).start();
+			Thread t=new Thread(this, getClass().getSimpleName());
+			t.setDaemon(true); // does not keep the JVM alive after the mind is shut down
+			t.start();
 	}
 	public synchronized void stop(){
 		this.shouldLoop=false;
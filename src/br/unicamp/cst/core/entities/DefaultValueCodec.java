@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Value codec used by default in checkpoints. Strings, boxed primitives and arrays of double, float,
+ * int, long and byte are written in a compact binary form. Any other Serializable value is written
+ * with Java serialization, which is much bigger and slower: a codec extending this one may override
+ * write() and read() for the application's own types, falling back to super for the others.
+ * Values which are not Serializable cannot be written.
+ */
+public class DefaultValueCodec implements ValueCodec
+{
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte DOUBLE = 4;
+	private static final byte FLOAT = 5;
+	private static final byte BOOLEAN = 6;
+	private static final byte SHORT = 7;
+	private static final byte BYTE = 8;
+	private static final byte CHARACTER = 9;
+	private static final byte DOUBLE_ARRAY = 10;
+	private static final byte FLOAT_ARRAY = 11;
+	private static final byte INT_ARRAY = 12;
+	private static final byte LONG_ARRAY = 13;
+	private static final byte BYTE_ARRAY = 14;
+	private static final byte LONG_STRING = 15;
+	private static final byte SERIALIZED = 16;
+
+	/** Longest string writeUTF() can write, in bytes */
+	private static final int MAX_UTF = 65535;
+
+	@Override
+	public void write(Object value, DataOutput out) throws IOException
+	{
+		if(value instanceof String)
+		{
+			String s = (String) value;
+			if(s.length() <= MAX_UTF / 3)
+			{
+				out.writeByte(STRING);
+				out.writeUTF(s);
+			}else
+			{
+				byte[] bytes = s.getBytes("UTF-8");
+				out.writeByte(LONG_STRING);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+		}else if(value instanceof Integer)
+		{
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		}else if(value instanceof Long)
+		{
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		}else if(value instanceof Double)
+		{
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		}else if(value instanceof Float)
+		{
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		}else if(value instanceof Boolean)
+		{
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}else if(value instanceof Short)
+		{
+			out.writeByte(SHORT);
+			out.writeShort((Short) value);
+		}else if(value instanceof Byte)
+		{
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		}else if(value instanceof Character)
+		{
+			out.writeByte(CHARACTER);
+			out.writeChar((Character) value);
+		}else if(value instanceof double[])
+		{
+			double[] array = (double[]) value;
+			out.writeByte(DOUBLE_ARRAY);
+			out.writeInt(array.length);
+			for(double d : array)
+			{
+				out.writeDouble(d);
+			}
+		}else if(value instanceof float[])
+		{
+			float[] array = (float[]) value;
+			out.writeByte(FLOAT_ARRAY);
+			out.writeInt(array.length);
+			for(float f : array)
+			{
+				out.writeFloat(f);
+			}
+		}else if(value instanceof int[])
+		{
+			int[] array = (int[]) value;
+			out.writeByte(INT_ARRAY);
+			out.writeInt(array.length);
+			for(int i : array)
+			{
+				out.writeInt(i);
+			}
+		}else if(value instanceof long[])
+		{
+			long[] array = (long[]) value;
+			out.writeByte(LONG_ARRAY);
+			out.writeInt(array.length);
+			for(long l : array)
+			{
+				out.writeLong(l);
+			}
+		}else if(value instanceof byte[])
+		{
+			byte[] array = (byte[]) value;
+			out.writeByte(BYTE_ARRAY);
+			out.writeInt(array.length);
+			out.write(array);
+		}else if(value instanceof Serializable)
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream objects = new ObjectOutputStream(bytes);
+			objects.writeObject(value);
+			objects.close();
+
+			out.writeByte(SERIALIZED);
+			out.writeInt(bytes.size());
+			out.write(bytes.toByteArray());
+		}else
+		{
+			throw new NotSerializableException(value.getClass().getName());
+		}
+	}
+
+	@Override
+	public Object read(DataInput in) throws IOException
+	{
+		byte type = in.readByte();
+
+		switch(type)
+		{
+		case STRING:
+			return in.readUTF();
+		case INTEGER:
+			return in.readInt();
+		case LONG:
+			return in.readLong();
+		case DOUBLE:
+			return in.readDouble();
+		case FLOAT:
+			return in.readFloat();
+		case BOOLEAN:
+			return in.readBoolean();
+		case SHORT:
+			return in.readShort();
+		case BYTE:
+			return in.readByte();
+		case CHARACTER:
+			return in.readChar();
+		case DOUBLE_ARRAY:
+		{
+			double[] array = new double[in.readInt()];
+			for(int i = 0; i < array.length; i++)
+			{
+				array[i] = in.readDouble();
+			}
+			return array;
+		}
+		case FLOAT_ARRAY:
+		{
+			float[] array = new float[in.readInt()];
+			for(int i = 0; i < array.length; i++)
+			{
+				array[i] = in.readFloat();
+			}
+			return array;
+		}
+		case INT_ARRAY:
+		{
+			int[] array = new int[in.readInt()];
+			for(int i = 0; i < array.length; i++)
+			{
+				array[i] = in.readInt();
+			}
+			return array;
+		}
+		case LONG_ARRAY:
+		{
+			long[] array = new long[in.readInt()];
+			for(int i = 0; i < array.length; i++)
+			{
+				array[i] = in.readLong();
+			}
+			return array;
+		}
+		case BYTE_ARRAY:
+		{
+			byte[] array = new byte[in.readInt()];
+			in.readFully(array);
+			return array;
+		}
+		case LONG_STRING:
+		{
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return new String(bytes, "UTF-8");
+		}
+		case SERIALIZED:
+		{
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			try
+			{
+				return objects.readObject();
+			}catch(ClassNotFoundException e)
+			{
+				throw new IOException("Cannot restore a value of a class not found", e);
+			}finally
+			{
+				objects.close();
+			}
+		}
+		default:
+			throw new IOException("Unknown value type "+type);
+		}
+	}
+}
@@ -0,0 +1,389 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Pool of threads shared by many tenants (the minds of a {@link MindHost}), each one with its own
+ * queue of tasks. Idle threads take the next task from the tenant which used the least CPU time
+ * relative to its share, so a tenant with twice the share of another gets twice as much of the pool
+ * when both have tasks waiting, and a tenant flooding its queue cannot starve the others. The CPU time
+ * of a task is measured on the thread running it, so a task blocked in I/O or sleeping is not charged
+ * for the time it waits (if the JVM cannot measure the CPU time of threads, the wall time is used).
+ *
+ * Each tenant's virtual time is the time spent running its tasks divided by its share. A tenant which
+ * becomes ready again starts from the smallest virtual time among the ready tenants, so time spent
+ * idle or paused is not credited to it.
+ */
+final class FairShareExecutor
+{
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	/** Ready tenants, by virtual time */
+	private final TreeSet<Tenant> ready = new TreeSet<Tenant>();
+
+	private final Thread[] workers;
+
+	/** Virtual time of the last tenant taken from the ready set */
+	private long minVirtualTime = 0L;
+
+	private long tenantCount = 0L;
+
+	private boolean shutDown = false;
+
+	FairShareExecutor(int poolSize, String name)
+	{
+		workers = new Thread[poolSize];
+		for(int i = 0; i < poolSize; i++)
+		{
+			workers[i] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					work();
+				}
+			}, name + "-" + (i + 1));
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	int getPoolSize()
+	{
+		return workers.length;
+	}
+
+	/**
+	 * @param share relative share of the pool, greater than 0
+	 * @return a new tenant, with an empty queue
+	 */
+	synchronized Tenant newTenant(double share)
+	{
+		return new Tenant(share, tenantCount++);
+	}
+
+	/**
+	 * Stops the threads. Tasks still waiting are dropped, and new tasks are rejected.
+	 */
+	void shutDown()
+	{
+		synchronized(this)
+		{
+			shutDown = true;
+			ready.clear();
+			notifyAll();
+		}
+
+		for(Thread worker : workers)
+		{
+			worker.interrupt();
+		}
+	}
+
+	synchronized boolean isShutDown()
+	{
+		return shutDown;
+	}
+
+	private void work()
+	{
+		while(true)
+		{
+			Tenant tenant;
+			Runnable task;
+			long waited;
+
+			synchronized(this)
+			{
+				while(!shutDown && ready.isEmpty())
+				{
+					try
+					{
+						wait();
+					}catch(InterruptedException e)
+					{
+						// checks shutDown
+					}
+				}
+				if(shutDown)
+					return;
+
+				tenant = ready.pollFirst();
+				minVirtualTime = Math.max(minVirtualTime, tenant.virtualTime);
+				waited = System.nanoTime() - tenant.queueTimes[tenant.head];
+				task = tenant.poll();
+				tenant.running++;
+
+				if(tenant.size > 0)
+				{
+					// another worker can run the next task of the tenant meanwhile
+					ready.add(tenant);
+					notify();
+				}else
+					tenant.ready = false;
+			}
+
+			long begin = cpuTime();
+			try
+			{
+				task.run();
+			}catch(Throwable t)
+			{
+				t.printStackTrace();
+			}
+			long elapsed = Math.max(cpuTime() - begin, 0L);
+
+			synchronized(this)
+			{
+				// the virtual time is a key of the ready set, so the tenant leaves it while the time changes
+				boolean wasReady = tenant.ready && ready.remove(tenant);
+				tenant.virtualTime += (long) (elapsed / tenant.share);
+				tenant.running--;
+				tenant.cpuTime += elapsed;
+				tenant.waitTime += waited;
+				tenant.tasks++;
+				if(wasReady)
+					ready.add(tenant);
+			}
+		}
+	}
+
+	/**
+	 * @return the CPU time of the current thread, or the wall time if the JVM cannot measure it, in nanoseconds
+	 */
+	private static long cpuTime()
+	{
+		if(THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled())
+			return THREADS.getCurrentThreadCpuTime();
+
+		return System.nanoTime();
+	}
+
+	/**
+	 * Queue of tasks of one tenant. Run by the pool's threads, in order, but possibly several at a time.
+	 */
+	final class Tenant implements Executor, Comparable<Tenant>
+	{
+		private final long id;
+
+		private double share;
+
+		private long virtualTime;
+
+		/** True while this tenant is in the ready set */
+		private boolean ready = false;
+
+		private boolean paused = false;
+
+		/** Tasks waiting, in a ring buffer, with the time each one was queued */
+		private Runnable[] queue = new Runnable[8];
+		private long[] queueTimes = new long[8];
+		private int head = 0;
+		private int size = 0;
+
+		private int running = 0;
+
+		private long cpuTime = 0L;
+		private long waitTime = 0L;
+		private long tasks = 0L;
+
+		private Tenant(double share, long id)
+		{
+			setShare(share);
+			this.id = id;
+		}
+
+		/**
+		 * Queues a task, run when this tenant's turn comes
+		 *
+		 * @throws RejectedExecutionException if the pool was shut down
+		 */
+		@Override
+		public void execute(Runnable task)
+		{
+			synchronized(FairShareExecutor.this)
+			{
+				if(shutDown)
+					throw new RejectedExecutionException("The pool was shut down");
+
+				if(size == queue.length)
+					grow();
+
+				int tail = (head + size) % queue.length;
+				queue[tail] = task;
+				queueTimes[tail] = System.nanoTime();
+				size++;
+
+				makeReady();
+			}
+		}
+
+		private void makeReady()
+		{
+			if(!ready && !paused && size > 0)
+			{
+				virtualTime = Math.max(virtualTime, minVirtualTime);
+				ready = true;
+				FairShareExecutor.this.ready.add(this);
+				FairShareExecutor.this.notify();
+			}
+		}
+
+		private Runnable poll()
+		{
+			Runnable task = queue[head];
+			queue[head] = null;
+			head = (head + 1) % queue.length;
+			size--;
+			return task;
+		}
+
+		private void grow()
+		{
+			Runnable[] newQueue = new Runnable[queue.length * 2];
+			long[] newTimes = new long[queue.length * 2];
+			for(int i = 0; i < size; i++)
+			{
+				newQueue[i] = queue[(head + i) % queue.length];
+				newTimes[i] = queueTimes[(head + i) % queue.length];
+			}
+			queue = newQueue;
+			queueTimes = newTimes;
+			head = 0;
+		}
+
+		/**
+		 * Stops running the tasks of this tenant. The tasks keep being queued.
+		 */
+		void pause()
+		{
+			synchronized(FairShareExecutor.this)
+			{
+				paused = true;
+				if(ready)
+				{
+					FairShareExecutor.this.ready.remove(this);
+					ready = false;
+				}
+			}
+		}
+
+		void resume()
+		{
+			synchronized(FairShareExecutor.this)
+			{
+				paused = false;
+				makeReady();
+			}
+		}
+
+		boolean isPaused()
+		{
+			synchronized(FairShareExecutor.this)
+			{
+				return paused;
+			}
+		}
+
+		/**
+		 * Drops the tasks waiting
+		 */
+		void clear()
+		{
+			synchronized(FairShareExecutor.this)
+			{
+				if(ready)
+				{
+					FairShareExecutor.this.ready.remove(this);
+					ready = false;
+				}
+				Arrays.fill(queue, null);
+				head = 0;
+				size = 0;
+			}
+		}
+
+		double getShare()
+		{
+			synchronized(FairShareExecutor.this)
+			{
+				return share;
+			}
+		}
+
+		void setShare(double share)
+		{
+			if(!(share > 0.0d) || Double.isInfinite(share))
+				throw new IllegalArgumentException("The share of a mind must be greater than 0");
+
+			synchronized(FairShareExecutor.this)
+			{
+				this.share = share;
+			}
+		}
+
+		int getQueueLength()
+		{
+			synchronized(FairShareExecutor.this)
+			{
+				return size;
+			}
+		}
+
+		int getRunning()
+		{
+			synchronized(FairShareExecutor.this)
+			{
+				return running;
+			}
+		}
+
+		long getCpuTime()
+		{
+			synchronized(FairShareExecutor.this)
+			{
+				return cpuTime;
+			}
+		}
+
+		long getWaitTime()
+		{
+			synchronized(FairShareExecutor.this)
+			{
+				return waitTime;
+			}
+		}
+
+		long getTasks()
+		{
+			synchronized(FairShareExecutor.this)
+			{
+				return tasks;
+			}
+		}
+
+		@Override
+		public int compareTo(Tenant other)
+		{
+			if(virtualTime != other.virtualTime)
+				return virtualTime < other.virtualTime ? -1 : 1;
+
+			return Long.compare(id, other.id);
+		}
+	}
+}
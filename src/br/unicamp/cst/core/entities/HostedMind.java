@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities;
+
+/**
+ * A mind running on a {@link MindHost}, with its share of the host's pool and its metrics.
+ *
+ * Pausing a mind keeps its codelets scheduled but does not run them until it is resumed, so it takes
+ * no CPU time meanwhile. Stopping a mind unschedules its codelets, which start from a new cycle when
+ * it is started again.
+ */
+public class HostedMind
+{
+	private final MindHost host;
+
+	private final Mind mind;
+
+	private final FairShareExecutor.Tenant tenant;
+
+	private final CodeletScheduler scheduler;
+
+	private boolean running = false;
+
+	HostedMind(MindHost host, Mind mind, FairShareExecutor.Tenant tenant, CodeletScheduler scheduler)
+	{
+		this.host = host;
+		this.mind = mind;
+		this.tenant = tenant;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * @return the mind
+	 */
+	public Mind getMind()
+	{
+		return mind;
+	}
+
+	/**
+	 * @return the host running this mind
+	 */
+	public MindHost getHost()
+	{
+		return host;
+	}
+
+	/**
+	 * Starts running the codelets in the mind's coderack. Starting a paused mind leaves it paused.
+	 */
+	public synchronized void start()
+	{
+		if(running)
+			return;
+
+		running = true;
+		mind.start();
+	}
+
+	/**
+	 * Unschedules the codelets in the mind's coderack, and drops the cycles waiting to run.
+	 * A cycle already running is allowed to finish.
+	 */
+	public synchronized void stop()
+	{
+		running = false;
+
+		for(Codelet co : mind.getCodeRack().getAllCodelets())
+		{
+			scheduler.unschedule(co);
+		}
+		tenant.clear();
+	}
+
+	/**
+	 * @return true if the mind was started and not stopped since
+	 */
+	public synchronized boolean isRunning()
+	{
+		return running;
+	}
+
+	/**
+	 * Stops running the codelets of the mind, which stay scheduled. Cycles already running are allowed to finish.
+	 */
+	public void pause()
+	{
+		tenant.pause();
+	}
+
+	/**
+	 * Runs the codelets of a paused mind again.
+	 */
+	public void resume()
+	{
+		tenant.resume();
+	}
+
+	/**
+	 * @return true if the mind is paused
+	 */
+	public boolean isPaused()
+	{
+		return tenant.isPaused();
+	}
+
+	/**
+	 * @return the relative share of the host's pool given to this mind
+	 */
+	public double getShare()
+	{
+		return tenant.getShare();
+	}
+
+	/**
+	 * @param share the relative share of the host's pool given to this mind, greater than 0
+	 */
+	public void setShare(double share)
+	{
+		tenant.setShare(share);
+	}
+
+	/**
+	 * @return the time spent running the codelets of this mind, in nanoseconds
+	 */
+	public long getCpuTime()
+	{
+		return tenant.getCpuTime();
+	}
+
+	/**
+	 * @return the fraction of the CPU time spent by the host on this mind
+	 */
+	public double getCpuShare()
+	{
+		long total = host.getCpuTime();
+
+		return total > 0 ? (double) getCpuTime() / total : 0.0d;
+	}
+
+	/**
+	 * @return the number of codelet cycles run, including the ones where an event driven codelet found no change
+	 */
+	public long getCycles()
+	{
+		return tenant.getTasks();
+	}
+
+	/**
+	 * @return the time the cycles of this mind waited for a thread of the pool, in nanoseconds, on average
+	 */
+	public double getAverageQueueWait()
+	{
+		long cycles = tenant.getTasks();
+
+		return cycles > 0 ? (double) tenant.getWaitTime() / cycles : 0.0d;
+	}
+
+	/**
+	 * @return the number of cycles of this mind waiting for a thread of the pool
+	 */
+	public int getQueueLength()
+	{
+		return tenant.getQueueLength();
+	}
+
+	/**
+	 * @return the number of cycles of this mind running right now
+	 */
+	public int getRunningCycles()
+	{
+		return tenant.getRunning();
+	}
+}
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Flight Recorder events of CST, and the code creating them. Only loaded once the events are enabled
+ * (see {@link CstEvents}), so the rest of CST runs on JVMs without the jdk.jfr API.
+ */
+final class JfrEvents
+{
+	private JfrEvents()
+	{
+	}
+
+	@Name("br.unicamp.cst.CodeletCycle")
+	@Label("Codelet Cycle")
+	@Description("One cycle of a codelet: accessMemoryObjects(), calculateActivation() and proc()")
+	@Category({"CST", "Codelets"})
+	@StackTrace(false)
+	static final class CodeletCycle extends Event
+	{
+		@Label("Codelet")
+		String codelet;
+
+		@Label("Codelet Class")
+		Class<?> codeletClass;
+
+		@Label("Activation")
+		double activation;
+
+		@Label("Threshold")
+		double threshold;
+
+		@Label("Access Memory Objects Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long accessMemoryObjectsTime;
+
+		@Label("Calculate Activation Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long calculateActivationTime;
+
+		@Label("Proc Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long procTime;
+
+		@Label("Proc Executed")
+		@Description("True if the activation reached the threshold and proc() ran")
+		boolean procExecuted;
+
+		@Label("Skipped")
+		@Description("True if the cycle was skipped because no input changed")
+		boolean skipped;
+	}
+
+	@Name("br.unicamp.cst.MemoryWrite")
+	@Label("Memory Write")
+	@Description("New info set in a memory object, including the notification of its observers")
+	@Category({"CST", "Memory"})
+	static final class MemoryWrite extends Event
+	{
+		@Label("Memory")
+		String memory;
+
+		@Label("Info Class")
+		Class<?> infoClass;
+
+		@Label("Version")
+		long version;
+	}
+
+	@Name("br.unicamp.cst.MemoryCreated")
+	@Label("Memory Created")
+	@Description("Memory added to raw memory")
+	@Category({"CST", "Memory"})
+	static final class MemoryCreated extends Event
+	{
+		@Label("Memory")
+		String memory;
+
+		@Label("Memory Class")
+		Class<?> memoryClass;
+	}
+
+	@Name("br.unicamp.cst.MemoryDestroyed")
+	@Label("Memory Destroyed")
+	@Description("Memory removed from raw memory")
+	@Category({"CST", "Memory"})
+	static final class MemoryDestroyed extends Event
+	{
+		@Label("Memory")
+		String memory;
+
+		@Label("Memory Class")
+		Class<?> memoryClass;
+	}
+
+	@Name("br.unicamp.cst.LockAccess")
+	@Label("Impending Access")
+	@Description("Locks of a codelet and of the codelet or buffer it accesses, acquired or given up")
+	@Category({"CST", "Locks"})
+	static final class LockAccess extends Event
+	{
+		@Label("Codelet")
+		String codelet;
+
+		@Label("Accessed")
+		String accessed;
+
+		@Label("Acquired")
+		@Description("False if the locks were given up after the lock manager's timeout")
+		boolean acquired;
+	}
+
+	@Name("br.unicamp.cst.BehaviorSelection")
+	@Label("Behavior Selection")
+	@Description("Behavior chosen by a winner-takes-all codelet of a behavior network")
+	@Category({"CST", "Behavior"})
+	@StackTrace(false)
+	static final class BehaviorSelection extends Event
+	{
+		@Label("Selector")
+		String selector;
+
+		@Label("Behavior")
+		String behavior;
+
+		@Label("Activation")
+		double activation;
+
+		@Label("Candidates")
+		int candidates;
+
+		@Label("Threshold")
+		double threshold;
+	}
+
+	@Name("br.unicamp.cst.GlasLearningRun")
+	@Label("GLAS Learning Run")
+	@Description("GlasLearner.learnSequence() run")
+	@Category({"CST", "Learning"})
+	static final class GlasLearningRun extends Event
+	{
+		@Label("Sequence Events")
+		int events;
+
+		@Label("Reruns")
+		int reRuns;
+
+		@Label("Best Fitness")
+		double bestFitness;
+	}
+
+	static Object beginCodeletCycle()
+	{
+		CodeletCycle event = new CodeletCycle();
+		event.begin();
+		return event;
+	}
+
+	static void endCodeletCycle(Object begun, Codelet co, long accessTime, long calculateActivationTime, long procTime, boolean procExecuted, boolean skipped)
+	{
+		CodeletCycle event = (CodeletCycle) begun;
+		event.end();
+		if(event.shouldCommit())
+		{
+			event.codelet = co.getName();
+			event.codeletClass = co.getClass();
+			event.activation = co.getActivation();
+			event.threshold = co.getThreshold();
+			event.accessMemoryObjectsTime = accessTime;
+			event.calculateActivationTime = calculateActivationTime;
+			event.procTime = procTime;
+			event.procExecuted = procExecuted;
+			event.skipped = skipped;
+			event.commit();
+		}
+	}
+
+	static Object beginMemoryWrite()
+	{
+		MemoryWrite event = new MemoryWrite();
+		event.begin();
+		return event;
+	}
+
+	static void endMemoryWrite(Object begun, MemoryObject mo, Object info)
+	{
+		MemoryWrite event = (MemoryWrite) begun;
+		event.end();
+		if(event.shouldCommit())
+		{
+			event.memory = mo.getName();
+			event.infoClass = info != null ? info.getClass() : null;
+			event.version = mo.getVersion();
+			event.commit();
+		}
+	}
+
+	static void memoryCreated(Memory memory)
+	{
+		MemoryCreated event = new MemoryCreated();
+		if(event.shouldCommit())
+		{
+			event.memory = memory.getName();
+			event.memoryClass = memory.getClass();
+			event.commit();
+		}
+	}
+
+	static void memoryDestroyed(Memory memory)
+	{
+		MemoryDestroyed event = new MemoryDestroyed();
+		if(event.shouldCommit())
+		{
+			event.memory = memory.getName();
+			event.memoryClass = memory.getClass();
+			event.commit();
+		}
+	}
+
+	static Object beginLockAccess()
+	{
+		LockAccess event = new LockAccess();
+		event.begin();
+		return event;
+	}
+
+	static void endLockAccess(Object begun, Codelet accessing, Object accessed, boolean acquired)
+	{
+		LockAccess event = (LockAccess) begun;
+		event.end();
+		if(event.shouldCommit())
+		{
+			event.codelet = accessing.getName();
+			event.accessed = accessed instanceof Codelet ? ((Codelet) accessed).getName() : String.valueOf(accessed);
+			event.acquired = acquired;
+			event.commit();
+		}
+	}
+
+	static void behaviorSelected(Codelet selector, Codelet behavior, double activation, int candidates, double threshold)
+	{
+		BehaviorSelection event = new BehaviorSelection();
+		if(event.shouldCommit())
+		{
+			event.selector = selector.getName();
+			event.behavior = behavior != null ? behavior.getName() : null;
+			event.activation = activation;
+			event.candidates = candidates;
+			event.threshold = threshold;
+			event.commit();
+		}
+	}
+
+	static Object beginGlasLearningRun()
+	{
+		GlasLearningRun event = new GlasLearningRun();
+		event.begin();
+		return event;
+	}
+
+	static void endGlasLearningRun(Object begun, int events, int reRuns, double bestFitness)
+	{
+		GlasLearningRun event = (GlasLearningRun) begun;
+		event.end();
+		if(event.shouldCommit())
+		{
+			event.events = events;
+			event.reRuns = reRuns;
+			event.bestFitness = bestFitness;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds, with logarithmic buckets: each power of two is split
+ * in 4 buckets, so percentiles are at most 25% above the real value. Durations above about 18
+ * minutes fall in the last bucket.
+ *
+ * Recording neither locks nor allocates. It is meant to be written by one thread at a time
+ * (such as the thread running a codelet) and read from any thread, in which case the values
+ * read may be slightly out of date.
+ */
+public class LatencyHistogram
+{
+	/** Sub-buckets per power of two, as a number of bits */
+	private static final int SUB_BUCKET_BITS = 2;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/** Powers of two covered, from 1 ns up to 2^40 ns */
+	private static final int POWERS = 40;
+
+	private static final int BUCKETS = (POWERS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private volatile long count = 0;
+
+	private volatile long total = 0;
+
+	private volatile long max = 0;
+
+	/**
+	 * Records a duration. Not to be called by more than one thread at the same time.
+	 *
+	 * @param nanos duration in nanoseconds
+	 */
+	public void record(long nanos)
+	{
+		if(nanos < 0)
+			nanos = 0;
+
+		int bucket = bucketOf(nanos);
+		counts.lazySet(bucket, counts.get(bucket) + 1);
+
+		count++;
+		total += nanos;
+		if(nanos > max)
+			max = nanos;
+	}
+
+	/**
+	 * @return the number of durations recorded
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * @return the sum of all durations recorded, in nanoseconds
+	 */
+	public long getTotal()
+	{
+		return total;
+	}
+
+	/**
+	 * @return the mean duration in nanoseconds, or 0 if nothing was recorded
+	 */
+	public double getMean()
+	{
+		long n = count;
+		return n > 0 ? (double) total / n : 0.0d;
+	}
+
+	/**
+	 * @return the longest duration recorded, in nanoseconds
+	 */
+	public long getMax()
+	{
+		return max;
+	}
+
+	/**
+	 * @param percentile from 0.0 to 100.0
+	 * @return the duration, in nanoseconds, below which the given percentage of the recorded durations fall, or 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile)
+	{
+		long n = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			n += counts.get(i);
+		}
+
+		if(n == 0)
+			return 0L;
+
+		long rank = (long) Math.ceil(Math.max(0.0d, Math.min(100.0d, percentile)) / 100.0d * n);
+		if(rank < 1)
+			rank = 1;
+
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts.get(i);
+			if(seen >= rank)
+				return Math.min(upperBoundOf(i), max);
+		}
+
+		return max;
+	}
+
+	/**
+	 * Discards all durations recorded so far.
+	 */
+	public void reset()
+	{
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			counts.set(i, 0L);
+		}
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "count=" + getCount() + ", mean=" + Math.round(getMean()) + " ns, p50=" + getPercentile(50.0d) + " ns, p99=" + getPercentile(99.0d) + " ns, max=" + getMax() + " ns";
+	}
+
+	private static int bucketOf(long nanos)
+	{
+		if(nanos < SUB_BUCKETS)
+			return (int) nanos;
+
+		int power = 63 - Long.numberOfLeadingZeros(nanos);
+		if(power >= POWERS)
+			return BUCKETS - 1;
+
+		int subBucket = (int) (nanos >>> (power - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (power - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @return the largest duration which falls in the given bucket
+	 */
+	private static long upperBoundOf(int bucket)
+	{
+		if(bucket < SUB_BUCKETS)
+			return bucket;
+
+		int power = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		long width = 1L << (power - SUB_BUCKET_BITS);
+
+		return (1L << power) + (subBucket + 1) * width - 1;
+	}
+}
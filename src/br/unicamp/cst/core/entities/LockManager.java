@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Acquires several locks at once (such as the locks of two codelets, or of a codelet and a memory
+ * buffer) without deadlocks: the locks are always acquired in the same global order, given by
+ * {@link OrderedLock#getOrder()}, whatever the order they were asked in. Locks which are not
+ * OrderedLocks are ordered after them by identity hash code, and the rare ties are broken by an
+ * extra lock, held while acquiring the tied locks.
+ *
+ * Waiting is bounded: if all the locks cannot be acquired within the timeout, the ones already
+ * acquired are released and {@link #lockAll(Lock...)} returns false. This only happens when a lock
+ * is held for longer than the timeout, unlike trying each lock once, which gave up whenever another
+ * codelet held one of them even for a moment.
+ *
+ * Every manager counts its acquisitions, the ones which had to wait (contentions), the time spent
+ * waiting and the ones given up.
+ *
+ * @see Codelet#impendingAccess(Codelet)
+ */
+public class LockManager
+{
+	/** Default maximum time to acquire a set of locks, in milliseconds */
+	public static final long DEFAULT_TIMEOUT = 100L;
+
+	private static final LockManager defaultManager = new LockManager(DEFAULT_TIMEOUT);
+
+	/** Held while acquiring locks whose order is the same */
+	private final Lock tieLock = new ReentrantLock();
+
+	private volatile long timeout;
+
+	// counted by every codelet at every access, so they are LongAdders rather than one contended AtomicLong
+
+	private final LongAdder acquisitions = new LongAdder();
+
+	private final LongAdder contentions = new LongAdder();
+
+	private final LongAdder giveUps = new LongAdder();
+
+	private final LongAdder waitTime = new LongAdder();
+
+	/**
+	 * @param timeout maximum time to acquire a set of locks, in milliseconds
+	 */
+	public LockManager(long timeout)
+	{
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @return the manager used by codelets which were not given one
+	 */
+	public static LockManager getDefault()
+	{
+		return defaultManager;
+	}
+
+	/**
+	 * Acquires two locks, in the global order. Same as {@link #lockAll(Lock...)}, without allocating 
+	 * anything when both locks are free.
+	 * 
+	 * @param a one of the locks
+	 * @param b the other lock, which may be the same as a
+	 * @return true if both locks were acquired, and must then be released by the caller
+	 */
+	public boolean lockAll(Lock a, Lock b)
+	{
+		int order = compare(a, b);
+		Lock first = order <= 0 ? a : b;
+		Lock second = order <= 0 ? b : a;
+
+		if(order != 0 || a == b)
+		{
+			if(first.tryLock())
+			{
+				if(second.tryLock())
+				{
+					acquisitions.increment();
+					return true;
+				}
+				first.unlock();
+			}
+		}
+
+		return lockAll(new Lock[]{first, second});
+	}
+
+	/**
+	 * Acquires all the given locks, in the global order. The same lock may be given more than once,
+	 * in which case it is acquired as many times, since all locks are expected to be reentrant.
+	 * 
+	 * @param locks locks to be acquired
+	 * @return true if all locks were acquired, and must then be released by the caller (see {@link #unlockAll(Lock...)}). 
+	 * False if they could not be acquired within the timeout or the thread was interrupted, in which case none is held
+	 */
+	public boolean lockAll(Lock... locks)
+	{
+		Lock[] ordered = sort(locks);
+
+		// only read the clock once some lock is not free
+		long deadline = 0L;
+		boolean contended = false;
+		boolean tieLocked = false;
+		int acquired = 0;
+
+		try
+		{
+			if(hasTie(ordered))
+			{
+				tieLocked = tieLock.tryLock();
+				if(!tieLocked)
+				{
+					contended = true;
+					deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+					tieLocked = await(tieLock, deadline);
+					if(!tieLocked)
+						return giveUp(ordered, acquired);
+				}
+			}
+
+			for(Lock lock : ordered)
+			{
+				if(!lock.tryLock())
+				{
+					if(!contended)
+					{
+						contended = true;
+						deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+					}
+					if(!await(lock, deadline))
+						return giveUp(ordered, acquired);
+				}
+				acquired++;
+			}
+
+			acquisitions.increment();
+			return true;
+
+		}catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return giveUp(ordered, acquired);
+		}finally
+		{
+			if(tieLocked)
+				tieLock.unlock();
+			if(contended)
+				contentions.increment();
+		}
+	}
+
+	/**
+	 * Releases the locks acquired by {@link #lockAll(Lock...)}.
+	 * 
+	 * @param locks the locks given to lockAll()
+	 */
+	public void unlockAll(Lock... locks)
+	{
+		for(int i = locks.length - 1; i >= 0; i--)
+		{
+			locks[i].unlock();
+		}
+	}
+
+	private boolean await(Lock lock, long deadline) throws InterruptedException
+	{
+		long begin = System.nanoTime();
+		boolean locked = lock.tryLock(Math.max(0L, deadline - begin), TimeUnit.NANOSECONDS);
+		waitTime.add(System.nanoTime() - begin);
+		return locked;
+	}
+
+	private boolean giveUp(Lock[] ordered, int acquired)
+	{
+		for(int i = acquired - 1; i >= 0; i--)
+		{
+			ordered[i].unlock();
+		}
+		giveUps.increment();
+		return false;
+	}
+
+	/**
+	 * @return the locks in the global order. The given array is returned when already in order
+	 */
+	private static Lock[] sort(Lock[] locks)
+	{
+		Lock[] ordered = locks;
+
+		for(int i = 1; i < ordered.length; i++)
+		{
+			Lock lock = ordered[i];
+			int j = i - 1;
+			if(compare(ordered[j], lock) <= 0)
+				continue;
+
+			if(ordered == locks)
+				ordered = locks.clone();
+
+			while(j >= 0 && compare(ordered[j], lock) > 0)
+			{
+				ordered[j + 1] = ordered[j];
+				j--;
+			}
+			ordered[j + 1] = lock;
+		}
+
+		return ordered;
+	}
+
+	private static boolean hasTie(Lock[] ordered)
+	{
+		for(int i = 1; i < ordered.length; i++)
+		{
+			if(ordered[i] != ordered[i - 1] && compare(ordered[i], ordered[i - 1]) == 0)
+				return true;
+		}
+		return false;
+	}
+
+	private static int compare(Lock a, Lock b)
+	{
+		boolean aOrdered = a instanceof OrderedLock;
+		boolean bOrdered = b instanceof OrderedLock;
+
+		if(aOrdered && bOrdered)
+			return Long.compare(((OrderedLock) a).getOrder(), ((OrderedLock) b).getOrder());
+		if(aOrdered != bOrdered)
+			return aOrdered ? -1 : 1;
+
+		return Integer.compare(System.identityHashCode(a), System.identityHashCode(b));
+	}
+
+	/**
+	 * @return the maximum time to acquire a set of locks, in milliseconds
+	 */
+	public long getTimeout()
+	{
+		return timeout;
+	}
+
+	/**
+	 * @param timeout maximum time to acquire a set of locks, in milliseconds
+	 */
+	public void setTimeout(long timeout)
+	{
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @return the number of sets of locks acquired
+	 */
+	public long getAcquisitions()
+	{
+		return acquisitions.sum();
+	}
+
+	/**
+	 * @return the number of calls to lockAll() which had to wait for at least one lock, whether they acquired them all or not
+	 */
+	public long getContentions()
+	{
+		return contentions.sum();
+	}
+
+	/**
+	 * @return the number of calls to lockAll() which gave up, because of the timeout or an interruption
+	 */
+	public long getGiveUps()
+	{
+		return giveUps.sum();
+	}
+
+	/**
+	 * @return the total time spent waiting for locks, in nanoseconds
+	 */
+	public long getWaitTime()
+	{
+		return waitTime.sum();
+	}
+
+	/**
+	 * Sets all counters back to zero.
+	 */
+	public void resetCounters()
+	{
+		acquisitions.reset();
+		contentions.reset();
+		giveUps.reset();
+		waitTime.reset();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "LockManager [acquisitions=" + getAcquisitions() + ", contentions=" + getContentions() + ", giveUps=" + getGiveUps() + ", waitTime=" + TimeUnit.NANOSECONDS.toMillis(getWaitTime()) + " ms]";
+	}
+}
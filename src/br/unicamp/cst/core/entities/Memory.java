@@ -8,6 +8,11 @@ package br.unicamp.cst.core.entities;
  *
  */
 public interface Memory {
+
+	/**
+	 * Version of the memories which do not keep one
+	 */
+	long UNVERSIONED = -1L;
 	
 	/**
 	 * 
@@ -42,4 +47,13 @@ public interface Memory {
 	 */
 	void setEvaluation(Double eval);
 
+	/**
+	 * 
+	 * @return a number which increases every time this memory changes, or UNVERSIONED if this memory does 
+	 * not keep one, in which case it is always taken as changed
+	 */
+	default long getVersion() {
+		return UNVERSIONED;
+	}
+
 }
@@ -12,10 +12,11 @@
 package br.unicamp.cst.core.entities;
 
 //import java.util.LinkedList;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 
 
@@ -26,48 +27,42 @@ import java.util.concurrent.locks.ReentrantLock;
  * used to produce sensory buffers, action buffers or other very short 
  * term memory structures.
  * 
+ * The memory objects are kept in a fixed-capacity circular array, so putting,
+ * popping and getting the most recent or the oldest memory object are O(1).
+ * When the buffer is full, put() replaces the oldest memory object.
+ * For one producer codelet feeding one consumer codelet, see {@link SpscMemoryBuffer}.
+ * 
  * @author klaus.raizer
  */
 
 public class MemoryBuffer 
 {
-	//Using CopyOnWriteArrayList in this case is not ideal because we have many writes compared to the number of reads..
-	private ArrayList<MemoryObject>  memoryObjects; //A memory buffer is essentially a fifo list of MO
-	private int maxcapacity;
+	//A memory buffer is essentially a fifo list of MO, kept in a circular array
+	private final MemoryObject[] memoryObjects;
+	private final int maxcapacity;
+	//Position of the oldest memory object in the array
+	private int first=0;
+	//Number of memory objects in this buffer
+	private int size=0;
+	//Read-only view of the memory objects, from the oldest to the most recent
+	private final List<MemoryObject> view=new BufferView();
 	// Safe lock for multithread access
-	public volatile Lock lock= new ReentrantLock();
+	public volatile Lock lock= new OrderedLock(this);
 	
 	private RawMemory rawMemory;
 	
 	/**
-	 * Safe access through reentrant locks
+	 * Safe access through reentrant locks, acquired through the codelet's {@link LockManager}
 	 * 
 	 * @param accesing
-	 * @return
+	 * @return true if both locks were acquired, in which case the caller must unlock both
 	 */
 	public boolean impendingAccess(Codelet accesing)//TODO: Probably useless at the moment
 	{
-		Boolean myLock = false;
-		Boolean yourLock = false;
-		try
-		{
-			myLock = lock.tryLock();
-			yourLock = accesing.lock.tryLock();
-		} finally
-		{
-			if (!(myLock && yourLock))
-			{
-				if (myLock)
-				{
-					lock.unlock();
-				}
-				if (yourLock)
-				{
-					accesing.lock.unlock();
-				}
-			}
-		}
-		return myLock && yourLock;
+		if(CstEvents.enabled)
+			return accesing.recordedAccess(this, lock);
+
+		return accesing.getLockManager().lockAll(lock, accesing.lock);
 	}
 
 	/**
@@ -77,7 +72,10 @@ public class MemoryBuffer
 	 */
 	public MemoryBuffer(int maxcapacity, RawMemory rawMemory)
 	{
-		memoryObjects=new ArrayList<MemoryObject>();
+		if(maxcapacity<1)
+			throw new IllegalArgumentException("MemoryBuffer capacity must be at least 1");
+
+		memoryObjects=new MemoryObject[maxcapacity];
 		this.maxcapacity=maxcapacity;
 		//	      this.lock = new ReentrantLock();
 		
@@ -92,13 +90,13 @@ public class MemoryBuffer
 	{
 
 		for(MemoryObject thisContent:contents){
-			if(memoryObjects.size()==maxcapacity){
+			if(size==maxcapacity){
 				//  System.out.println("Popping..");
-				memoryObjects.remove(0); //Gets rid of older content
+				removeOldest(); //Gets rid of older content
 
 
 			}
-			memoryObjects.add(thisContent);
+			add(thisContent);
 		}
 
 	}
@@ -110,25 +108,26 @@ public class MemoryBuffer
 	public synchronized void put(MemoryObject content)
 	{
 
-		if(memoryObjects.size()==maxcapacity)
+		if(size==maxcapacity)
 		{
+			MemoryObject oldest=removeOldest();
 			if(rawMemory!=null)
-				rawMemory.destroyMemoryObject(memoryObjects.get(0));//Gets rid of older content and deletes it from raw memory
-			memoryObjects.remove(0);
+				rawMemory.destroyMemoryObject(oldest);//Gets rid of older content and deletes it from raw memory
 		}
 
-		memoryObjects.add(content);
+		add(content);
 
 
 	}
 
 	/**
-	 * Returns the original list of memory objects in this buffer
+	 * Returns a read-only view of the memory objects in this buffer, from the oldest to the most recent. 
+	 * The view is not a copy: it follows the changes in this buffer.
 	 * @return the list of Memory objects inside Buffer
 	 */
-	public synchronized List<MemoryObject> get()
+	public List<MemoryObject> get()
 	{
-		return memoryObjects;
+		return view;
 	}
 	/**
 	 * Returns a copy of the list of memory objects in this buffer.
@@ -137,18 +136,22 @@ public class MemoryBuffer
 	 */
 	public synchronized ArrayList<MemoryObject> getAll()
 	{
-		ArrayList<MemoryObject> all=new ArrayList<MemoryObject>();
-		all.addAll(this.memoryObjects);
-		return memoryObjects;
+		ArrayList<MemoryObject> all=new ArrayList<MemoryObject>(size);
+		for(int i=0;i<size;i++)
+		{
+			all.add(memoryObjects[index(i)]);
+		}
+		return all;
 	}
 	/**
-	 * @return pops the first memory object that went into this list
+	 * @return pops the first memory object that went into this list, or null if this buffer is empty
 	 */
 	public synchronized MemoryObject pop()
 	{
-		MemoryObject mo = memoryObjects.get(0);
-		memoryObjects.remove(0);
-		return mo;
+		if(size==0)
+			return null;
+
+		return removeOldest();
 	}
 
 	/**
@@ -156,7 +159,15 @@ public class MemoryBuffer
 	 */  
 	public synchronized int size()
 	{
-		return memoryObjects.size();
+		return size;
+	}
+
+	/**
+	 * @return maximum number of elements this buffer holds at a given time
+	 */
+	public int getCapacity()
+	{
+		return maxcapacity;
 	}
 	/**
 	 * @return the most recent Memory Object of this type
@@ -164,8 +175,8 @@ public class MemoryBuffer
 	public synchronized MemoryObject getMostRecent() {
 		MemoryObject mostRecent;
 		//			System.out.println("Getting most recent");
-		if (memoryObjects.size()>0){
-			mostRecent  = memoryObjects.get(memoryObjects.size()-1);
+		if (size>0){
+			mostRecent  = memoryObjects[index(size-1)];
 			//				System.out.println("--Buffer content--"+mostRecent);
 
 		}
@@ -184,8 +195,8 @@ public class MemoryBuffer
 	public synchronized MemoryObject getOldest(){
 //		System.out.println("Current content: "+memoryObjects);
 		MemoryObject oldest;
-		if (memoryObjects.size()>0){
-			oldest=memoryObjects.get(0);
+		if (size>0){
+			oldest=memoryObjects[first];
 		}
 		else
 		{
@@ -205,7 +216,22 @@ public class MemoryBuffer
 		if(rawMemory!=null)
 			rawMemory.destroyMemoryObject(mo);//removes this mo form RawMemory
 
-		return memoryObjects.remove(mo);//removes this mo from this buffer;
+		//removes this mo from this buffer, shifting the more recent ones
+		for(int i=0;i<size;i++)
+		{
+			MemoryObject current=memoryObjects[index(i)];
+			if(current==null ? mo==null : current.equals(mo))
+			{
+				for(int j=i;j<size-1;j++)
+				{
+					memoryObjects[index(j)]=memoryObjects[index(j+1)];
+				}
+				memoryObjects[index(size-1)]=null;
+				size--;
+				return true;
+			}
+		}
+		return false;
 
 	}
 
@@ -217,11 +243,13 @@ public class MemoryBuffer
 		//			memoryObjects.clear();		
 
 		if(rawMemory!=null)
-		for(int i=0;i<memoryObjects.size();i++)
+		for(int i=0;i<size;i++)
 		{			
-			rawMemory.destroyMemoryObject(memoryObjects.get(i)); 
+			rawMemory.destroyMemoryObject(memoryObjects[index(i)]); 
 		}
-		memoryObjects.clear();
+		Arrays.fill(memoryObjects, null);
+		first=0;
+		size=0;
 	}
 	public synchronized void printStatus() {
 		System.out.println("###### Memory Buffer ########");
@@ -230,4 +258,61 @@ public class MemoryBuffer
 		System.out.println("###############################");
 
 	}
+
+	/**
+	 * @param position position counted from the oldest memory object
+	 * @return position in the circular array
+	 */
+	private int index(int position)
+	{
+		int i=first+position;
+		return i<maxcapacity ? i : i-maxcapacity;
+	}
+
+	/**
+	 * Adds a memory object after the most recent one. There must be room for it.
+	 */
+	private void add(MemoryObject content)
+	{
+		memoryObjects[index(size)]=content;
+		size++;
+	}
+
+	/**
+	 * Removes the oldest memory object. The buffer must not be empty.
+	 */
+	private MemoryObject removeOldest()
+	{
+		MemoryObject oldest=memoryObjects[first];
+		memoryObjects[first]=null;
+		first=index(1);
+		size--;
+		return oldest;
+	}
+
+	/**
+	 * Read-only list backed by the circular array
+	 */
+	private class BufferView extends AbstractList<MemoryObject>
+	{
+		@Override
+		public MemoryObject get(int position)
+		{
+			synchronized(MemoryBuffer.this)
+			{
+				if(position<0 || position>=size)
+					throw new IndexOutOfBoundsException("Index: "+position+", Size: "+size);
+				return memoryObjects[index(position)];
+			}
+		}
+
+		@Override
+		public int size()
+		{
+			synchronized(MemoryBuffer.this)
+			{
+				return size;
+			}
+		}
+	}
 }
\ No newline at end of file
@@ -4,6 +4,8 @@
 package br.unicamp.cst.core.entities;
 
 import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author andre
@@ -18,6 +20,27 @@ public class MemoryContainer implements Memory {
 	 */
 	private String name;
 
+	/**
+	 * Incremented every time a memory is inserted in this container or any memory inside it changes
+	 */
+	private final AtomicLong version = new AtomicLong();
+
+	/**
+	 * Observers notified when this container or any of its memories change. Created on demand.
+	 */
+	private volatile CopyOnWriteArrayList<MemoryObserver> memoryObservers;
+
+	/**
+	 * Forwards the changes in the memories inside this container to this container's observers
+	 */
+	private final MemoryObserver childObserver = new MemoryObserver() {
+
+		@Override
+		public void notifyMemoryChanged(Memory memory) {
+			notifyMemoryObservers();
+		}
+	};
+
 	public MemoryContainer(){
 
 		memories = new ArrayList<>();
@@ -84,6 +107,8 @@ public class MemoryContainer implements Memory {
 		mo.setType("");
 
 		memories.add(mo);
+		mo.addMemoryObserver(childObserver);
+		notifyMemoryObservers();
 		
 		return memories.indexOf(mo);
 
@@ -176,6 +201,8 @@ public class MemoryContainer implements Memory {
 		mo.setType("");
 
 		memories.add(mo);
+		mo.addMemoryObserver(childObserver);
+		notifyMemoryObservers();
 
 	}	
 
@@ -190,6 +217,8 @@ public class MemoryContainer implements Memory {
 		if(memory != null){
 
 			memories.add(memory);
+			observe(memory);
+			notifyMemoryObservers();
 			
 			index = memories.indexOf(memory);
 
@@ -243,6 +272,8 @@ public class MemoryContainer implements Memory {
 				mo.setType(type);
 
 				memories.add(mo);
+				mo.addMemoryObserver(childObserver);
+				notifyMemoryObservers();
 				
 				index = memories.indexOf(mo);
 
@@ -256,4 +287,81 @@ public class MemoryContainer implements Memory {
 		return memories;
 	}
 
+	/**
+	 * @return a copy of the memories in this container
+	 */
+	synchronized Memory[] snapshot() {
+
+		return memories.toArray(new Memory[memories.size()]);
+	}
+
+	/**
+	 * Sets the memories and the version read from a checkpoint, without notifying the observers.
+	 */
+	synchronized void restore(Memory[] restored, long restoredVersion) {
+
+		ArrayList<Memory> list = new ArrayList<>(restored.length);
+		for(Memory memory : restored) {
+			list.add(memory);
+			observe(memory);
+		}
+
+		memories = list;
+		version.set(restoredVersion);
+	}
+
+	/**
+	 * Registers an observer to be notified whenever this container, or any memory inside it, changes.
+	 * 
+	 * @param observer
+	 */
+	public synchronized void addMemoryObserver(MemoryObserver observer) {
+
+		if(memoryObservers == null)
+			memoryObservers = new CopyOnWriteArrayList<MemoryObserver>();
+
+		memoryObservers.addIfAbsent(observer);
+	}
+
+	/**
+	 * @param observer the observer to be removed
+	 */
+	public synchronized void removeMemoryObserver(MemoryObserver observer) {
+
+		if(memoryObservers != null)
+			memoryObservers.remove(observer);
+	}
+
+	private void observe(Memory memory) {
+
+		if(memory instanceof MemoryObject)
+			((MemoryObject) memory).addMemoryObserver(childObserver);
+		else if(memory instanceof MemoryContainer)
+			((MemoryContainer) memory).addMemoryObserver(childObserver);
+	}
+
+	/**
+	 * @return a number which increases every time a memory is inserted in this container or any memory inside it changes
+	 */
+	@Override
+	public long getVersion() {
+
+		return version.get();
+	}
+
+	/**
+	 * Increments the version and notifies the observers of this container.
+	 */
+	private void notifyMemoryObservers() {
+
+		version.incrementAndGet();
+
+		CopyOnWriteArrayList<MemoryObserver> observers = memoryObservers;
+
+		if(observers != null)
+			for(MemoryObserver observer : observers) {
+				observer.notifyMemoryChanged(this);
+			}
+	}
+
 }
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities;
+
+/**
+ * A change in the {@link RawMemory}: a memory added to it, changed while in it, or destroyed.
+ *
+ * @see RawMemory#subscribe(MemorySubscriber, String, java.util.Set, int, java.util.concurrent.Executor)
+ */
+public final class MemoryEvent
+{
+	public enum Type
+	{
+		/** The memory was added to raw memory */
+		CREATED,
+		/** The info or the evaluation of the memory changed, or, for a container, one of its memories */
+		UPDATED,
+		/** The memory was removed from raw memory */
+		DESTROYED
+	}
+
+	private final Type type;
+
+	private final Memory memory;
+
+	private final long time;
+
+	MemoryEvent(Type type, Memory memory)
+	{
+		this.type = type;
+		this.memory = memory;
+		this.time = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return the kind of change
+	 */
+	public Type getType()
+	{
+		return type;
+	}
+
+	/**
+	 * @return the memory which changed. Its state is the current one, which may be more recent than the event
+	 */
+	public Memory getMemory()
+	{
+		return memory;
+	}
+
+	/**
+	 * @return the time of the change, in milliseconds since the epoch
+	 */
+	public long getTime()
+	{
+		return time;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "MemoryEvent [type=" + type + ", memory=" + memory.getName() + ", time=" + time + "]";
+	}
+}
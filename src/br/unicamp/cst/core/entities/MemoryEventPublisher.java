@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the changes of a {@link RawMemory} to its subscribers. Publishing only queues the event in the
+ * buffer of each matching subscription, so it never waits for a subscriber; the events are delivered
+ * by each subscription's executor. If the executor rejects a delivery, the subscription is cancelled
+ * and the subscriber told through onError(), instead of failing the codelet changing the memory.
+ */
+final class MemoryEventPublisher
+{
+	/** Maximum number of events delivered in a row before giving the executor's thread back */
+	private static final int BATCH = 64;
+
+	private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+	boolean hasSubscribers()
+	{
+		return !subscriptions.isEmpty();
+	}
+
+	/**
+	 * @param name name of the memories, case insensitive, or null for all memories
+	 * @param types kinds of change sent
+	 */
+	void subscribe(MemorySubscriber subscriber, String name, Set<MemoryEvent.Type> types, int bufferSize, Executor executor)
+	{
+		if(bufferSize < 1)
+			throw new IllegalArgumentException("The buffer size must be at least 1");
+
+		Subscription subscription = new Subscription(subscriber, name, types, bufferSize, executor);
+		subscriber.onSubscribe(subscription);
+
+		synchronized(subscription)
+		{
+			if(!subscription.cancelled)
+				subscriptions.add(subscription);
+		}
+	}
+
+	void publish(MemoryEvent.Type type, Memory memory)
+	{
+		MemoryEvent event = null;
+
+		for(Subscription subscription : subscriptions)
+		{
+			if(subscription.accepts(type, memory))
+			{
+				if(event == null)
+					event = new MemoryEvent(type, memory);
+				subscription.offer(event);
+			}
+		}
+	}
+
+	private final class Subscription implements MemorySubscription, Runnable
+	{
+		private final MemorySubscriber subscriber;
+		private final String name;
+		private final Set<MemoryEvent.Type> types;
+		private final int bufferSize;
+		private final Executor executor;
+
+		private final ArrayDeque<MemoryEvent> buffer = new ArrayDeque<MemoryEvent>();
+
+		/** Memories with an UPDATED event in the buffer */
+		private final Set<Memory> updated = Collections.newSetFromMap(new IdentityHashMap<Memory, Boolean>());
+
+		private final AtomicLong dropped = new AtomicLong();
+
+		private long demand = 0L;
+
+		private boolean cancelled = false;
+
+		/** True while a delivery task is scheduled or running */
+		private boolean delivering = false;
+
+		Subscription(MemorySubscriber subscriber, String name, Set<MemoryEvent.Type> types, int bufferSize, Executor executor)
+		{
+			this.subscriber = subscriber;
+			this.name = name;
+			this.types = types;
+			this.bufferSize = bufferSize;
+			this.executor = executor;
+		}
+
+		boolean accepts(MemoryEvent.Type type, Memory memory)
+		{
+			return types.contains(type) && (name == null || name.equalsIgnoreCase(memory.getName()));
+		}
+
+		void offer(MemoryEvent event)
+		{
+			RuntimeException rejected;
+
+			synchronized(this)
+			{
+				if(cancelled)
+					return;
+
+				boolean update = event.getType() == MemoryEvent.Type.UPDATED;
+				if(update && updated.contains(event.getMemory()))
+					return;
+
+				if(buffer.size() >= bufferSize)
+				{
+					dropped.incrementAndGet();
+					return;
+				}
+
+				buffer.add(event);
+				if(update)
+					updated.add(event.getMemory());
+
+				rejected = deliver();
+			}
+
+			if(rejected != null)
+				rejected(rejected);
+		}
+
+		@Override
+		public void request(long n)
+		{
+			if(n <= 0)
+			{
+				cancel();
+				subscriber.onError(new IllegalArgumentException("The number of events requested must be greater than 0"));
+				return;
+			}
+
+			RuntimeException rejected;
+
+			synchronized(this)
+			{
+				demand += n;
+				if(demand < 0)
+					demand = Long.MAX_VALUE;
+
+				rejected = deliver();
+			}
+
+			if(rejected != null)
+				rejected(rejected);
+		}
+
+		@Override
+		public void cancel()
+		{
+			synchronized(this)
+			{
+				cancelled = true;
+				buffer.clear();
+				updated.clear();
+			}
+			subscriptions.remove(this);
+		}
+
+		@Override
+		public long getDroppedEvents()
+		{
+			return dropped.get();
+		}
+
+		/**
+		 * Schedules the delivery of the events requested and waiting, if not scheduled yet. Called holding the lock
+		 *
+		 * @return the exception thrown by the executor, to be passed to rejected() without holding the lock, or null
+		 */
+		private RuntimeException deliver()
+		{
+			if(delivering || cancelled || demand == 0 || buffer.isEmpty())
+				return null;
+
+			delivering = true;
+			try
+			{
+				executor.execute(this);
+				return null;
+			}catch(RuntimeException e)
+			{
+				// such as a RejectedExecutionException, from an executor shut down or saturated
+				delivering = false;
+				return e;
+			}
+		}
+
+		/**
+		 * Cancels this subscription because its executor could not deliver the events
+		 */
+		private void rejected(RuntimeException e)
+		{
+			cancel();
+			subscriber.onError(e);
+		}
+
+		@Override
+		public void run()
+		{
+			for(int i = 0; i < BATCH; i++)
+			{
+				MemoryEvent event;
+
+				synchronized(this)
+				{
+					if(cancelled || demand == 0 || buffer.isEmpty())
+					{
+						delivering = false;
+						return;
+					}
+
+					event = buffer.poll();
+					if(event.getType() == MemoryEvent.Type.UPDATED)
+						updated.remove(event.getMemory());
+					if(demand != Long.MAX_VALUE)
+						demand--;
+				}
+
+				try
+				{
+					subscriber.onNext(event);
+				}catch(Throwable t)
+				{
+					cancel();
+					subscriber.onError(t);
+					return;
+				}
+			}
+
+			RuntimeException rejected;
+
+			synchronized(this)
+			{
+				delivering = false;
+				rejected = deliver();
+			}
+
+			if(rejected != null)
+				rejected(rejected);
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable list of memories backed by an index from the memory name (case insensitive) to the
+ * memories with this name, in list order. Used for the inputs, outputs and broadcast of a Codelet,
+ * so that looking up a memory by name does not scan the list nor allocate anything.
+ *
+ * A codelet never changes one of its lists: adding or removing memories creates a new list, which
+ * replaces the old one (copy on write). So the lists returned by {@link Codelet#getInputs()} and
+ * the like are snapshots, which can be read by any thread without locking the codelet.
+ * Changing the name of a memory which is already in the list is not noticed by the index.
+ */
+final class MemoryList extends AbstractList<Memory> implements RandomAccess
+{
+	private static final List<Memory> NONE = Collections.emptyList();
+
+	static final MemoryList EMPTY = new MemoryList(new Memory[0]);
+
+	private final Memory[] memories;
+
+	/** Memories by normalized name, and also by every other spelling of the name already looked up */
+	private final ConcurrentHashMap<String, List<Memory>> index;
+
+	private MemoryList(Memory[] memories)
+	{
+		this.memories = memories;
+		this.index = new ConcurrentHashMap<String, List<Memory>>();
+
+		for(Memory memory : memories)
+		{
+			if(memory == null || memory.getName() == null)
+				continue;
+
+			String name = memory.getName();
+			String key = normalize(name);
+
+			List<Memory> sameName = index.get(key);
+			if(sameName == null)
+			{
+				sameName = new ArrayList<Memory>(1);
+				index.put(key, sameName);
+			}
+			sameName.add(memory);
+
+			if(!key.equals(name))
+				index.put(name, sameName);
+		}
+	}
+
+	/**
+	 * @param memories memories to be copied into the list, may be null
+	 * @return a list with the given memories, or the given list itself if it is already a MemoryList
+	 */
+	static MemoryList of(Collection<? extends Memory> memories)
+	{
+		if(memories instanceof MemoryList)
+			return (MemoryList) memories;
+
+		if(memories == null || memories.isEmpty())
+			return EMPTY;
+
+		return new MemoryList(memories.toArray(new Memory[0]));
+	}
+
+	/**
+	 * @return a new list with this list's memories followed by the given one
+	 */
+	MemoryList with(Memory memory)
+	{
+		Memory[] copy = Arrays.copyOf(memories, memories.length + 1);
+		copy[memories.length] = memory;
+
+		return new MemoryList(copy);
+	}
+
+	/**
+	 * @return a new list with this list's memories followed by the given ones
+	 */
+	MemoryList withAll(Collection<? extends Memory> added)
+	{
+		if(added == null || added.isEmpty())
+			return this;
+
+		Memory[] addedArray = added.toArray(new Memory[0]);
+		Memory[] copy = Arrays.copyOf(memories, memories.length + addedArray.length);
+		System.arraycopy(addedArray, 0, copy, memories.length, addedArray.length);
+
+		return new MemoryList(copy);
+	}
+
+	/**
+	 * @return a new list without the first memory equal to the given one, or this list if there is none
+	 */
+	MemoryList without(Object memory)
+	{
+		int position = indexOf(memory);
+		if(position < 0)
+			return this;
+
+		Memory[] copy = new Memory[memories.length - 1];
+		System.arraycopy(memories, 0, copy, 0, position);
+		System.arraycopy(memories, position + 1, copy, position, memories.length - position - 1);
+
+		return new MemoryList(copy);
+	}
+
+	/**
+	 * @return a new list without any memory equal to one of the given ones, or this list if there is none
+	 */
+	MemoryList withoutAll(Collection<?> removed)
+	{
+		if(removed == null || removed.isEmpty())
+			return this;
+
+		List<Memory> kept = new ArrayList<Memory>(memories.length);
+		for(Memory memory : memories)
+		{
+			if(!removed.contains(memory))
+				kept.add(memory);
+		}
+
+		if(kept.size() == memories.length)
+			return this;
+
+		return new MemoryList(kept.toArray(new Memory[0]));
+	}
+
+	@Override
+	public Memory get(int position)
+	{
+		return memories[position];
+	}
+
+	@Override
+	public int size()
+	{
+		return memories.length;
+	}
+
+	/**
+	 * @param name name of the memories, case insensitive
+	 * @return the memories in this list with the given name, in list order. The returned list must not be changed
+	 */
+	List<Memory> getAll(String name)
+	{
+		if(name == null)
+			return NONE;
+
+		List<Memory> sameName = index.get(name);
+
+		if(sameName == null)
+		{
+			sameName = index.get(normalize(name));
+			if(sameName == null)
+				return NONE;
+
+			// remembers this spelling of an existing name, so the next lookup does not normalize it again.
+			// Names not found are not remembered, so the index cannot grow with them
+			index.putIfAbsent(name, sameName);
+		}
+
+		return sameName;
+	}
+
+	/**
+	 * @param name name of the memory, case insensitive
+	 * @param position position of the memory among the ones with this name
+	 * @return the memory, or null if there are not enough memories with this name
+	 */
+	Memory get(String name, int position)
+	{
+		List<Memory> sameName = getAll(name);
+
+		return position >= 0 && position < sameName.size() ? sameName.get(position) : null;
+	}
+
+	/**
+	 * @param name name of the memory, case insensitive
+	 * @return the first memory with this name, or null if there is none
+	 */
+	Memory get(String name)
+	{
+		return get(name, 0);
+	}
+
+	/**
+	 * Same equivalence as String.equalsIgnoreCase()
+	 */
+	private static String normalize(String name)
+	{
+		return name.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+	}
+}
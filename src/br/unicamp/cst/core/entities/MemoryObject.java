@@ -11,14 +11,31 @@
 
 package br.unicamp.cst.core.entities;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.sql.Timestamp;
-import java.util.Date;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 
 /** 
  * Unit of data in memory.
  * 
+ * Reads and writes do not take any lock: the info, the evaluation and the timestamp are volatile
+ * fields, so a value written by one codelet is seen by every codelet reading it afterwards. 
+ * The timestamp is kept as milliseconds since the epoch, and {@link #getTimestamp()} only builds 
+ * a Timestamp when asked.
+ * 
+ * A memory object restored by {@link Mind#restore(java.nio.file.Path)} decodes its info from the checkpoint file 
+ * the first time it is read.
+ * 
+ * The serialized form still holds the timestamp as a Timestamp, so memory objects serialized before the 
+ * timestamp became a long can be read, and the other way round.
+ * 
  * @author andre.paraense
  * @author klaus.raizer
  */
@@ -26,13 +43,37 @@ public class MemoryObject implements Memory,Serializable
 {
    
    private static final long serialVersionUID = 1L;
+
+   /**
+    * Serialized fields, the timestamp being a Timestamp as in the memory objects serialized before it became a long
+    */
+   private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("idmemoryobject", Long.class),
+      new ObjectStreamField("timestamp", Timestamp.class),
+      new ObjectStreamField("evaluation", Double.class),
+      new ObjectStreamField("I", Object.class),
+      new ObjectStreamField("name", String.class),
+      new ObjectStreamField("version", long.class)
+   };
+
+   /** Value of the timestamp before it is set */
+   private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+   private static final AtomicLongFieldUpdater<MemoryObject> versionUpdater = AtomicLongFieldUpdater.newUpdater(MemoryObject.class, "version");
+
+   private static final AtomicReferenceFieldUpdater<MemoryObject, Object> infoUpdater = AtomicReferenceFieldUpdater.newUpdater(MemoryObject.class, Object.class, "I");
    
-   private Long idmemoryobject;
+   private volatile Long idmemoryobject;
    
    /**
-	 * Date when the data was "created".
+	 * Date when the data was "created", in milliseconds since the epoch.
 	 */
-   private Timestamp timestamp;
+   private volatile long timestamp = NO_TIMESTAMP;
+
+   /**
+    * Last Timestamp built by getTimestamp(), reused while the timestamp does not change
+    */
+   private transient volatile Timestamp timestampView;
    
    /**
     * An evaluation of this memory object based on inner references
@@ -40,14 +81,29 @@ public class MemoryObject implements Memory,Serializable
    private volatile Double evaluation;
    
    /**
-	 * Information contained in the memory object.
+	 * Information contained in the memory object, or a MindCheckpoint.LazyValue not decoded yet.
 	 */
    private volatile Object I;
 
    /**
     * Type of the memory object
     */
-   private String name;
+   private volatile String name;
+
+   /**
+    * Incremented every time the info or the evaluation change
+    */
+   private volatile long version = 0;
+
+   /**
+    * Observers notified when the info or the evaluation change. Created on demand.
+    */
+   private transient volatile CopyOnWriteArrayList<MemoryObserver> memoryObservers;
+
+   /**
+    * Raw memory this memory object was added to, which reindexes it when it is renamed
+    */
+   private transient volatile RawMemory rawMemory;
    
    public MemoryObject()
    {
@@ -58,7 +114,7 @@ public class MemoryObject implements Memory,Serializable
     * 
     * @return
     */
-   public synchronized Long getIdmemoryobject()
+   public Long getIdmemoryobject()
    {
       return this.idmemoryobject;
    }
@@ -67,7 +123,7 @@ public class MemoryObject implements Memory,Serializable
     * 
     * @param idmemoryobject
     */
-   public synchronized void setIdmemoryobject(Long idmemoryobject)
+   public void setIdmemoryobject(Long idmemoryobject)
    {
       this.idmemoryobject = idmemoryobject;
    }
@@ -76,22 +132,58 @@ public class MemoryObject implements Memory,Serializable
     * 
     * @return
     */
-   public synchronized Object getI()
+   public Object getI()
    {
+      Object info = this.I;
+      if(info instanceof MindCheckpoint.LazyValue)
+         info = decode((MindCheckpoint.LazyValue) info);
+      return info;
+   }
+
+   /**
+    * Replaces the value restored from a checkpoint by its decoded info, unless the info was set meanwhile
+    */
+   private Object decode(MindCheckpoint.LazyValue lazy)
+   {
+      Object info = lazy.decode();
+      if(infoUpdater.compareAndSet(this, lazy, info))
+         return info;
+
       return this.I;
    }
+
+   /**
+    * Sets the state read from a checkpoint, without notifying the observers.
+    * 
+    * @param info the info, possibly a MindCheckpoint.LazyValue
+    */
+   void restore(Long idmemoryobject, long timestamp, Double evaluation, Object info, String name, long version)
+   {
+      this.idmemoryobject = idmemoryobject;
+      this.timestamp = timestamp;
+      this.evaluation = evaluation;
+      this.I = info;
+      this.name = name;
+      this.version = version;
+   }
    
    /**
     *  Sets the info in memory object - Java Style. 
     * @param info
     */
-   public synchronized int setI(Object info)
+   public int setI(Object info)
    {
+      Object event = CstEvents.enabled ? CstEvents.beginMemoryWrite() : null;
+
       this.I = info;
-      Date date = new Date(); 
-	  setTimestamp(new Timestamp(date.getTime()));  
+      this.timestamp = System.currentTimeMillis();
+      versionUpdater.incrementAndGet(this);
+      notifyMemoryObservers();
+
+      if(event != null)
+         CstEvents.endMemoryWrite(event, this, info);
 	  
-	  return -1;
+      return -1;
    }
    
    /**
@@ -99,25 +191,52 @@ public class MemoryObject implements Memory,Serializable
     * @param info
     */
    @Deprecated
-   public synchronized void updateI(Object info)
+   public void updateI(Object info)
    {
 	   setI(info); 
    } 
    
    /**
+    * Kept for compatibility. Use {@link #getTimestampMillis()}, which does not allocate anything.
     * 
-    * @return
+    * @return the time of the last change of the info, or null if it was never set
     */
-   public synchronized Timestamp getTimestamp()
+   public Timestamp getTimestamp()
    {
-      return this.timestamp;
+      long time = this.timestamp;
+      if(time == NO_TIMESTAMP)
+         return null;
+
+      Timestamp view = timestampView;
+      if(view == null || view.getTime() != time)
+      {
+         view = new Timestamp(time);
+         timestampView = view;
+      }
+      return view;
    }
    
    /**
     * 
     * @param timestamp
     */
-   public synchronized void setTimestamp(Timestamp timestamp)
+   public void setTimestamp(Timestamp timestamp)
+   {
+      this.timestamp = (timestamp != null) ? timestamp.getTime() : NO_TIMESTAMP;
+   }
+
+   /**
+    * @return the time of the last change of the info, in milliseconds since the epoch, or Long.MIN_VALUE if it was never set
+    */
+   public long getTimestampMillis()
+   {
+      return this.timestamp;
+   }
+
+   /**
+    * @param timestamp the time of the last change of the info, in milliseconds since the epoch
+    */
+   public void setTimestampMillis(long timestamp)
    {
       this.timestamp = timestamp;
    }
@@ -125,25 +244,48 @@ public class MemoryObject implements Memory,Serializable
    /**
     * @return the type
     */
-   public synchronized String getName()
+   public String getName()
    {
       return name;
    }
 
    
    /**
+    * Renames this memory object, moving it to its new type in the raw memory it was added to.
+    * 
     * @param type the type to set
     */
-   public synchronized void setType(String name)
+   public void setType(String name)
    {
+      String oldName = this.name;
       this.name = name;
+
+      RawMemory owner = rawMemory;
+      if(owner != null && (name == null ? oldName != null : !name.equals(oldName)))
+         owner.reindex(this);
+   }
+
+   /**
+    * @param rawMemory raw memory this memory object was added to, or null once destroyed
+    */
+   void setRawMemory(RawMemory rawMemory)
+   {
+      this.rawMemory = rawMemory;
+   }
+
+   /**
+    * @return raw memory this memory object was added to, if any
+    */
+   RawMemory getRawMemory()
+   {
+      return rawMemory;
    }
 
    
    /**
     * @return the evaluation
     */
-   public synchronized Double getEvaluation()
+   public Double getEvaluation()
    {
       return evaluation;
    }
@@ -152,26 +294,93 @@ public class MemoryObject implements Memory,Serializable
    /**
     * @param evaluation the evaluation to set
     */
-   public synchronized void setEvaluation(Double evaluation)
+   public void setEvaluation(Double evaluation)
    {
       this.evaluation = evaluation;
+      versionUpdater.incrementAndGet(this);
+      notifyMemoryObservers();
+   }
+
+   /**
+    * @return a number which increases every time the info or the evaluation of this memory object change
+    */
+   public long getVersion()
+   {
+      return version;
+   }
+
+   /**
+    * Registers an observer to be notified whenever the info or the evaluation of this memory object change.
+    * 
+    * @param observer
+    */
+   public synchronized void addMemoryObserver(MemoryObserver observer)
+   {
+      if(memoryObservers == null)
+         memoryObservers = new CopyOnWriteArrayList<MemoryObserver>();
+
+      memoryObservers.addIfAbsent(observer);
+   }
+
+   /**
+    * @param observer the observer to be removed
+    */
+   public synchronized void removeMemoryObserver(MemoryObserver observer)
+   {
+      if(memoryObservers != null)
+         memoryObservers.remove(observer);
+   }
+
+   private void notifyMemoryObservers()
+   {
+      CopyOnWriteArrayList<MemoryObserver> observers = memoryObservers;
+
+      if(observers != null)
+         for(MemoryObserver observer : observers)
+         {
+            observer.notifyMemoryChanged(this);
+         }
+   }
+
+   private void writeObject(ObjectOutputStream out) throws IOException
+   {
+      ObjectOutputStream.PutField fields = out.putFields();
+      fields.put("idmemoryobject", idmemoryobject);
+      fields.put("timestamp", getTimestamp());
+      fields.put("evaluation", evaluation);
+      fields.put("I", getI());
+      fields.put("name", name);
+      fields.put("version", version);
+      out.writeFields();
+   }
+
+   private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+   {
+      ObjectInputStream.GetField fields = in.readFields();
+      idmemoryobject = (Long) fields.get("idmemoryobject", null);
+      setTimestamp((Timestamp) fields.get("timestamp", null));
+      evaluation = (Double) fields.get("evaluation", null);
+      I = fields.get("I", null);
+      name = (String) fields.get("name", null);
+      version = fields.get("version", 0L);
    }
 
    @Override
    public String toString() {
-	   return "MemoryObject [idmemoryobject=" + idmemoryobject + ", timestamp=" + timestamp + ", evaluation=" + evaluation
-			   + ", I=" + I + ", name=" + name + "]";
+	   return "MemoryObject [idmemoryobject=" + idmemoryobject + ", timestamp=" + getTimestamp() + ", evaluation=" + evaluation
+			   + ", I=" + getI() + ", name=" + name + "]";
    }
 
    @Override
    public int hashCode() {
 	   final int prime = 31;
 	   int result = 1;
-	   result = prime * result + ((I == null) ? 0 : I.hashCode());
+	   Object info = getI();
+	   result = prime * result + ((info == null) ? 0 : info.hashCode());
 	   result = prime * result + ((evaluation == null) ? 0 : evaluation.hashCode());
 	   result = prime * result + ((idmemoryobject == null) ? 0 : idmemoryobject.hashCode());
 	   result = prime * result + ((name == null) ? 0 : name.hashCode());
-	   result = prime * result + ((timestamp == null) ? 0 : timestamp.hashCode());
+	   result = prime * result + (int) (timestamp ^ (timestamp >>> 32));
 	   return result;
    }
 
@@ -184,10 +393,12 @@ public class MemoryObject implements Memory,Serializable
 	   if (getClass() != obj.getClass())
 		   return false;
 	   MemoryObject other = (MemoryObject) obj;
-	   if (I == null) {
-		   if (other.I != null)
+	   Object info = getI();
+	   Object otherInfo = other.getI();
+	   if (info == null) {
+		   if (otherInfo != null)
 			   return false;
-	   } else if (!I.equals(other.I))
+	   } else if (!info.equals(otherInfo))
 		   return false;
 	   if (evaluation == null) {
 		   if (other.evaluation != null)
@@ -204,10 +415,7 @@ public class MemoryObject implements Memory,Serializable
 			   return false;
 	   } else if (!name.equals(other.name))
 		   return false;
-	   if (timestamp == null) {
-		   if (other.timestamp != null)
-			   return false;
-	   } else if (!timestamp.equals(other.timestamp))
+	   if (timestamp != other.timestamp)
 		   return false;
 	   return true;
    }
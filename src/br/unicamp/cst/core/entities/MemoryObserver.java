@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities;
+
+/**
+ * Receives notifications of changes in MemoryObjects and MemoryContainers.
+ * 
+ * @see MemoryObject#addMemoryObserver(MemoryObserver)
+ * @see MemoryContainer#addMemoryObserver(MemoryObserver)
+ */
+public interface MemoryObserver {
+
+	/**
+	 * Called by the writing thread, right after the memory changed. Must not block.
+	 * 
+	 * @param memory the memory which changed
+	 */
+	public void notifyMemoryChanged(Memory memory);
+}
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities;
+
+/**
+ * Receives the changes in the {@link RawMemory}, with the same protocol as the subscribers of
+ * reactive streams (java.util.concurrent.Flow.Subscriber in Java 9): onSubscribe() is called first, and
+ * then onNext() once for each event requested through the subscription, never concurrently.
+ *
+ * @see RawMemory#subscribe(MemorySubscriber)
+ */
+public interface MemorySubscriber
+{
+	/**
+	 * Called once, before any other method. No event is sent until some are requested.
+	 *
+	 * @param subscription used to request events and to cancel the subscription
+	 */
+	void onSubscribe(MemorySubscription subscription);
+
+	/**
+	 * @param event the next change
+	 */
+	void onNext(MemoryEvent event);
+
+	/**
+	 * Called when the subscription ends because of an error, such as an exception thrown by onNext().
+	 * No other method is called afterwards.
+	 *
+	 * @param throwable the error
+	 */
+	void onError(Throwable throwable);
+
+	/**
+	 * Called when no more events will be sent. Raw memory never completes its subscriptions, which end
+	 * only when they are cancelled, so this is only called by other publishers of memory events.
+	 */
+	void onComplete();
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities;
+
+/**
+ * Link between the {@link RawMemory} and a {@link MemorySubscriber}, with the same protocol as the
+ * subscriptions of reactive streams (java.util.concurrent.Flow.Subscription in Java 9).
+ *
+ * The events not requested yet wait in a bounded buffer. Changes to a memory which already has a change
+ * waiting are merged into it. When the buffer is full, other events are dropped and counted, so a slow
+ * subscriber never slows down the codelets changing the memories.
+ */
+public interface MemorySubscription
+{
+	/**
+	 * Asks for more events. Long.MAX_VALUE asks for all events from now on.
+	 *
+	 * @param n number of events, greater than 0
+	 */
+	void request(long n);
+
+	/**
+	 * Stops sending events. Events already waiting are dropped.
+	 */
+	void cancel();
+
+	/**
+	 * @return the number of events dropped because the buffer was full
+	 */
+	long getDroppedEvents();
+}
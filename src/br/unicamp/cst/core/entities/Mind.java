@@ -11,6 +11,23 @@
 
 package br.unicamp.cst.core.entities;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import br.unicamp.cst.memory.WorkingStorage;
+
 /**
  * @author andre
  *
@@ -21,13 +38,120 @@ public class Mind
 
 	private RawMemory rawMemory;
 
+	/**
+	 * Synchronous stepped execution of the codelets, created on the first call to step() or run()
+	 */
+	private CognitiveCycle cognitiveCycle;
+
+	private static final AtomicInteger mindCount = new AtomicInteger();
+
+	/** Identifies this mind among the MBeans registered in the JVM */
+	private final int mindId = mindCount.incrementAndGet();
+
+	/** Scheduler installed by setVirtualThreads() on JVMs without virtual threads, or null */
+	private CodeletScheduler fallbackScheduler;
+
+	/** Names of the codelet metrics MBeans registered by this mind, or null if JMX is disabled */
+	private Map<Codelet, ObjectName> registeredMBeans;
+
+	/** Encodes the info of the memory objects in checkpoints */
+	private ValueCodec valueCodec = new DefaultValueCodec();
+
+	/** Memory buffers and working storages included in checkpoints, by key */
+	private final Map<String, MemoryBuffer> memoryBuffers = new LinkedHashMap<String, MemoryBuffer>();
+	private final Map<String, WorkingStorage> workingStorages = new LinkedHashMap<String, WorkingStorage>();
+
 	public Mind()
 	{
 		codeRack = new CodeRack();
+		codeRack.setMind(this);
 
 		rawMemory = new RawMemory();
 	}
 
+	/**
+	 * Creates a Mind whose codelets run on the given scheduler's pool instead of one thread per codelet.
+	 * 
+	 * @param scheduler the scheduler which runs the codelets inserted in this mind
+	 */
+	public Mind(CodeletScheduler scheduler)
+	{
+		this();
+
+		codeRack.setScheduler(scheduler);
+	}
+
+	/**
+	 * @return the scheduler running this mind's codelets, or null if each codelet runs on its own thread
+	 */
+	public synchronized CodeletScheduler getScheduler()
+	{
+		return codeRack.getScheduler();
+	}
+
+	/**
+	 * Sets the scheduler which runs this mind's codelets. Must be called before start().
+	 * 
+	 * @param scheduler the scheduler to use, or null to run each codelet on its own thread
+	 */
+	public synchronized void setScheduler(CodeletScheduler scheduler)
+	{
+		codeRack.setScheduler(scheduler);
+
+		if(fallbackScheduler!=null && fallbackScheduler!=scheduler)
+		{
+			// replaced: the pool set up by setVirtualThreads() is not used anymore
+			fallbackScheduler.shutDown();
+			fallbackScheduler = null;
+		}
+	}
+
+	/**
+	 * Switches this mind's codelets to virtual threads, which park instead of holding an operating 
+	 * system thread while they wait for their next timeStep. Must be called before start().
+	 * 
+	 * Virtual threads require Java 21. On older JVMs, the codelets are run on a pooled 
+	 * {@link CodeletScheduler} instead, which also avoids one operating system thread per codelet, 
+	 * unless a scheduler was already set. Switching virtual threads off shuts that pool down.
+	 * 
+	 * @param virtualThreads true to run codelets on virtual threads, false to use standard platform threads
+	 */
+	public synchronized void setVirtualThreads(boolean virtualThreads)
+	{
+		if(virtualThreads)
+		{
+			if(VirtualThreadFactory.isSupported())
+			{
+				codeRack.setThreadFactory(new VirtualThreadFactory());
+			}else if(codeRack.getScheduler()==null)
+			{
+				Logger.getLogger(Mind.class.getName()).info("Virtual threads are not supported by this JVM. Codelets will run on a CodeletScheduler pool instead.");
+				fallbackScheduler = new CodeletScheduler();
+				codeRack.setScheduler(fallbackScheduler);
+			}
+		}else
+		{
+			codeRack.setThreadFactory(null);
+			if(fallbackScheduler!=null)
+			{
+				if(codeRack.getScheduler()==fallbackScheduler)
+					codeRack.setScheduler(null);
+				fallbackScheduler.shutDown();
+				fallbackScheduler = null;
+			}
+		}
+	}
+
+	/**
+	 * @return true if this mind's codelets run on virtual threads or, on JVMs without them, 
+	 * on the pool setVirtualThreads() installed instead
+	 */
+	public synchronized boolean isVirtualThreads()
+	{
+		return codeRack.getThreadFactory() instanceof VirtualThreadFactory 
+				|| (fallbackScheduler!=null && codeRack.getScheduler()==fallbackScheduler);
+	}
+
 	/**
 	 * @return the codeRack
 	 */
@@ -83,8 +207,46 @@ public class Mind
 		if(codeRack!=null)
 			codeRack.addCodelet(co);
 
+		synchronized(this)
+		{
+			if(registeredMBeans!=null)
+				registerMBean(co);
+		}
+
 		return co;
 	}
+
+	/**
+	 * Stops a codelet and removes it from the coderack, unregistering its MBean if any.
+	 * 
+	 * @param co the codelet to be destroyed
+	 */
+	public void destroyCodelet(Codelet co)
+	{
+		if(codeRack!=null)
+			codeRack.destroyCodelet(co);
+	}
+
+	/**
+	 * Called by the coderack when a codelet is destroyed
+	 */
+	synchronized void codeletDestroyed(Codelet co)
+	{
+		if(registeredMBeans==null)
+			return;
+
+		ObjectName name = registeredMBeans.remove(co);
+		if(name==null)
+			return;
+
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		}catch(JMException e)
+		{
+			e.printStackTrace();
+		}
+	}
 	
 	/**
 	 * Starts all codelets in coderack.
@@ -95,6 +257,255 @@ public class Mind
 			codeRack.start();
 	}
         
+	/**
+	 * Runs every codelet in this mind exactly once, in a synchronous cognitive cycle. 
+	 * Independent codelets run in parallel, and this method returns only after all of them are done.
+	 * This is an alternative to start(), where each codelet free-runs on its own.
+	 * 
+	 * @see CognitiveCycle
+	 */
+	public void step()
+	{
+		getCognitiveCycle().step();
+	}
+
+	/**
+	 * Runs a number of synchronous cognitive cycles in a row.
+	 * 
+	 * @param nCycles number of cycles to run
+	 * @return the number of cycles per second achieved
+	 * @see #step()
+	 */
+	public double run(int nCycles)
+	{
+		return getCognitiveCycle().run(nCycles);
+	}
+
+	/**
+	 * @return the fraction of codelet cycles skipped because no input changed, over all codelets in the coderack
+	 * @see Codelet#setSkipIfUnchanged(boolean)
+	 */
+	public double getSkipRate()
+	{
+		long skipped = 0;
+		long total = 0;
+
+		if(codeRack!=null)
+		{
+			for(Codelet co : codeRack.getAllCodelets())
+			{
+				long coSkipped = co.getSkippedCycles();
+				skipped += coSkipped;
+				total += coSkipped + co.getExecutedCycles();
+			}
+		}
+
+		return total > 0 ? (double) skipped / total : 0.0d;
+	}
+
+	/**
+	 * @return the runtime metrics of the codelets in the coderack which have metrics enabled
+	 * @see CodeletMetrics
+	 */
+	public List<CodeletMetrics> getMetrics()
+	{
+		List<CodeletMetrics> metrics = new ArrayList<CodeletMetrics>();
+
+		if(codeRack!=null)
+		{
+			for(Codelet co : codeRack.getAllCodelets())
+			{
+				CodeletMetrics m = co.getMetrics();
+				if(m!=null)
+					metrics.add(m);
+			}
+		}
+
+		return metrics;
+	}
+
+	/**
+	 * Registers (or unregisters) one MBean with the metrics of each codelet in the platform MBean server, 
+	 * named br.unicamp.cst:type=Codelet,mind=(mind number),name=(codelet name),id=(codelet identity). 
+	 * Codelets inserted while enabled are registered as well, destroyed codelets are unregistered, 
+	 * and all are unregistered on shutDown().
+	 * 
+	 * @param enabled true to register the MBeans
+	 */
+	public synchronized void setJmxEnabled(boolean enabled)
+	{
+		if(enabled && registeredMBeans==null)
+		{
+			registeredMBeans = new IdentityHashMap<Codelet, ObjectName>();
+			if(codeRack!=null)
+				for(Codelet co : codeRack.getAllCodelets())
+				{
+					registerMBean(co);
+				}
+		}else if(!enabled && registeredMBeans!=null)
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for(ObjectName name : registeredMBeans.values())
+			{
+				try
+				{
+					server.unregisterMBean(name);
+				}catch(JMException e)
+				{
+					e.printStackTrace();
+				}
+			}
+			registeredMBeans = null;
+		}
+	}
+
+	/**
+	 * @return true if the codelet metrics are registered as MBeans
+	 */
+	public synchronized boolean isJmxEnabled()
+	{
+		return registeredMBeans!=null;
+	}
+
+	private void registerMBean(Codelet co)
+	{
+		CodeletMetrics metrics = co.getMetrics();
+		if(metrics==null || registeredMBeans.containsKey(co))
+			return;
+
+		try
+		{
+			ObjectName name = new ObjectName("br.unicamp.cst:type=Codelet,mind="+mindId+",name="+ObjectName.quote(String.valueOf(co.getName()))+",id="+System.identityHashCode(co));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+			registeredMBeans.put(co, name);
+		}catch(JMException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes the state of this mind to a binary file: the memories in raw memory, including the ones
+	 * inside memory containers, the contents of the registered memory buffers and working storages, and
+	 * the activation, threshold, inputs, outputs and broadcast of each codelet. The info of the memory
+	 * objects is written by the value codec.
+	 * 
+	 * Each memory is read on its own, without stopping the codelets: for a consistent checkpoint, call it 
+	 * between two step() calls or before start().
+	 * 
+	 * @param path file to be written, replaced if it exists
+	 * @throws IOException if the file cannot be written, or a memory info cannot be encoded
+	 * @see #restore(Path)
+	 */
+	public void checkpoint(Path path) throws IOException
+	{
+		MindCheckpoint.write(this, path);
+	}
+
+	/**
+	 * Replaces the memories in raw memory by the ones in a file written by checkpoint(), and restores 
+	 * the registered memory buffers and working storages, matched by key, and the codelets, matched by 
+	 * name in coderack order. The codelets must already be in the coderack, and should not be running.
+	 * 
+	 * The file is mapped in memory, and the info of each memory object is only decoded the first time 
+	 * it is read, so restoring a big mind is fast. The value codec must be the one used by checkpoint(): 
+	 * if it cannot decode an info, getI() throws an UncheckedIOException, and decoding is tried again on the next read. 
+	 * The memories are new objects: codelets keeping references to memories outside of their inputs, 
+	 * outputs and broadcast must look them up again.
+	 * 
+	 * @param path file written by checkpoint()
+	 * @throws IOException if the file cannot be read or is not a checkpoint
+	 */
+	public void restore(Path path) throws IOException
+	{
+		MindCheckpoint.restore(this, path);
+	}
+
+	/**
+	 * @return the codec which encodes the info of the memory objects in checkpoints
+	 */
+	public synchronized ValueCodec getValueCodec()
+	{
+		return valueCodec;
+	}
+
+	/**
+	 * @param valueCodec the codec which encodes the info of the memory objects in checkpoints
+	 */
+	public synchronized void setValueCodec(ValueCodec valueCodec)
+	{
+		this.valueCodec = valueCodec;
+	}
+
+	/**
+	 * Enables or disables the JDK Flight Recorder events of the codelets, memories and learners 
+	 * (see {@link CstEvents}). Being JVM-wide, this applies to every mind in this JVM.
+	 * 
+	 * @param enable true to emit the events
+	 * @return true if the events are enabled, which may not be the case if this JVM has no Flight Recorder
+	 */
+	public boolean setFlightRecorderEvents(boolean enable)
+	{
+		return CstEvents.setEnabled(enable);
+	}
+
+	/**
+	 * @return true if the Flight Recorder events are enabled
+	 */
+	public boolean isFlightRecorderEvents()
+	{
+		return CstEvents.isEnabled();
+	}
+
+	/**
+	 * Includes a memory buffer in the checkpoints of this mind.
+	 * 
+	 * @param key identifies the buffer in the checkpoint file, and when restoring it
+	 * @param buffer the memory buffer, or null to stop including the one with this key
+	 */
+	public synchronized void registerMemoryBuffer(String key, MemoryBuffer buffer)
+	{
+		if(buffer != null)
+			memoryBuffers.put(key, buffer);
+		else
+			memoryBuffers.remove(key);
+	}
+
+	/**
+	 * Includes a working storage in the checkpoints of this mind.
+	 * 
+	 * @param key identifies the working storage in the checkpoint file, and when restoring it
+	 * @param storage the working storage, or null to stop including the one with this key
+	 */
+	public synchronized void registerWorkingStorage(String key, WorkingStorage storage)
+	{
+		if(storage != null)
+			workingStorages.put(key, storage);
+		else
+			workingStorages.remove(key);
+	}
+
+	synchronized Map<String, MemoryBuffer> getRegisteredMemoryBuffers()
+	{
+		return new LinkedHashMap<String, MemoryBuffer>(memoryBuffers);
+	}
+
+	synchronized Map<String, WorkingStorage> getRegisteredWorkingStorages()
+	{
+		return new LinkedHashMap<String, WorkingStorage>(workingStorages);
+	}
+
+	/**
+	 * @return the cognitive cycle used by step() and run(), with its statistics
+	 */
+	public synchronized CognitiveCycle getCognitiveCycle()
+	{
+		if(cognitiveCycle==null)
+			cognitiveCycle = new CognitiveCycle(codeRack);
+
+		return cognitiveCycle;
+	}
+        
 	/**
 	 * Stops codelets thread.
 	 */
@@ -102,5 +513,13 @@ public class Mind
 	{
 		if(codeRack!=null)
 			codeRack.shutDown();
+
+		synchronized(this)
+		{
+			if(cognitiveCycle!=null)
+				cognitiveCycle.shutDown();
+		}
+
+		setJmxEnabled(false);
 	}
 }
@@ -0,0 +1,616 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.unicamp.cst.memory.WorkingStorage;
+
+/**
+ * Writes the state of a {@link Mind} to a binary file, and restores it, for {@link Mind#checkpoint(Path)}
+ * and {@link Mind#restore(Path)}.
+ *
+ * The file is big endian, and holds:
+ * <ul>
+ * <li>the int {@link #MAGIC} and the int {@link #VERSION};</li>
+ * <li>the names of the memories, each one written once: their number as an int, then each name as
+ * modified UTF-8 (see DataOutput.writeUTF());</li>
+ * <li>the number of memories as an int, then the number of them which are in raw memory, which are
+ * the first ones, then one record per memory: the byte {@link #OBJECT} or {@link #CONTAINER}, a byte
+ * of flags, the position of its name as an int (-1 if it has none) and its version as a long, followed
+ * for a memory object by its id if it has one, its timestamp as a long, its evaluation as a double if
+ * it has one and its info as an int length (-1 if null) and the bytes written by the value codec, and
+ * for a container by the number of memories inside it and their positions as ints;</li>
+ * <li>the codelets in coderack order: their number as an int, then for each one its name, its activation
+ * and its threshold as doubles, and its inputs, outputs and broadcast, each as a number of memories
+ * followed by their positions;</li>
+ * <li>the memory buffers and the working storages registered in the mind: their number, then for each
+ * one the key it was registered with, the number of memories in it and their positions.</li>
+ * </ul>
+ *
+ * Restoring maps the file in memory and builds the memories without decoding their info, which each
+ * memory object decodes the first time it is read. Codelets are matched by name, in coderack order, and
+ * get back their activation, threshold, inputs, outputs and broadcast. Buffers and working storages are
+ * matched by key. The file is written to a temporary file first, which then replaces the given one, so
+ * a failed checkpoint does not destroy the previous one.
+ */
+final class MindCheckpoint
+{
+	/** First int of a checkpoint: "CSTK" in ASCII */
+	static final int MAGIC = 0x4353544B;
+
+	/** Version of the format */
+	static final int VERSION = 1;
+
+	static final byte OBJECT = 0;
+
+	static final byte CONTAINER = 1;
+
+	private static final int HAS_ID = 1;
+
+	private static final int HAS_EVALUATION = 2;
+
+	private MindCheckpoint()
+	{
+	}
+
+	/**
+	 * Writes the state of the mind to the given file, replaced if it exists
+	 */
+	static void write(Mind mind, Path path) throws IOException
+	{
+		ValueCodec codec = mind.getValueCodec();
+		Map<String, MemoryBuffer> buffers = mind.getRegisteredMemoryBuffers();
+		Map<String, WorkingStorage> storages = mind.getRegisteredWorkingStorages();
+		List<Codelet> codelets = new ArrayList<Codelet>(mind.getCodeRack().getAllCodelets());
+
+		// numbers every memory reachable from the mind, the ones in raw memory first
+		MemoryTable table = new MemoryTable();
+		for(Memory memory : mind.getRawMemory().getAllMemoryObjects())
+		{
+			table.add(memory);
+		}
+		int rawCount = table.size();
+
+		Map<String, List<Memory>> bufferContents = new LinkedHashMap<String, List<Memory>>();
+		for(Map.Entry<String, MemoryBuffer> entry : buffers.entrySet())
+		{
+			List<Memory> contents = new ArrayList<Memory>(entry.getValue().getAll());
+			table.addAll(contents);
+			bufferContents.put(entry.getKey(), contents);
+		}
+
+		Map<String, List<Memory>> storageContents = new LinkedHashMap<String, List<Memory>>();
+		for(Map.Entry<String, WorkingStorage> entry : storages.entrySet())
+		{
+			List<Memory> contents = entry.getValue().getAll();
+			table.addAll(contents);
+			storageContents.put(entry.getKey(), contents);
+		}
+
+		List<List<Memory>> codeletLists = new ArrayList<List<Memory>>(codelets.size() * 3);
+		for(Codelet co : codelets)
+		{
+			codeletLists.add(co.getInputs());
+			codeletLists.add(co.getOutputs());
+			codeletLists.add(co.getBroadcast());
+		}
+		for(List<Memory> list : codeletLists)
+		{
+			table.addAll(list);
+		}
+
+		table.addContainerContents();
+
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 65536));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			out.writeInt(table.names.size());
+			for(String name : table.names.keySet())
+			{
+				out.writeUTF(name);
+			}
+
+			out.writeInt(table.size());
+			out.writeInt(rawCount);
+
+			ByteArrayOutputStream valueBytes = new ByteArrayOutputStream();
+			DataOutputStream valueOut = new DataOutputStream(valueBytes);
+
+			for(int i = 0; i < table.size(); i++)
+			{
+				Memory memory = table.get(i);
+
+				if(memory instanceof MemoryObject)
+				{
+					MemoryObject mo = (MemoryObject) memory;
+					Object info = mo.getI();
+					Long id = mo.getIdmemoryobject();
+					Double evaluation = mo.getEvaluation();
+
+					out.writeByte(OBJECT);
+					out.writeByte((id != null ? HAS_ID : 0) | (evaluation != null ? HAS_EVALUATION : 0));
+					out.writeInt(table.nameIndex(mo.getName()));
+					out.writeLong(mo.getVersion());
+					if(id != null)
+						out.writeLong(id);
+					out.writeLong(mo.getTimestampMillis());
+					if(evaluation != null)
+						out.writeDouble(evaluation);
+
+					if(info == null)
+					{
+						out.writeInt(-1);
+					}else
+					{
+						valueBytes.reset();
+						codec.write(info, valueOut);
+						valueOut.flush();
+						out.writeInt(valueBytes.size());
+						valueBytes.writeTo(out);
+					}
+				}else
+				{
+					MemoryContainer mc = (MemoryContainer) memory;
+					Memory[] contents = table.containerContents.get(mc);
+
+					out.writeByte(CONTAINER);
+					out.writeByte(0);
+					out.writeInt(table.nameIndex(mc.getName()));
+					out.writeLong(mc.getVersion());
+					out.writeInt(contents.length);
+					for(Memory content : contents)
+					{
+						out.writeInt(table.indexOf(content));
+					}
+				}
+			}
+
+			out.writeInt(codelets.size());
+			for(int i = 0; i < codelets.size(); i++)
+			{
+				Codelet co = codelets.get(i);
+				out.writeUTF(String.valueOf(co.getName()));
+				out.writeDouble(co.getActivation());
+				out.writeDouble(co.getThreshold());
+				writeList(out, table, codeletLists.get(3 * i));
+				writeList(out, table, codeletLists.get(3 * i + 1));
+				writeList(out, table, codeletLists.get(3 * i + 2));
+			}
+
+			writeLists(out, table, bufferContents);
+			writeLists(out, table, storageContents);
+
+			out.close();
+			out = null;
+
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+		}finally
+		{
+			if(out != null)
+			{
+				out.close();
+				Files.deleteIfExists(temporary);
+			}
+		}
+	}
+
+	private static void writeLists(DataOutputStream out, MemoryTable table, Map<String, List<Memory>> lists) throws IOException
+	{
+		out.writeInt(lists.size());
+		for(Map.Entry<String, List<Memory>> entry : lists.entrySet())
+		{
+			out.writeUTF(entry.getKey());
+			writeList(out, table, entry.getValue());
+		}
+	}
+
+	private static void writeList(DataOutputStream out, MemoryTable table, List<Memory> list) throws IOException
+	{
+		out.writeInt(list.size());
+		for(Memory memory : list)
+		{
+			out.writeInt(table.indexOf(memory));
+		}
+	}
+
+	/**
+	 * Replaces the memories of the mind by the ones in the given file, and restores its codelets, 
+	 * buffers and working storages
+	 */
+	static void restore(Mind mind, Path path) throws IOException
+	{
+		ByteBuffer buffer;
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try
+		{
+			if(channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Checkpoint bigger than 2 GB: "+path);
+
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}finally
+		{
+			// the mapping stays valid after the channel is closed
+			channel.close();
+		}
+
+		// never moved, so the lazy values can read it from any thread
+		ByteBuffer values = buffer.duplicate();
+		ValueCodec codec = mind.getValueCodec();
+		DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer));
+
+		if(buffer.getInt() != MAGIC)
+			throw new IOException("Not a checkpoint: "+path);
+		int version = buffer.getInt();
+		if(version != VERSION)
+			throw new IOException("Unsupported checkpoint version "+version+": "+path);
+
+		String[] names = new String[buffer.getInt()];
+		for(int i = 0; i < names.length; i++)
+		{
+			names[i] = in.readUTF();
+		}
+
+		Memory[] memories = new Memory[buffer.getInt()];
+		int rawCount = buffer.getInt();
+
+		// containers are filled once all memories exist, as they may refer to the ones after them
+		int[] containers = new int[16];
+		int[] containerPositions = new int[16];
+		int containerCount = 0;
+
+		for(int i = 0; i < memories.length; i++)
+		{
+			byte kind = buffer.get();
+			byte flags = buffer.get();
+			int nameIndex = buffer.getInt();
+			String name = nameIndex >= 0 ? names[nameIndex] : null;
+			long memoryVersion = buffer.getLong();
+
+			if(kind == OBJECT)
+			{
+				Long id = (flags & HAS_ID) != 0 ? Long.valueOf(buffer.getLong()) : null;
+				long timestamp = buffer.getLong();
+				Double evaluation = (flags & HAS_EVALUATION) != 0 ? Double.valueOf(buffer.getDouble()) : null;
+
+				Object info = null;
+				int length = buffer.getInt();
+				if(length >= 0)
+				{
+					info = new LazyValue(values, buffer.position(), length, codec);
+					buffer.position(buffer.position() + length);
+				}
+
+				MemoryObject mo = new MemoryObject();
+				mo.restore(id, timestamp, evaluation, info, name, memoryVersion);
+				memories[i] = mo;
+			}else if(kind == CONTAINER)
+			{
+				MemoryContainer mc = new MemoryContainer(name);
+				memories[i] = mc;
+
+				if(containerCount == containers.length)
+				{
+					containers = Arrays.copyOf(containers, containerCount * 2);
+					containerPositions = Arrays.copyOf(containerPositions, containerCount * 2);
+				}
+				containers[containerCount] = i;
+				containerPositions[containerCount] = buffer.position();
+				containerCount++;
+
+				int size = buffer.getInt();
+				buffer.position(buffer.position() + 4 * size);
+				mc.restore(new Memory[0], memoryVersion);
+			}else
+			{
+				throw new IOException("Corrupted checkpoint, unknown memory kind "+kind+": "+path);
+			}
+		}
+
+		for(int c = 0; c < containerCount; c++)
+		{
+			MemoryContainer mc = (MemoryContainer) memories[containers[c]];
+			int position = containerPositions[c];
+			Memory[] contents = new Memory[buffer.getInt(position)];
+			for(int i = 0; i < contents.length; i++)
+			{
+				contents[i] = memory(memories, buffer.getInt(position + 4 + 4 * i));
+			}
+			mc.restore(contents, mc.getVersion());
+		}
+
+		Map<String, ArrayDeque<CodeletState>> states = new HashMap<String, ArrayDeque<CodeletState>>();
+		int codeletCount = buffer.getInt();
+		for(int i = 0; i < codeletCount; i++)
+		{
+			CodeletState state = new CodeletState();
+			String name = in.readUTF();
+			state.activation = buffer.getDouble();
+			state.threshold = buffer.getDouble();
+			state.inputs = readList(buffer, memories);
+			state.outputs = readList(buffer, memories);
+			state.broadcast = readList(buffer, memories);
+
+			ArrayDeque<CodeletState> sameName = states.get(name);
+			if(sameName == null)
+			{
+				sameName = new ArrayDeque<CodeletState>();
+				states.put(name, sameName);
+			}
+			sameName.add(state);
+		}
+
+		Map<String, List<Memory>> bufferContents = readLists(buffer, in, memories);
+		Map<String, List<Memory>> storageContents = readLists(buffer, in, memories);
+
+		for(Map.Entry<String, MemoryBuffer> entry : mind.getRegisteredMemoryBuffers().entrySet())
+		{
+			List<Memory> contents = bufferContents.get(entry.getKey());
+			if(contents == null)
+				continue;
+
+			List<MemoryObject> objects = new ArrayList<MemoryObject>(contents.size());
+			for(Memory memory : contents)
+			{
+				objects.add((MemoryObject) memory);
+			}
+
+			MemoryBuffer memoryBuffer = entry.getValue();
+			memoryBuffer.clear();
+			memoryBuffer.putList(objects);
+		}
+
+		for(Map.Entry<String, WorkingStorage> entry : mind.getRegisteredWorkingStorages().entrySet())
+		{
+			List<Memory> contents = storageContents.get(entry.getKey());
+			if(contents == null)
+				continue;
+
+			WorkingStorage storage = entry.getValue();
+			for(Memory memory : storage.getAll())
+			{
+				storage.removeFromWorkingStorageWithoutDelete(memory);
+			}
+			for(Memory memory : contents)
+			{
+				storage.putMemoryObject(memory);
+			}
+		}
+
+		// after the buffers, which destroy their old memories in raw memory when cleared
+		mind.getRawMemory().restore(memories, rawCount);
+
+		for(Codelet co : new ArrayList<Codelet>(mind.getCodeRack().getAllCodelets()))
+		{
+			ArrayDeque<CodeletState> sameName = states.get(String.valueOf(co.getName()));
+			CodeletState state = sameName != null ? sameName.poll() : null;
+			if(state == null)
+				continue;
+
+			try
+			{
+				co.setActivation(state.activation);
+				co.setThreshold(state.threshold);
+			}catch(Exception e)
+			{
+				e.printStackTrace();
+			}
+			co.setInputs(state.inputs);
+			co.setOutputs(state.outputs);
+			co.setBroadcast(state.broadcast);
+		}
+	}
+
+	private static List<Memory> readList(ByteBuffer buffer, Memory[] memories)
+	{
+		Memory[] list = new Memory[buffer.getInt()];
+		for(int i = 0; i < list.length; i++)
+		{
+			list[i] = memory(memories, buffer.getInt());
+		}
+		return Arrays.asList(list);
+	}
+
+	private static Memory memory(Memory[] memories, int index)
+	{
+		return index >= 0 ? memories[index] : null;
+	}
+
+	private static Map<String, List<Memory>> readLists(ByteBuffer buffer, DataInputStream in, Memory[] memories) throws IOException
+	{
+		int count = buffer.getInt();
+		Map<String, List<Memory>> lists = new HashMap<String, List<Memory>>();
+		for(int i = 0; i < count; i++)
+		{
+			String key = in.readUTF();
+			lists.put(key, readList(buffer, memories));
+		}
+		return lists;
+	}
+
+	/**
+	 * Info of a restored memory object, decoded from the checkpoint the first time it is read
+	 */
+	static final class LazyValue
+	{
+		private final ByteBuffer buffer;
+		private final int offset;
+		private final int length;
+		private final ValueCodec codec;
+
+		LazyValue(ByteBuffer buffer, int offset, int length, ValueCodec codec)
+		{
+			this.buffer = buffer;
+			this.offset = offset;
+			this.length = length;
+			this.codec = codec;
+		}
+
+		/**
+		 * @return the decoded value
+		 * @throws UncheckedIOException if the value cannot be decoded, in which case it is left to be decoded again
+		 */
+		Object decode()
+		{
+			ByteBuffer value = buffer.duplicate();
+			value.limit(offset + length);
+			value.position(offset);
+
+			try
+			{
+				return codec.read(new DataInputStream(new ByteBufferInputStream(value)));
+			}catch(IOException e)
+			{
+				throw new UncheckedIOException("Cannot decode the info of a memory object restored from a checkpoint", e);
+			}
+		}
+	}
+
+	private static final class CodeletState
+	{
+		double activation;
+		double threshold;
+		List<Memory> inputs;
+		List<Memory> outputs;
+		List<Memory> broadcast;
+	}
+
+	/**
+	 * Memories numbered in the order they are added, with the names they use
+	 */
+	private static final class MemoryTable
+	{
+		private final IdentityHashMap<Memory, Integer> indexes = new IdentityHashMap<Memory, Integer>();
+		private final List<Memory> memories = new ArrayList<Memory>();
+		private final IdentityHashMap<MemoryContainer, Memory[]> containerContents = new IdentityHashMap<MemoryContainer, Memory[]>();
+		private final LinkedHashMap<String, Integer> names = new LinkedHashMap<String, Integer>();
+
+		void add(Memory memory) throws IOException
+		{
+			if(memory == null || indexes.containsKey(memory))
+				return;
+
+			if(!(memory instanceof MemoryObject) && !(memory instanceof MemoryContainer))
+				throw new IOException("Cannot checkpoint a memory of class "+memory.getClass().getName());
+
+			indexes.put(memory, memories.size());
+			memories.add(memory);
+
+			String name = memory.getName();
+			if(name != null && !names.containsKey(name))
+				names.put(name, names.size());
+		}
+
+		void addAll(List<? extends Memory> list) throws IOException
+		{
+			for(Memory memory : list)
+			{
+				add(memory);
+			}
+		}
+
+		/**
+		 * Adds the memories inside the containers, and inside the containers inside them
+		 */
+		void addContainerContents() throws IOException
+		{
+			for(int i = 0; i < memories.size(); i++)
+			{
+				Memory memory = memories.get(i);
+				if(memory instanceof MemoryContainer)
+				{
+					Memory[] contents = ((MemoryContainer) memory).snapshot();
+					containerContents.put((MemoryContainer) memory, contents);
+					addAll(Arrays.asList(contents));
+				}
+			}
+		}
+
+		int size()
+		{
+			return memories.size();
+		}
+
+		Memory get(int index)
+		{
+			return memories.get(index);
+		}
+
+		/**
+		 * @return the number of the memory, or -1 for null
+		 */
+		int indexOf(Memory memory)
+		{
+			return memory != null ? indexes.get(memory) : -1;
+		}
+
+		int nameIndex(String name)
+		{
+			return name != null ? names.get(name) : -1;
+		}
+	}
+
+	/**
+	 * Reads a byte buffer from its position, moving it
+	 */
+	private static final class ByteBufferInputStream extends InputStream
+	{
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read()
+		{
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len)
+		{
+			if(len == 0)
+				return 0;
+			if(!buffer.hasRemaining())
+				return -1;
+
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+	}
+}
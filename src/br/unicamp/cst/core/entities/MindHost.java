@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many minds on one shared pool of threads, instead of one thread (or one scheduler) per mind,
+ * so a JVM can hold many more of them, as in simulations of populations of agents.
+ *
+ * Each mind gets a share of the pool: when several minds have codelets waiting to run, the pool is
+ * divided among them in proportion to their shares, measured in CPU time spent running their codelets.
+ * A mind with many busy codelets therefore does not slow down the others beyond its share. Each mind
+ * can be started, stopped, paused and resumed on its own, and has its own metrics (see {@link HostedMind}).
+ *
+ * The codelets are run as by a {@link CodeletScheduler}, whose timeStep, event driven and fixed rate
+ * rules apply, and should not block inside proc().
+ */
+public class MindHost
+{
+	private static final AtomicInteger hostCount = new AtomicInteger();
+
+	private final FairShareExecutor pool;
+
+	/** Wakes up the codelets when their timeStep elapses */
+	private final ScheduledThreadPoolExecutor timer;
+
+	private final boolean fixedRate;
+
+	private final List<HostedMind> minds = new CopyOnWriteArrayList<HostedMind>();
+
+	/**
+	 * Creates a fixed-delay host with one thread per available processor.
+	 */
+	public MindHost()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a fixed-delay host.
+	 *
+	 * @param poolSize number of threads running the codelets of all minds
+	 */
+	public MindHost(int poolSize)
+	{
+		this(poolSize, false);
+	}
+
+	/**
+	 * @param poolSize number of threads running the codelets of all minds
+	 * @param fixedRate if true, timeStep is treated as a fixed rate, otherwise as a fixed delay
+	 */
+	public MindHost(int poolSize, boolean fixedRate)
+	{
+		if(poolSize < 1)
+			throw new IllegalArgumentException("MindHost pool size must be at least 1");
+
+		final String name = "MindHost-" + hostCount.incrementAndGet();
+
+		this.fixedRate = fixedRate;
+		this.pool = new FairShareExecutor(poolSize, name);
+		this.timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, name + "-timer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this.timer.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Creates a new mind hosted here, with a share of 1.
+	 */
+	public HostedMind createMind()
+	{
+		return addMind(new Mind(), 1.0d);
+	}
+
+	/**
+	 * Hosts a mind with a share of 1. Must be called before the mind starts.
+	 */
+	public HostedMind addMind(Mind mind)
+	{
+		return addMind(mind, 1.0d);
+	}
+
+	/**
+	 * Hosts a mind, replacing its scheduler. Must be called before the mind starts.
+	 *
+	 * @param mind the mind to be hosted
+	 * @param share relative share of the pool given to this mind, greater than 0
+	 * @return the handle to start, stop, pause and measure the mind
+	 */
+	public HostedMind addMind(Mind mind, double share)
+	{
+		FairShareExecutor.Tenant tenant = pool.newTenant(share);
+		CodeletScheduler scheduler = new CodeletScheduler(timer, tenant, pool.getPoolSize(), fixedRate);
+		mind.setScheduler(scheduler);
+
+		HostedMind hosted = new HostedMind(this, mind, tenant, scheduler);
+		minds.add(hosted);
+		return hosted;
+	}
+
+	/**
+	 * Stops a mind and removes it from this host. The mind is left without a scheduler, so it runs 
+	 * each codelet on its own thread if started again.
+	 */
+	public void removeMind(HostedMind hosted)
+	{
+		if(!minds.remove(hosted))
+			return;
+
+		hosted.stop();
+		hosted.getMind().setScheduler(null);
+	}
+
+	/**
+	 * @return the minds hosted, in the order they were added
+	 */
+	public List<HostedMind> getMinds()
+	{
+		return Collections.unmodifiableList(minds);
+	}
+
+	/**
+	 * Starts all minds hosted.
+	 */
+	public void start()
+	{
+		for(HostedMind hosted : minds)
+		{
+			hosted.start();
+		}
+	}
+
+	/**
+	 * Stops all minds hosted.
+	 */
+	public void stop()
+	{
+		for(HostedMind hosted : minds)
+		{
+			hosted.stop();
+		}
+	}
+
+	/**
+	 * @return the number of threads running the codelets of all minds
+	 */
+	public int getPoolSize()
+	{
+		return pool.getPoolSize();
+	}
+
+	/**
+	 * @return the CPU time spent running codelets of the minds hosted, in nanoseconds
+	 */
+	public long getCpuTime()
+	{
+		long total = 0L;
+		for(HostedMind hosted : minds)
+		{
+			total += hosted.getCpuTime();
+		}
+		return total;
+	}
+
+	/**
+	 * Stops all minds and the threads of this host, which cannot be used afterwards.
+	 */
+	public void shutDown()
+	{
+		stop();
+		pool.shutDown();
+		timer.shutdownNow();
+	}
+
+	/**
+	 * @return true if this host was shut down
+	 */
+	public boolean isShutDown()
+	{
+		return pool.isShutDown();
+	}
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reentrant lock with a unique position in a global order, so that a {@link LockManager} always
+ * acquires a set of these locks in the same order, whatever the order they were asked in.
+ * Used as the lock of codelets and memory buffers.
+ *
+ * It also counts how many times a thread had to wait for it and for how long, and tells which
+ * lock a thread is waiting for, which the {@link ContentionProfiler} uses. This costs nothing
+ * when the lock is free.
+ */
+public class OrderedLock extends ReentrantLock
+{
+	private static final long serialVersionUID = 1L;
+
+	private static final AtomicLong lockCount = new AtomicLong();
+
+	/** Lock each thread is waiting for, if it is an OrderedLock */
+	private static final ConcurrentHashMap<Thread, OrderedLock> waitingThreads = new ConcurrentHashMap<Thread, OrderedLock>();
+
+	private final long order = lockCount.incrementAndGet();
+
+	/** Codelet or memory buffer this lock guards, or null */
+	private final transient Object guarded;
+
+	private final AtomicLong contentions = new AtomicLong();
+
+	private final AtomicLong waitTime = new AtomicLong();
+
+	public OrderedLock()
+	{
+		this(null);
+	}
+
+	/**
+	 * @param guarded codelet or memory buffer this lock guards, used to describe it
+	 */
+	public OrderedLock(Object guarded)
+	{
+		this.guarded = guarded;
+	}
+
+	/**
+	 * @return the position of this lock in the global order, unique among all OrderedLocks
+	 */
+	public long getOrder()
+	{
+		return order;
+	}
+
+	/**
+	 * @return the codelet or memory buffer this lock guards, or null
+	 */
+	public Object getGuarded()
+	{
+		return guarded;
+	}
+
+	@Override
+	public void lock()
+	{
+		if(tryLock())
+			return;
+
+		long begin = beginWait();
+		try
+		{
+			super.lock();
+		}finally
+		{
+			endWait(begin);
+		}
+	}
+
+	@Override
+	public void lockInterruptibly() throws InterruptedException
+	{
+		if(tryLock())
+			return;
+
+		long begin = beginWait();
+		try
+		{
+			super.lockInterruptibly();
+		}finally
+		{
+			endWait(begin);
+		}
+	}
+
+	@Override
+	public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		if(tryLock())
+			return true;
+
+		long begin = beginWait();
+		try
+		{
+			return super.tryLock(timeout, unit);
+		}finally
+		{
+			endWait(begin);
+		}
+	}
+
+	private long beginWait()
+	{
+		contentions.incrementAndGet();
+		waitingThreads.put(Thread.currentThread(), this);
+		return System.nanoTime();
+	}
+
+	private void endWait(long begin)
+	{
+		waitTime.addAndGet(System.nanoTime() - begin);
+		waitingThreads.remove(Thread.currentThread());
+	}
+
+	/**
+	 * @return the number of times a thread had to wait for this lock
+	 */
+	public long getContentions()
+	{
+		return contentions.get();
+	}
+
+	/**
+	 * @return the total time threads waited for this lock, in nanoseconds
+	 */
+	public long getWaitTime()
+	{
+		return waitTime.get();
+	}
+
+	/**
+	 * @param thread a thread
+	 * @return the OrderedLock the thread is waiting for, or null if it is not waiting for one
+	 */
+	public static OrderedLock getLockWaitedBy(Thread thread)
+	{
+		return waitingThreads.get(thread);
+	}
+
+	/**
+	 * @return a description of the lock and what it guards
+	 */
+	public String describe()
+	{
+		if(guarded instanceof Codelet)
+			return "Codelet.lock of " + ((Codelet) guarded).getName();
+		if(guarded != null)
+			return guarded.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(guarded)) + ".lock";
+
+		return "OrderedLock@" + Integer.toHexString(System.identityHashCode(this));
+	}
+}
@@ -11,16 +11,39 @@
 
 package br.unicamp.cst.core.entities;
 
-import java.sql.Timestamp;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * 
  * The Raw Memory contains all memories in the system.
  * 
+ * Memories are kept in concurrent hash maps, by identity and by type (the memory name, 
+ * case insensitive), so adding, destroying and listing the memories of a type do not 
+ * scan the whole raw memory nor block other threads. The list returned by 
+ * {@link #getAllMemoryObjects()} is a live view whose iterators are weakly consistent: 
+ * they never throw ConcurrentModificationException, and may or may not reflect memories 
+ * added or destroyed while iterating. Memories are not kept in insertion order.
+ * 
+ * A memory object renamed by {@link MemoryObject#setType(String)} is moved to its new type in the 
+ * last raw memory it was added to. Other memories are indexed under the name they had when added.
+ * 
+ * The memories restored from a checkpoint are only indexed the first time the raw memory is used.
+ * 
+ * Instead of polling getAllMemoryObjects(), viewers and bridges may subscribe to the memories created, 
+ * changed and destroyed (see {@link #subscribe(MemorySubscriber)}).
+ * 
  * @author andre.paraense
  * @author klaus.raizer
  *
@@ -28,76 +51,131 @@ import java.util.List;
 public class RawMemory
 {
    /**
-    * List of all memories in the system
+    * All memories in the system, each one with the key of its type in memoriesByType
+    */
+   private final ConcurrentHashMap<MemoryKey, String> allMemories = new ConcurrentHashMap<MemoryKey, String>();
+
+   /**
+    * Memories of each type, by normalized name. Memories without a name are under the empty string
+    */
+   private final ConcurrentHashMap<String, Set<MemoryKey>> memoriesByType = new ConcurrentHashMap<String, Set<MemoryKey>>();
+
+   /**
+    * Live view of allMemories
+    */
+   private final List<Memory> allMemoriesView = new AllMemoriesView();
+
+   /**
+    * Memories restored from a checkpoint which are not indexed yet, the first pendingCount ones in the array
+    */
+   private volatile Memory[] pending;
+
+   private int pendingCount;
+
+   /**
+    * Default number of events waiting to be delivered to each subscriber
+    */
+   public static final int DEFAULT_EVENT_BUFFER_SIZE = 1024;
+
+   /**
+    * Sends the changes in raw memory to the subscribers
+    */
+   private final MemoryEventPublisher events = new MemoryEventPublisher();
+
+   /**
+    * Set when the first subscriber arrives: from then on, the memories in raw memory are observed to publish their updates
     */
-   private List<Memory> allMemories;
+   private volatile boolean observing = false;
+
+   private final MemoryObserver changeObserver = new MemoryObserver()
+   {
+	   @Override
+	   public void notifyMemoryChanged(Memory memory)
+	   {
+		   events.publish(MemoryEvent.Type.UPDATED, memory);
+	   }
+   };
    
    /**
     * Default constructor
     */
    public RawMemory()
    {
-      allMemories =  Collections.synchronizedList(new ArrayList<Memory>());
    }
 
    /**
-    * @return the allMemoryObjects
+    * @return a live view of all memories, whose iterators are weakly consistent. Accessing it by position is O(n)
     */
-   public synchronized List<Memory> getAllMemoryObjects()
+   public List<Memory> getAllMemoryObjects()
    {
-	   synchronized(allMemories)
-	   {
-		   return allMemories; 
-	   }   
+	   indexPending();
+	   return allMemoriesView;
    }
+
 /**
  * Returns a list of all memories in raw memory of a given type
  * @param type of memory
  * @return list of Ms of a given type
  */
-   public synchronized List<Memory> getAllOfType(String type)
+   public List<Memory> getAllOfType(String type)
    {
 	   List<Memory> listOfType=new ArrayList<Memory>();
-	   
-	   synchronized(allMemories)
+
+	   if(type==null)
+		   return listOfType;
+
+	   indexPending();
+
+	   Set<MemoryKey> memoriesOfType=memoriesByType.get(normalize(type));
+	   if(memoriesOfType!=null)
 	   {
-		   for(Memory mo:this.allMemories)
+		   for(MemoryKey key:memoriesOfType)
 		   {
-			   if(mo.getName().equalsIgnoreCase(type))
-			   {
-				   listOfType.add(mo);
-			   }
-		   } 
+			   if(type.equalsIgnoreCase(key.memory.getName()))
+				   listOfType.add(key.memory);
+		   }
 	   }
-	   	   
-	return listOfType;
-	   
+
+	   // memories which were added before being named
+	   Set<MemoryKey> unnamed=memoriesByType.get("");
+	   if(unnamed!=null && !type.isEmpty())
+	   {
+		   for(MemoryKey key:unnamed)
+		   {
+			   if(type.equalsIgnoreCase(key.memory.getName()))
+				   listOfType.add(key.memory);
+		   }
+	   }
+
+	   return listOfType;
    }
    
    
    /**
+    * Replaces all memories in raw memory by the given ones.
+    * 
     * @param allMemories the allMemoryObjects to set
     */
    public synchronized void setAllMemoryObjects(List<Memory> allMemories)
    {
-	   synchronized(this.allMemories)
-	   {
-		   this.allMemories = allMemories;
-	   }     
+	   shutDown();
+
+	   if(allMemories!=null)
+		   for(Memory mo:allMemories)
+		   {
+			   addMemory(mo);
+		   }
    }
 
    /**
     * Print Raw Memory contents
     */
-   public synchronized void printContent()
+   public void printContent()
    {
-	   synchronized(allMemories)
+	   for(Memory mo : allMemoriesView)
 	   {
-		   for(Memory mo : allMemories)
-		      {
-		         System.out.println(mo.toString());
-		      }  
-	   }    
+		   System.out.println(mo.toString());
+	   }  
    }
 
    /**
@@ -106,24 +184,167 @@ public class RawMemory
     * @param mo memory to be added
     */
    @Deprecated
-   public synchronized void addMemoryObject(Memory mo)
+   public void addMemoryObject(Memory mo)
    {
-	   synchronized(allMemories)
-	   {
-		      allMemories.add(mo);
-	   }     
+	   addMemory(mo);
    }
    
-   public synchronized void addMemory(Memory mo)
+   /**
+    * Adds a new Memory to the Raw Memory. Adding a memory which is already there has no effect.
+    * 
+    * @param mo memory to be added
+    */
+   public void addMemory(Memory mo)
+   {
+	   if(mo==null)
+		   return;
+
+	   indexPending();
+	   add(mo, (mo.getName()!=null) ? normalize(mo.getName()) : "");
+   }
+
+   /**
+    * Replaces all memories in raw memory by the given ones, which are only indexed the first time the 
+    * raw memory is used. Used to restore checkpoints.
+    * 
+    * @param memories memories to be added, the null ones being skipped. The array must not be changed afterwards
+    * @param count number of memories, from the start of the array
+    */
+   synchronized void restore(Memory[] memories, int count)
+   {
+	   shutDown();
+
+	   pendingCount=count;
+	   pending=memories;
+
+	   // subscribers expect the memories restored now
+	   if(observing)
+		   indexPendingNow();
+   }
+
+   /**
+    * Indexes the memories restored from a checkpoint, if not done yet
+    */
+   private void indexPending()
+   {
+	   if(pending!=null)
+		   indexPendingNow();
+   }
+
+   private synchronized void indexPendingNow()
+   {
+	   Memory[] memories=pending;
+	   if(memories!=null)
+	   {
+		   addMemories(memories, pendingCount);
+		   pending=null;
+	   }
+   }
+
+   /**
+    * Adds many memories at once, normalizing each distinct name only once.
+    * 
+    * @param memories memories to be added, the null ones being skipped
+    * @param count number of memories, from the start of the array
+    */
+   private void addMemories(Memory[] memories, int count)
    {
-	   synchronized(allMemories)
+	   Map<String, String> types=new HashMap<String, String>();
+
+	   for(int i=0;i<count;i++)
 	   {
-		      allMemories.add(mo);
-	   }     
+		   Memory mo=memories[i];
+		   if(mo==null)
+			   continue;
+
+		   String name=mo.getName();
+		   String type="";
+		   if(name!=null)
+		   {
+			   type=types.get(name);
+			   if(type==null)
+			   {
+				   type=normalize(name);
+				   types.put(name, type);
+			   }
+		   }
+
+		   add(mo, type);
+	   }
+   }
+
+   private void add(Memory mo, String type)
+   {
+	   MemoryKey key=new MemoryKey(mo);
+
+	   if(allMemories.putIfAbsent(key, type)==null)
+	   {
+		   memoriesOfType(type).add(key);
+
+		   if(mo instanceof MemoryObject)
+			   ((MemoryObject) mo).setRawMemory(this);
+
+		   if(observing)
+		   {
+			   observe(mo);
+			   events.publish(MemoryEvent.Type.CREATED, mo);
+		   }
+
+		   if(CstEvents.enabled)
+			   CstEvents.memoryCreated(mo);
+	   }
    }
    
    
-   public synchronized MemoryContainer createMemoryContainer(String name){
+   /**
+    * Moves a memory object renamed by {@link MemoryObject#setType(String)} to the index of its new type
+    * 
+    * @param mo the renamed memory object
+    */
+   void reindex(MemoryObject mo)
+   {
+	   MemoryKey key=new MemoryKey(mo);
+	   String name=mo.getName();
+	   String type=(name!=null) ? normalize(name) : "";
+
+	   String oldType;
+	   do
+	   {
+		   oldType=allMemories.get(key);
+		   if(oldType==null || oldType.equals(type))
+			   return;
+	   }
+	   while(!allMemories.replace(key, oldType, type));
+
+	   Set<MemoryKey> memoriesOfType=memoriesOfType(type);
+	   memoriesOfType.add(key);
+
+	   Set<MemoryKey> memoriesOfOldType=memoriesByType.get(oldType);
+	   if(memoriesOfOldType!=null)
+		   memoriesOfOldType.remove(key);
+
+	   // destroyed or renamed again meanwhile
+	   if(!type.equals(allMemories.get(key)))
+		   memoriesOfType.remove(key);
+   }
+
+   /**
+    * @return the set of memories of the given normalized type, created if needed
+    */
+   private Set<MemoryKey> memoriesOfType(String type)
+   {
+	   Set<MemoryKey> memoriesOfType=memoriesByType.get(type);
+	   if(memoriesOfType==null)
+	   {
+		   Set<MemoryKey> newSet=ConcurrentHashMap.<MemoryKey>newKeySet();
+		   memoriesOfType=memoriesByType.putIfAbsent(type, newSet);
+		   if(memoriesOfType==null)
+			   memoriesOfType=newSet;
+	   }
+	   return memoriesOfType;
+   }
+   
+   public MemoryContainer createMemoryContainer(String name){
 	   
 	   
 	   MemoryContainer mc = new MemoryContainer(name);
@@ -141,15 +362,13 @@ public class RawMemory
     * @param info memory object info
     * @return mo created MemoryObject
     */
-   public synchronized MemoryObject createMemoryObject(String name, Object info)
+   public MemoryObject createMemoryObject(String name, Object info)
    {
 	   // memory object to be added to rawmemory
        MemoryObject mo = new MemoryObject();
-       Date date = new Date();         
-       mo.setI(info);
+       mo.setI(info); // also sets the timestamp
        //mo.setT(type);
        //mo.setInfo("");
-       mo.setTimestamp(new Timestamp(date.getTime()));
        mo.setEvaluation(0.0d);
        mo.setType(name);
 
@@ -158,7 +377,7 @@ public class RawMemory
        return mo;
    }
    
-   public synchronized MemoryObject createMemoryObject(String name) {
+   public MemoryObject createMemoryObject(String name) {
        return createMemoryObject(name, "");
    }
    
@@ -167,39 +386,291 @@ public class RawMemory
     * Destroys a given memory from raw memory
     * @param mo
     */
-   public synchronized void destroyMemoryObject(Memory mo)
+   public void destroyMemoryObject(Memory mo)
+   {
+	   if(mo==null)
+		   return;
+
+	   indexPending();
+	   MemoryKey key=new MemoryKey(mo);
+	   String type=allMemories.remove(key);
+
+	   if(type!=null)
+	   {
+		   Set<MemoryKey> memoriesOfType=memoriesByType.get(type);
+		   if(memoriesOfType!=null)
+			   memoriesOfType.remove(key);
+
+		   if(mo instanceof MemoryObject && ((MemoryObject) mo).getRawMemory()==this)
+			   ((MemoryObject) mo).setRawMemory(null);
+
+		   if(observing)
+		   {
+			   unobserve(mo);
+			   events.publish(MemoryEvent.Type.DESTROYED, mo);
+		   }
+
+		   if(CstEvents.enabled)
+			   CstEvents.memoryDestroyed(mo);
+	   }
+   }
+
+   /**
+    * Subscribes to all changes in raw memory, delivered on the common fork join pool.
+    * 
+    * @param subscriber receives the changes
+    * @see #subscribe(MemorySubscriber, String, Set, int, Executor)
+    */
+   public void subscribe(MemorySubscriber subscriber)
+   {
+	   subscribe(subscriber, null);
+   }
+
+   /**
+    * Subscribes to the changes in the memories with the given name, delivered on the common fork join pool.
+    * 
+    * @param subscriber receives the changes
+    * @param name name of the memories, case insensitive, or null for all memories
+    * @see #subscribe(MemorySubscriber, String, Set, int, Executor)
+    */
+   public void subscribe(MemorySubscriber subscriber, String name)
    {
-	   synchronized(allMemories)
+	   subscribe(subscriber, name, EnumSet.allOf(MemoryEvent.Type.class), DEFAULT_EVENT_BUFFER_SIZE, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Subscribes to the changes in raw memory: memories added, changed (their info, their evaluation or, 
+    * for containers, the memories inside them) and destroyed, including the ones removed by shutDown().
+    * The subscriber receives the events it requests through its subscription, in the order they happened, 
+    * with the protocol of reactive streams (see {@link MemorySubscriber}).
+    * 
+    * Publishing an event never blocks the codelet changing the memory: it waits in the subscription's 
+    * buffer until requested, changes to a memory which already has one waiting are merged, and the events 
+    * which do not fit in the buffer are dropped (see {@link MemorySubscription#getDroppedEvents()}).
+    * 
+    * Once there is a subscriber, every memory in raw memory is observed, which costs a little on each change.
+    * 
+    * @param subscriber receives the changes
+    * @param name name of the memories, case insensitive, or null for all memories
+    * @param types kinds of change to be sent
+    * @param bufferSize maximum number of events waiting to be delivered
+    * @param executor runs the delivery of the events to the subscriber. If it runs tasks on the calling 
+    * thread, the events are delivered by the codelets changing the memories. If it rejects a delivery, 
+    * the subscription is cancelled and the subscriber gets the exception through onError()
+    */
+   public void subscribe(MemorySubscriber subscriber, String name, Set<MemoryEvent.Type> types, int bufferSize, Executor executor)
+   {
+	   startObserving();
+
+	   events.subscribe(subscriber, name, types.isEmpty() ? EnumSet.noneOf(MemoryEvent.Type.class) : EnumSet.copyOf(types), bufferSize, executor);
+   }
+
+   private synchronized void startObserving()
+   {
+	   if(observing)
+		   return;
+
+	   indexPending();
+	   observing=true;
+
+	   for(MemoryKey key:allMemories.keySet())
 	   {
-		   allMemories.remove(mo);
-	   }  
+		   observe(key.memory);
+	   }
+   }
+
+   private void observe(Memory mo)
+   {
+	   if(mo instanceof MemoryObject)
+		   ((MemoryObject) mo).addMemoryObserver(changeObserver);
+	   else if(mo instanceof MemoryContainer)
+		   ((MemoryContainer) mo).addMemoryObserver(changeObserver);
+   }
+
+   private void unobserve(Memory mo)
+   {
+	   if(mo instanceof MemoryObject)
+		   ((MemoryObject) mo).removeMemoryObserver(changeObserver);
+	   else if(mo instanceof MemoryContainer)
+		   ((MemoryContainer) mo).removeMemoryObserver(changeObserver);
+   }
+
+   /**
+    * @param mo
+    * @return true if the given memory (the same object, not an equal one) is in raw memory
+    */
+   public boolean contains(Memory mo)
+   {
+	   indexPending();
+	   return mo!=null && allMemories.containsKey(new MemoryKey(mo));
    }
    
    /**
     * 
     * @return size of Raw Memory
     */
-   public synchronized int size()
+   public int size()
    { 
-	   synchronized(allMemories)
-	   {
-		   return allMemories.size();
-	   }     
+	   indexPending();
+	   return allMemories.size();
    }
    
 
    /**
-    * Removes all memory objects from RawMemory. Sets all memory objects to null;
+    * Removes all memory objects from RawMemory.
     */
    public void shutDown() 
    {
-	   synchronized(allMemories)
+	   pending = null;
+
+	   if(observing)
 	   {
-		   for(Memory mo: this.getAllMemoryObjects())
+		   for(MemoryKey key:allMemories.keySet())
 		   {
-			   mo=null;
+			   if(allMemories.remove(key)!=null)
+			   {
+				   unobserve(key.memory);
+				   events.publish(MemoryEvent.Type.DESTROYED, key.memory);
+			   }
 		   }
-		   this.allMemories.clear();
-	   }	
+	   }
+
+	   allMemories.clear();
+	   memoriesByType.clear();
    }  
+
+   /**
+    * Same equivalence as String.equalsIgnoreCase()
+    */
+   private static String normalize(String name)
+   {
+	   return name.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+   }
+
+   /**
+    * Wraps a memory so that it is compared by identity. MemoryObject's equals() and hashCode() 
+    * depend on its contents, which change all the time.
+    */
+   private static final class MemoryKey
+   {
+	   final Memory memory;
+
+	   MemoryKey(Memory memory)
+	   {
+		   this.memory = memory;
+	   }
+
+	   @Override
+	   public int hashCode()
+	   {
+		   return System.identityHashCode(memory);
+	   }
+
+	   @Override
+	   public boolean equals(Object obj)
+	   {
+		   return obj instanceof MemoryKey && ((MemoryKey) obj).memory == memory;
+	   }
+   }
+
+   /**
+    * List view of all memories, backed by the raw memory
+    */
+   private final class AllMemoriesView extends AbstractList<Memory>
+   {
+	   @Override
+	   public Iterator<Memory> iterator()
+	   {
+		   indexPending();
+		   final Iterator<Map.Entry<MemoryKey, String>> entries = allMemories.entrySet().iterator();
+
+		   return new Iterator<Memory>()
+		   {
+			   private Memory last;
+
+			   @Override
+			   public boolean hasNext()
+			   {
+				   return entries.hasNext();
+			   }
+
+			   @Override
+			   public Memory next()
+			   {
+				   last = entries.next().getKey().memory;
+				   return last;
+			   }
+
+			   @Override
+			   public void remove()
+			   {
+				   if(last == null)
+					   throw new IllegalStateException();
+				   destroyMemoryObject(last);
+				   last = null;
+			   }
+		   };
+	   }
+
+	   @Override
+	   public Memory get(int index)
+	   {
+		   if(index >= 0)
+		   {
+			   int i = 0;
+			   for(Memory mo : this)
+			   {
+				   if(i++ == index)
+					   return mo;
+			   }
+		   }
+		   throw new IndexOutOfBoundsException("Index: "+index);
+	   }
+
+	   @Override
+	   public int size()
+	   {
+		   return RawMemory.this.size();
+	   }
+
+	   @Override
+	   public boolean add(Memory mo)
+	   {
+		   boolean added = mo != null && !RawMemory.this.contains(mo);
+		   addMemory(mo);
+		   return added;
+	   }
+
+	   @Override
+	   public boolean addAll(Collection<? extends Memory> memories)
+	   {
+		   boolean changed = false;
+		   for(Memory mo : memories)
+		   {
+			   changed |= add(mo);
+		   }
+		   return changed;
+	   }
+
+	   @Override
+	   public boolean contains(Object o)
+	   {
+		   return o instanceof Memory && RawMemory.this.contains((Memory) o);
+	   }
+
+	   @Override
+	   public boolean remove(Object o)
+	   {
+		   if(!contains(o))
+			   return false;
+		   destroyMemoryObject((Memory) o);
+		   return true;
+	   }
+
+	   @Override
+	   public void clear()
+	   {
+		   shutDown();
+	   }
+   }
 }
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free memory buffer for exactly one producer thread and one consumer thread,
+ * such as a sensor codelet feeding a perception codelet.
+ *
+ * Only the producer may call {@link #put(MemoryObject)}, and only the consumer may call
+ * {@link #pop()} and {@link #getOldest()}. The other methods may be called from any thread.
+ * Unlike {@link MemoryBuffer}, a full buffer does not replace its oldest memory object, since
+ * that one belongs to the consumer: put() returns false instead, and the producer decides
+ * whether to drop the new memory object or try again later.
+ *
+ * The capacity is rounded up to a power of two.
+ */
+public class SpscMemoryBuffer
+{
+	private final AtomicReferenceArray<MemoryObject> memoryObjects;
+
+	private final int mask;
+
+	/** Number of memory objects popped so far. Written by the consumer only */
+	private final AtomicLong head = new AtomicLong();
+
+	/** Number of memory objects put so far. Written by the producer only */
+	private final AtomicLong tail = new AtomicLong();
+
+	/** Last value of head read by the producer */
+	private long headCache = 0;
+
+	/** Last value of tail read by the consumer */
+	private long tailCache = 0;
+
+	/**
+	 * @param capacity maximum number of memory objects in this buffer, rounded up to a power of two
+	 */
+	public SpscMemoryBuffer(int capacity)
+	{
+		if(capacity < 1 || capacity > (1 << 30))
+			throw new IllegalArgumentException("SpscMemoryBuffer capacity must be between 1 and 2^30");
+
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity)
+			size <<= 1;
+
+		memoryObjects = new AtomicReferenceArray<MemoryObject>(size);
+		mask = size - 1;
+	}
+
+	/**
+	 * Adds a memory object after the most recent one. Producer thread only.
+	 *
+	 * @param content memory object to be added
+	 * @return false if the buffer is full and the memory object was not added
+	 */
+	public boolean put(MemoryObject content)
+	{
+		long t = tail.get();
+
+		if(t - headCache > mask)
+		{
+			headCache = head.get();
+			if(t - headCache > mask)
+				return false;
+		}
+
+		memoryObjects.lazySet((int) t & mask, content);
+		tail.lazySet(t + 1);
+
+		return true;
+	}
+
+	/**
+	 * Removes the oldest memory object. Consumer thread only.
+	 *
+	 * @return the oldest memory object, or null if the buffer is empty
+	 */
+	public MemoryObject pop()
+	{
+		long h = head.get();
+
+		if(h >= tailCache)
+		{
+			tailCache = tail.get();
+			if(h >= tailCache)
+				return null;
+		}
+
+		int index = (int) h & mask;
+		MemoryObject oldest = memoryObjects.get(index);
+		memoryObjects.lazySet(index, null);
+		head.lazySet(h + 1);
+
+		return oldest;
+	}
+
+	/**
+	 * Consumer thread only.
+	 *
+	 * @return the oldest memory object, without removing it, or null if the buffer is empty
+	 */
+	public MemoryObject getOldest()
+	{
+		long h = head.get();
+
+		if(h >= tail.get())
+			return null;
+
+		return memoryObjects.get((int) h & mask);
+	}
+
+	/**
+	 * @return the most recent memory object, or null if the buffer is empty or it was popped meanwhile
+	 */
+	public MemoryObject getMostRecent()
+	{
+		long t = tail.get();
+
+		if(t <= head.get())
+			return null;
+
+		return memoryObjects.get((int) (t - 1) & mask);
+	}
+
+	/**
+	 * @return number of memory objects in this buffer
+	 */
+	public int size()
+	{
+		// read head first, so that the result is never negative
+		long h = head.get();
+		long t = tail.get();
+
+		return (int) Math.max(0L, Math.min(t - h, (long) getCapacity()));
+	}
+
+	/**
+	 * @return true if there is no memory object in this buffer
+	 */
+	public boolean isEmpty()
+	{
+		return size() == 0;
+	}
+
+	/**
+	 * @return maximum number of memory objects in this buffer
+	 */
+	public int getCapacity()
+	{
+		return mask + 1;
+	}
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes the info of the memory objects written in a {@link MindCheckpoint}, and decodes it when
+ * the checkpoint is restored. Each value is written and read on its own, so read() must consume
+ * exactly what write() produced for the same value.
+ *
+ * @see DefaultValueCodec
+ */
+public interface ValueCodec
+{
+	/**
+	 * @param value the info of a memory object, never null
+	 * @param out where the value is written
+	 * @throws IOException if the value cannot be encoded
+	 */
+	void write(Object value, DataOutput out) throws IOException;
+
+	/**
+	 * @param in the bytes written by write() for one value
+	 * @return the decoded value
+	 * @throws IOException if the value cannot be decoded
+	 */
+	Object read(DataInput in) throws IOException;
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads for codelets, so that a mind can host tens of thousands
+ * of codelets without one operating system thread (and stack) per codelet.
+ *
+ * Virtual threads are only available from Java 21 on, while CST is still built for
+ * Java 8, so the JDK's factory is looked up by reflection. When running on an older
+ * JVM, {@link #isSupported()} returns false and the constructor throws an
+ * UnsupportedOperationException.
+ *
+ * @see Mind#setVirtualThreads(boolean)
+ */
+public class VirtualThreadFactory implements ThreadFactory
+{
+	private static final ThreadFactory jdkFactory = lookupJdkFactory();
+
+	public VirtualThreadFactory()
+	{
+		if(jdkFactory == null)
+			throw new UnsupportedOperationException("Virtual threads are not supported by this JVM (Java 21 or newer is required)");
+	}
+
+	/**
+	 * @return true if this JVM supports virtual threads
+	 */
+	public static boolean isSupported()
+	{
+		return jdkFactory != null;
+	}
+
+	@Override
+	public Thread newThread(Runnable r)
+	{
+		return jdkFactory.newThread(r);
+	}
+
+	/**
+	 * @return the result of Thread.ofVirtual().name("Codelet-", 0).factory(), or null if not available
+	 */
+	private static ThreadFactory lookupJdkFactory()
+	{
+		try
+		{
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			Object builder = ofVirtual.invoke(null);
+			Class<?> builderClass = ofVirtual.getReturnType();
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "Codelet-", 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		}catch(Exception e)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities.tests;
+
+import br.unicamp.cst.core.entities.Codelet;
+
+/**
+ * Codelet doing nothing, for the tests which only need its lists, activation or name
+ */
+public class EmptyCodelet extends Codelet {
+
+	public EmptyCodelet() {
+	}
+
+	public EmptyCodelet(String name) {
+		setName(name);
+	}
+
+	@Override
+	public void accessMemoryObjects() {
+	}
+
+	@Override
+	public void calculateActivation() {
+	}
+
+	@Override
+	public void proc() {
+	}
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import br.unicamp.cst.consciousness.SpotlightBroadcastController;
+import br.unicamp.cst.core.entities.BroadcastChannel;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.Mind;
+import br.unicamp.cst.util.IndexedMaxHeap;
+
+public class TestBroadcastChannel {
+
+	@Test
+	public void testSpotlight() throws Exception {
+
+		Mind mind = new Mind();
+		EmptyCodelet a = new EmptyCodelet("a");
+		EmptyCodelet b = new EmptyCodelet("b");
+		MemoryObject outA = mind.createMemoryObject("OUT_A", 0);
+		MemoryObject outB = mind.createMemoryObject("OUT_B", 0);
+		a.addOutput(outA);
+		b.addOutput(outB);
+		mind.insertCodelet(a);
+
+		SpotlightBroadcastController controller = new SpotlightBroadcastController(mind.getCodeRack());
+		mind.insertCodelet(b);
+		BroadcastChannel channel = mind.getCodeRack().getBroadcastChannel();
+		assertTrue(channel.contains(a));
+		assertTrue(channel.contains(b));
+
+		// nobody above the threshold
+		a.setActivation(0.5);
+		controller.proc();
+		assertNull(controller.getConsciousCodelet());
+		assertTrue(b.getBroadcast().isEmpty());
+
+		a.setActivation(0.95);
+		controller.proc();
+		assertSame(a, controller.getConsciousCodelet());
+		assertSame(a.getOutputs(), b.getBroadcast());
+		assertSame(outA, b.getBroadcast("OUT_A"));
+		assertTrue(a.getBroadcast().isEmpty());
+
+		long version = channel.getVersion();
+		controller.proc();
+		assertEquals(version, channel.getVersion());
+
+		b.setActivation(0.97);
+		controller.proc();
+		assertSame(b, controller.getConsciousCodelet());
+		assertSame(outB, a.getBroadcast("OUT_B"));
+
+		mind.getCodeRack().destroyCodelet(b);
+		assertFalse(channel.contains(b));
+		controller.proc();
+		assertSame(a, controller.getConsciousCodelet());
+
+		a.setActivation(0.1);
+		controller.proc();
+		assertNull(controller.getConsciousCodelet());
+		assertTrue(a.getBroadcast().isEmpty());
+	}
+
+	@Test
+	public void testIndexedMaxHeap() {
+
+		Random random = new Random(42);
+		IndexedMaxHeap heap = new IndexedMaxHeap(4);
+		double[] keys = new double[100];
+		boolean[] in = new boolean[keys.length];
+
+		for (int step = 0; step < 10000; step++) {
+			int id = random.nextInt(keys.length);
+			if (random.nextInt(4) == 0) {
+				assertEquals(in[id], heap.remove(id));
+				in[id] = false;
+			} else {
+				keys[id] = random.nextInt(50);
+				heap.set(id, keys[id]);
+				in[id] = true;
+			}
+
+			int best = -1;
+			for (int i = 0; i < keys.length; i++) {
+				if (in[i] && (best < 0 || keys[i] > keys[best])) {
+					best = i;
+				}
+			}
+			assertEquals(best, heap.peek());
+		}
+	}
+}
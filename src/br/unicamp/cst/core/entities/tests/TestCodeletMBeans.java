@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.Mind;
+
+public class TestCodeletMBeans {
+
+	private static Set<ObjectName> mbeans(String codeletName) throws Exception {
+		ObjectName pattern = new ObjectName("br.unicamp.cst:type=Codelet,name=" + ObjectName.quote(codeletName) + ",*");
+		return ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null);
+	}
+
+	@Test
+	public void testDestroyedCodeletIsUnregistered() throws Exception {
+
+		Mind mind = new Mind();
+		mind.setJmxEnabled(true);
+		try {
+			Codelet co = mind.insertCodelet(new EmptyCodelet("mbean-test"));
+			assertEquals(1, mbeans("mbean-test").size());
+
+			mind.getCodeRack().destroyCodelet(co);
+			assertTrue(mbeans("mbean-test").isEmpty());
+
+			// a new codelet with the same name
+			co = mind.insertCodelet(new EmptyCodelet("mbean-test"));
+			assertEquals(1, mbeans("mbean-test").size());
+
+			mind.destroyCodelet(co);
+			assertTrue(mbeans("mbean-test").isEmpty());
+		} finally {
+			mind.shutDown();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.Memory;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.Mind;
+
+public class TestCodeletMemoryLists {
+
+	@Test
+	public void testInputsAreSnapshots() {
+
+		Mind mind = new Mind();
+		MemoryObject a = mind.createMemoryObject("A", 0);
+		MemoryObject b = mind.createMemoryObject("B", 0);
+
+		Codelet co = new EmptyCodelet();
+		co.addInput(a);
+
+		List<Memory> before = co.getInputs();
+		co.addInput(b);
+
+		assertEquals(1, before.size());
+		assertEquals(2, co.getInputs().size());
+		assertSame(b, co.getInput("b"));
+
+		co.removesInput(a);
+
+		assertEquals(1, co.getInputs().size());
+		assertNull(co.getInput("A"));
+		assertEquals(1, before.size());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testSnapshotsCannotBeChanged() {
+
+		Mind mind = new Mind();
+		Codelet co = new EmptyCodelet();
+
+		co.getOutputs().add(mind.createMemoryObject("A", 0));
+	}
+
+	@Test
+	public void testBroadcastIsShared() {
+
+		Mind mind = new Mind();
+		Codelet conscious = new EmptyCodelet();
+		conscious.addOutput(mind.createMemoryObject("A", 0));
+
+		Codelet co = new EmptyCodelet();
+		co.setBroadcast(conscious.getOutputs());
+
+		assertSame(conscious.getOutputs(), co.getBroadcast());
+		assertNotNull(co.getBroadcast("A"));
+	}
+
+	@Test
+	public void testMissesAreNotIndexed() throws Exception {
+
+		Mind mind = new Mind();
+		Codelet co = new EmptyCodelet();
+		List<Memory> empty = co.getInputs();
+		for (int i = 0; i < 100; i++) {
+			assertNull(co.getInput("missing" + i));
+		}
+		assertEquals(0, indexSize(empty));
+
+		co.addInput(mind.createMemoryObject("Vision", 0));
+		List<Memory> inputs = co.getInputs();
+		int size = indexSize(inputs);
+		for (int i = 0; i < 100; i++) {
+			assertNull(co.getInput("missing" + i));
+		}
+		assertEquals(size, indexSize(inputs));
+
+		// other spellings of an existing name are remembered
+		assertNotNull(co.getInput("VISION"));
+		assertEquals(size + 1, indexSize(inputs));
+		assertEquals(0, indexSize(empty));
+	}
+
+	private static int indexSize(List<Memory> list) throws Exception {
+		Field index = list.getClass().getDeclaredField("index");
+		index.setAccessible(true);
+		return ((Map<?, ?>) index.get(list)).size();
+	}
+
+	@Test
+	public void testSkipIfUnchanged() {
+
+		Mind mind = new Mind();
+		MemoryObject versioned = mind.createMemoryObject("A", 0);
+
+		// implements only the methods Memory had before versions
+		Memory unversioned = new Memory() {
+
+			private Object info;
+			private Double evaluation;
+
+			@Override
+			public Object getI() {
+				return info;
+			}
+
+			@Override
+			public int setI(Object info) {
+				this.info = info;
+				return -1;
+			}
+
+			@Override
+			public Double getEvaluation() {
+				return evaluation;
+			}
+
+			@Override
+			public String getName() {
+				return "B";
+			}
+
+			@Override
+			public void setEvaluation(Double eval) {
+				this.evaluation = eval;
+			}
+		};
+		assertEquals(Memory.UNVERSIONED, unversioned.getVersion());
+
+		Codelet co = new EmptyCodelet();
+		co.setSkipIfUnchanged(true);
+		co.addInput(versioned);
+		co.runOnce();
+		co.runOnce();
+		assertEquals(1, co.getExecutedCycles());
+		assertEquals(1, co.getSkippedCycles());
+
+		// a memory without a version is always taken as changed
+		co.addInput(unversioned);
+		co.runOnce();
+		co.runOnce();
+		assertEquals(3, co.getExecutedCycles());
+		assertTrue(co.getChangedInputs().contains(unversioned));
+	}
+}
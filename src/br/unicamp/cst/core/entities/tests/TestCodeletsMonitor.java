@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.CodeletsMonitor;
+import br.unicamp.cst.core.entities.CodeletsMonitorWriter;
+
+public class TestCodeletsMonitor {
+
+	/**
+	 * Counts the starts, samples and stops of a monitor
+	 */
+	private static class CountingListener implements CodeletsMonitor.Listener {
+
+		final AtomicInteger starts = new AtomicInteger();
+		final AtomicInteger samples = new AtomicInteger();
+		final AtomicInteger stops = new AtomicInteger();
+
+		@Override
+		public void monitorStarted(List<Codelet> codelets) {
+			starts.incrementAndGet();
+		}
+
+		@Override
+		public void sampleTaken(long time, double[] activations) {
+			samples.incrementAndGet();
+		}
+
+		@Override
+		public void monitorStopped() {
+			stops.incrementAndGet();
+		}
+	}
+
+	private static List<Codelet> codelets() {
+		List<Codelet> codelets = new ArrayList<Codelet>();
+		codelets.add(new EmptyCodelet("a"));
+		codelets.add(new EmptyCodelet("b"));
+		return codelets;
+	}
+
+	private static void awaitSamples(CountingListener listener, int samples) throws InterruptedException {
+		while (listener.samples.get() < samples) {
+			Thread.sleep(5);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testStartStopRestart() throws Exception {
+
+		CodeletsMonitor monitor = new CodeletsMonitor(codelets(), 5);
+		CountingListener listener = new CountingListener();
+		monitor.addListener(listener);
+
+		monitor.start();
+		monitor.start();
+		assertTrue(monitor.isRunning());
+		awaitSamples(listener, 3);
+		monitor.stop();
+		assertFalse(monitor.isRunning());
+		assertEquals(1, listener.starts.get());
+		assertEquals(1, listener.stops.get());
+
+		// stopped: no more samples
+		int samples = listener.samples.get();
+		assertEquals(samples, monitor.getSampleCount());
+		Thread.sleep(50);
+		assertEquals(samples, listener.samples.get());
+
+		// restarted with empty buffers
+		monitor.start();
+		awaitSamples(listener, samples + 3);
+		monitor.stop();
+		assertEquals(2, listener.starts.get());
+		assertEquals(2, listener.stops.get());
+		assertEquals(listener.samples.get() - samples, monitor.getSampleCount());
+		assertEquals(2, monitor.getCodelets().size());
+	}
+
+	@Test(timeout = 10000)
+	public void testRunInCallingThread() throws Exception {
+
+		final CodeletsMonitor monitor = new CodeletsMonitor(codelets(), 5);
+		CountingListener listener = new CountingListener();
+		monitor.addListener(listener);
+
+		Thread caller = new Thread(monitor);
+		caller.start();
+		awaitSamples(listener, 3);
+		assertTrue(monitor.isRunning());
+
+		// already running in the caller
+		try {
+			monitor.run();
+			fail();
+		} catch (IllegalStateException e) {
+		}
+
+		monitor.stop();
+		assertFalse(monitor.isRunning());
+		assertEquals(1, listener.stops.get());
+		caller.join();
+
+		// then started again in its own thread
+		monitor.start();
+		awaitSamples(listener, listener.samples.get() + 3);
+		monitor.stop();
+		assertEquals(2, listener.starts.get());
+	}
+
+	@Test(timeout = 10000)
+	public void testWriterRestart() throws Exception {
+
+		CodeletsMonitor monitor = new CodeletsMonitor(codelets(), 5);
+		CountingListener listener = new CountingListener();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		monitor.addListener(listener);
+		monitor.addListener(new CodeletsMonitorWriter(out, CodeletsMonitorWriter.Format.CSV, false));
+
+		for (int i = 1; i <= 2; i++) {
+			monitor.start();
+			awaitSamples(listener, listener.samples.get() + 2);
+			monitor.stop();
+		}
+
+		// a header for each start
+		String csv = out.toString("UTF-8");
+		assertTrue(csv.startsWith("time,a,b\n"));
+		assertTrue(csv.lastIndexOf("time,a,b\n") > 0);
+
+		// a writer closing its file cannot be restarted
+		File file = File.createTempFile("monitor", ".csv");
+		file.deleteOnExit();
+		CodeletsMonitor closing = new CodeletsMonitor(codelets(), 5);
+		CountingListener first = new CountingListener();
+		closing.addListener(first);
+		closing.addListener(new CodeletsMonitorWriter(file, CodeletsMonitorWriter.Format.CSV));
+		closing.start();
+		awaitSamples(first, 2);
+		closing.stop();
+
+		try {
+			closing.start();
+			fail();
+		} catch (IllegalStateException e) {
+		}
+		assertFalse(closing.isRunning());
+		assertEquals(2, first.starts.get());
+		assertEquals(2, first.stops.get());
+	}
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.Mind;
+
+public class TestCognitiveCycle {
+
+	/**
+	 * Copies its input plus one to its output.
+	 */
+	private class IncrementCodelet extends Codelet {
+
+		private MemoryObject in;
+		private MemoryObject out;
+
+		IncrementCodelet(MemoryObject in, MemoryObject out) {
+			this.in = in;
+			this.out = out;
+			addInput(in);
+			addOutput(out);
+		}
+
+		@Override
+		public void accessMemoryObjects() {
+		}
+
+		@Override
+		public void calculateActivation() {
+		}
+
+		@Override
+		public void proc() {
+			out.setI((Integer) in.getI() + 1);
+		}
+	}
+
+	@Test
+	public void testChainCompletesInOneStep() {
+
+		Mind mind = new Mind();
+
+		MemoryObject sensor = mind.createMemoryObject("SENSOR", 0);
+		MemoryObject percept = mind.createMemoryObject("PERCEPT", 0);
+		MemoryObject action = mind.createMemoryObject("ACTION", 0);
+
+		mind.insertCodelet(new IncrementCodelet(sensor, percept));
+		mind.insertCodelet(new IncrementCodelet(percept, action));
+
+		mind.step();
+
+		assertEquals(1, percept.getI());
+		assertEquals(2, action.getI());
+		assertEquals(1, mind.getCognitiveCycle().getStepCount());
+
+		mind.shutDown();
+	}
+
+	@Test
+	public void testIndependentCodeletsShareALevel() {
+
+		Mind mind = new Mind();
+
+		MemoryObject a = mind.createMemoryObject("A", 0);
+		MemoryObject b = mind.createMemoryObject("B", 0);
+		MemoryObject c = mind.createMemoryObject("C", 0);
+		MemoryObject d = mind.createMemoryObject("D", 0);
+
+		Codelet first = mind.insertCodelet(new IncrementCodelet(a, b));
+		Codelet second = mind.insertCodelet(new IncrementCodelet(c, d));
+		Codelet third = mind.insertCodelet(new IncrementCodelet(b, c)); // reads first's output, writes second's input
+
+		List<List<Codelet>> levels = mind.getCognitiveCycle().partition();
+
+		assertEquals(2, levels.size());
+		assertTrue(levels.get(0).contains(first));
+		assertTrue(levels.get(0).contains(second));
+		assertTrue(levels.get(1).contains(third));
+
+		mind.run(10);
+
+		assertEquals(1, b.getI());
+		assertEquals(2, c.getI());
+		assertEquals(3, d.getI());
+
+		mind.shutDown();
+	}
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.ContentionProfiler;
+import br.unicamp.cst.core.entities.Mind;
+import br.unicamp.cst.core.entities.OrderedLock;
+
+public class TestContentionProfiler {
+
+	/**
+	 * Codelet whose proc() accesses another codelet through its lock
+	 */
+	private static class AccessingCodelet extends EmptyCodelet {
+
+		private final Codelet accessed;
+
+		AccessingCodelet(String name, Codelet accessed) {
+			super(name);
+			this.accessed = accessed;
+		}
+
+		@Override
+		public void proc() {
+			if (impendingAccess(accessed)) {
+				lock.unlock();
+				accessed.lock.unlock();
+			}
+		}
+	}
+
+	private static ContentionProfiler.Entry find(List<ContentionProfiler.Entry> entries, String name) {
+		for (ContentionProfiler.Entry entry : entries) {
+			if (entry.getName().equals(name)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	@Test(timeout = 10000)
+	public void testCodeletLockContention() throws Exception {
+
+		Mind mind = new Mind();
+		Codelet busy = mind.insertCodelet(new EmptyCodelet("busy"));
+		final Codelet waiter = mind.insertCodelet(new AccessingCodelet("waiter", busy));
+		ContentionProfiler profiler = new ContentionProfiler(mind);
+		profiler.sample();
+		assertTrue(profiler.getTopResources(10).isEmpty());
+		assertTrue(profiler.getTopCodelets(10).isEmpty());
+
+		// the waiter runs while the lock of the busy codelet is held
+		Thread running;
+		busy.lock.lock();
+		try {
+			running = new Thread() {
+				@Override
+				public void run() {
+					waiter.runOnce();
+				}
+			};
+			running.start();
+			while (OrderedLock.getLockWaitedBy(running) != busy.lock) {
+				Thread.sleep(1);
+			}
+			Thread.sleep(10);
+			profiler.sample();
+		} finally {
+			busy.lock.unlock();
+		}
+		running.join();
+
+		ContentionProfiler.Entry lock = find(profiler.getTopResources(10), "Codelet.lock of busy");
+		assertNotNull(lock);
+		assertEquals(1, lock.getCount());
+		assertTrue(lock.getTime() > 0);
+
+		ContentionProfiler.Entry codelet = find(profiler.getTopCodelets(10), "waiter");
+		assertNotNull(codelet);
+		assertTrue(codelet.getCount() >= 1);
+		assertTrue(codelet.getTime() > 0);
+
+		String report = profiler.getReport(10);
+		assertTrue(report.contains("Codelet.lock of busy"));
+		assertTrue(report.contains("waiter"));
+
+		profiler.reset();
+		assertTrue(profiler.getTopResources(10).isEmpty());
+		assertTrue(profiler.getTopCodelets(10).isEmpty());
+	}
+
+	@Test(timeout = 10000)
+	public void testReportIsLogged() throws Exception {
+
+		final LinkedBlockingQueue<LogRecord> records = new LinkedBlockingQueue<LogRecord>();
+		Handler handler = new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				records.add(record);
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		Logger logger = Logger.getLogger(ContentionProfiler.class.getName());
+		boolean useParentHandlers = logger.getUseParentHandlers();
+		logger.addHandler(handler);
+		logger.setUseParentHandlers(false);
+
+		ContentionProfiler profiler = new ContentionProfiler(new Mind(), 5);
+		profiler.setReportPeriod(1);
+		try {
+			profiler.start();
+			LogRecord record = records.poll(5, TimeUnit.SECONDS);
+			assertNotNull(record);
+			assertTrue(record.getMessage().startsWith("Top contended resources:"));
+		} finally {
+			profiler.stop();
+			logger.removeHandler(handler);
+			logger.setUseParentHandlers(useParentHandlers);
+		}
+	}
+}
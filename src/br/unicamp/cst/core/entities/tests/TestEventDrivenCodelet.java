@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.CodeletScheduler;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.Mind;
+
+public class TestEventDrivenCodelet {
+
+	/**
+	 * Counts its cycles
+	 */
+	private static class CountingCodelet extends Codelet {
+
+		final AtomicInteger cycles = new AtomicInteger();
+
+		@Override
+		public void accessMemoryObjects() {
+		}
+
+		@Override
+		public void calculateActivation() {
+		}
+
+		@Override
+		public void proc() {
+			cycles.incrementAndGet();
+		}
+	}
+
+	private static void awaitCycles(CountingCodelet co, int cycles) throws InterruptedException {
+		while (co.cycles.get() < cycles) {
+			Thread.sleep(5);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testOwnThreadWakesUpOnChange() throws Exception {
+
+		Mind mind = new Mind();
+		MemoryObject input = mind.createMemoryObject("INPUT", 0);
+		CountingCodelet co = new CountingCodelet();
+		co.addInput(input);
+		co.setEventDriven(true);
+		mind.insertCodelet(co);
+
+		try {
+			mind.start();
+			awaitCycles(co, 1);
+
+			// nothing changes: the codelet waits
+			Thread.sleep(100);
+			int before = co.cycles.get();
+			Thread.sleep(100);
+			assertEquals(before, co.cycles.get());
+
+			input.setI(1);
+			awaitCycles(co, before + 1);
+		} finally {
+			mind.shutDown();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testSchedulerStaleness() throws Exception {
+
+		CodeletScheduler scheduler = new CodeletScheduler(1);
+		Mind mind = new Mind(scheduler);
+		MemoryObject input = mind.createMemoryObject("INPUT", 0);
+		CountingCodelet co = new CountingCodelet();
+		co.addInput(input);
+		co.setEventDriven(true);
+		co.setMaxStaleness(50);
+		mind.insertCodelet(co);
+
+		try {
+			mind.start();
+
+			// changes wake the codelet up before its staleness timer
+			for (int i = 1; i <= 20; i++) {
+				int before = co.cycles.get();
+				input.setI(i);
+				awaitCycles(co, before + 1);
+			}
+
+			// without changes, it runs once per maximum staleness
+			int before = co.cycles.get();
+			Thread.sleep(300);
+			int stale = co.cycles.get() - before;
+			assertTrue(stale >= 2 && stale <= 8);
+		} finally {
+			mind.shutDown();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.Mind;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class TestFlightRecorderEvents {
+
+	private static class WritingCodelet extends Codelet {
+
+		@Override
+		public void accessMemoryObjects() {
+		}
+
+		@Override
+		public void calculateActivation() {
+		}
+
+		@Override
+		public void proc() {
+			MemoryObject out = (MemoryObject) getOutput("OUT");
+			out.setI(out.getI() == null ? 1 : (Integer) out.getI() + 1);
+		}
+	}
+
+	@Test
+	public void testEventsRecorded() throws Exception {
+
+		Mind mind = new Mind();
+		assertFalse(mind.isFlightRecorderEvents());
+
+		Recording recording = new Recording();
+		recording.enable("br.unicamp.cst.CodeletCycle");
+		recording.enable("br.unicamp.cst.MemoryWrite");
+		recording.enable("br.unicamp.cst.MemoryCreated");
+		recording.enable("br.unicamp.cst.MemoryDestroyed");
+		recording.enable("br.unicamp.cst.LockAccess");
+		recording.start();
+
+		File file = File.createTempFile("cst", ".jfr");
+		try {
+			assertTrue(mind.setFlightRecorderEvents(true));
+
+			MemoryObject out = mind.createMemoryObject("OUT");
+			WritingCodelet writer = new WritingCodelet();
+			writer.addOutput(out);
+			WritingCodelet other = new WritingCodelet();
+
+			for (int i = 0; i < 3; i++) {
+				writer.runOnce();
+			}
+			if (writer.impendingAccess(other)) {
+				writer.lock.unlock();
+				other.lock.unlock();
+			}
+			mind.getRawMemory().destroyMemoryObject(out);
+
+			mind.setFlightRecorderEvents(false);
+			out.setI(0);
+
+			recording.stop();
+			recording.dump(file.toPath());
+		} finally {
+			mind.setFlightRecorderEvents(false);
+			recording.close();
+		}
+
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		try {
+			for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+				String name = event.getEventType().getName();
+				if (name.equals("br.unicamp.cst.MemoryWrite") && !"OUT".equals(event.getString("memory"))) {
+					// the first info is set before the name, when the memory object is created
+					continue;
+				}
+
+				Integer count = counts.get(name);
+				counts.put(name, count == null ? 1 : count + 1);
+			}
+		} finally {
+			file.delete();
+		}
+
+		assertEquals(Integer.valueOf(3), counts.get("br.unicamp.cst.CodeletCycle"));
+		assertEquals(Integer.valueOf(3), counts.get("br.unicamp.cst.MemoryWrite"));
+		assertEquals(Integer.valueOf(1), counts.get("br.unicamp.cst.MemoryCreated"));
+		assertEquals(Integer.valueOf(1), counts.get("br.unicamp.cst.MemoryDestroyed"));
+		assertEquals(Integer.valueOf(1), counts.get("br.unicamp.cst.LockAccess"));
+	}
+}
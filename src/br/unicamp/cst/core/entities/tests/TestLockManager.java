@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.LockManager;
+import br.unicamp.cst.core.entities.OrderedLock;
+
+public class TestLockManager {
+
+	/**
+	 * Holds a lock in another thread until released
+	 */
+	private static class Holder extends Thread {
+
+		private final Lock lock;
+		private final CountDownLatch locked = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		Holder(Lock lock) throws InterruptedException {
+			this.lock = lock;
+			start();
+			locked.await();
+		}
+
+		@Override
+		public void run() {
+			lock.lock();
+			try {
+				locked.countDown();
+				release.await();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void release() throws InterruptedException {
+			release.countDown();
+			join();
+		}
+	}
+
+	/**
+	 * @return an ordered lock sharing its position in the global order with the other tied locks
+	 */
+	private static OrderedLock tiedLock() {
+		return new OrderedLock() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public long getOrder() {
+				return 0L;
+			}
+		};
+	}
+
+	/**
+	 * Starts a thread acquiring and releasing two locks, in the given order, many times
+	 */
+	private static Thread lockRepeatedly(final LockManager manager, final Lock first, final Lock second, final int times, final AtomicInteger acquired) {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < times; i++) {
+					if (manager.lockAll(first, second)) {
+						try {
+							acquired.incrementAndGet();
+						} finally {
+							manager.unlockAll(first, second);
+						}
+					}
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+	@Test(timeout = 20000)
+	public void testOppositeOrders() throws Exception {
+
+		LockManager manager = new LockManager(10000);
+		OrderedLock a = new OrderedLock();
+		OrderedLock b = new OrderedLock();
+
+		// while a is busy, asking for b then a waits for a without holding b
+		Holder holder = new Holder(a);
+		AtomicInteger acquired = new AtomicInteger();
+		Thread waiting = lockRepeatedly(manager, b, a, 1, acquired);
+		while (OrderedLock.getLockWaitedBy(waiting) != a) {
+			Thread.sleep(1);
+		}
+		assertFalse(b.isLocked());
+		holder.release();
+		waiting.join();
+		assertEquals(1, acquired.get());
+
+		// two threads asking for both locks in opposite orders never deadlock
+		int times = 5000;
+		Thread ab = lockRepeatedly(manager, a, b, times, acquired);
+		Thread ba = lockRepeatedly(manager, b, a, times, acquired);
+		ab.join();
+		ba.join();
+		assertEquals(2 * times + 1, acquired.get());
+		assertEquals(2 * times + 1, manager.getAcquisitions());
+		assertEquals(0, manager.getGiveUps());
+		assertFalse(a.isLocked());
+		assertFalse(b.isLocked());
+	}
+
+	@Test(timeout = 10000)
+	public void testTimeout() throws Exception {
+
+		long timeout = 50;
+		LockManager manager = new LockManager(timeout);
+		OrderedLock a = new OrderedLock();
+		OrderedLock b = new OrderedLock();
+		OrderedLock c = new OrderedLock();
+
+		// free locks: acquired without contention
+		assertTrue(manager.lockAll(a, b));
+		manager.unlockAll(a, b);
+		assertEquals(1, manager.getAcquisitions());
+		assertEquals(0, manager.getContentions());
+		assertEquals(0, manager.getWaitTime());
+
+		// b is held for longer than the timeout: a and c are not left held
+		Holder holder = new Holder(b);
+		assertFalse(manager.lockAll(c, b, a));
+		assertFalse(manager.lockAll(b, a));
+		assertFalse(a.isLocked());
+		assertFalse(c.isLocked());
+		assertEquals(1, manager.getAcquisitions());
+		assertEquals(2, manager.getContentions());
+		assertEquals(2, manager.getGiveUps());
+		assertTrue(manager.getWaitTime() >= TimeUnit.MILLISECONDS.toNanos(2 * timeout) * 8 / 10);
+		assertEquals(2, b.getContentions());
+		holder.release();
+
+		// b released within the timeout: acquired after a contention
+		LockManager patient = new LockManager(10000);
+		final Holder busy = new Holder(b);
+		Thread releasing = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(20);
+					busy.release();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		releasing.start();
+		assertTrue(patient.lockAll(a, b));
+		patient.unlockAll(a, b);
+		releasing.join();
+		assertEquals(1, patient.getAcquisitions());
+		assertEquals(1, patient.getContentions());
+		assertEquals(0, patient.getGiveUps());
+		assertTrue(patient.getWaitTime() > 0);
+
+		manager.resetCounters();
+		assertEquals(0, manager.getAcquisitions());
+		assertEquals(0, manager.getContentions());
+		assertEquals(0, manager.getGiveUps());
+		assertEquals(0, manager.getWaitTime());
+	}
+
+	@Test(timeout = 20000)
+	public void testTiedOrders() throws Exception {
+
+		LockManager manager = new LockManager(10000);
+		OrderedLock c = tiedLock();
+		OrderedLock d = tiedLock();
+
+		assertTrue(manager.lockAll(d, c));
+		assertTrue(c.isHeldByCurrentThread());
+		assertTrue(d.isHeldByCurrentThread());
+		manager.unlockAll(d, c);
+		assertFalse(c.isLocked());
+		assertFalse(d.isLocked());
+
+		// tied locks asked in opposite orders never deadlock either
+		int times = 5000;
+		AtomicInteger acquired = new AtomicInteger();
+		Thread cd = lockRepeatedly(manager, c, d, times, acquired);
+		Thread dc = lockRepeatedly(manager, d, c, times, acquired);
+		cd.join();
+		dc.join();
+		assertEquals(2 * times, acquired.get());
+		assertEquals(0, manager.getGiveUps());
+
+		// giving up on tied locks releases them all
+		LockManager impatient = new LockManager(20);
+		Holder holder = new Holder(c);
+		assertFalse(impatient.lockAll(d, c));
+		assertFalse(d.isLocked());
+		assertEquals(1, impatient.getGiveUps());
+		holder.release();
+		assertTrue(impatient.lockAll(c, d));
+		impatient.unlockAll(c, d);
+	}
+
+	@Test
+	public void testReentrant() {
+
+		LockManager manager = new LockManager(50);
+		OrderedLock a = new OrderedLock();
+		OrderedLock b = new OrderedLock();
+
+		// the same lock twice is acquired twice
+		assertTrue(manager.lockAll(a, a));
+		assertEquals(2, a.getHoldCount());
+		manager.unlockAll(a, a);
+		assertFalse(a.isLocked());
+
+		// a lock already held by the caller does not block it
+		a.lock();
+		try {
+			assertTrue(manager.lockAll(b, a));
+			assertEquals(2, a.getHoldCount());
+			manager.unlockAll(b, a);
+			assertEquals(1, a.getHoldCount());
+		} finally {
+			a.unlock();
+		}
+		assertEquals(2, manager.getAcquisitions());
+		assertEquals(0, manager.getContentions());
+	}
+
+	@Test(timeout = 10000)
+	public void testInterrupted() throws Exception {
+
+		LockManager manager = new LockManager(10000);
+		OrderedLock a = new OrderedLock();
+		OrderedLock b = new OrderedLock();
+
+		// interrupted while waiting for b: a is released and the interruption is kept
+		Holder holder = new Holder(b);
+		Thread.currentThread().interrupt();
+		try {
+			assertFalse(manager.lockAll(b, a));
+			assertTrue(Thread.currentThread().isInterrupted());
+		} finally {
+			Thread.interrupted();
+		}
+		assertFalse(a.isLocked());
+		assertEquals(1, manager.getGiveUps());
+		assertEquals(0, manager.getAcquisitions());
+		holder.release();
+	}
+}
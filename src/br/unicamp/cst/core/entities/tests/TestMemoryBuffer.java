@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.MemoryBuffer;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.RawMemory;
+import br.unicamp.cst.core.entities.SpscMemoryBuffer;
+
+public class TestMemoryBuffer {
+
+	private static MemoryObject[] memoryObjects(RawMemory rawMemory, int count) {
+		MemoryObject[] memoryObjects = new MemoryObject[count];
+		for (int i = 0; i < count; i++) {
+			memoryObjects[i] = rawMemory.createMemoryObject("MO" + i, i);
+		}
+		return memoryObjects;
+	}
+
+	@Test
+	public void testEmptyAndFull() {
+
+		RawMemory rawMemory = new RawMemory();
+		MemoryObject[] mo = memoryObjects(rawMemory, 4);
+		MemoryBuffer buffer = new MemoryBuffer(3, rawMemory);
+
+		// empty
+		assertEquals(0, buffer.size());
+		assertNull(buffer.pop());
+		assertNull(buffer.getOldest());
+		assertNull(buffer.getMostRecent());
+		assertTrue(buffer.get().isEmpty());
+
+		// full, nothing evicted yet
+		buffer.put(mo[0]);
+		buffer.put(mo[1]);
+		buffer.put(mo[2]);
+		assertEquals(3, buffer.size());
+		assertEquals(Arrays.asList(mo[0], mo[1], mo[2]), buffer.getAll());
+		assertSame(mo[0], buffer.getOldest());
+		assertSame(mo[2], buffer.getMostRecent());
+		assertTrue(rawMemory.contains(mo[0]));
+
+		// one more evicts the oldest, also from raw memory
+		buffer.put(mo[3]);
+		assertEquals(3, buffer.size());
+		assertEquals(Arrays.asList(mo[1], mo[2], mo[3]), buffer.getAll());
+		assertFalse(rawMemory.contains(mo[0]));
+
+		// emptied again
+		assertSame(mo[1], buffer.pop());
+		assertSame(mo[2], buffer.pop());
+		assertSame(mo[3], buffer.pop());
+		assertNull(buffer.pop());
+		assertEquals(0, buffer.size());
+		assertNull(buffer.getMostRecent());
+	}
+
+	@Test
+	public void testWrapAround() {
+
+		RawMemory rawMemory = new RawMemory();
+		MemoryObject[] mo = memoryObjects(rawMemory, 20);
+		MemoryBuffer buffer = new MemoryBuffer(4, rawMemory);
+		List<MemoryObject> view = buffer.get();
+
+		// goes around the circular array several times, evicting in insertion order
+		for (int i = 0; i < mo.length; i++) {
+			buffer.put(mo[i]);
+
+			int oldest = Math.max(0, i - 3);
+			assertEquals(i - oldest + 1, buffer.size());
+			assertSame(mo[oldest], buffer.getOldest());
+			assertSame(mo[i], buffer.getMostRecent());
+			assertEquals(Arrays.asList(mo).subList(oldest, i + 1), view);
+			if (oldest > 0) {
+				assertFalse(rawMemory.contains(mo[oldest - 1]));
+			}
+		}
+
+		// popping and putting alternately, with the oldest position wrapped
+		assertSame(mo[16], buffer.pop());
+		buffer.put(mo[0]);
+		assertEquals(Arrays.asList(mo[17], mo[18], mo[19], mo[0]), buffer.getAll());
+
+		// removing from the middle keeps the order of the others
+		assertTrue(buffer.remove(mo[18]));
+		assertEquals(Arrays.asList(mo[17], mo[19], mo[0]), view);
+		assertFalse(buffer.remove(mo[18]));
+		buffer.put(mo[1]);
+		buffer.put(mo[2]);
+		assertEquals(Arrays.asList(mo[19], mo[0], mo[1], mo[2]), view);
+
+		buffer.clear();
+		assertEquals(0, view.size());
+		assertFalse(rawMemory.contains(mo[2]));
+		buffer.put(mo[3]);
+		assertSame(mo[3], buffer.getOldest());
+		assertSame(mo[3], buffer.getMostRecent());
+	}
+
+	@Test
+	public void testPutList() {
+
+		RawMemory rawMemory = new RawMemory();
+		MemoryObject[] mo = memoryObjects(rawMemory, 5);
+		MemoryBuffer buffer = new MemoryBuffer(3, rawMemory);
+
+		// only the last ones are kept
+		buffer.putList(Arrays.asList(mo));
+		assertEquals(Arrays.asList(mo[2], mo[3], mo[4]), buffer.getAll());
+	}
+
+	@Test
+	public void testSpscBounds() {
+
+		RawMemory rawMemory = new RawMemory();
+		MemoryObject[] mo = memoryObjects(rawMemory, 10);
+
+		// rounded up to a power of two
+		SpscMemoryBuffer buffer = new SpscMemoryBuffer(3);
+		assertEquals(4, buffer.getCapacity());
+		assertTrue(buffer.isEmpty());
+		assertNull(buffer.pop());
+		assertNull(buffer.getOldest());
+		assertNull(buffer.getMostRecent());
+
+		// a full buffer refuses new memory objects rather than evicting
+		for (int i = 0; i < 4; i++) {
+			assertTrue(buffer.put(mo[i]));
+		}
+		assertFalse(buffer.put(mo[4]));
+		assertEquals(4, buffer.size());
+		assertSame(mo[0], buffer.getOldest());
+		assertSame(mo[3], buffer.getMostRecent());
+
+		// wraps around once room is made
+		assertSame(mo[0], buffer.pop());
+		assertSame(mo[1], buffer.pop());
+		assertTrue(buffer.put(mo[4]));
+		assertTrue(buffer.put(mo[5]));
+		assertFalse(buffer.put(mo[6]));
+		for (int i = 2; i <= 5; i++) {
+			assertSame(mo[i], buffer.pop());
+		}
+		assertNull(buffer.pop());
+		assertTrue(buffer.isEmpty());
+	}
+
+	@Test(timeout = 30000)
+	public void testSpscProducerConsumer() throws Exception {
+
+		final int count = 200000;
+		final MemoryObject[] mo = new MemoryObject[256];
+		for (int i = 0; i < mo.length; i++) {
+			mo[i] = new MemoryObject();
+			mo[i].setI(i);
+		}
+		final SpscMemoryBuffer buffer = new SpscMemoryBuffer(16);
+		final AtomicReference<String> error = new AtomicReference<String>();
+
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < count; i++) {
+					while (!buffer.put(mo[i % mo.length])) {
+						Thread.yield();
+					}
+				}
+			}
+		};
+
+		Thread consumer = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < count; i++) {
+					MemoryObject popped;
+					while ((popped = buffer.pop()) == null) {
+						Thread.yield();
+					}
+					// every memory object, once, in order
+					if (popped != mo[i % mo.length]) {
+						error.compareAndSet(null, "Popped " + popped.getI() + " at " + i);
+						return;
+					}
+					int size = buffer.size();
+					if (size < 0 || size > buffer.getCapacity()) {
+						error.compareAndSet(null, "Size " + size + " at " + i);
+						return;
+					}
+				}
+			}
+		};
+
+		producer.start();
+		consumer.start();
+		consumer.join();
+		assertNull(error.get());
+		producer.join();
+		assertTrue(buffer.isEmpty());
+	}
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Base64;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.MemoryObject;
+
+public class TestMemoryObject {
+
+	/**
+	 * A memory object serialized when its timestamp was a java.sql.Timestamp: info "info", type "A",
+	 * evaluation 0.5, id 7 and timestamp 1000000000000
+	 */
+	private static final String TIMESTAMP_FIELD_STREAM = "rO0ABXNyAClici51bmljYW1wLmNzdC5jb3JlLmVudGl0aWVzLk1lbW9yeU9iamVjdAAAAAAAAAABAgAFTAABSXQAEkxqYXZhL2xhbmcvT2JqZWN0O0wACmV2YWx1YXRpb250ABJMamF2YS9sYW5nL0RvdWJsZTtMAA5pZG1lbW9yeW9iamVjdHQAEExqYXZhL2xhbmcvTG9uZztMAARuYW1ldAASTGphdmEvbGFuZy9TdHJpbmc7TAAJdGltZXN0YW1wdAAUTGphdmEvc3FsL1RpbWVzdGFtcDt4cHQABGluZm9zcgAQamF2YS5sYW5nLkRvdWJsZYCzwkopa/sEAgABRAAFdmFsdWV4cgAQamF2YS5sYW5nLk51bWJlcoaslR0LlOCLAgAAeHA/4AAAAAAAAHNyAA5qYXZhLmxhbmcuTG9uZzuL5JDMjyPfAgABSgAFdmFsdWV4cQB+AAkAAAAAAAAAB3QAAUFzcgASamF2YS5zcWwuVGltZXN0YW1wJhjVyAFTv2UCAAFJAAVuYW5vc3hyAA5qYXZhLnV0aWwuRGF0ZWhqgQFLWXQZAwAAeHB3CAAAAOjUpRAAeAAAAAA=";
+
+	private static Object read(byte[] bytes) throws Exception {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+
+		MemoryObject mo = new MemoryObject();
+		mo.setI("info");
+		mo.setType("A");
+		mo.setEvaluation(0.5);
+		mo.setIdmemoryobject(7L);
+		mo.setTimestampMillis(1000000000000L);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(mo);
+		out.close();
+
+		MemoryObject copy = (MemoryObject) read(bytes.toByteArray());
+		assertEquals("info", copy.getI());
+		assertEquals("A", copy.getName());
+		assertEquals(0.5, copy.getEvaluation(), 0);
+		assertEquals(Long.valueOf(7L), copy.getIdmemoryobject());
+		assertEquals(1000000000000L, copy.getTimestampMillis());
+		assertEquals(mo.getVersion(), copy.getVersion());
+
+		// a timestamp never set stays unset
+		bytes.reset();
+		out = new ObjectOutputStream(bytes);
+		out.writeObject(new MemoryObject());
+		out.close();
+		copy = (MemoryObject) read(bytes.toByteArray());
+		assertNull(copy.getTimestamp());
+		assertEquals(Long.MIN_VALUE, copy.getTimestampMillis());
+	}
+
+	@Test
+	public void testTimestampFieldIsRead() throws Exception {
+
+		MemoryObject mo = (MemoryObject) read(Base64.getDecoder().decode(TIMESTAMP_FIELD_STREAM));
+		assertEquals("info", mo.getI());
+		assertEquals("A", mo.getName());
+		assertEquals(0.5, mo.getEvaluation(), 0);
+		assertEquals(Long.valueOf(7L), mo.getIdmemoryobject());
+		assertEquals(1000000000000L, mo.getTimestampMillis());
+		assertEquals(0L, mo.getVersion());
+
+		// still a working memory object
+		mo.setI("changed");
+		assertEquals(1L, mo.getVersion());
+		assertTrue(mo.getTimestampMillis() > 1000000000000L);
+	}
+}
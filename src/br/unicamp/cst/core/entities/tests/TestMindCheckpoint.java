@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInput;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.DefaultValueCodec;
+import br.unicamp.cst.core.entities.Memory;
+import br.unicamp.cst.core.entities.MemoryBuffer;
+import br.unicamp.cst.core.entities.MemoryContainer;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.Mind;
+
+public class TestMindCheckpoint {
+
+	@Test
+	public void testCheckpointAndRestore() throws Exception {
+
+		Path path = File.createTempFile("mind", ".ckpt").toPath();
+		path.toFile().deleteOnExit();
+
+		Mind mind = new Mind();
+		MemoryObject a = mind.createMemoryObject("A", "info");
+		MemoryObject b = mind.createMemoryObject("B", new double[] {1.0, 2.0});
+		b.setEvaluation(0.5);
+		MemoryContainer c = mind.createMemoryContainer("C");
+		c.setI(42);
+		MemoryBuffer buffer = new MemoryBuffer(2, mind.getRawMemory());
+		buffer.put(a);
+		mind.registerMemoryBuffer("buffer", buffer);
+
+		Codelet co = new EmptyCodelet("co");
+		co.setActivation(0.7);
+		co.addInput(a);
+		co.addOutput(c);
+		mind.insertCodelet(co);
+
+		mind.checkpoint(path);
+
+		Mind restored = new Mind();
+		MemoryBuffer restoredBuffer = new MemoryBuffer(2, restored.getRawMemory());
+		restored.registerMemoryBuffer("buffer", restoredBuffer);
+		Codelet restoredCo = restored.insertCodelet(new EmptyCodelet("co"));
+		restored.restore(path);
+
+		assertEquals(3, restored.getRawMemory().size());
+
+		MemoryObject restoredA = (MemoryObject) restored.getRawMemory().getAllOfType("A").get(0);
+		assertEquals("info", restoredA.getI());
+		assertEquals(a.getTimestampMillis(), restoredA.getTimestampMillis());
+
+		MemoryObject restoredB = (MemoryObject) restored.getRawMemory().getAllOfType("B").get(0);
+		assertArrayEquals(new double[] {1.0, 2.0}, (double[]) restoredB.getI(), 0.0);
+		assertEquals(0.5, restoredB.getEvaluation(), 0.0);
+
+		MemoryContainer restoredC = (MemoryContainer) restored.getRawMemory().getAllOfType("C").get(0);
+		assertEquals(1, restoredC.getAllMemories().size());
+		assertEquals(42, restoredC.getAllMemories().get(0).getI());
+
+		assertEquals(0.7, restoredCo.getActivation(), 0.0);
+		assertSame(restoredA, restoredCo.getInput("A"));
+		assertSame(restoredC, restoredCo.getOutput("C"));
+		assertSame(restoredA, restoredBuffer.getMostRecent());
+	}
+
+	@Test
+	public void testInfoSetBeforeBeingRead() throws Exception {
+
+		Path path = File.createTempFile("mind", ".ckpt").toPath();
+		path.toFile().deleteOnExit();
+
+		Mind mind = new Mind();
+		mind.createMemoryObject("A", "old");
+		mind.checkpoint(path);
+
+		Mind restored = new Mind();
+		restored.restore(path);
+
+		Memory restoredA = restored.getRawMemory().getAllOfType("A").get(0);
+		restoredA.setI("new");
+		assertEquals("new", restoredA.getI());
+	}
+
+	@Test
+	public void testInfoNotDecoded() throws Exception {
+
+		Path path = File.createTempFile("mind", ".ckpt").toPath();
+		path.toFile().deleteOnExit();
+
+		Mind mind = new Mind();
+		mind.createMemoryObject("A", "info");
+		mind.checkpoint(path);
+
+		// fails to read the first time only
+		Mind restored = new Mind();
+		restored.setValueCodec(new DefaultValueCodec() {
+
+			private boolean failed = false;
+
+			@Override
+			public Object read(DataInput in) throws IOException {
+				if (!failed) {
+					failed = true;
+					throw new IOException("corrupt");
+				}
+				return super.read(in);
+			}
+		});
+		restored.restore(path);
+
+		Memory restoredA = restored.getRawMemory().getAllOfType("A").get(0);
+		try {
+			restoredA.getI();
+			fail("The info was not decoded");
+		} catch (UncheckedIOException e) {
+			// expected
+		}
+		assertEquals("info", restoredA.getI());
+	}
+}
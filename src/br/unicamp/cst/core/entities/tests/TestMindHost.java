@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.Codelet;
+import br.unicamp.cst.core.entities.HostedMind;
+import br.unicamp.cst.core.entities.MindHost;
+
+public class TestMindHost {
+
+	/**
+	 * Keeps the CPU busy for about one millisecond per cycle
+	 */
+	private class BusyCodelet extends Codelet {
+
+		BusyCodelet() {
+			setTimeStep(0);
+		}
+
+		@Override
+		public void accessMemoryObjects() {
+		}
+
+		@Override
+		public void calculateActivation() {
+		}
+
+		@Override
+		public void proc() {
+			long end = System.nanoTime() + 1000000L;
+			while(System.nanoTime() < end) {
+				// busy
+			}
+		}
+	}
+
+	/**
+	 * Sleeps for 100 ms per cycle, counting how many of its kind run at once
+	 */
+	private class SleepingCodelet extends Codelet {
+
+		private final AtomicInteger running;
+		private final AtomicInteger maxRunning;
+
+		SleepingCodelet(AtomicInteger running, AtomicInteger maxRunning) {
+			this.running = running;
+			this.maxRunning = maxRunning;
+			setTimeStep(0);
+		}
+
+		@Override
+		public void accessMemoryObjects() {
+		}
+
+		@Override
+		public void calculateActivation() {
+		}
+
+		@Override
+		public void proc() {
+			int now = running.incrementAndGet();
+			int max;
+			while((max = maxRunning.get()) < now && !maxRunning.compareAndSet(max, now)) {
+				// retry
+			}
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				// the host is shutting down
+				Thread.currentThread().interrupt();
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+	}
+
+	@Test
+	public void testShares() throws Exception {
+
+		MindHost host = new MindHost(1);
+		try {
+			HostedMind small = host.createMind();
+			HostedMind big = host.createMind();
+			big.setShare(3.0);
+
+			for(int i = 0; i < 4; i++) {
+				small.getMind().insertCodelet(new BusyCodelet());
+				big.getMind().insertCodelet(new BusyCodelet());
+			}
+
+			host.start();
+			Thread.sleep(1000);
+			host.stop();
+
+			assertTrue(small.getCycles() > 0);
+			assertTrue(big.getCpuTime() > 2 * small.getCpuTime());
+		} finally {
+			host.shutDown();
+		}
+	}
+
+	@Test
+	public void testAllWorkersRunOneMind() throws Exception {
+
+		MindHost host = new MindHost(4);
+		try {
+			AtomicInteger running = new AtomicInteger();
+			AtomicInteger maxRunning = new AtomicInteger();
+			HostedMind hosted = host.createMind();
+			for(int i = 0; i < 8; i++) {
+				hosted.getMind().insertCodelet(new SleepingCodelet(running, maxRunning));
+			}
+
+			host.start();
+			Thread.sleep(500);
+			host.stop();
+
+			// every worker takes tasks from the same mind
+			assertEquals(4, maxRunning.get());
+			assertTrue(hosted.getCycles() >= 12);
+			// sleeping is not charged as CPU time
+			assertTrue(hosted.getCpuTime() < hosted.getCycles() * 50000000L);
+		} finally {
+			host.shutDown();
+		}
+	}
+
+	@Test
+	public void testPause() throws Exception {
+
+		MindHost host = new MindHost(1);
+		try {
+			HostedMind hosted = host.createMind();
+			hosted.getMind().insertCodelet(new BusyCodelet());
+
+			hosted.pause();
+			hosted.start();
+			Thread.sleep(200);
+			assertEquals(0, hosted.getCycles());
+			assertTrue(hosted.isPaused());
+
+			hosted.resume();
+			Thread.sleep(200);
+			assertTrue(hosted.getCycles() > 0);
+		} finally {
+			host.shutDown();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.Memory;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.RawMemory;
+
+public class TestRawMemory {
+
+	@Test
+	public void testCreateAndDestroy() {
+
+		RawMemory rawMemory = new RawMemory();
+		MemoryObject a1 = rawMemory.createMemoryObject("A", 1);
+		MemoryObject a2 = rawMemory.createMemoryObject("a", 2);
+		MemoryObject b = rawMemory.createMemoryObject("B", 3);
+		assertEquals(3, rawMemory.size());
+
+		// types are case insensitive
+		List<Memory> ofA = rawMemory.getAllOfType("A");
+		assertEquals(2, ofA.size());
+		assertTrue(ofA.contains(a1));
+		assertTrue(ofA.contains(a2));
+		assertEquals(1, rawMemory.getAllOfType("b").size());
+		assertSame(b, rawMemory.getAllOfType("b").get(0));
+		assertTrue(rawMemory.getAllOfType("C").isEmpty());
+		assertTrue(rawMemory.getAllOfType(null).isEmpty());
+
+		// adding again has no effect
+		rawMemory.addMemory(a1);
+		assertEquals(3, rawMemory.size());
+		assertEquals(2, rawMemory.getAllOfType("A").size());
+
+		rawMemory.destroyMemoryObject(a1);
+		assertFalse(rawMemory.contains(a1));
+		assertEquals(2, rawMemory.size());
+		assertEquals(1, rawMemory.getAllOfType("A").size());
+		assertSame(a2, rawMemory.getAllOfType("A").get(0));
+
+		rawMemory.destroyMemoryObject(a2);
+		rawMemory.destroyMemoryObject(b);
+		assertEquals(0, rawMemory.size());
+		assertTrue(rawMemory.getAllOfType("A").isEmpty());
+		assertTrue(rawMemory.getAllOfType("B").isEmpty());
+	}
+
+	@Test
+	public void testRename() {
+
+		RawMemory rawMemory = new RawMemory();
+		MemoryObject x = rawMemory.createMemoryObject("A", "x");
+		MemoryObject y = rawMemory.createMemoryObject("A", "y");
+
+		// moved to its new type
+		x.setType("B");
+		assertEquals(1, rawMemory.getAllOfType("A").size());
+		assertSame(y, rawMemory.getAllOfType("A").get(0));
+		assertEquals(1, rawMemory.getAllOfType("B").size());
+		assertSame(x, rawMemory.getAllOfType("B").get(0));
+
+		// renamed again, to a name differing only in case and back
+		x.setType("b");
+		assertSame(x, rawMemory.getAllOfType("B").get(0));
+		x.setType("A");
+		assertEquals(2, rawMemory.getAllOfType("A").size());
+		assertTrue(rawMemory.getAllOfType("B").isEmpty());
+
+		// named after being added
+		MemoryObject unnamed = new MemoryObject();
+		rawMemory.addMemory(unnamed);
+		unnamed.setType("C");
+		assertEquals(1, rawMemory.getAllOfType("C").size());
+		assertSame(unnamed, rawMemory.getAllOfType("C").get(0));
+		unnamed.setType(null);
+		assertTrue(rawMemory.getAllOfType("C").isEmpty());
+		unnamed.setType("C");
+
+		// destroyed after a rename, it is gone from its new type
+		x.setType("B");
+		rawMemory.destroyMemoryObject(x);
+		assertTrue(rawMemory.getAllOfType("B").isEmpty());
+		assertEquals(1, rawMemory.getAllOfType("A").size());
+
+		// renaming a destroyed memory object does not bring it back
+		x.setType("C");
+		assertEquals(1, rawMemory.getAllOfType("C").size());
+		assertEquals(2, rawMemory.size());
+	}
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.MemoryEvent;
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.MemorySubscriber;
+import br.unicamp.cst.core.entities.MemorySubscription;
+import br.unicamp.cst.core.entities.RawMemory;
+
+public class TestRawMemoryEvents {
+
+	/** Delivers the events on the thread publishing them */
+	private static final Executor DIRECT = new Executor() {
+
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private static class Recorder implements MemorySubscriber {
+
+		final List<MemoryEvent> events = new ArrayList<MemoryEvent>();
+		final long initialRequest;
+		MemorySubscription subscription;
+
+		Recorder(long initialRequest) {
+			this.initialRequest = initialRequest;
+		}
+
+		@Override
+		public void onSubscribe(MemorySubscription subscription) {
+			this.subscription = subscription;
+			subscription.request(initialRequest);
+		}
+
+		@Override
+		public void onNext(MemoryEvent event) {
+			events.add(event);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			fail(throwable.toString());
+		}
+
+		@Override
+		public void onComplete() {
+		}
+	}
+
+	@Test
+	public void testEvents() {
+
+		RawMemory rawMemory = new RawMemory();
+		MemoryObject before = rawMemory.createMemoryObject("A", 0);
+
+		Recorder all = new Recorder(Long.MAX_VALUE);
+		rawMemory.subscribe(all, null, EnumSet.allOf(MemoryEvent.Type.class), 16, DIRECT);
+		Recorder onlyB = new Recorder(Long.MAX_VALUE);
+		rawMemory.subscribe(onlyB, "b", EnumSet.allOf(MemoryEvent.Type.class), 16, DIRECT);
+
+		MemoryObject b = rawMemory.createMemoryObject("B", 0);
+		before.setI(1);
+		rawMemory.destroyMemoryObject(b);
+
+		assertEquals(3, all.events.size());
+		assertEquals(MemoryEvent.Type.CREATED, all.events.get(0).getType());
+		assertSame(b, all.events.get(0).getMemory());
+		assertEquals(MemoryEvent.Type.UPDATED, all.events.get(1).getType());
+		assertSame(before, all.events.get(1).getMemory());
+		assertEquals(MemoryEvent.Type.DESTROYED, all.events.get(2).getType());
+
+		assertEquals(2, onlyB.events.size());
+
+		all.subscription.cancel();
+		before.setI(2);
+		assertEquals(3, all.events.size());
+	}
+
+	@Test
+	public void testBackpressure() {
+
+		RawMemory rawMemory = new RawMemory();
+		Recorder recorder = new Recorder(1);
+		rawMemory.subscribe(recorder, null, EnumSet.allOf(MemoryEvent.Type.class), 2, DIRECT);
+
+		MemoryObject a = rawMemory.createMemoryObject("A", 0);
+		a.setI(1);
+		a.setI(2);
+		rawMemory.createMemoryObject("B", 0);
+		rawMemory.createMemoryObject("C", 0);
+
+		// CREATED A delivered, UPDATED A merged, CREATED B waiting, CREATED C dropped
+		assertEquals(1, recorder.events.size());
+		assertEquals(1, recorder.subscription.getDroppedEvents());
+
+		recorder.subscription.request(10);
+		assertEquals(3, recorder.events.size());
+		assertEquals(MemoryEvent.Type.UPDATED, recorder.events.get(1).getType());
+	}
+
+	@Test
+	public void testRejectedDelivery() {
+
+		RawMemory rawMemory = new RawMemory();
+		MemoryObject a = rawMemory.createMemoryObject("A", 0);
+
+		final List<Throwable> errors = new ArrayList<Throwable>();
+		Recorder recorder = new Recorder(Long.MAX_VALUE) {
+
+			@Override
+			public void onError(Throwable throwable) {
+				errors.add(throwable);
+			}
+		};
+		rawMemory.subscribe(recorder, null, EnumSet.allOf(MemoryEvent.Type.class), 16, new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException("shut down");
+			}
+		});
+
+		// the codelet changing the memory does not see the rejection
+		a.setI(1);
+		a.setI(2);
+
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(0) instanceof RejectedExecutionException);
+		assertTrue(recorder.events.isEmpty());
+	}
+}
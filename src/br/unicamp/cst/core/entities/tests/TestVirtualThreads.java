@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.core.entities.tests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.CodeletScheduler;
+import br.unicamp.cst.core.entities.Mind;
+import br.unicamp.cst.core.entities.VirtualThreadFactory;
+
+public class TestVirtualThreads {
+
+	@Test
+	public void testSwitchOnAndOff() {
+
+		Mind mind = new Mind();
+		mind.insertCodelet(new EmptyCodelet("co"));
+
+		mind.setVirtualThreads(true);
+		assertTrue(mind.isVirtualThreads());
+		CodeletScheduler fallback = mind.getScheduler();
+		if (VirtualThreadFactory.isSupported()) {
+			assertNull(fallback);
+		} else {
+			// the codelets run on a pool instead
+			assertNotNull(fallback);
+		}
+
+		mind.setVirtualThreads(false);
+		assertFalse(mind.isVirtualThreads());
+		assertNull(mind.getScheduler());
+		assertNull(mind.getCodeRack().getThreadFactory());
+		if (fallback != null) {
+			assertTrue(fallback.isShutDown());
+		}
+	}
+}
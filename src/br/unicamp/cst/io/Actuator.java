@@ -34,14 +34,14 @@ public abstract class Actuator extends Codelet
 	@Override
 	public void addInput(Memory mo)
 	{
-		this.getInputs().add(mo);
+		super.addInput(mo);
 		if(ws!=null)
 			ws.putMemoryObject(mo);
 	}
 	@Override
 	public void removesInput(Memory mo)
 	{
-		this.getInputs().remove(mo);
+		super.removesInput(mo);
 		if(ws!=null)
 			ws.removeFromWorkingStorageWithoutDelete(mo);		
 	}
@@ -13,10 +13,13 @@ package br.unicamp.cst.io;
 
 import java.util.ArrayList;
 
+import br.unicamp.cst.core.entities.CodeRack;
 import br.unicamp.cst.core.entities.Codelet;
 /**
  * Body interface has two lists, a list of sensors and one of actuators. 
  * It is a holder for sensor and actuator codelets.
+ * If created with a CodeRack, sensors and actuators run in the same way as the codelets 
+ * in it (e.g. on virtual threads or on its scheduler).
  * 
  * @author klaus
  * @author andre
@@ -28,6 +31,8 @@ public class BodyProxy
 
 	private ArrayList<Codelet> listActuators;
 
+	private CodeRack codeRack;
+
 
 	public BodyProxy()
 	{
@@ -35,10 +40,18 @@ public class BodyProxy
 		listActuators = new ArrayList<Codelet>();           
 	}
 
+	public BodyProxy(CodeRack codeRack)
+	{
+		this();
+		this.codeRack = codeRack;
+	}
+
 	public synchronized void startSenses()
 	{
 		for(Codelet sensor:listSensors)
 		{
+			if(codeRack!=null)
+				codeRack.applyExecutionMode(sensor);
 			sensor.start();
 		}
 	}
@@ -56,6 +69,8 @@ public class BodyProxy
 	{
 		for(Codelet actuator:listActuators)
 		{
+			if(codeRack!=null)
+				codeRack.applyExecutionMode(actuator);
 			actuator.start();
 		}
 	}
@@ -32,14 +32,14 @@ public abstract class Sensor extends Codelet
 	@Override
 	public synchronized void addOutput(Memory mo)
 	{
-		this.getOutputs().add(mo);
+		super.addOutput(mo);
 		if(ws!=null)
 			ws.putMemoryObject(mo);
 	}
 	@Override
 	public synchronized void removesOutput(Memory mo)
 	{
-		this.getOutputs().remove(mo);
+		super.removesOutput(mo);
 		if(ws!=null)
 			ws.removeFromWorkingStorageWithoutDelete(mo);		
 	}
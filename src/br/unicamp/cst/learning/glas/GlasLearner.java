@@ -20,6 +20,7 @@ import org.opt4j.optimizers.sa.SimulatedAnnealingModule;
 import org.opt4j.viewer.ViewerModule;
 
 import br.unicamp.cst.behavior.glas.GlasSequence;
+import br.unicamp.cst.core.entities.CstEvents;
 
 
 
@@ -81,6 +82,7 @@ public class GlasLearner {
 
 
 		long initial_time = System.nanoTime();
+		Object event = CstEvents.isEnabled() ? CstEvents.beginGlasLearningRun() : null;
 
 		best_found_fit=Double.NEGATIVE_INFINITY;
 
@@ -200,6 +202,8 @@ public class GlasLearner {
 		//		elapsed_time=elapsed_time/60;		
 		//		//		System.out.println("Elapsed time: "+elapsed_time+" minutes");
 
+		if(event!=null)
+			CstEvents.endGlasLearningRun(event, mySequence.getEvents().size(), nReRuns, best_found_fit);
 
 	}
 
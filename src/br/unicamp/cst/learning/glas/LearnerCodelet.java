@@ -147,7 +147,7 @@ public class LearnerCodelet extends Codelet
 				//			System.out.println("Init proc ... ");
 
 				try {
-					JSONArray sequence_json = new JSONArray(EVENTS_SEQUENCE_MO.getI());
+					JSONArray sequence_json = new JSONArray((String) EVENTS_SEQUENCE_MO.getI());
 
 					System.out.print(".");
 					int sequence_lenght = sequence_json.length();
@@ -181,7 +181,7 @@ public class LearnerCodelet extends Codelet
 
 
 
-						JSONArray solution_tree_phenotype_jsonarray = new JSONArray(SOLUTION_TREE_MO.getI());
+						JSONArray solution_tree_phenotype_jsonarray = new JSONArray((String) SOLUTION_TREE_MO.getI());
 						int[] solution_tree_phenotype_int = new int[solution_tree_phenotype_jsonarray.length()];
 						for(int i=0; i<solution_tree_phenotype_jsonarray.length();i++){
 							solution_tree_phenotype_int[i]=solution_tree_phenotype_jsonarray.getInt(i);
@@ -311,7 +311,7 @@ public class LearnerCodelet extends Codelet
 
 
 
-						sequence_json = new JSONArray(EVENTS_SEQUENCE_MO.getI());
+						sequence_json = new JSONArray((String) EVENTS_SEQUENCE_MO.getI());
 						last_number_of_events=sequence_json.length();
 
 						//						System.out.println("##########################################");
@@ -63,7 +63,11 @@ public abstract class EmotionalCodelet extends Codelet {
 
         if(getInputMoodMO() == null){
             setInputMoodMO(this.getInput(INPUT_MOOD_MEMORY, 0));
-            this.setMood((Mood) getInputDrivesMO().getI());
+        }
+
+        // the mood is read at every cycle, since the MoodCodelet writes a new one each time
+        if(getInputMoodMO() != null){
+            this.setMood((Mood) getInputMoodMO().getI());
         }
 
         if(getOutputAffectedDriveMO() == null){
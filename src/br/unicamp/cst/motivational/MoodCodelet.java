@@ -44,25 +44,34 @@ public abstract class MoodCodelet extends Codelet {
     @Override
     public void accessMemoryObjects() {
 
-        if(getInputDrivesMemoryMO() != null){
+        if(getInputDrivesMemoryMO() == null){
             setInputDrivesMemoryMO(getInput(INPUT_DRIVES_MEMORY, 0));
-            setListOfDrives((List<Drive>) getInputDrivesMemoryMO().getI());
-
         }
 
-        if(getAppraisalMO() != null){
+        if(getAppraisalMO() == null){
             setAppraisalMO(getInput(INPUT_APPRAISAL_MEMORY, 0));
-            setAppraisal((Appraisal) getAppraisalMO().getI());
         }
 
-        if(getEpisodicRecallMO() != null){
+        if(getEpisodicRecallMO() == null){
             setEpisodicRecallMO(getInput(INPUT_EPISODIC_RECALL_MEMORY, 0));
-            setEpisodicRecallMemory((EpisodicMemory) getEpisodicRecallMO().getI());
         }
 
-        if(getOutputMoodMO() != null){
+        if(getOutputMoodMO() == null){
             setOutputMoodMO(getOutput(OUTPUT_MOOD_MEMORY, 0));
         }
+
+        // the contents are read at every cycle, since they are replaced by the codelets writing them
+        if(getInputDrivesMemoryMO() != null){
+            setListOfDrives((List<Drive>) getInputDrivesMemoryMO().getI());
+        }
+
+        if(getAppraisalMO() != null){
+            setAppraisal((Appraisal) getAppraisalMO().getI());
+        }
+
+        if(getEpisodicRecallMO() != null){
+            setEpisodicRecallMemory((EpisodicMemory) getEpisodicRecallMO().getI());
+        }
     }
 
     @Override
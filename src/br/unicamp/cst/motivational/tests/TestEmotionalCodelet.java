@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2016  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     E. M. Froes, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.motivational.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.Mind;
+import br.unicamp.cst.core.exceptions.CodeletActivationBoundsException;
+import br.unicamp.cst.motivational.Drive;
+import br.unicamp.cst.motivational.EmotionalCodelet;
+import br.unicamp.cst.motivational.Mood;
+
+public class TestEmotionalCodelet {
+
+	/**
+	 * Distorts its drive by the value of the mood
+	 */
+	private static class MoodEmotion extends EmotionalCodelet {
+
+		MoodEmotion(String name) throws CodeletActivationBoundsException {
+			super(name);
+		}
+
+		@Override
+		public double calculateMoodFilterDistortion(List<Drive> listOfDrives, Mood mood) {
+			return mood.getValue();
+		}
+	}
+
+	@Test
+	public void testMoodIsRead() throws Exception {
+
+		Mind mind = new Mind();
+		Drive hunger = new Drive("HUNGER");
+		HashMap<Drive, Double> drives = new HashMap<Drive, Double>();
+		drives.put(hunger, 0.5d);
+		MemoryObject mood = mind.createMemoryObject(EmotionalCodelet.INPUT_MOOD_MEMORY, new Mood("MOOD", 0.25d));
+		MemoryObject output = mind.createMemoryObject(EmotionalCodelet.OUTPUT_AFFECTED_DRIVE_MEMORY);
+
+		EmotionalCodelet co = new MoodEmotion("FEAR");
+		co.addInput(mind.createMemoryObject(EmotionalCodelet.INPUT_DRIVES_MEMORY, drives));
+		co.addInput(mind.createMemoryObject(EmotionalCodelet.INPUT_AFFECTED_DRIVE_MEMORY, hunger));
+		co.addInput(mood);
+		co.addOutput(output);
+
+		co.runOnce();
+		assertEquals(0.25d, co.getMood().getValue(), 0.0d);
+		assertEquals(0.25d, co.getActivation(), 0.0d);
+		assertSame(co.getAffectedDrive(), output.getI());
+		assertEquals(0.25d, output.getEvaluation(), 0.0d);
+
+		// each new mood is read at the next cycle
+		mood.setI(new Mood("MOOD", 0.75d));
+		co.runOnce();
+		assertEquals(0.75d, co.getActivation(), 0.0d);
+		assertEquals(0.75d, co.getAffectedDrive().getActivation(), 0.0d);
+	}
+}
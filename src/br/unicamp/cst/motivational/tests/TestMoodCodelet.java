@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2016  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     E. M. Froes, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+package br.unicamp.cst.motivational.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import br.unicamp.cst.core.entities.MemoryObject;
+import br.unicamp.cst.core.entities.Mind;
+import br.unicamp.cst.memory.EpisodicMemory;
+import br.unicamp.cst.motivational.Appraisal;
+import br.unicamp.cst.motivational.Drive;
+import br.unicamp.cst.motivational.Mood;
+import br.unicamp.cst.motivational.MoodCodelet;
+
+public class TestMoodCodelet {
+
+	/**
+	 * Mood given by the number of drives and the evaluation of the appraisal
+	 */
+	private static class CountingMood extends MoodCodelet {
+
+		CountingMood(String name) {
+			super(name);
+		}
+
+		@Override
+		public Mood moodGenerate(List<Drive> listOfDrives, Appraisal appraisal, EpisodicMemory episodicMemory) {
+			return new Mood("", listOfDrives.size() + appraisal.getEvaluation());
+		}
+	}
+
+	@Test
+	public void testMemoriesAreRead() {
+
+		Mind mind = new Mind();
+		MemoryObject drives = mind.createMemoryObject(MoodCodelet.INPUT_DRIVES_MEMORY, Arrays.asList(new Drive("HUNGER")));
+		MemoryObject appraisal = mind.createMemoryObject(MoodCodelet.INPUT_APPRAISAL_MEMORY, new Appraisal("NEUTRAL", "NEUTRAL", 0.5d, null, null));
+		MemoryObject output = mind.createMemoryObject(MoodCodelet.OUTPUT_MOOD_MEMORY);
+
+		MoodCodelet co = new CountingMood("MOOD");
+		co.addInput(drives);
+		co.addInput(appraisal);
+		co.addInput(mind.createMemoryObject(MoodCodelet.INPUT_EPISODIC_RECALL_MEMORY));
+		co.addOutput(output);
+
+		co.runOnce();
+		Mood mood = (Mood) output.getI();
+		assertEquals("MOOD", mood.getName());
+		assertEquals(1.5d, mood.getValue(), 0.0d);
+
+		// new contents are read at the next cycle
+		List<Drive> more = new ArrayList<Drive>();
+		more.add(new Drive("HUNGER"));
+		more.add(new Drive("THIRST"));
+		drives.setI(more);
+		appraisal.setI(new Appraisal("GOOD", "GOOD", 1.0d, null, null));
+		co.runOnce();
+		assertEquals(3.0d, ((Mood) output.getI()).getValue(), 0.0d);
+	}
+}
@@ -150,7 +150,7 @@ public abstract class Perception extends Codelet
          */
        	public synchronized void addOutput(Memory output)
 	{
-		this.getOutputs().add(output);
+		super.addOutput(output);
 		
 		list_of_true_world_states.add(output);
 		list_of_false_world_states.remove(output);
@@ -164,7 +164,7 @@ public abstract class Perception extends Codelet
          */
 	public synchronized void removesOutput(Memory output)
 	{	
-		this.getOutputs().remove(output);
+		super.removesOutput(output);
 		
 		list_of_true_world_states.remove(output);
 		list_of_false_world_states.add(output);
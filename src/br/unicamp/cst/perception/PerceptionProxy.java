@@ -42,12 +42,15 @@ public class PerceptionProxy
    }
    
    /**
-    * Starts all interpreters in this proxy.
+    * Starts all interpreters in this proxy. If this proxy has a CodeRack, the interpreters 
+    * run in the same way as the codelets in it (e.g. on virtual threads or on its scheduler).
     */
    public void start()
    {
       for(Codelet interpreter:listInterpreters)
       {
+         if(codeRack!=null)
+            codeRack.applyExecutionMode(interpreter);
          interpreter.start();
       }
    }
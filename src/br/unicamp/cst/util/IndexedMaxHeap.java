@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2012  DCA-FEEC-UNICAMP
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     K. Raizer, A. L. O. Paraense, R. R. Gudwin - initial API and implementation
+ ******************************************************************************/
+
+package br.unicamp.cst.util;
+
+import java.util.Arrays;
+
+/**
+ * Binary max-heap of ids (small non-negative ints, such as positions in a list) ordered by a double key,
+ * which can be changed or removed in O(log n) because the heap knows where each id is. Ties are broken
+ * by the smallest id. Nothing is allocated per operation, except when the ids outgrow the capacity.
+ *
+ * Not thread safe.
+ */
+public class IndexedMaxHeap {
+
+    /** Ids in heap order */
+    private int[] heap;
+    /** Position of each id in the heap, or -1 if it is not there */
+    private int[] positions;
+    /** Key of each id */
+    private double[] keys;
+    private int size = 0;
+
+    /**
+     * @param capacity initial number of ids, grown as needed
+     */
+    public IndexedMaxHeap(int capacity) {
+        capacity = Math.max(capacity, 1);
+        heap = new int[capacity];
+        positions = new int[capacity];
+        keys = new double[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    /**
+     * Adds an id, or changes its key if it is already in the heap.
+     *
+     * @param id non-negative id
+     * @param key key of the id
+     */
+    public void set(int id, double key) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Negative id: " + id);
+        }
+        if (id >= positions.length) {
+            grow(id + 1);
+        }
+
+        int position = positions[id];
+        if (position < 0) {
+            keys[id] = key;
+            heap[size] = id;
+            positions[id] = size;
+            siftUp(size++);
+            return;
+        }
+
+        double old = keys[id];
+        keys[id] = key;
+        if (key > old) {
+            siftUp(position);
+        } else if (key < old) {
+            siftDown(position);
+        }
+    }
+
+    /**
+     * @return true if the id was in the heap
+     */
+    public boolean remove(int id) {
+        if (!contains(id)) {
+            return false;
+        }
+
+        int position = positions[id];
+        positions[id] = -1;
+        size--;
+
+        if (position < size) {
+            int last = heap[size];
+            heap[position] = last;
+            positions[last] = position;
+            siftDown(position);
+            siftUp(positions[last]);
+        }
+        return true;
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && id < positions.length && positions[id] >= 0;
+    }
+
+    /**
+     * @return the key of an id in the heap
+     */
+    public double getKey(int id) {
+        if (!contains(id)) {
+            throw new IllegalArgumentException("Id not in the heap: " + id);
+        }
+        return keys[id];
+    }
+
+    /**
+     * @return the id with the highest key, or -1 if the heap is empty
+     */
+    public int peek() {
+        return size > 0 ? heap[0] : -1;
+    }
+
+    /**
+     * @return the highest key, or Double.NEGATIVE_INFINITY if the heap is empty
+     */
+    public double peekKey() {
+        return size > 0 ? keys[heap[0]] : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Removes the id with the highest key.
+     *
+     * @return the id removed, or -1 if the heap is empty
+     */
+    public int poll() {
+        int top = peek();
+        if (top >= 0) {
+            remove(top);
+        }
+        return top;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * @return true if the id at position a goes above the one at position b
+     */
+    private boolean above(int a, int b) {
+        double ka = keys[heap[a]];
+        double kb = keys[heap[b]];
+        return ka > kb || (ka == kb && heap[a] < heap[b]);
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!above(position, parent)) {
+                break;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && above(child + 1, child)) {
+                child++;
+            }
+            if (!above(child, position)) {
+                break;
+            }
+            swap(position, child);
+            position = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int ida = heap[a];
+        int idb = heap[b];
+        heap[a] = idb;
+        heap[b] = ida;
+        positions[idb] = a;
+        positions[ida] = b;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, positions.length * 2);
+        int old = positions.length;
+        heap = Arrays.copyOf(heap, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        Arrays.fill(positions, old, capacity, -1);
+    }
+}